@@ -0,0 +1,113 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import metricas.Histograma;
+
+/**
+ * Arnés que ejecuta un benchmark en varios hilos durante un tiempo fijo
+ * Primero hay un calentamiento sin medir, para que el JIT compile el código, y después la medición:
+ * cada hilo ejecuta la operación en bucle y registra la latencia de cada llamada en su propio histograma (el mismo
+ * metricas.Histograma del servidor), y al final se suman.
+ * El rendimiento es el total de operaciones medidas entre la duración de la medición.
+ */
+class Arnes {
+
+	/**
+	 * Operación a medir. Cada hilo crea la suya, por lo que puede guardar estado propio (por ejemplo un socket).
+	 * close no lanza excepciones comprobadas: al cerrar, el resultado ya está medido.
+	 */
+	interface Prueba extends AutoCloseable {
+		void ejecutar() throws Exception;
+
+		@Override
+		default void close() {
+		}
+	}
+
+	private final long calentamientoMs;
+	private final long medicionMs;
+
+	/**
+	 * @param calentamientoMs duración del calentamiento
+	 * @param medicionMs duración de la medición
+	 */
+	Arnes(long calentamientoMs, long medicionMs) {
+		this.calentamientoMs = calentamientoMs;
+		this.medicionMs = medicionMs;
+	}
+
+	/**
+	 * Ejecuta un benchmark
+	 * @param nombre nombre con el que se informa el resultado
+	 * @param hilos número de hilos que ejecutan la operación a la vez
+	 * @param fabrica crea la operación de cada hilo
+	 * @return rendimiento y latencias medidos
+	 * @throws Exception si falla la creación de la operación o alguna de sus ejecuciones
+	 */
+	Resultado medir(String nombre, int hilos, Callable<Prueba> fabrica) throws Exception {
+		CyclicBarrier inicio = new CyclicBarrier(hilos + 1);
+		List<Histograma> histogramas = new ArrayList<>();
+		AtomicReference<Exception> error = new AtomicReference<>();
+		long[] limites = new long[2];
+		List<Thread> trabajadores = new ArrayList<>();
+
+		for (int i = 0; i < hilos; i++) {
+			Histograma h = new Histograma();
+			histogramas.add(h);
+			Thread t = new Thread(() -> {
+				Prueba prueba = null;
+				try {
+					prueba = fabrica.call();
+				} catch (Exception e) {
+					error.compareAndSet(null, e);
+				}
+				try {
+					// Todos los hilos empiezan a la vez, aunque alguno no haya podido crear su operación
+					inicio.await();
+					long finCalentamiento = limites[0];
+					long finMedicion = limites[1];
+					while (prueba != null && System.nanoTime() < finCalentamiento && error.get() == null) {
+						prueba.ejecutar();
+					}
+					long t0 = System.nanoTime();
+					while (prueba != null && t0 < finMedicion && error.get() == null) {
+						prueba.ejecutar();
+						long t1 = System.nanoTime();
+						h.registrar(t1 - t0);
+						t0 = t1;
+					}
+				} catch (Exception e) {
+					error.compareAndSet(null, e);
+				} finally {
+					if (prueba != null) {
+						prueba.close();
+					}
+				}
+			}, "bench-" + nombre + "-" + i);
+			trabajadores.add(t);
+			t.start();
+		}
+
+		long ahora = System.nanoTime();
+		limites[0] = ahora + calentamientoMs * 1_000_000;
+		limites[1] = limites[0] + medicionMs * 1_000_000;
+		inicio.await();
+		for (Thread t : trabajadores) {
+			t.join();
+		}
+		if (error.get() != null) {
+			throw error.get();
+		}
+
+		Histograma total = new Histograma();
+		for (Histograma h : histogramas) {
+			total.sumar(h);
+		}
+		return Resultado.de(nombre, hilos, total, medicionMs * 1_000_000);
+	}
+}
@@ -0,0 +1,164 @@
+package benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Controlador JDBC que sustituye a la base de datos en los benchmarks (URL "jdbc:simulada:")
+ * No guarda datos: las consultas devuelven siempre el número de filas indicado al registrarlo y las escrituras
+ * afectan a una fila.
+ * Sirve para medir el coste propio del servidor (análisis de comandos, pool, caché de sentencias, DAO y
+ * serialización) sin el ruido de una base de datos real. Para medir contra MySQL basta con indicar otra
+ * URL en gestor.bd.url.
+ */
+public class BaseDatosSimulada implements Driver {
+	public static final String URL = "jdbc:simulada:gestortareas";
+
+	private final int filas;
+
+	private BaseDatosSimulada(int filas) {
+		this.filas = filas;
+	}
+
+	/**
+	 * Registra el controlador en DriverManager
+	 * @param filas número de filas que devuelve cada consulta
+	 */
+	public static void registrar(int filas) throws SQLException {
+		DriverManager.registerDriver(new BaseDatosSimulada(filas));
+	}
+
+	@Override
+	public Connection connect(String url, Properties info) {
+		if (!acceptsURL(url)) {
+			return null;
+		}
+		boolean[] estado = { true, false }; // autoCommit, cerrada
+		return proxy(Connection.class, (p, m, a) -> {
+			switch (m.getName()) {
+			case "prepareStatement":
+			case "createStatement":
+				return sentencia();
+			case "getAutoCommit":
+				return estado[0];
+			case "setAutoCommit":
+				estado[0] = (Boolean) a[0];
+				return null;
+			case "isValid":
+				return !estado[1];
+			case "isClosed":
+				return estado[1];
+			case "close":
+				estado[1] = true;
+				return null;
+			default:
+				return valorPorDefecto(m.getReturnType());
+			}
+		});
+	}
+
+	private Statement sentencia() {
+		int[] enLote = { 0 };
+		return proxy(PreparedStatement.class, (p, m, a) -> {
+			switch (m.getName()) {
+			case "executeQuery":
+				return filas(filas);
+			case "executeUpdate":
+				return 1;
+			case "addBatch":
+				enLote[0]++;
+				return null;
+			case "executeBatch":
+				int[] resultado = new int[enLote[0]];
+				Arrays.fill(resultado, 1);
+				return resultado;
+			case "getGeneratedKeys":
+				int n = Math.max(1, enLote[0]);
+				enLote[0] = 0;
+				return filas(n);
+			case "clearBatch":
+				enLote[0] = 0;
+				return null;
+			default:
+				return valorPorDefecto(m.getReturnType());
+			}
+		});
+	}
+
+	private static ResultSet filas(int n) {
+		int[] fila = { 0 };
+		Date fecha = Date.valueOf("2025-01-01");
+		return proxy(ResultSet.class, (p, m, a) -> {
+			switch (m.getName()) {
+			case "next":
+				return ++fila[0] <= n;
+			case "getInt":
+				return "proyecto_id".equals(a[0]) ? 1 : fila[0];
+			case "getString":
+				if ("estado".equals(a[0])) {
+					return "pendiente";
+				}
+				if ("urgencia".equals(a[0])) {
+					return "media";
+				}
+				return a[0] + " " + fila[0];
+			case "getDate":
+				return fecha;
+			default:
+				return valorPorDefecto(m.getReturnType());
+			}
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> tipo, InvocationHandler manejador) {
+		return (T) Proxy.newProxyInstance(tipo.getClassLoader(), new Class<?>[] { tipo }, manejador);
+	}
+
+	private static Object valorPorDefecto(Class<?> tipo) {
+		if (tipo == boolean.class) {
+			return false;
+		}
+		if (tipo == int.class) {
+			return 0;
+		}
+		if (tipo == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+
+	@Override
+	public boolean acceptsURL(String url) {
+		return url.startsWith("jdbc:simulada:");
+	}
+
+	@Override
+	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+		return new DriverPropertyInfo[0];
+	}
+
+	@Override
+	public int getMajorVersion() {
+		return 1;
+	}
+
+	@Override
+	public int getMinorVersion() {
+		return 0;
+	}
+
+	@Override
+	public boolean jdbcCompliant() {
+		return false;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+}
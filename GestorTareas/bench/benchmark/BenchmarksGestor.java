@@ -0,0 +1,644 @@
+package benchmark;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import almacen.AlmacenMemoria;
+import almacen.PoliticaSincronizacion;
+import config.Configuracion;
+import dao.CacheConsultas;
+import dao.ConexionBD;
+import dao.EscrituraDiferida;
+import dao.FiltroTareas;
+import dao.ProyectoDAO;
+import dao.TareaDAO;
+import modelos.Estado;
+import modelos.Proyecto;
+import modelos.Tarea;
+import modelos.Urgencia;
+import protocolo.BufferBinario;
+import protocolo.ComandoTexto;
+import protocolo.RespuestaTexto;
+import protocolo.ProtocoloBinario;
+import servidor.MotorRed;
+import servidor.ProcesadorComandos;
+import servidor.SalidaCliente;
+import servidor.Servidor;
+import servidor.ServicioGestor;
+import servidor.ServidorBloqueante;
+import servidor.ServidorNIO;
+
+/**
+ * Benchmarks del servidor
+ * Grupos (se pueden elegir pasando sus nombres como argumentos; sin argumentos se ejecutan todos):
+ * - comandos: Servidor.procesarComando por tipo de comando, sin red
+ * - serializacion: Tarea en texto (toString) y en binario (ProtocoloBinario), en los dos sentidos
+ * - dao: llamadas a TareaDAO a través del pool de conexiones y las mismas sobre el almacén en memoria, entre ellas
+ *   las tareas de una búsqueda leídas de una en una y todas juntas
+ * - red: ida y vuelta completa por socket con varios clientes concurrentes, en los dos motores de red
+ * - diario: escrituras en el almacén en memoria con diario en disco, con cada política de sincronización
+ * - recuperacion: tiempo de arranque del almacén en memoria con muchas tareas, solo con diario y con instantánea,
+ *   y memoria que ocupa cada tarea
+ *   (con el millón de tareas por defecto conviene dar al menos -Xmx2g)
+ * - asignacion: bytes creados por comando de texto (ThreadMXBean) con los buffers reutilizables de ComandoTexto y
+ *   RespuestaTexto y pasando por String como el pipeline, y los del análisis y la codificación solos, que deben ser 0
+ * - busqueda: SEARCH_TAREAS (ServicioGestor.buscarTareas) sobre el almacén en memoria con muchas tareas, y tiempo
+ *   de construcción del índice al arrancar
+ * Por defecto la base de datos es BaseDatosSimulada; con gestor.bd.url se puede medir contra una real.
+ * Al terminar se comparan los resultados con la línea base y, si se pide, se guardan como nueva línea base.
+ * Parámetros configurables (propiedades del sistema):
+ * - gestor.bench.calentamientoMs: duración del calentamiento de cada benchmark (2000)
+ * - gestor.bench.medicionMs: duración de la medición de cada benchmark (5000)
+ * - gestor.bench.hilos: hilos de los benchmarks sin red (1)
+ * - gestor.bench.clientes: clientes concurrentes de los benchmarks de red (16)
+ * - gestor.bench.filas: filas que devuelve cada consulta de la base de datos simulada (50)
+ * - gestor.bench.puerto: puerto de los benchmarks de red (5099)
+ * - gestor.bench.lineaBase: fichero de la línea base (bench/linea-base.properties)
+ * - gestor.bench.guardarLineaBase: guarda los resultados como nueva línea base (false)
+ * - gestor.bench.tolerancia: variación admitida respecto a la línea base, en tanto por uno (0.10)
+ * - gestor.bench.recuperacion.tareas: tareas del benchmark de recuperación (1000000)
+ * - gestor.bench.recuperacion.objetivoMs: tiempo máximo de arranque con instantánea en el benchmark de recuperación (3000)
+ * - gestor.bench.busqueda.tareas: tareas del benchmark de búsqueda (1000000)
+ * - gestor.bench.estricto: termina con código 1 si hay alguna regresión o no se cumple un objetivo (false)
+ */
+public class BenchmarksGestor {
+	private static final int FILAS = Configuracion.entero("bench.filas", 50);
+	private static final int PUERTO = Configuracion.entero("bench.puerto", 5099);
+
+	private final Arnes arnes = new Arnes(Configuracion.largo("bench.calentamientoMs", 2_000),
+			Configuracion.largo("bench.medicionMs", 5_000));
+	private final int hilos = Configuracion.entero("bench.hilos", 1);
+	private final int clientes = Configuracion.entero("bench.clientes", 16);
+	private final List<Resultado> resultados = new ArrayList<>();
+	private boolean objetivoIncumplido;
+
+	private final ProcesadorComandos procesador;
+
+	public static void main(String[] args) throws Exception {
+		if (System.getProperty("gestor.bd.url") == null) {
+			BaseDatosSimulada.registrar(FILAS);
+			System.setProperty("gestor.bd.url", BaseDatosSimulada.URL);
+		}
+		Set<String> grupos = args.length > 0 ? Set.of(args) : Set.of("comandos", "serializacion", "dao", "red", "diario",
+				"recuperacion", "busqueda", "asignacion");
+		BenchmarksGestor b = new BenchmarksGestor();
+		System.out.println(Resultado.cabecera());
+		if (grupos.contains("comandos")) {
+			b.comandos();
+		}
+		if (grupos.contains("serializacion")) {
+			b.serializacion();
+		}
+		if (grupos.contains("dao")) {
+			b.dao();
+		}
+		if (grupos.contains("red")) {
+			b.red();
+		}
+		if (grupos.contains("diario")) {
+			b.diario();
+		}
+		if (grupos.contains("recuperacion")) {
+			b.recuperacion();
+		}
+		if (grupos.contains("busqueda")) {
+			b.busqueda();
+		}
+		if (grupos.contains("asignacion")) {
+			b.asignacion();
+		}
+		ConexionBD.getPool().cerrar();
+		System.exit(b.compararConLineaBase() ? 0 : 1);
+	}
+
+	private BenchmarksGestor() {
+		ProyectoDAO proyectoDAO = new ProyectoDAO();
+		TareaDAO tareaDAO = new TareaDAO();
+		CacheConsultas cache = new CacheConsultas(proyectoDAO, tareaDAO,
+				Configuracion.entero("cache.maxEntradas", 1000), Configuracion.largo("cache.ttlMs", 5_000));
+		procesador = Servidor.crearProcesador(new ServicioGestor(proyectoDAO, tareaDAO, cache));
+	}
+
+	private void registrar(Resultado r) {
+		resultados.add(r);
+		System.out.println(r);
+	}
+
+	// Grupo comandos
+
+	private void comandos() throws Exception {
+		String lote = String.join("|", Collections.nCopies(100,
+				"Tarea;Descripción;pendiente;media;2025-01-01;2025-02-01;1"));
+		String[][] casos = {
+				{ "LIST_PROYECTOS", "LIST_PROYECTOS" },
+				{ "LIST_TAREAS", "LIST_TAREAS;1" },
+				{ "LIST_TAREAS_pagina", "LIST_TAREAS;1;0;20" },
+				{ "QUERY_TAREAS", "QUERY_TAREAS;estado=pendiente;urgencia=alta;orden=fecha_fin;limite=20" },
+				{ "INSERT_TAREA", "INSERT_TAREA;Tarea;Descripción;pendiente;media;2025-01-01;2025-02-01;1" },
+				{ "INSERT_TAREAS_BATCH_100", "INSERT_TAREAS_BATCH;" + lote },
+				{ "UPDATE_TAREA", "UPDATE_TAREA;1;estado;finalizado" },
+				{ "DELETE_TAREA", "DELETE_TAREA;1" },
+				{ "desconocido", "NO_EXISTE;1" },
+		};
+		for (String[] caso : casos) {
+			String comando = caso[1];
+			registrar(arnes.medir("comandos." + caso[0], hilos, () -> () -> {
+				if (procesador.procesarTexto(comando).startsWith("ERROR") && !comando.startsWith("NO_EXISTE")) {
+					throw new IllegalStateException("El comando ha fallado: " + comando);
+				}
+			}));
+		}
+	}
+
+	// Grupo serializacion
+
+	private void serializacion() throws Exception {
+		List<Tarea> tareas = new ArrayList<>();
+		for (int i = 1; i <= 100; i++) {
+			tareas.add(new Tarea(i, "Tarea " + i, "Descripción de la tarea " + i, "en progreso", "alta",
+					LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 1).plusDays(i), 1));
+		}
+		registrar(arnes.medir("serializacion.texto_100", hilos, () -> () -> {
+			if (tareas.toString().isEmpty()) {
+				throw new IllegalStateException();
+			}
+		}));
+		registrar(arnes.medir("serializacion.binario_escribir_100", hilos, () -> {
+			BufferBinario b = new BufferBinario(16 * 1024);
+			return () -> {
+				b.limpiar();
+				for (Tarea t : tareas) {
+					ProtocoloBinario.escribirTarea(b, t);
+				}
+			};
+		}));
+		BufferBinario codificado = new BufferBinario(16 * 1024);
+		for (Tarea t : tareas) {
+			ProtocoloBinario.escribirTarea(codificado, t);
+		}
+		byte[] trama = codificado.aTrama();
+		registrar(arnes.medir("serializacion.binario_leer_100", hilos, () -> {
+			BufferBinario b = new BufferBinario(16 * 1024);
+			return () -> {
+				b.leerTrama(new ByteArrayInputStream(trama), Integer.MAX_VALUE);
+				for (int i = 0; i < 100; i++) {
+					ProtocoloBinario.leerTarea(b);
+				}
+			};
+		}));
+	}
+
+	// Grupo dao
+
+	private void dao() throws Exception {
+		TareaDAO dao = new TareaDAO();
+		Tarea nueva = new Tarea("Tarea", "Descripción", "pendiente", "media",
+				LocalDate.of(2025, 1, 1), LocalDate.of(2025, 2, 1), 1);
+		registrar(arnes.medir("dao.obtenerTareasPorProyecto", hilos, () -> () -> dao.obtenerTareasPorProyecto(1)));
+		registrar(arnes.medir("dao.obtenerPaginaTareas_20", hilos, () -> () -> dao.obtenerPaginaTareas(1, 0, 20)));
+		// Las 20 tareas de una búsqueda de una en una y con una sola consulta WHERE id IN (...)
+		List<Integer> veinte = IntStream.rangeClosed(1, 20).boxed().toList();
+		registrar(arnes.medir("dao.obtenerTarea_x20", hilos, () -> () -> {
+			for (int id : veinte) {
+				dao.obtenerTarea(id);
+			}
+		}));
+		registrar(arnes.medir("dao.obtenerTareas_20", hilos, () -> () -> dao.obtenerTareas(veinte)));
+		registrar(arnes.medir("dao.crearTarea", hilos, () -> () -> dao.crearTarea(nueva)));
+		registrar(arnes.medir("dao.actualizarTarea", hilos, () -> () -> dao.actualizarTarea(1, "estado", "finalizado")));
+
+		// El mismo uso contra el almacén en memoria (sin diario), con FILAS tareas en el proyecto
+		AlmacenMemoria memoria = new AlmacenMemoria(null, PoliticaSincronizacion.NUNCA);
+		memoria.crearProyecto(new Proyecto("Proyecto"));
+		memoria.crearTareas(Collections.nCopies(FILAS, nueva));
+		registrar(arnes.medir("memoria.obtenerTareasPorProyecto", hilos, () -> () -> memoria.obtenerTareasPorProyecto(1)));
+		registrar(arnes.medir("memoria.obtenerPaginaTareas_20", hilos, () -> () -> memoria.obtenerPaginaTareas(1, 0, 20)));
+		registrar(arnes.medir("memoria.obtenerTareas_20", hilos, () -> () -> memoria.obtenerTareas(veinte)));
+		FiltroTareas filtro = new FiltroTareas(null, Set.of(Estado.PENDIENTE), Set.of(Urgencia.MEDIA), null, null,
+				null, null, FiltroTareas.Orden.FECHA_FIN, false, 20);
+		registrar(arnes.medir("memoria.consultarTareas_20", hilos, () -> () -> memoria.consultarTareas(filtro)));
+		registrar(arnes.medir("memoria.actualizarTarea", hilos, () -> () -> memoria.actualizarTarea(1, "estado", "finalizado")));
+	}
+
+	// Grupo diario
+
+	private void diario() throws Exception {
+		Tarea nueva = new Tarea("Tarea", "Descripción", "pendiente", "media",
+				LocalDate.of(2025, 1, 1), LocalDate.of(2025, 2, 1), 1);
+		for (PoliticaSincronizacion politica : PoliticaSincronizacion.values()) {
+			Path directorio = Files.createTempDirectory("bench-diario");
+			try (AlmacenMemoria memoria = new AlmacenMemoria(directorio, politica)) {
+				memoria.crearProyecto(new Proyecto("Proyecto"));
+				memoria.crearTareas(Collections.nCopies(FILAS, nueva));
+				String nombre = "diario.actualizarTarea_" + politica.name().toLowerCase(Locale.ROOT);
+				registrar(arnes.medir(nombre, clientes, () -> {
+					int[] siguiente = { 0 };
+					return () -> memoria.actualizarTarea(1 + siguiente[0]++ % FILAS, "estado",
+							siguiente[0] % 2 == 0 ? "pendiente" : "en progreso");
+				}));
+			} finally {
+				borrar(directorio);
+			}
+		}
+		// Los mismos cambios con escritura diferida sobre la política más cara: el cliente solo espera a la cola
+		Path directorio = Files.createTempDirectory("bench-diario");
+		try (AlmacenMemoria memoria = new AlmacenMemoria(directorio, PoliticaSincronizacion.SIEMPRE)) {
+			memoria.crearProyecto(new Proyecto("Proyecto"));
+			memoria.crearTareas(Collections.nCopies(FILAS, nueva));
+			EscrituraDiferida diferida = new EscrituraDiferida(memoria, 10_000, 500, 5, 1_000);
+			registrar(arnes.medir("diario.actualizarTarea_diferida", clientes, () -> {
+				int[] siguiente = { 0 };
+				return () -> diferida.actualizarTarea(1 + siguiente[0]++ % FILAS, "estado",
+						siguiente[0] % 2 == 0 ? "pendiente" : "en progreso");
+			}));
+			diferida.close();
+			System.out.println(String.format(Locale.ROOT, "%-36s %s", "diario.diferida", diferida));
+		} finally {
+			borrar(directorio);
+		}
+	}
+
+	// Grupo recuperacion
+
+	private void recuperacion() throws Exception {
+		int n = Configuracion.entero("bench.recuperacion.tareas", 1_000_000);
+		long objetivoMs = Configuracion.largo("bench.recuperacion.objetivoMs", 3_000);
+		Path directorio = Files.createTempDirectory("bench-recuperacion");
+		try {
+			String[] estados = { "pendiente", "en progreso", "finalizado" };
+			String[] urgencias = { "alta", "media", "baja" };
+			try (AlmacenMemoria memoria = new AlmacenMemoria(directorio, PoliticaSincronizacion.NUNCA)) {
+				for (int p = 0; p < 100; p++) {
+					memoria.crearProyecto(new Proyecto("Proyecto " + p));
+				}
+				List<Tarea> lote = new ArrayList<>(1000);
+				for (int i = 0; i < n; i++) {
+					LocalDate inicio = LocalDate.of(2025, 1, 1).plusDays(i % 365);
+					lote.add(new Tarea("Tarea " + i, "Descripción de la tarea " + i, estados[i % 3], urgencias[i / 3 % 3],
+							inicio, i % 4 == 0 ? null : inicio.plusDays(i % 30), 1 + i % 100));
+					if (lote.size() == 1000 || i == n - 1) {
+						memoria.crearTareas(lote);
+						lote.clear();
+					}
+				}
+			}
+			long soloDiario = medirArranque(directorio);
+			try (AlmacenMemoria memoria = new AlmacenMemoria(directorio, PoliticaSincronizacion.NUNCA)) {
+				memoria.hacerInstantanea();
+				for (int i = 0; i < n / 10; i++) {
+					memoria.actualizarTarea(1 + (int) ((i * 7919L) % n), "estado", estados[i % 3]);
+				}
+			}
+			long conInstantanea = medirArranque(directorio);
+			long bytesPorTarea = medirMemoria(directorio) / n;
+			boolean cumple = conInstantanea <= objetivoMs;
+			objetivoIncumplido |= !cumple;
+			System.out.println(String.format(Locale.ROOT, "%-36s %8d ms", "recuperacion.diario_" + n, soloDiario));
+			System.out.println(String.format(Locale.ROOT, "%-36s %8d ms   objetivo %d ms%s",
+					"recuperacion.instantanea+diario_" + n / 10, conInstantanea, objetivoMs,
+					cumple ? "" : "   OBJETIVO INCUMPLIDO"));
+			System.out.println(String.format(Locale.ROOT, "%-36s %8d bytes", "recuperacion.memoria_por_tarea", bytesPorTarea));
+		} finally {
+			borrar(directorio);
+		}
+	}
+
+	/**
+	 * Abre el almacén varias veces y devuelve el menor tiempo de arranque, en milisegundos
+	 */
+	private static long medirArranque(Path directorio) throws IOException {
+		long mejor = Long.MAX_VALUE;
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			long inicio = System.nanoTime();
+			AlmacenMemoria memoria = new AlmacenMemoria(directorio, PoliticaSincronizacion.NUNCA);
+			mejor = Math.min(mejor, (System.nanoTime() - inicio) / 1_000_000);
+			memoria.close();
+		}
+		return mejor;
+	}
+
+	/**
+	 * @return memoria del montón que ocupa el almacén cargado, en bytes (diferencia de memoria usada tras un GC)
+	 */
+	private static long medirMemoria(Path directorio) throws IOException {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		long antes = runtime.totalMemory() - runtime.freeMemory();
+		try (AlmacenMemoria memoria = new AlmacenMemoria(directorio, PoliticaSincronizacion.NUNCA)) {
+			System.gc();
+			long despues = runtime.totalMemory() - runtime.freeMemory();
+			return despues - antes;
+		}
+	}
+
+	private static void borrar(Path directorio) throws IOException {
+		try (var ficheros = Files.list(directorio)) {
+			for (Path f : (Iterable<Path>) ficheros::iterator) {
+				Files.delete(f);
+			}
+		}
+		Files.delete(directorio);
+	}
+
+	// Grupo busqueda
+
+	private void busqueda() throws Exception {
+		int n = Configuracion.entero("bench.busqueda.tareas", 1_000_000);
+		// Vocabulario sintético de 4096 palabras de tres sílabas, con frecuencias muy distintas entre ellas
+		String[] silabas = { "ca", "de", "li", "mo", "pu", "ra", "se", "to", "vi", "ne", "ga", "lo", "ri", "ta",
+				"bu", "fe" };
+		String[] palabras = new String[silabas.length * silabas.length * silabas.length];
+		for (int i = 0; i < palabras.length; i++) {
+			palabras[i] = silabas[i % 16] + silabas[i / 16 % 16] + silabas[i / 256];
+		}
+		try (AlmacenMemoria memoria = new AlmacenMemoria(null, PoliticaSincronizacion.NUNCA)) {
+			for (int p = 0; p < 100; p++) {
+				memoria.crearProyecto(new Proyecto("Proyecto " + p));
+			}
+			List<Tarea> lote = new ArrayList<>(1000);
+			long semilla = 42;
+			StringBuilder descripcion = new StringBuilder();
+			for (int i = 0; i < n; i++) {
+				descripcion.setLength(0);
+				String nombre = null;
+				for (int j = 0; j < 10; j++) {
+					semilla = semilla * 6364136223846793005L + 1442695040888963407L;
+					// El cuadrado sesga los índices hacia el principio del vocabulario (palabras comunes)
+					double r = (semilla >>> 11) / (double) (1L << 53);
+					String palabra = palabras[(int) (r * r * palabras.length)];
+					if (j < 3) {
+						nombre = nombre == null ? palabra : nombre + " " + palabra;
+					} else {
+						descripcion.append(palabra).append(' ');
+					}
+				}
+				lote.add(new Tarea(nombre, descripcion.toString(), "pendiente", "media",
+						LocalDate.of(2025, 1, 1), null, 1 + i % 100));
+				if (lote.size() == 1000 || i == n - 1) {
+					memoria.crearTareas(lote);
+					lote.clear();
+				}
+			}
+			ServicioGestor servicio = new ServicioGestor(memoria, memoria, new CacheConsultas(memoria, memoria, 1000, 5_000));
+			long inicio = System.nanoTime();
+			int indexadas = servicio.iniciarBusqueda();
+			long construccion = (System.nanoTime() - inicio) / 1_000_000;
+			System.out.println(String.format(Locale.ROOT, "%-36s %8d ms   (%d tareas)", "busqueda.construccion",
+					construccion, indexadas));
+			String comun = palabras[0];
+			String rara = palabras[palabras.length - 1];
+			String[][] casos = {
+					{ "una_palabra", comun, null },
+					{ "palabra_rara", rara, null },
+					{ "dos_palabras", comun + " " + palabras[1], null },
+					{ "prefijo", silabas[0] + silabas[1], null },
+					{ "proyecto", comun, "1" },
+			};
+			for (String[] caso : casos) {
+				Integer proyecto = caso[2] == null ? null : Integer.valueOf(caso[2]);
+				registrar(arnes.medir("busqueda." + caso[0], hilos, () -> () -> servicio.buscarTareas(caso[1], proyecto, 20)));
+			}
+		}
+	}
+
+	// Grupo asignacion
+
+	private void asignacion() throws Exception {
+		com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		int repeticiones = 20_000;
+		try (AlmacenMemoria memoria = new AlmacenMemoria(null, PoliticaSincronizacion.NUNCA)) {
+			memoria.crearProyecto(new Proyecto("Proyecto"));
+			memoria.crearTareas(Collections.nCopies(FILAS, new Tarea("Tarea", "Descripción", "pendiente", "media",
+					LocalDate.of(2025, 1, 1), LocalDate.of(2025, 2, 1), 1)));
+			ServicioGestor servicio = new ServicioGestor(memoria, memoria, new CacheConsultas(memoria, memoria, 1000, 5_000));
+			ProcesadorComandos procesadorMemoria = Servidor.crearProcesador(servicio);
+			SalidaCliente descarte = new SalidaCliente() {
+				@Override
+				public void enviar(String linea) {
+				}
+
+				@Override
+				public void enviar(RespuestaTexto respuesta) {
+				}
+
+				@Override
+				public void cerrar() {
+				}
+			};
+			String[][] casos = {
+					{ "LIST_PROYECTOS", "LIST_PROYECTOS" },
+					{ "LIST_TAREAS_pagina", "LIST_TAREAS;1;0;20" },
+					{ "UPDATE_TAREA", "UPDATE_TAREA;1;estado;en progreso" },
+					{ "STATS_PROYECTO", "STATS_PROYECTO;1" },
+					{ "desconocido", "NO_EXISTE;1" },
+			};
+			for (String[] caso : casos) {
+				String linea = caso[1];
+				ComandoTexto comando = new ComandoTexto(1024);
+				RespuestaTexto respuesta = new RespuestaTexto(1024);
+				InputStream entrada = new LineaRepetida(linea);
+				Arnes.Prueba buffer = () -> {
+					comando.leer(entrada);
+					respuesta.limpiar();
+					procesadorMemoria.procesarTexto(comando, respuesta, descarte);
+				};
+				Arnes.Prueba texto = () -> procesadorMemoria.procesarTexto(linea);
+				imprimirAsignacion("asignacion.buffer." + caso[0], medirAsignacion(hilos, buffer, repeticiones));
+				imprimirAsignacion("asignacion.texto." + caso[0], medirAsignacion(hilos, texto, repeticiones));
+			}
+
+			// Análisis de todos los campos de un INSERT_TAREA y codificación de una página de tareas, sin comando
+			List<Tarea> pagina = memoria.obtenerPaginaTareas(1, 0, 20);
+			ComandoTexto comando = new ComandoTexto(1024);
+			RespuestaTexto respuesta = new RespuestaTexto(1024);
+			InputStream entrada = new LineaRepetida("INSERT_TAREA;Tarea;Descripción;pendiente;media;2025-01-01;2025-02-01;1");
+			String[] estados = { "pendiente", "en progreso", "finalizado" };
+			long[] suma = { 0 };
+			Arnes.Prueba codec = () -> {
+				comando.leer(entrada);
+				suma[0] += comando.texto(3, estados).length() + comando.dia(5) + comando.dia(6) + comando.entero(7);
+				respuesta.limpiar();
+				respuesta.lista(pagina);
+				suma[0] += respuesta.getLongitud();
+			};
+			long bytesCodec = medirAsignacion(hilos, codec, repeticiones);
+			boolean cumple = bytesCodec == 0;
+			objetivoIncumplido |= !cumple;
+			System.out.println(String.format(Locale.ROOT, "%-36s %8d bytes   objetivo 0 bytes%s", "asignacion.codec",
+					bytesCodec, cumple ? "" : "   OBJETIVO INCUMPLIDO"));
+		}
+	}
+
+	/**
+	 * Ejecuta una prueba muchas veces, tras calentarla, y mide lo que crea en el montón el hilo actual
+	 * @return bytes creados por ejecución, redondeados hacia abajo
+	 */
+	private static long medirAsignacion(com.sun.management.ThreadMXBean hilos, Arnes.Prueba prueba, int repeticiones)
+			throws Exception {
+		for (int i = 0; i < repeticiones; i++) {
+			prueba.ejecutar();
+		}
+		long antes = hilos.getCurrentThreadAllocatedBytes();
+		for (int i = 0; i < repeticiones; i++) {
+			prueba.ejecutar();
+		}
+		return (hilos.getCurrentThreadAllocatedBytes() - antes) / repeticiones;
+	}
+
+	private static void imprimirAsignacion(String nombre, long bytes) {
+		System.out.println(String.format(Locale.ROOT, "%-36s %8d bytes", nombre, bytes));
+	}
+
+	/**
+	 * Flujo que devuelve la misma línea una y otra vez, sin crear nada al leerlo
+	 */
+	private static final class LineaRepetida extends InputStream {
+		private final byte[] linea;
+		private int posicion;
+
+		LineaRepetida(String texto) {
+			this.linea = (texto + "\n").getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public int read() {
+			int b = linea[posicion] & 0xFF;
+			posicion = (posicion + 1) % linea.length;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] destino, int desde, int longitud) {
+			int n = Math.min(longitud, linea.length - posicion);
+			System.arraycopy(linea, posicion, destino, desde, n);
+			posicion = (posicion + n) % linea.length;
+			return n;
+		}
+	}
+
+	// Grupo red
+
+	private void red() throws Exception {
+		int hilosTrabajo = Configuracion.entero("nio.hilosTrabajo", 16);
+		medirRed("bloqueante", new ServidorBloqueante(PUERTO, clientes + 8, 0, 256, procesador));
+		medirRed("nio", new ServidorNIO(PUERTO, clientes + 8, 0, 256, 2, hilosTrabajo, procesador));
+	}
+
+	private void medirRed(String nombre, MotorRed motor) throws Exception {
+		Thread hilo = new Thread(() -> {
+			try {
+				motor.ejecutar();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}, "bench-motor-" + nombre);
+		hilo.start();
+		esperarPuerto();
+		try {
+			String[][] casos = {
+					{ "LIST_TAREAS", "LIST_TAREAS;1" },
+					{ "UPDATE_TAREA", "UPDATE_TAREA;1;estado;finalizado" },
+			};
+			for (String[] caso : casos) {
+				registrar(arnes.medir("red." + nombre + "." + caso[0], clientes, () -> new ClienteTexto(caso[1])));
+			}
+		} finally {
+			motor.detener(1_000);
+			hilo.join(5_000);
+		}
+	}
+
+	private static void esperarPuerto() throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			try (Socket s = new Socket("localhost", PUERTO)) {
+				return;
+			} catch (IOException e) {
+				Thread.sleep(50);
+			}
+		}
+		throw new IllegalStateException("El servidor no ha arrancado en el puerto " + PUERTO);
+	}
+
+	/**
+	 * Cliente de texto que envía siempre el mismo comando y espera su respuesta
+	 */
+	private static final class ClienteTexto implements Arnes.Prueba {
+		private final Socket socket;
+		private final BufferedReader in;
+		private final BufferedWriter out;
+		private final String comando;
+
+		ClienteTexto(String comando) throws IOException {
+			this.comando = comando;
+			this.socket = new Socket("localhost", PUERTO);
+			this.socket.setTcpNoDelay(true);
+			this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+		}
+
+		@Override
+		public void ejecutar() throws IOException {
+			out.write(comando);
+			out.write('\n');
+			out.flush();
+			String respuesta = in.readLine();
+			if (respuesta == null || respuesta.startsWith("ERROR")) {
+				throw new IOException("Respuesta inesperada: " + respuesta);
+			}
+		}
+
+		@Override
+		public void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// El resultado ya está medido
+			}
+		}
+	}
+
+	// Línea base
+
+	/**
+	 * Compara los resultados con la línea base y la actualiza si se ha pedido
+	 * @return false si hay alguna regresión y se ha pedido el modo estricto
+	 */
+	private boolean compararConLineaBase() throws IOException {
+		Path fichero = Path.of(Configuracion.texto("bench.lineaBase", "bench/linea-base.properties"));
+		double tolerancia = Double.parseDouble(Configuracion.texto("bench.tolerancia", "0.10"));
+		LineaBase base = LineaBase.cargar(fichero);
+		boolean regresion = false;
+		if (base.estaVacia()) {
+			System.out.println("\nNo hay línea base en " + fichero);
+		} else {
+			System.out.println("\nComparación con " + fichero + " (tolerancia " + tolerancia * 100 + "%)");
+			if (!base.entorno().isEmpty()) {
+				System.out.println(base.entorno());
+			}
+			for (Resultado r : resultados) {
+				String comparacion = base.comparar(r, tolerancia);
+				if (comparacion != null) {
+					System.out.println(comparacion);
+					regresion |= comparacion.startsWith("REGRESIÓN");
+				}
+			}
+		}
+		if (Configuracion.booleano("bench.guardarLineaBase", false)) {
+			LineaBase.guardar(fichero, resultados);
+			System.out.println("Línea base guardada en " + fichero);
+		}
+		return !((regresion || objetivoIncumplido) && Configuracion.booleano("bench.estricto", false));
+	}
+}
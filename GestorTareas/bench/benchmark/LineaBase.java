@@ -0,0 +1,113 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Línea base de resultados guardada en un fichero .properties, con la que se comparan las ejecuciones nuevas
+ * Por cada benchmark se guardan el rendimiento (nombre.ops) y el percentil 99 (nombre.p99).
+ * Se considera regresión una caída del rendimiento o una subida del p99 mayores que la tolerancia.
+ * Junto a los valores se guarda el entorno en que se midieron (entorno.*: sistema, procesadores, JVM y opciones),
+ * porque solo tiene sentido comparar con una ejecución en la misma máquina y con las mismas opciones.
+ */
+class LineaBase {
+	private final Properties valores = new Properties();
+
+	/**
+	 * Carga la línea base de un fichero; si no existe queda vacía
+	 */
+	static LineaBase cargar(Path fichero) throws IOException {
+		LineaBase base = new LineaBase();
+		if (Files.exists(fichero)) {
+			try (Reader r = Files.newBufferedReader(fichero, StandardCharsets.UTF_8)) {
+				base.valores.load(r);
+			}
+		}
+		return base;
+	}
+
+	boolean estaVacia() {
+		return valores.isEmpty();
+	}
+
+	/**
+	 * @return entorno en que se midió la línea base, una línea por valor; vacío si no lo guardó
+	 */
+	String entorno() {
+		return valores.stringPropertyNames().stream()
+				.filter(k -> k.startsWith("entorno."))
+				.sorted()
+				.map(k -> k + "=" + valores.getProperty(k))
+				.collect(Collectors.joining("\n"));
+	}
+
+	/**
+	 * @return sistema, procesadores, memoria, JVM y opciones de la ejecución actual
+	 */
+	private static Map<String, String> entornoActual() {
+		TreeMap<String, String> entorno = new TreeMap<>();
+		entorno.put("entorno.sistema", System.getProperty("os.name") + " " + System.getProperty("os.version") + " "
+				+ System.getProperty("os.arch"));
+		entorno.put("entorno.procesadores", Integer.toString(Runtime.getRuntime().availableProcessors()));
+		entorno.put("entorno.memoriaMaxMb", Long.toString(Runtime.getRuntime().maxMemory() >> 20));
+		entorno.put("entorno.jvm", System.getProperty("java.vm.name") + " " + System.getProperty("java.runtime.version"));
+		// Las opciones de la JVM incluyen las gestor.* con que se ha lanzado (duraciones, hilos, filas...)
+		entorno.put("entorno.opciones", String.join(" ", ManagementFactory.getRuntimeMXBean().getInputArguments()));
+		return entorno;
+	}
+
+	/**
+	 * Guarda los resultados como nueva línea base, ordenados por nombre
+	 */
+	static void guardar(Path fichero, List<Resultado> resultados) throws IOException {
+		TreeMap<String, String> ordenados = new TreeMap<>();
+		for (Resultado r : resultados) {
+			ordenados.put(r.nombre() + ".ops", String.format(Locale.ROOT, "%.1f", r.opsPorSegundo()));
+			ordenados.put(r.nombre() + ".p99", String.format(Locale.ROOT, "%.2f", r.p99()));
+		}
+		if (fichero.getParent() != null) {
+			Files.createDirectories(fichero.getParent());
+		}
+		try (Writer w = Files.newBufferedWriter(fichero, StandardCharsets.UTF_8)) {
+			w.write("# Línea base de los benchmarks: rendimiento (ops/s) y percentil 99 (us)\n");
+			w.write("# Generada con -Dgestor.bench.guardarLineaBase=true; solo es comparable en el mismo entorno\n");
+			for (var e : entornoActual().entrySet()) {
+				w.write(e.getKey() + "=" + e.getValue().replace("\\", "\\\\") + "\n");
+			}
+			for (var e : ordenados.entrySet()) {
+				w.write(e.getKey() + "=" + e.getValue() + "\n");
+			}
+		}
+	}
+
+	/**
+	 * Compara un resultado con la línea base
+	 * @param r resultado nuevo
+	 * @param tolerancia variación admitida, en tanto por uno (0.10 = 10%)
+	 * @return texto de la comparación, que empieza por "REGRESIÓN" si se supera la tolerancia,
+	 * o null si el benchmark no está en la línea base
+	 */
+	String comparar(Resultado r, double tolerancia) {
+		String ops = valores.getProperty(r.nombre() + ".ops");
+		String p99 = valores.getProperty(r.nombre() + ".p99");
+		if (ops == null || p99 == null) {
+			return null;
+		}
+		double variacionOps = r.opsPorSegundo() / Double.parseDouble(ops) - 1;
+		double variacionP99 = r.p99() / Double.parseDouble(p99) - 1;
+		boolean regresion = variacionOps < -tolerancia || variacionP99 > tolerancia;
+		return String.format(Locale.ROOT, "%s%-36s ops/s %+6.1f%%   p99 %+6.1f%%",
+				regresion ? "REGRESIÓN " : "", r.nombre(), variacionOps * 100, variacionP99 * 100);
+	}
+}
@@ -0,0 +1,29 @@
+package benchmark;
+
+import java.util.Locale;
+
+import metricas.Histograma;
+
+/**
+ * Resultado de un benchmark: rendimiento y percentiles de latencia (en microsegundos)
+ */
+record Resultado(String nombre, int hilos, double opsPorSegundo, double p50, double p90, double p99, double p999,
+		double maximo) {
+
+	static Resultado de(String nombre, int hilos, Histograma h, long duracionNanos) {
+		long[] p = h.percentiles(50, 90, 99, 99.9);
+		return new Resultado(nombre, hilos, h.getTotal() * 1e9 / duracionNanos,
+				p[0] / 1e3, p[1] / 1e3, p[2] / 1e3, p[3] / 1e3, h.getMaximo() / 1e3);
+	}
+
+	static String cabecera() {
+		return String.format(Locale.ROOT, "%-36s %5s %14s %10s %10s %10s %10s %10s",
+				"benchmark", "hilos", "ops/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%-36s %5d %14.1f %10.2f %10.2f %10.2f %10.2f %10.2f",
+				nombre, hilos, opsPorSegundo, p50, p90, p99, p999, maximo);
+	}
+}
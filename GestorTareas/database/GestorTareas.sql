@@ -1,6 +1,8 @@
 CREATE TABLE proyecto (
 	id INT AUTO_INCREMENT PRIMARY KEY,
-	nombre VARCHAR(100) NOT NULL
+	nombre VARCHAR(100) NOT NULL,
+	-- Aumenta en cada modificación; CAS_PROYECTO y DELETE_PROYECTO con versión solo se aplican si coincide
+	version INT NOT NULL DEFAULT 0
 );
 
 CREATE TABLE tarea(
@@ -12,5 +14,31 @@ CREATE TABLE tarea(
 	urgencia ENUM('alta', 'media', 'baja') NOT NULL,
 	estado ENUM('pendiente', 'en progreso', 'finalizado') NOT NULL,
 	proyecto_id INT NOT NULL,
-	FOREIGN KEY (proyecto_id) REFERENCES proyecto(id)
-);
\ No newline at end of file
+	-- Aumenta en cada modificación; CAS_TAREA solo se aplica si coincide con la que leyó el cliente
+	version INT NOT NULL DEFAULT 0,
+	FOREIGN KEY (proyecto_id) REFERENCES proyecto(id),
+	-- Listados y paginación por proyecto (proyecto_id, id)
+	INDEX idx_tarea_proyecto (proyecto_id),
+	-- QUERY_TAREAS dentro de un proyecto: estado y después intervalo u orden por fecha de fin
+	INDEX idx_tarea_proyecto_estado_fin (proyecto_id, estado, fecha_fin),
+	-- QUERY_TAREAS en todos los proyectos: estado y urgencia, y después intervalo u orden por fecha de fin
+	INDEX idx_tarea_estado_urgencia_fin (estado, urgencia, fecha_fin),
+	-- QUERY_TAREAS solo por fechas
+	INDEX idx_tarea_fin (fecha_fin),
+	INDEX idx_tarea_inicio (fecha_inicio)
+);
+
+-- Tareas finalizadas archivadas con ARCHIVE_TAREAS: mismas columnas que tarea y la fecha en que se archivaron
+-- Sin clave ajena: al eliminar el proyecto se borran en la misma transacción que sus tareas
+CREATE TABLE tarea_archivada(
+	id INT PRIMARY KEY,
+	nombre VARCHAR(100) NOT NULL,
+	descripcion VARCHAR(250),
+	fecha_inicio DATE NOT NULL,
+	fecha_fin DATE,
+	urgencia ENUM('alta', 'media', 'baja') NOT NULL,
+	estado ENUM('pendiente', 'en progreso', 'finalizado') NOT NULL,
+	proyecto_id INT NOT NULL,
+	fecha_archivo DATE NOT NULL,
+	INDEX idx_tarea_archivada_proyecto (proyecto_id)
+);
@@ -0,0 +1,1301 @@
+package almacen;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import config.Configuracion;
+import dao.CambioTarea;
+import dao.ConsumidorEstados;
+import dao.ConsumidorTareas;
+import dao.ConsumidorVencimientos;
+import dao.FiltroTareas;
+import dao.RepositorioProyectos;
+import dao.RepositorioTareas;
+import modelos.BloqueTareas;
+import modelos.Estado;
+import modelos.Proyecto;
+import modelos.Tarea;
+import modelos.Urgencia;
+import protocolo.BufferBinario;
+import protocolo.ProtocoloBinario;
+
+/**
+ * Motor de almacenamiento en memoria para proyectos y tareas, alternativo a MySQL
+ * Las tareas se guardan por columnas en un BloqueTareas indexado por id, sin un objeto por tarea; las
+ * consultas filtran y ordenan sobre las columnas y solo crean objetos Tarea para las que devuelven.
+ * Índices:
+ * - proyectos por clave primaria
+ * - ids de las tareas de cada proyecto en orden (listados y paginación sin recorrer el resto de tareas)
+ * - ids de tarea por estado, por urgencia y por fecha de fin
+ * Persistencia (opcional; sin directorio los datos se pierden al detener el servidor):
+ * - cada cambio se anota en un diario de escritura anticipada (Diario) antes de aplicarse
+ * - cada cierto tiempo, o cuando el diario crece demasiado, se guarda una instantánea de todo el estado
+ *   (Instantanea) y se empieza un diario nuevo; los diarios e instantáneas anteriores se borran
+ * - al arrancar se carga la última instantánea y se reproducen solo los diarios posteriores
+ * Ficheros del directorio, numerados por generación: diario-N.wal contiene los cambios posteriores a
+ * instantanea-N.bin. Con la política SIEMPRE una escritura no responde hasta que su registro está en disco,
+ * pero las lecturas de otros hilos pueden verla un instante antes.
+ * Respeta las mismas reglas que el esquema de la base de datos: longitudes máximas, valores de estado y urgencia,
+ * una tarea solo puede pertenecer a un proyecto existente y al eliminar un proyecto se eliminan sus tareas.
+ * Las operaciones en bloque (eliminar un proyecto, archivar sus tareas finalizadas, mover tareas de proyecto) se
+ * anotan en el diario como un solo registro con el id de proyecto, que al reproducirse vuelve a hacer lo mismo;
+ * las tareas archivadas se guardan aparte, en otro BloqueTareas, y no aparecen en listados ni consultas.
+ * Es seguro para usarse desde varios hilos a la vez: las lecturas se ejecutan en paralelo y las escrituras de una en una.
+ * Los proyectos devueltos se comparten entre hilos, por lo que no deben modificarse; las tareas se crean en cada
+ * consulta y son de quien las recibe.
+ */
+public class AlmacenMemoria implements RepositorioProyectos, RepositorioTareas, Closeable {
+	private static final int MAX_NOMBRE = 100;
+	private static final int MAX_DESCRIPCION = 250;
+	private static final long INTERVALO_SINCRONIZACION_MS = Configuracion.largo("memoria.fsync.intervaloMs", 100);
+	private static final long BYTES_INSTANTANEA = Configuracion.largo("memoria.instantanea.bytes", 256L * 1024 * 1024);
+	private static final long INTERVALO_INSTANTANEA_S = Configuracion.largo("memoria.instantanea.intervaloS", 3_600);
+	private static final Pattern FICHERO = Pattern.compile("(diario|instantanea)-(\\d{10})\\.(wal|bin)");
+
+	private final ReentrantReadWriteLock cerrojo = new ReentrantReadWriteLock();
+	private final TreeMap<Integer, Proyecto> proyectos = new TreeMap<>();
+	private BloqueTareas tareas = new BloqueTareas();
+	private final Map<Integer, ListaIds> tareasPorProyecto = new HashMap<>();
+	/** Tareas archivadas con archivarFinalizadas, y sus ids por proyecto para borrarlas con él */
+	private BloqueTareas archivadas = new BloqueTareas(16);
+	private final Map<Integer, ListaIds> archivadasPorProyecto = new HashMap<>();
+	/** Ids de tarea por código de estado y de urgencia: un bit por id, para no crear un nodo por tarea en cada índice */
+	private final BitSet[] porEstado = new BitSet[Estado.values().length];
+	private final BitSet[] porUrgencia = new BitSet[Urgencia.values().length];
+	/** Ids de tarea por fecha de fin, en días desde 1970-01-01 */
+	private final TreeMap<Integer, ListaIds> porFechaFin = new TreeMap<>();
+	private int ultimoIdProyecto;
+	private int ultimoIdTarea;
+
+	private final Path directorio;
+	private final PoliticaSincronizacion politica;
+	/** Diario actual; solo se sustituye con el cerrojo de escritura */
+	private volatile Diario diario;
+	private int generacion;
+	private final Object cerrojoInstantanea = new Object();
+	private volatile long ultimaInstantanea = System.nanoTime();
+	private final ScheduledExecutorService fondo;
+
+	/**
+	 * Crea el almacén y, si se indica un directorio, recupera su contenido
+	 * @param directorio directorio de diarios e instantáneas (se crea si no existe), o null para no guardar nada en disco
+	 * @param politica cuándo se espera a que los cambios lleguen al disco
+	 * @throws IOException si no se puede leer la instantánea o reproducir los diarios
+	 */
+	public AlmacenMemoria(Path directorio, PoliticaSincronizacion politica) throws IOException {
+		for (int i = 0; i < porEstado.length; i++) {
+			porEstado[i] = new BitSet();
+		}
+		for (int i = 0; i < porUrgencia.length; i++) {
+			porUrgencia[i] = new BitSet();
+		}
+		this.directorio = directorio;
+		this.politica = politica;
+		if (directorio == null) {
+			this.fondo = null;
+			return;
+		}
+		Files.createDirectories(directorio);
+		recuperar();
+		this.fondo = Executors.newScheduledThreadPool(2, r -> {
+			Thread hilo = new Thread(r, "almacen-memoria");
+			hilo.setDaemon(true);
+			return hilo;
+		});
+		if (politica == PoliticaSincronizacion.PERIODICA) {
+			fondo.scheduleWithFixedDelay(this::sincronizarDiario, INTERVALO_SINCRONIZACION_MS,
+					INTERVALO_SINCRONIZACION_MS, TimeUnit.MILLISECONDS);
+		}
+		fondo.scheduleWithFixedDelay(this::comprobarInstantanea, 1, 1, TimeUnit.SECONDS);
+	}
+
+	// Proyectos
+
+	@Override
+	public int crearProyecto(Proyecto p) throws SQLException {
+		comprobarTexto("nombre", p.getNombre(), MAX_NOMBRE, false);
+		Diario d;
+		long posicion = 0;
+		Proyecto nuevo;
+		cerrojo.writeLock().lock();
+		try {
+			d = diario;
+			nuevo = new Proyecto(ultimoIdProyecto + 1, p.getNombre());
+			if (d != null) {
+				ProtocoloBinario.escribirProyecto(registro(d, ProtocoloBinario.INSERT_PROYECTO), nuevo);
+				posicion = anotar(d);
+			}
+			ponerProyecto(nuevo);
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+		esperar(d, posicion);
+		return nuevo.getId();
+	}
+
+	@Override
+	public List<Proyecto> obtenerProyectos() {
+		cerrojo.readLock().lock();
+		try {
+			return new ArrayList<>(proyectos.values());
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void actualizarProyecto(int id, String nuevoNombre) throws SQLException {
+		renombrarProyecto(id, nuevoNombre, -1);
+	}
+
+	/**
+	 * La versión se comprueba con el cerrojo de escritura tomado, en la misma sección que el cambio
+	 */
+	@Override
+	public int actualizarProyectoSiVersion(int id, String nuevoNombre, int version) throws SQLException {
+		return renombrarProyecto(id, nuevoNombre, version);
+	}
+
+	/**
+	 * @param version versión que debe tener el proyecto, o -1 para cambiarlo sin comprobarla
+	 * @return nueva versión del proyecto, o -1 si no existe o su versión es otra
+	 */
+	private int renombrarProyecto(int id, String nuevoNombre, int version) throws SQLException {
+		comprobarTexto("nombre", nuevoNombre, MAX_NOMBRE, false);
+		Diario d;
+		long posicion = 0;
+		Proyecto cambiado;
+		cerrojo.writeLock().lock();
+		try {
+			d = diario;
+			Proyecto actual = proyectos.get(id);
+			if (actual == null || (version >= 0 && actual.getVersion() != version)) {
+				return -1;
+			}
+			cambiado = new Proyecto(id, nuevoNombre);
+			if (d != null) {
+				ProtocoloBinario.escribirProyecto(registro(d, ProtocoloBinario.UPDATE_PROYECTO), cambiado);
+				posicion = anotar(d);
+			}
+			cambiado = ponerProyecto(cambiado);
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+		esperar(d, posicion);
+		return cambiado.getVersion();
+	}
+
+	/**
+	 * Elimina el proyecto y sus tareas con una sola toma del cerrojo y un solo registro en el diario
+	 */
+	@Override
+	public int eliminarProyecto(int id) throws SQLException {
+		return eliminarProyecto(id, -1);
+	}
+
+	@Override
+	public int eliminarProyectoSiVersion(int id, int version) throws SQLException {
+		return eliminarProyecto(id, version);
+	}
+
+	/**
+	 * @param version versión que debe tener el proyecto, o -1 para eliminarlo sin comprobarla
+	 * @return número de tareas eliminadas, o -1 si se pedía una versión y el proyecto no existe o tiene otra
+	 */
+	private int eliminarProyecto(int id, int version) throws SQLException {
+		Diario d;
+		long posicion = 0;
+		int eliminadas;
+		cerrojo.writeLock().lock();
+		try {
+			d = diario;
+			Proyecto actual = proyectos.get(id);
+			if (actual == null || (version >= 0 && actual.getVersion() != version)) {
+				return version >= 0 ? -1 : 0;
+			}
+			if (d != null) {
+				registro(d, ProtocoloBinario.DELETE_PROYECTO).escribirVarint(id);
+				posicion = anotar(d);
+			}
+			eliminadas = quitarProyecto(id);
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+		esperar(d, posicion);
+		return eliminadas;
+	}
+
+	// Tareas
+
+	@Override
+	public int crearTarea(Tarea t) throws SQLException {
+		return crearTareas(List.of(t))[0];
+	}
+
+	@Override
+	public int[] crearTareas(List<Tarea> lista) throws SQLException {
+		for (Tarea t : lista) {
+			comprobarTarea(t);
+		}
+		Diario d;
+		long posicion = 0;
+		int[] ids = new int[lista.size()];
+		cerrojo.writeLock().lock();
+		try {
+			d = diario;
+			List<Tarea> nuevas = new ArrayList<>(lista.size());
+			int id = ultimoIdTarea;
+			for (Tarea t : lista) {
+				if (!proyectos.containsKey(t.getIdProyecto())) {
+					throw new SQLException("El proyecto " + t.getIdProyecto() + " no existe");
+				}
+				nuevas.add(conId(++id, t));
+			}
+			if (d != null) {
+				for (Tarea t : nuevas) {
+					ProtocoloBinario.escribirTarea(registro(d, ProtocoloBinario.INSERT_TAREA), t);
+					posicion = anotar(d);
+				}
+			}
+			for (int i = 0; i < ids.length; i++) {
+				ponerTarea(nuevas.get(i));
+				ids[i] = nuevas.get(i).getId();
+			}
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+		esperar(d, posicion);
+		return ids;
+	}
+
+	@Override
+	public Tarea obtenerTarea(int id) {
+		cerrojo.readLock().lock();
+		try {
+			return tareas.tarea(id);
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Tarea> obtenerTareas(List<Integer> ids) {
+		List<Tarea> lista = new ArrayList<>(ids.size());
+		cerrojo.readLock().lock();
+		try {
+			for (int id : ids) {
+				Tarea t = tareas.tarea(id);
+				if (t != null) {
+					lista.add(t);
+				}
+			}
+			return lista;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Tarea> obtenerTareasPorProyecto(int idProyecto) {
+		cerrojo.readLock().lock();
+		try {
+			ListaIds suyas = tareasPorProyecto.get(idProyecto);
+			if (suyas == null) {
+				return new ArrayList<>();
+			}
+			List<Tarea> lista = new ArrayList<>(suyas.getTamanio());
+			for (int i = 0; i < suyas.getTamanio(); i++) {
+				lista.add(tareas.tarea(suyas.get(i)));
+			}
+			return lista;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Tarea> obtenerPaginaTareas(int idProyecto, int despuesDeId, int limite) {
+		cerrojo.readLock().lock();
+		try {
+			List<Tarea> pagina = new ArrayList<>(Math.min(limite, 1024));
+			ListaIds suyas = tareasPorProyecto.get(idProyecto);
+			if (suyas != null) {
+				for (int i = suyas.posicionDespuesDe(despuesDeId); i < suyas.getTamanio() && pagina.size() < limite; i++) {
+					pagina.add(tareas.tarea(suyas.get(i)));
+				}
+			}
+			return pagina;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Recorre las tareas por bloques de tamanioBloque, copiando cada bloque con el cerrojo de lectura
+	 * y entregándolo después sin él, para que un cliente lento no bloquee las escrituras
+	 */
+	@Override
+	public int recorrerTareasPorProyecto(int idProyecto, int tamanioBloque, ConsumidorTareas consumidor)
+			throws IOException {
+		int tamanio = Math.max(1, tamanioBloque);
+		int n = 0;
+		int despuesDeId = 0;
+		while (true) {
+			List<Tarea> bloque = obtenerPaginaTareas(idProyecto, despuesDeId, tamanio);
+			for (Tarea t : bloque) {
+				consumidor.aceptar(t);
+			}
+			n += bloque.size();
+			if (bloque.size() < tamanio) {
+				return n;
+			}
+			despuesDeId = bloque.get(bloque.size() - 1).getId();
+		}
+	}
+
+	/**
+	 * Resuelve la consulta con el índice más selectivo disponible: fecha de fin si se filtra por ella, los de
+	 * estado y urgencia (intersección de bits) si se filtra por alguno, las tareas del proyecto si se indica, o
+	 * todas. El resto de filtros se comprueban sobre las columnas del bloque y solo se conservan los ids de las
+	 * limite primeras según el orden pedido; si el orden es por id ascendente y el índice ya lo da, se deja de
+	 * buscar al llegar al límite. Solo se crean objetos Tarea para el resultado.
+	 */
+	@Override
+	public List<Tarea> consultarTareas(FiltroTareas filtro) {
+		Mejores mejores = new Mejores(filtro.limite());
+		cerrojo.readLock().lock();
+		try {
+			if (filtro.filtraFechaFin()) {
+				NavigableMap<Integer, ListaIds> fechas = porFechaFin;
+				if (filtro.finDesde() != null) {
+					fechas = fechas.tailMap(Math.toIntExact(filtro.finDesde().toEpochDay()), true);
+				}
+				if (filtro.finHasta() != null) {
+					fechas = fechas.headMap(Math.toIntExact(filtro.finHasta().toEpochDay()), true);
+				}
+				for (ListaIds ids : fechas.values()) {
+					for (int i = 0; i < ids.getTamanio(); i++) {
+						seleccionar(ids.get(i), filtro, mejores);
+					}
+				}
+			} else if (filtro.filtraEstado() || filtro.filtraUrgencia()) {
+				BitSet ids = unir(porEstado, filtro.estados(), filtro.filtraEstado());
+				BitSet otros = unir(porUrgencia, filtro.urgencias(), filtro.filtraUrgencia());
+				if (ids == null) {
+					ids = otros;
+				} else if (otros != null) {
+					ids.and(otros);
+				}
+				for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+					if (seleccionar(id, filtro, mejores) && basta(filtro, mejores)) {
+						break;
+					}
+				}
+			} else if (filtro.idProyecto() != null) {
+				ListaIds suyas = tareasPorProyecto.get(filtro.idProyecto());
+				for (int i = 0; suyas != null && i < suyas.getTamanio(); i++) {
+					if (seleccionar(suyas.get(i), filtro, mejores) && basta(filtro, mejores)) {
+						break;
+					}
+				}
+			} else {
+				for (int id = tareas.siguiente(1); id >= 0; id = tareas.siguiente(id + 1)) {
+					if (seleccionar(id, filtro, mejores) && basta(filtro, mejores)) {
+						break;
+					}
+				}
+			}
+			long[] claves = mejores.ordenadas();
+			List<Tarea> lista = new ArrayList<>(claves.length);
+			for (long clave : claves) {
+				lista.add(tareas.tarea(filtro.descendente() ? (int) ~clave : (int) clave));
+			}
+			return lista;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Recorre la lista de ids de cada proyecto leyendo solo las columnas de estado y urgencia, sin crear objetos
+	 */
+	@Override
+	public int recorrerEstados(int tamanioBloque, ConsumidorEstados consumidor) {
+		int n = 0;
+		cerrojo.readLock().lock();
+		try {
+			for (Map.Entry<Integer, ListaIds> e : tareasPorProyecto.entrySet()) {
+				ListaIds suyas = e.getValue();
+				for (int i = 0; i < suyas.getTamanio(); i++) {
+					int id = suyas.get(i);
+					consumidor.aceptar(id, e.getKey(), tareas.getCodigoEstado(id), tareas.getCodigoUrgencia(id));
+				}
+				n += suyas.getTamanio();
+			}
+			return n;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Recorre el índice de fecha de fin en orden, saltando las tareas finalizadas, sin crear objetos
+	 */
+	@Override
+	public int recorrerVencimientos(int limite, int tamanioBloque, ConsumidorVencimientos consumidor) {
+		int n = 0;
+		cerrojo.readLock().lock();
+		try {
+			for (Map.Entry<Integer, ListaIds> e : porFechaFin.entrySet()) {
+				ListaIds ids = e.getValue();
+				for (int i = 0; i < ids.getTamanio(); i++) {
+					int id = ids.get(i);
+					if (tareas.getCodigoEstado(id) == Estado.FINALIZADO.getCodigo()) {
+						continue;
+					}
+					if (n == limite) {
+						return n;
+					}
+					consumidor.aceptar(id, tareas.getIdProyecto(id), e.getKey());
+					n++;
+				}
+			}
+			return n;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Añade la tarea a las mejores si cumple el filtro, descartando la peor si se supera el límite
+	 * @return true si la tarea cumple el filtro
+	 */
+	private boolean seleccionar(int id, FiltroTareas filtro, Mejores mejores) {
+		BloqueTareas b = tareas;
+		if (!filtro.cumple(b.getIdProyecto(id), b.getCodigoEstado(id), b.getCodigoUrgencia(id), b.getDiaInicio(id),
+				b.getDiaEntrega(id))) {
+			return false;
+		}
+		mejores.ofrecer(clave(id, filtro));
+		return true;
+	}
+
+	/**
+	 * Clave de orden de una tarea: el valor de la columna de orden en los 32 bits altos y el id en los bajos,
+	 * de modo que comparar claves equivale al ORDER BY columna, id de TareaDAO. En orden descendente se
+	 * invierten los bits, así que las mejores son siempre las de clave menor.
+	 */
+	private long clave(int id, FiltroTareas filtro) {
+		int columna;
+		switch (filtro.orden()) {
+		case FECHA_INICIO:
+			columna = tareas.getDiaInicio(id);
+			break;
+		case FECHA_FIN:
+			// SIN_FECHA es el menor int: las tareas sin fecha de fin van primero, como NULL en MySQL
+			columna = tareas.getDiaEntrega(id);
+			break;
+		case URGENCIA:
+			columna = tareas.getCodigoUrgencia(id);
+			break;
+		case ESTADO:
+			columna = tareas.getCodigoEstado(id);
+			break;
+		default:
+			columna = 0;
+		}
+		long clave = (long) columna << 32 | id;
+		return filtro.descendente() ? ~clave : clave;
+	}
+
+	/**
+	 * @return true si, recorriendo las tareas por id ascendente, ya no puede entrar ninguna mejor
+	 */
+	private static boolean basta(FiltroTareas filtro, Mejores mejores) {
+		return filtro.orden() == FiltroTareas.Orden.ID && !filtro.descendente() && mejores.llena();
+	}
+
+	/**
+	 * @return unión de los ids de los valores admitidos, o null si no se filtra por ese índice
+	 */
+	private static <E extends Enum<E>> BitSet unir(BitSet[] indice, Set<E> admitidos, boolean filtra) {
+		if (!filtra) {
+			return null;
+		}
+		BitSet ids = new BitSet();
+		for (E valor : admitidos) {
+			ids.or(indice[valor.ordinal()]);
+		}
+		return ids;
+	}
+
+	/**
+	 * Las limite claves menores vistas hasta ahora, en un montículo de máximos sobre un array de long
+	 */
+	private static final class Mejores {
+		private final int limite;
+		private long[] claves;
+		private int n;
+
+		Mejores(int limite) {
+			this.limite = limite;
+			this.claves = new long[Math.min(limite, 1024)];
+		}
+
+		void ofrecer(long clave) {
+			if (n < limite) {
+				if (n == claves.length) {
+					claves = Arrays.copyOf(claves, (int) Math.min(limite, 2L * n));
+				}
+				int i = n++;
+				while (i > 0 && claves[(i - 1) / 2] < clave) {
+					claves[i] = claves[(i - 1) / 2];
+					i = (i - 1) / 2;
+				}
+				claves[i] = clave;
+			} else if (clave < claves[0]) {
+				int i = 0;
+				while (true) {
+					int hijo = 2 * i + 1;
+					if (hijo >= n) {
+						break;
+					}
+					if (hijo + 1 < n && claves[hijo + 1] > claves[hijo]) {
+						hijo++;
+					}
+					if (claves[hijo] <= clave) {
+						break;
+					}
+					claves[i] = claves[hijo];
+					i = hijo;
+				}
+				claves[i] = clave;
+			}
+		}
+
+		boolean llena() {
+			return n == limite;
+		}
+
+		long[] ordenadas() {
+			long[] resultado = Arrays.copyOf(claves, n);
+			Arrays.sort(resultado);
+			return resultado;
+		}
+	}
+
+	@Override
+	public void actualizarTarea(int id, String campo, String valor) throws SQLException {
+		cambiarTarea(id, campo, valor, -1);
+	}
+
+	/**
+	 * La versión se comprueba con el cerrojo de escritura tomado, en la misma sección que el cambio
+	 */
+	@Override
+	public int actualizarTareaSiVersion(int id, String campo, String valor, int version) throws SQLException {
+		return cambiarTarea(id, campo, valor, version);
+	}
+
+	/**
+	 * @param version versión que debe tener la tarea, o -1 para cambiarla sin comprobarla
+	 * @return nueva versión de la tarea, o -1 si no existe o su versión es otra
+	 */
+	private int cambiarTarea(int id, String campo, String valor, int version) throws SQLException {
+		Diario d;
+		long posicion = 0;
+		Tarea cambiada;
+		cerrojo.writeLock().lock();
+		try {
+			d = diario;
+			cambiada = tareas.tarea(id);
+			if (cambiada == null || (version >= 0 && cambiada.getVersion() != version)) {
+				comprobarCampo(campo, valor);
+				return -1;
+			}
+			cambiarCampo(cambiada, campo, valor);
+			if (d != null) {
+				ProtocoloBinario.escribirTarea(registro(d, ProtocoloBinario.UPDATE_TAREA), cambiada);
+				posicion = anotar(d);
+			}
+			ponerTarea(cambiada);
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+		esperar(d, posicion);
+		return cambiada.getVersion();
+	}
+
+	/**
+	 * Aplica todos los cambios con una sola toma del cerrojo y una sola espera al diario
+	 * Se validan antes de tocar nada, de modo que o se aplican todos o ninguno.
+	 */
+	@Override
+	public void actualizarTareas(List<CambioTarea> cambios) throws SQLException {
+		for (CambioTarea c : cambios) {
+			comprobarCampo(c.campo(), c.valor());
+		}
+		Diario d;
+		long posicion = 0;
+		cerrojo.writeLock().lock();
+		try {
+			d = diario;
+			for (CambioTarea c : cambios) {
+				Tarea cambiada = tareas.tarea(c.idTarea());
+				if (cambiada == null) {
+					continue;
+				}
+				cambiarCampo(cambiada, c.campo(), c.valor());
+				if (d != null) {
+					ProtocoloBinario.escribirTarea(registro(d, ProtocoloBinario.UPDATE_TAREA), cambiada);
+					posicion = anotar(d);
+				}
+				ponerTarea(cambiada);
+			}
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+		esperar(d, posicion);
+	}
+
+	@Override
+	public void eliminarTarea(int id) throws SQLException {
+		Diario d;
+		long posicion = 0;
+		cerrojo.writeLock().lock();
+		try {
+			d = diario;
+			if (!tareas.contiene(id)) {
+				return;
+			}
+			if (d != null) {
+				registro(d, ProtocoloBinario.DELETE_TAREA).escribirVarint(id);
+				posicion = anotar(d);
+			}
+			quitarTarea(id);
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+		esperar(d, posicion);
+	}
+
+	/**
+	 * Archiva las tareas finalizadas del proyecto con una sola toma del cerrojo y un solo registro en el diario
+	 */
+	@Override
+	public int archivarFinalizadas(int idProyecto) throws SQLException {
+		Diario d;
+		long posicion = 0;
+		int[] ids;
+		cerrojo.writeLock().lock();
+		try {
+			d = diario;
+			ids = finalizadas(idProyecto);
+			if (ids.length == 0) {
+				return 0;
+			}
+			if (d != null) {
+				registro(d, ProtocoloBinario.ARCHIVE_TAREAS).escribirVarint(idProyecto);
+				posicion = anotar(d);
+			}
+			archivar(idProyecto, ids);
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+		esperar(d, posicion);
+		return ids.length;
+	}
+
+	/**
+	 * Mueve las tareas del proyecto con una sola toma del cerrojo y un solo registro en el diario
+	 */
+	@Override
+	public int moverTareas(int idOrigen, int idDestino) throws SQLException {
+		Diario d;
+		long posicion = 0;
+		int movidas;
+		cerrojo.writeLock().lock();
+		try {
+			d = diario;
+			if (!proyectos.containsKey(idDestino)) {
+				throw new SQLException("El proyecto " + idDestino + " no existe");
+			}
+			ListaIds suyas = tareasPorProyecto.get(idOrigen);
+			if (idOrigen == idDestino || suyas == null || suyas.isEmpty()) {
+				return 0;
+			}
+			movidas = suyas.getTamanio();
+			if (d != null) {
+				BufferBinario r = registro(d, ProtocoloBinario.MOVE_TAREAS);
+				r.escribirVarint(idOrigen);
+				r.escribirVarint(idDestino);
+				posicion = anotar(d);
+			}
+			mover(idOrigen, idDestino);
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+		esperar(d, posicion);
+		return movidas;
+	}
+
+	// Consultas por índice secundario
+
+	/**
+	 * @return tareas con el estado indicado, ordenadas por id
+	 */
+	public List<Tarea> obtenerTareasPorEstado(Estado estado) {
+		cerrojo.readLock().lock();
+		try {
+			return resolver(porEstado[estado.getCodigo()]);
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return tareas con la urgencia indicada, ordenadas por id
+	 */
+	public List<Tarea> obtenerTareasPorUrgencia(Urgencia urgencia) {
+		cerrojo.readLock().lock();
+		try {
+			return resolver(porUrgencia[urgencia.getCodigo()]);
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param desde primera fecha de fin incluida
+	 * @param hasta última fecha de fin incluida
+	 * @return tareas con fecha de fin en el intervalo, ordenadas por fecha de fin y después por id
+	 */
+	public List<Tarea> obtenerTareasConFechaFinEntre(LocalDate desde, LocalDate hasta) {
+		cerrojo.readLock().lock();
+		try {
+			List<Tarea> lista = new ArrayList<>();
+			for (ListaIds ids : porFechaFin.subMap(Math.toIntExact(desde.toEpochDay()), true,
+					Math.toIntExact(hasta.toEpochDay()), true).values()) {
+				for (int i = 0; i < ids.getTamanio(); i++) {
+					lista.add(tareas.tarea(ids.get(i)));
+				}
+			}
+			return lista;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	private List<Tarea> resolver(BitSet ids) {
+		List<Tarea> lista = new ArrayList<>(ids.cardinality());
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+			lista.add(tareas.tarea(id));
+		}
+		return lista;
+	}
+
+	/**
+	 * Guarda una instantánea de todo el estado y empieza un diario nuevo
+	 * Con el cerrojo de escritura solo se cambia de diario y se copian los proyectos (que no se modifican nunca)
+	 * y los arrays del bloque de tareas; la instantánea se escribe después, sin bloquear a nadie. Al terminar se
+	 * borran los diarios y las instantáneas anteriores. Sin directorio no hace nada.
+	 * @throws IOException si no se puede escribir la instantánea (los diarios anteriores se conservan)
+	 */
+	public void hacerInstantanea() throws IOException {
+		if (directorio == null) {
+			return;
+		}
+		synchronized (cerrojoInstantanea) {
+			Instantanea.Contenido contenido;
+			cerrojo.writeLock().lock();
+			try {
+				Diario siguiente = abrirDiario(generacion + 1);
+				Diario anterior = diario;
+				diario = siguiente;
+				generacion++;
+				anterior.close();
+				contenido = new Instantanea.Contenido(generacion, ultimoIdProyecto, ultimoIdTarea,
+						new ArrayList<>(proyectos.values()), tareas.copia(), archivadas.copia());
+			} finally {
+				cerrojo.writeLock().unlock();
+			}
+			long inicio = System.nanoTime();
+			Instantanea.escribir(ruta("instantanea", contenido.generacion()), contenido);
+			ultimaInstantanea = System.nanoTime();
+			for (Map.Entry<Integer, Path> f : ficheros("diario").headMap(contenido.generacion()).entrySet()) {
+				Files.deleteIfExists(f.getValue());
+			}
+			for (Map.Entry<Integer, Path> f : ficheros("instantanea").headMap(contenido.generacion()).entrySet()) {
+				Files.deleteIfExists(f.getValue());
+			}
+			System.out.println("Instantánea " + contenido.generacion() + " guardada en "
+					+ (ultimaInstantanea - inicio) / 1_000_000 + " ms (" + contenido.proyectos().size()
+					+ " proyectos, " + contenido.tareas().getTamanio() + " tareas)");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (directorio == null) {
+			return;
+		}
+		fondo.shutdown();
+		try {
+			fondo.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		cerrojo.writeLock().lock();
+		try {
+			diario.close();
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		cerrojo.readLock().lock();
+		try {
+			return "AlmacenMemoria{proyectos=" + proyectos.size() + ", tareas=" + tareas + ", archivadas="
+					+ archivadas.getTamanio() + ", diario=" + diario + "}";
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	// Diario e instantáneas
+
+	/**
+	 * Prepara un registro del diario con su código de operación
+	 */
+	private static BufferBinario registro(Diario d, int operacion) {
+		BufferBinario r = d.nuevoRegistro();
+		r.escribirByte(operacion);
+		return r;
+	}
+
+	private static long anotar(Diario d) throws SQLException {
+		try {
+			return d.anotar();
+		} catch (IOException e) {
+			throw new SQLException("No se ha podido escribir en el diario: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Espera, ya sin el cerrojo, a que el registro anotado llegue al disco si la política lo pide
+	 */
+	private static void esperar(Diario d, long posicion) throws SQLException {
+		if (d == null || posicion == 0) {
+			return;
+		}
+		try {
+			d.esperar(posicion);
+		} catch (IOException e) {
+			throw new SQLException("No se ha podido sincronizar el diario: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Carga la última instantánea y reproduce los diarios posteriores; el último queda abierto para seguir anotando
+	 */
+	private void recuperar() throws IOException {
+		long inicio = System.nanoTime();
+		TreeMap<Integer, Path> instantaneas = ficheros("instantanea");
+		int desde = 0;
+		if (!instantaneas.isEmpty()) {
+			Instantanea.Contenido c = Instantanea.leer(instantaneas.lastEntry().getValue());
+			for (Proyecto p : c.proyectos()) {
+				ponerProyecto(p);
+			}
+			tareas = c.tareas();
+			for (int id = tareas.siguiente(1); id >= 0; id = tareas.siguiente(id + 1)) {
+				indexar(id);
+			}
+			archivadas = c.archivadas();
+			for (int id = archivadas.siguiente(1); id >= 0; id = archivadas.siguiente(id + 1)) {
+				archivadasPorProyecto.computeIfAbsent(archivadas.getIdProyecto(id), k -> new ListaIds()).poner(id);
+			}
+			ultimoIdProyecto = Math.max(ultimoIdProyecto, c.ultimoIdProyecto());
+			ultimoIdTarea = Math.max(ultimoIdTarea, c.ultimoIdTarea());
+			desde = c.generacion();
+		}
+		long cargada = System.nanoTime();
+		int registros = 0;
+		TreeMap<Integer, Path> diarios = ficheros("diario");
+		for (Map.Entry<Integer, Path> f : diarios.headMap(desde).entrySet()) {
+			// Quedaron de una instantánea que terminó justo antes de borrarlos
+			Files.deleteIfExists(f.getValue());
+		}
+		generacion = Math.max(desde, 1);
+		for (int g : diarios.tailMap(desde).keySet()) {
+			Diario d = new Diario(ruta("diario", g), politica);
+			registros += d.reproducir(this::reproducir);
+			if (diario != null) {
+				diario.close();
+			}
+			diario = d;
+			generacion = g;
+		}
+		if (diario == null) {
+			diario = abrirDiario(generacion);
+		}
+		long fin = System.nanoTime();
+		System.out.println("Almacén " + directorio + ": instantánea " + (desde > 0 ? desde : "-") + " cargada en "
+				+ (cargada - inicio) / 1_000_000 + " ms, " + registros + " cambios reproducidos en "
+				+ (fin - cargada) / 1_000_000 + " ms (" + proyectos.size() + " proyectos, " + tareas.getTamanio() + " tareas)");
+	}
+
+	/**
+	 * Abre un diario que debe estar vacío
+	 */
+	private Diario abrirDiario(int g) throws IOException {
+		Diario d = new Diario(ruta("diario", g), politica);
+		d.reproducir(r -> {
+			throw new IOException("El diario " + g + " ya tiene registros");
+		});
+		return d;
+	}
+
+	private Path ruta(String tipo, int g) {
+		return directorio.resolve(String.format("%s-%010d.%s", tipo, g, tipo.equals("diario") ? "wal" : "bin"));
+	}
+
+	/**
+	 * @return ficheros del tipo indicado ("diario" o "instantanea") del directorio, por generación
+	 */
+	private TreeMap<Integer, Path> ficheros(String tipo) throws IOException {
+		TreeMap<Integer, Path> encontrados = new TreeMap<>();
+		try (DirectoryStream<Path> lista = Files.newDirectoryStream(directorio)) {
+			for (Path f : lista) {
+				Matcher m = FICHERO.matcher(f.getFileName().toString());
+				if (m.matches() && m.group(1).equals(tipo)) {
+					encontrados.put(Integer.parseInt(m.group(2)), f);
+				}
+			}
+		}
+		return encontrados;
+	}
+
+	private void sincronizarDiario() {
+		try {
+			diario.sincronizar();
+		} catch (IOException e) {
+			System.err.println("Error al sincronizar el diario: " + e.getMessage());
+		}
+	}
+
+	private void comprobarInstantanea() {
+		long tamanio = diario.getTamanio();
+		boolean porTiempo = INTERVALO_INSTANTANEA_S > 0
+				&& System.nanoTime() - ultimaInstantanea >= TimeUnit.SECONDS.toNanos(INTERVALO_INSTANTANEA_S);
+		if (tamanio >= BYTES_INSTANTANEA || porTiempo && tamanio > 0) {
+			try {
+				hacerInstantanea();
+			} catch (IOException e) {
+				System.err.println("Error al guardar la instantánea: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Aplica un registro del diario al arrancar
+	 */
+	private void reproducir(BufferBinario r) {
+		int operacion = r.leerByte();
+		switch (operacion) {
+		case ProtocoloBinario.INSERT_PROYECTO:
+		case ProtocoloBinario.UPDATE_PROYECTO:
+			ponerProyecto(ProtocoloBinario.leerProyecto(r));
+			break;
+		case ProtocoloBinario.DELETE_PROYECTO:
+			quitarProyecto(r.leerVarint());
+			break;
+		case ProtocoloBinario.INSERT_TAREA:
+		case ProtocoloBinario.UPDATE_TAREA:
+			ponerTarea(ProtocoloBinario.leerTarea(r));
+			break;
+		case ProtocoloBinario.DELETE_TAREA:
+			quitarTarea(r.leerVarint());
+			break;
+		case ProtocoloBinario.ARCHIVE_TAREAS:
+			int idProyecto = r.leerVarint();
+			archivar(idProyecto, finalizadas(idProyecto));
+			break;
+		case ProtocoloBinario.MOVE_TAREAS:
+			int idOrigen = r.leerVarint();
+			mover(idOrigen, r.leerVarint());
+			break;
+		default:
+			throw new IllegalArgumentException("Registro de diario desconocido: " + operacion);
+		}
+	}
+
+	// Mantenimiento de mapas e índices (siempre con el cerrojo de escritura)
+
+	/**
+	 * Añade el proyecto o sustituye el que tenga su id; al sustituirlo la versión pasa a ser la anterior más uno
+	 * (los registros del diario no llevan versión: se vuelve a calcular igual al reproducirlos)
+	 * @return proyecto guardado, con su versión
+	 */
+	private Proyecto ponerProyecto(Proyecto p) {
+		Proyecto anterior = proyectos.get(p.getId());
+		if (anterior != null) {
+			p = new Proyecto(p.getId(), p.getNombre(), anterior.getVersion() + 1);
+		}
+		proyectos.put(p.getId(), p);
+		ultimoIdProyecto = Math.max(ultimoIdProyecto, p.getId());
+		return p;
+	}
+
+	/**
+	 * Quita el proyecto con sus tareas y sus tareas archivadas
+	 * La lista de tareas del proyecto se descarta entera en lugar de quitar los ids de uno en uno.
+	 * @return número de tareas quitadas, sin contar las archivadas
+	 */
+	private int quitarProyecto(int id) {
+		proyectos.remove(id);
+		ListaIds suyas = tareasPorProyecto.remove(id);
+		ListaIds suyasArchivadas = archivadasPorProyecto.remove(id);
+		if (suyasArchivadas != null) {
+			for (int i = 0; i < suyasArchivadas.getTamanio(); i++) {
+				archivadas.quitar(suyasArchivadas.get(i));
+			}
+		}
+		if (suyas == null) {
+			return 0;
+		}
+		for (int i = 0; i < suyas.getTamanio(); i++) {
+			int idTarea = suyas.get(i);
+			quitarDeIndices(idTarea);
+			tareas.quitar(idTarea);
+		}
+		return suyas.getTamanio();
+	}
+
+	/**
+	 * @return ids de las tareas finalizadas del proyecto, en orden
+	 */
+	private int[] finalizadas(int idProyecto) {
+		ListaIds suyas = tareasPorProyecto.get(idProyecto);
+		if (suyas == null) {
+			return new int[0];
+		}
+		BitSet fin = porEstado[Estado.FINALIZADO.getCodigo()];
+		int[] ids = new int[suyas.getTamanio()];
+		int n = 0;
+		for (int i = 0; i < suyas.getTamanio(); i++) {
+			if (fin.get(suyas.get(i))) {
+				ids[n++] = suyas.get(i);
+			}
+		}
+		return Arrays.copyOf(ids, n);
+	}
+
+	/**
+	 * Pasa las tareas indicadas del proyecto a las archivadas
+	 * La lista del proyecto se reconstruye una vez con las que quedan, sin desplazarla por cada id quitado.
+	 * @param ids tareas finalizadas del proyecto, en orden (ver finalizadas)
+	 */
+	private void archivar(int idProyecto, int[] ids) {
+		if (ids.length == 0) {
+			return;
+		}
+		ListaIds suyas = tareasPorProyecto.get(idProyecto);
+		ListaIds quedan = new ListaIds();
+		ListaIds suyasArchivadas = archivadasPorProyecto.computeIfAbsent(idProyecto, k -> new ListaIds());
+		for (int i = 0, j = 0; i < suyas.getTamanio(); i++) {
+			int id = suyas.get(i);
+			if (j < ids.length && ids[j] == id) {
+				j++;
+				archivadas.poner(tareas.tarea(id));
+				suyasArchivadas.poner(id);
+				quitarDeIndices(id);
+				tareas.quitar(id);
+			} else {
+				quedan.poner(id);
+			}
+		}
+		tareasPorProyecto.put(idProyecto, quedan);
+	}
+
+	/**
+	 * Pasa todas las tareas de un proyecto a otro distinto cambiando solo su columna de proyecto y mezclando las
+	 * dos listas
+	 */
+	private void mover(int idOrigen, int idDestino) {
+		ListaIds suyas = tareasPorProyecto.remove(idOrigen);
+		if (suyas == null) {
+			return;
+		}
+		for (int i = 0; i < suyas.getTamanio(); i++) {
+			int id = suyas.get(i);
+			tareas.setIdProyecto(id, idDestino);
+			tareas.setVersion(id, tareas.getVersion(id) + 1);
+		}
+		ListaIds destino = tareasPorProyecto.get(idDestino);
+		if (destino == null) {
+			tareasPorProyecto.put(idDestino, suyas);
+		} else {
+			destino.ponerTodos(suyas);
+		}
+	}
+
+	/**
+	 * Añade la tarea o sustituye la que tenga su id
+	 * Al sustituirla la versión de t pasa a ser la anterior más uno, tanto al cambiarla como al reproducir el
+	 * diario, cuyos registros no llevan versión. Solo se tocan las listas de proyecto y de fecha de fin si esos
+	 * valores cambian, porque quitar un id de una lista desplaza los que van detrás.
+	 */
+	private void ponerTarea(Tarea t) {
+		int id = t.getId();
+		if (!tareas.contiene(id)) {
+			tareas.poner(t);
+			indexar(id);
+			return;
+		}
+		int proyecto = tareas.getIdProyecto(id);
+		int fin = tareas.getDiaEntrega(id);
+		t.setVersion(tareas.getVersion(id) + 1);
+		porEstado[tareas.getCodigoEstado(id)].clear(id);
+		porUrgencia[tareas.getCodigoUrgencia(id)].clear(id);
+		tareas.poner(t);
+		porEstado[t.getCodigoEstado()].set(id);
+		porUrgencia[t.getCodigoUrgencia()].set(id);
+		if (proyecto != t.getIdProyecto()) {
+			quitarDeLista(tareasPorProyecto, proyecto, id);
+			tareasPorProyecto.computeIfAbsent(t.getIdProyecto(), k -> new ListaIds()).poner(id);
+		}
+		if (fin != t.getDiaEntrega()) {
+			quitarDeFecha(fin, id);
+			if (t.getDiaEntrega() != Tarea.SIN_FECHA) {
+				porFechaFin.computeIfAbsent(t.getDiaEntrega(), k -> new ListaIds()).poner(id);
+			}
+		}
+	}
+
+	private void quitarTarea(int id) {
+		if (tareas.contiene(id)) {
+			desindexar(id);
+			tareas.quitar(id);
+		}
+	}
+
+	/**
+	 * Añade a los índices una tarea que ya está en el bloque
+	 */
+	private void indexar(int id) {
+		tareasPorProyecto.computeIfAbsent(tareas.getIdProyecto(id), k -> new ListaIds()).poner(id);
+		porEstado[tareas.getCodigoEstado(id)].set(id);
+		porUrgencia[tareas.getCodigoUrgencia(id)].set(id);
+		int fin = tareas.getDiaEntrega(id);
+		if (fin != Tarea.SIN_FECHA) {
+			porFechaFin.computeIfAbsent(fin, k -> new ListaIds()).poner(id);
+		}
+		ultimoIdTarea = Math.max(ultimoIdTarea, id);
+	}
+
+	/**
+	 * Quita de los índices una tarea, con los valores que tiene todavía en el bloque
+	 */
+	private void desindexar(int id) {
+		quitarDeLista(tareasPorProyecto, tareas.getIdProyecto(id), id);
+		quitarDeIndices(id);
+	}
+
+	/**
+	 * Quita una tarea de los índices de estado, urgencia y fecha de fin, pero no de la lista de su proyecto
+	 */
+	private void quitarDeIndices(int id) {
+		porEstado[tareas.getCodigoEstado(id)].clear(id);
+		porUrgencia[tareas.getCodigoUrgencia(id)].clear(id);
+		quitarDeFecha(tareas.getDiaEntrega(id), id);
+	}
+
+	private static void quitarDeLista(Map<Integer, ListaIds> indice, int clave, int id) {
+		ListaIds ids = indice.get(clave);
+		if (ids != null) {
+			ids.quitar(id);
+		}
+	}
+
+	private void quitarDeFecha(int fin, int id) {
+		if (fin == Tarea.SIN_FECHA) {
+			return;
+		}
+		ListaIds ids = porFechaFin.get(fin);
+		ids.quitar(id);
+		if (ids.isEmpty()) {
+			porFechaFin.remove(fin);
+		}
+	}
+
+	// Validación, con las mismas reglas que el esquema de la base de datos
+
+	private static void comprobarTexto(String campo, String valor, int maximo, boolean opcional) throws SQLException {
+		if (valor == null) {
+			if (!opcional) {
+				throw new SQLException("El campo " + campo + " es obligatorio");
+			}
+		} else if (valor.length() > maximo) {
+			throw new SQLException("El campo " + campo + " supera los " + maximo + " caracteres");
+		}
+	}
+
+	private static void comprobarTarea(Tarea t) throws SQLException {
+		comprobarTexto("nombre", t.getNombre(), MAX_NOMBRE, false);
+		comprobarTexto("descripcion", t.getDescripcion(), MAX_DESCRIPCION, true);
+		if (t.getDiaInicio() == Tarea.SIN_FECHA) {
+			throw new SQLException("El campo fecha_inicio es obligatorio");
+		}
+	}
+
+	/**
+	 * Copia de la tarea con el id asignado (el estado y la urgencia ya están en su forma canónica)
+	 */
+	private static Tarea conId(int id, Tarea t) {
+		return new Tarea(id, t.getNombre(), t.getDescripcion(), Estado.desdeCodigo(t.getCodigoEstado()),
+				Urgencia.desdeCodigo(t.getCodigoUrgencia()), t.getDiaInicio(), t.getDiaEntrega(), t.getIdProyecto());
+	}
+
+	private static void comprobarCampo(String campo, String valor) throws SQLException {
+		cambiarCampo(new Tarea(0, "", null, Estado.PENDIENTE, Urgencia.MEDIA, 0, Tarea.SIN_FECHA, 0), campo, valor);
+	}
+
+	/**
+	 * Cambia un campo ("fecha_fin", "estado" o "urgencia") de una tarea creada a partir del bloque
+	 */
+	private static void cambiarCampo(Tarea t, String campo, String valor) throws SQLException {
+		try {
+			switch (campo.toLowerCase(Locale.ROOT)) {
+			case "fecha_fin":
+				t.setEntrega(LocalDate.parse(valor));
+				break;
+			case "estado":
+				t.setEstado(valor);
+				break;
+			case "urgencia":
+				t.setUrgencia(valor);
+				break;
+			default:
+				throw new SQLException("Campo no modificable: " + campo);
+			}
+		} catch (DateTimeParseException | IllegalArgumentException e) {
+			throw new SQLException(e.getMessage(), e);
+		}
+	}
+}
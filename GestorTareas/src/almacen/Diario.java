@@ -0,0 +1,287 @@
+package almacen;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+import protocolo.BufferBinario;
+
+/**
+ * Diario de escritura anticipada (write-ahead log) del almacén en memoria
+ * Cada cambio se anota en el diario antes de aplicarse en memoria, y al arrancar se vuelven a aplicar los
+ * registros en orden para reconstruir el estado.
+ * El fichero se escribe a través de una proyección en memoria (mmap) que se amplía por tramos de TAMANIO_TRAMO
+ * bytes, de modo que anotar un registro es una copia en memoria sin llamadas al sistema.
+ * Formato de cada registro: longitud de los datos (int), CRC-32C de los datos (int) y los datos. Tras el último
+ * registro el fichero contiene ceros, y una longitud 0 marca el final. Al reproducir, el primer registro
+ * incompleto o con el CRC incorrecto se considera el final: el proceso se detuvo mientras se escribía.
+ * La sincronización con el disco sigue la PoliticaSincronizacion indicada. Con SIEMPRE, el primer hilo que
+ * necesita sincronizar lo hace para todo lo anotado hasta ese momento y los que llegan mientras tanto esperan
+ * a que termine, por lo que una sola sincronización confirma varias escrituras (group commit).
+ * Anotar no es seguro para usarse desde varios hilos a la vez: AlmacenMemoria lo hace siempre con su cerrojo
+ * de escritura. esperar() y sincronizar() sí pueden llamarse desde cualquier hilo.
+ */
+class Diario implements Closeable {
+	private static final int TAMANIO_TRAMO = 64 * 1024 * 1024;
+	private static final int MAX_REGISTRO = 1024 * 1024;
+	private static final int CABECERA = 8;
+
+	private final Path ruta;
+	private final FileChannel canal;
+	private final PoliticaSincronizacion politica;
+	private final BufferBinario registro = new BufferBinario(256);
+	private final CRC32C crc = new CRC32C();
+
+	private volatile MappedByteBuffer tramo;
+	private long inicioTramo;
+	/** Posición del fichero tras el último registro anotado */
+	private volatile long escrito;
+
+	private final Object monitor = new Object();
+	/** Posición hasta la que el diario está en disco (protegido por monitor) */
+	private long durable;
+	private boolean sincronizando;
+	private boolean cerrado;
+	private long registros;
+	private long sincronizaciones;
+
+	/**
+	 * Abre el diario, creándolo si no existe
+	 * Antes de anotar registros nuevos hay que llamar a reproducir(), que deja el diario preparado tras el
+	 * último registro completo.
+	 * @param ruta fichero del diario
+	 * @param politica cuándo se espera a que los registros lleguen al disco
+	 * @throws IOException si no se puede abrir el fichero
+	 */
+	Diario(Path ruta, PoliticaSincronizacion politica) throws IOException {
+		this.ruta = ruta;
+		this.canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.politica = politica;
+	}
+
+	/**
+	 * Interpreta un registro del diario
+	 */
+	interface Aplicador {
+		void aplicar(BufferBinario registro) throws IOException;
+	}
+
+	/**
+	 * Lee todos los registros desde el principio y los entrega en orden
+	 * Descarta lo que haya tras el último registro completo y deja el diario preparado para anotar a continuación.
+	 * @param aplicador recibe cada registro
+	 * @return número de registros leídos
+	 * @throws IOException si falla la lectura o un registro no se puede aplicar
+	 */
+	int reproducir(Aplicador aplicador) throws IOException {
+		ByteBuffer lectura = ByteBuffer.allocateDirect(4 * MAX_REGISTRO);
+		BufferBinario leido = new BufferBinario(256);
+		long validos = 0;
+		int n = 0;
+		canal.position(0);
+		lectura.flip();
+		while (true) {
+			if (lectura.remaining() < CABECERA && !rellenar(lectura, CABECERA)) {
+				break;
+			}
+			int longitud = lectura.getInt(lectura.position());
+			if (longitud <= 0 || longitud > MAX_REGISTRO
+					|| lectura.remaining() < CABECERA + longitud && !rellenar(lectura, CABECERA + longitud)) {
+				break;
+			}
+			int suma = lectura.getInt(lectura.position() + 4);
+			crc.reset();
+			crc.update(lectura.slice(lectura.position() + CABECERA, longitud));
+			if ((int) crc.getValue() != suma) {
+				break;
+			}
+			lectura.position(lectura.position() + CABECERA);
+			leido.cargar(lectura, longitud);
+			aplicador.aplicar(leido);
+			validos += CABECERA + longitud;
+			n++;
+		}
+		canal.truncate(validos);
+		inicioTramo = validos;
+		escrito = validos;
+		durable = validos;
+		tramo = canal.map(FileChannel.MapMode.READ_WRITE, inicioTramo, TAMANIO_TRAMO);
+		return n;
+	}
+
+	/**
+	 * Lee más datos del fichero hasta tener al menos necesarios bytes pendientes
+	 * @return false si el fichero termina antes
+	 */
+	private boolean rellenar(ByteBuffer lectura, int necesarios) throws IOException {
+		lectura.compact();
+		while (lectura.position() < necesarios) {
+			if (canal.read(lectura) < 0) {
+				lectura.flip();
+				return false;
+			}
+		}
+		lectura.flip();
+		return true;
+	}
+
+	/**
+	 * @return buffer vacío donde preparar el siguiente registro
+	 */
+	BufferBinario nuevoRegistro() {
+		registro.limpiar();
+		return registro;
+	}
+
+	/**
+	 * Anota el registro preparado
+	 * Queda en el fichero (lo verán los procesos que lo lean y sobrevive a la caída del proceso), pero no
+	 * está garantizado que haya llegado al disco hasta que esperar() lo confirme.
+	 * @return posición del fichero tras el registro, para pasarla a esperar()
+	 * @throws IOException si el registro es demasiado grande o no se puede ampliar el fichero
+	 */
+	long anotar() throws IOException {
+		int longitud = registro.getLongitud();
+		if (longitud > MAX_REGISTRO) {
+			throw new IOException("Registro de diario demasiado grande: " + longitud + " bytes");
+		}
+		MappedByteBuffer t = tramo;
+		if (t.remaining() < CABECERA + longitud) {
+			t = siguienteTramo();
+		}
+		int inicio = t.position();
+		t.position(inicio + CABECERA);
+		registro.copiarEn(t);
+		crc.reset();
+		crc.update(t.slice(inicio + CABECERA, longitud));
+		t.putInt(inicio + 4, (int) crc.getValue());
+		t.putInt(inicio, longitud);
+		registros++;
+		escrito = inicioTramo + t.position();
+		return escrito;
+	}
+
+	/**
+	 * Proyecta el siguiente tramo del fichero a partir del último registro
+	 * Antes se sincroniza el tramo anterior, porque las sincronizaciones posteriores solo cubren el tramo actual.
+	 */
+	private MappedByteBuffer siguienteTramo() throws IOException {
+		MappedByteBuffer anterior = tramo;
+		if (politica != PoliticaSincronizacion.NUNCA) {
+			anterior.force();
+		}
+		inicioTramo += anterior.position();
+		tramo = canal.map(FileChannel.MapMode.READ_WRITE, inicioTramo, TAMANIO_TRAMO);
+		return tramo;
+	}
+
+	/**
+	 * Espera, si la política es SIEMPRE, a que el diario esté en disco al menos hasta la posición indicada
+	 * @param posicion valor devuelto por anotar()
+	 * @throws IOException si falla la sincronización
+	 */
+	void esperar(long posicion) throws IOException {
+		if (politica == PoliticaSincronizacion.SIEMPRE) {
+			sincronizarHasta(posicion);
+		}
+	}
+
+	/**
+	 * Lleva al disco todo lo anotado hasta ahora (la política PERIODICA lo llama cada cierto intervalo)
+	 */
+	void sincronizar() throws IOException {
+		sincronizarHasta(escrito);
+	}
+
+	private void sincronizarHasta(long posicion) throws IOException {
+		synchronized (monitor) {
+			while (durable < posicion && sincronizando && !cerrado) {
+				try {
+					monitor.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrumpido esperando al diario");
+				}
+			}
+			if (durable >= posicion || cerrado) {
+				return;
+			}
+			sincronizando = true;
+		}
+		// Se sincroniza todo lo anotado hasta ahora, incluidos los registros de quienes están esperando
+		long objetivo = escrito;
+		boolean hecho = false;
+		try {
+			tramo.force();
+			hecho = true;
+		} finally {
+			synchronized (monitor) {
+				sincronizando = false;
+				if (hecho) {
+					durable = Math.max(durable, objetivo);
+					sincronizaciones++;
+				}
+				monitor.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @return tamaño en bytes de los registros anotados
+	 */
+	long getTamanio() {
+		return escrito;
+	}
+
+	Path getRuta() {
+		return ruta;
+	}
+
+	/**
+	 * Sincroniza lo pendiente y cierra el fichero, recortando los ceros reservados tras el último registro
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (monitor) {
+			while (sincronizando) {
+				try {
+					monitor.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			if (cerrado) {
+				return;
+			}
+			try {
+				if (tramo != null) {
+					tramo.force();
+					durable = escrito;
+				}
+			} finally {
+				cerrado = true;
+				monitor.notifyAll();
+			}
+		}
+		try {
+			canal.truncate(escrito);
+		} catch (IOException e) {
+			// Algunos sistemas no permiten recortar un fichero proyectado; los ceros se ignoran al reproducir
+		} finally {
+			canal.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized (monitor) {
+			return "Diario{" + ruta.getFileName() + ", bytes=" + escrito + ", registros=" + registros
+					+ ", sincronizaciones=" + sincronizaciones + ", politica=" + politica + "}";
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package almacen;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import modelos.BloqueTareas;
+import modelos.Proyecto;
+import modelos.Tarea;
+import protocolo.BufferBinario;
+import protocolo.ProtocoloBinario;
+
+/**
+ * Instantánea compacta del almacén en memoria: todos los proyectos y tareas (también las archivadas) en un momento dado
+ * Sirve para acotar el tiempo de arranque: se carga la instantánea y después solo hay que reproducir los
+ * diarios posteriores a ella.
+ * Formato: una secuencia de tramas del protocolo binario (longitud en varint y datos) seguida del CRC-32C de
+ * todas ellas (int). La primera trama es la cabecera, después van bloques de hasta TAMANIO_BLOQUE proyectos o
+ * tareas codificados como en el protocolo binario, y una trama FIN cierra la lista. Las tareas archivadas van en
+ * bloques propios desde la versión 2, y desde la versión 3 cada proyecto y cada tarea va seguido de su versión
+ * (varint); las instantáneas de versiones anteriores se siguen pudiendo leer, con todas las versiones a 0.
+ * Se escribe en un fichero temporal que se renombra al terminar, por lo que una instantánea a medias nunca
+ * sustituye a la anterior.
+ */
+final class Instantanea {
+	private static final int VERSION = 3;
+	private static final int TAMANIO_BLOQUE = 1024;
+	private static final int BLOQUE_PROYECTOS = 1;
+	private static final int BLOQUE_TAREAS = 2;
+	private static final int BLOQUE_ARCHIVADAS = 3;
+	private static final int FIN = 0;
+
+	/**
+	 * Contenido de una instantánea
+	 * @param generacion primer diario que hay que reproducir después de cargarla
+	 * @param ultimoIdProyecto mayor id de proyecto asignado hasta entonces (aunque ya no exista)
+	 * @param ultimoIdTarea mayor id de tarea asignado hasta entonces (aunque ya no exista)
+	 */
+	record Contenido(int generacion, int ultimoIdProyecto, int ultimoIdTarea, List<Proyecto> proyectos,
+			BloqueTareas tareas, BloqueTareas archivadas) {
+	}
+
+	private Instantanea() {
+	}
+
+	/**
+	 * Escribe la instantánea y espera a que llegue al disco
+	 * @param ruta fichero de destino
+	 * @param c contenido; las tareas se escriben por orden de id
+	 */
+	static void escribir(Path ruta, Contenido c) throws IOException {
+		Path temporal = ruta.resolveSibling(ruta.getFileName() + ".tmp");
+		try (FileOutputStream fichero = new FileOutputStream(temporal.toFile())) {
+			CheckedOutputStream salida = new CheckedOutputStream(new BufferedOutputStream(fichero, 256 * 1024),
+					new CRC32C());
+			BufferBinario b = new BufferBinario(64 * 1024);
+			b.escribirByte('G');
+			b.escribirByte('T');
+			b.escribirByte('I');
+			b.escribirVarint(VERSION);
+			b.escribirVarint(c.generacion());
+			b.escribirVarint(c.ultimoIdProyecto());
+			b.escribirVarint(c.ultimoIdTarea());
+			b.escribirVarint(c.proyectos().size());
+			b.escribirVarint(c.tareas().getTamanio());
+			b.escribirVarint(c.archivadas().getTamanio());
+			b.escribirTrama(salida);
+			for (int i = 0; i < c.proyectos().size(); i += TAMANIO_BLOQUE) {
+				List<Proyecto> bloque = c.proyectos().subList(i, Math.min(i + TAMANIO_BLOQUE, c.proyectos().size()));
+				b.limpiar();
+				b.escribirByte(BLOQUE_PROYECTOS);
+				b.escribirVarint(bloque.size());
+				for (Proyecto p : bloque) {
+					ProtocoloBinario.escribirProyecto(b, p);
+					b.escribirVarint(p.getVersion());
+				}
+				b.escribirTrama(salida);
+			}
+			escribirTareas(salida, b, BLOQUE_TAREAS, c.tareas());
+			escribirTareas(salida, b, BLOQUE_ARCHIVADAS, c.archivadas());
+			b.limpiar();
+			b.escribirByte(FIN);
+			b.escribirTrama(salida);
+			int suma = (int) salida.getChecksum().getValue();
+			DataOutputStream fin = new DataOutputStream(salida);
+			fin.writeInt(suma);
+			fin.flush();
+			fichero.getFD().sync();
+		}
+		Files.move(temporal, ruta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		// El renombrado tampoco es definitivo hasta que el directorio llega al disco (no todos los sistemas lo permiten)
+		try (FileChannel directorio = FileChannel.open(ruta.toAbsolutePath().getParent(),
+				StandardOpenOption.READ)) {
+			directorio.force(true);
+		} catch (IOException e) {
+			// Sin sincronización del directorio el renombrado queda en manos del sistema operativo
+		}
+	}
+
+	/**
+	 * Escribe las tareas de un bloque por orden de id, en tramas de hasta TAMANIO_BLOQUE tareas
+	 */
+	private static void escribirTareas(OutputStream salida, BufferBinario b, int tipo, BloqueTareas tareas)
+			throws IOException {
+		int id = tareas.siguiente(1);
+		for (int i = 0; i < tareas.getTamanio(); i += TAMANIO_BLOQUE) {
+			int n = Math.min(TAMANIO_BLOQUE, tareas.getTamanio() - i);
+			b.limpiar();
+			b.escribirByte(tipo);
+			b.escribirVarint(n);
+			for (int j = 0; j < n; j++, id = tareas.siguiente(id + 1)) {
+				ProtocoloBinario.escribirTarea(b, tareas.tarea(id));
+				b.escribirVarint(tareas.getVersion(id));
+			}
+			b.escribirTrama(salida);
+		}
+	}
+
+	/**
+	 * Lee una instantánea completa
+	 * @throws IOException si no se puede leer, está incompleta o el CRC no coincide
+	 */
+	static Contenido leer(Path ruta) throws IOException {
+		try (InputStream fichero = Files.newInputStream(ruta)) {
+			CheckedInputStream entrada = new CheckedInputStream(new BufferedInputStream(fichero, 256 * 1024),
+					new CRC32C());
+			BufferBinario b = new BufferBinario(64 * 1024);
+			try {
+				if (!b.leerTrama(entrada, ProtocoloBinario.MAX_TRAMA) || b.leerByte() != 'G' || b.leerByte() != 'T'
+						|| b.leerByte() != 'I') {
+					throw new IOException("No es una instantánea del gestor");
+				}
+				int version = b.leerVarint();
+				if (version < 1 || version > VERSION) {
+					throw new IOException("Versión de instantánea no admitida: " + version);
+				}
+				int generacion = b.leerVarint();
+				int ultimoIdProyecto = b.leerVarint();
+				int ultimoIdTarea = b.leerVarint();
+				List<Proyecto> proyectos = new ArrayList<>(b.leerVarint());
+				b.leerVarint();
+				if (version >= 2) {
+					b.leerVarint();
+				}
+				BloqueTareas tareas = new BloqueTareas(ultimoIdTarea + 1);
+				BloqueTareas archivadas = new BloqueTareas(16);
+				while (true) {
+					if (!b.leerTrama(entrada, ProtocoloBinario.MAX_TRAMA)) {
+						throw new EOFException("Instantánea incompleta");
+					}
+					int tipo = b.leerByte();
+					if (tipo == FIN) {
+						break;
+					}
+					int n = b.leerVarint();
+					for (int i = 0; i < n; i++) {
+						if (tipo == BLOQUE_PROYECTOS) {
+							Proyecto p = ProtocoloBinario.leerProyecto(b);
+							proyectos.add(version >= 3 ? new Proyecto(p.getId(), p.getNombre(), b.leerVarint()) : p);
+						} else if (tipo == BLOQUE_TAREAS || tipo == BLOQUE_ARCHIVADAS) {
+							Tarea t = ProtocoloBinario.leerTarea(b);
+							if (version >= 3) {
+								t.setVersion(b.leerVarint());
+							}
+							(tipo == BLOQUE_TAREAS ? tareas : archivadas).poner(t);
+						} else {
+							throw new IOException("Bloque de instantánea desconocido: " + tipo);
+						}
+					}
+				}
+				int esperada = (int) entrada.getChecksum().getValue();
+				if (new DataInputStream(entrada).readInt() != esperada) {
+					throw new IOException("El CRC de la instantánea no coincide");
+				}
+				return new Contenido(generacion, ultimoIdProyecto, ultimoIdTarea, proyectos, tareas, archivadas);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Instantánea dañada: " + e.getMessage(), e);
+			}
+		}
+	}
+}
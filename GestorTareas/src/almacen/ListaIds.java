@@ -0,0 +1,94 @@
+package almacen;
+
+import java.util.Arrays;
+
+/**
+ * Lista ordenada de ids de tarea sin repetidos, guardada en un array de int
+ * Sustituye a los TreeSet<Integer> de los índices: un id ocupa 4 bytes en lugar de un nodo y un Integer.
+ * Como los ids nuevos son siempre los mayores, añadirlos es un simple añadido al final; quitar o insertar
+ * en medio desplaza el resto del array, lo que es asumible porque cada lista es de un solo proyecto o fecha.
+ * No es segura para usarse desde varios hilos a la vez.
+ */
+final class ListaIds {
+	private int[] ids = new int[4];
+	private int tamanio;
+
+	/**
+	 * Añade el id en su posición si no estaba
+	 */
+	void poner(int id) {
+		if (tamanio > 0 && ids[tamanio - 1] < id) {
+			asegurar();
+			ids[tamanio++] = id;
+			return;
+		}
+		int i = Arrays.binarySearch(ids, 0, tamanio, id);
+		if (i >= 0) {
+			return;
+		}
+		i = -i - 1;
+		asegurar();
+		System.arraycopy(ids, i, ids, i + 1, tamanio - i);
+		ids[i] = id;
+		tamanio++;
+	}
+
+	/**
+	 * Añade todos los ids de otra lista mezclando las dos en orden, sin desplazar el array por cada uno
+	 */
+	void ponerTodos(ListaIds otra) {
+		int[] mezcla = new int[Math.max(tamanio + otra.tamanio, 4)];
+		int i = 0, j = 0, n = 0;
+		while (i < tamanio || j < otra.tamanio) {
+			int id;
+			if (j == otra.tamanio || i < tamanio && ids[i] < otra.ids[j]) {
+				id = ids[i++];
+			} else {
+				if (i < tamanio && ids[i] == otra.ids[j]) {
+					i++;
+				}
+				id = otra.ids[j++];
+			}
+			mezcla[n++] = id;
+		}
+		ids = mezcla;
+		tamanio = n;
+	}
+
+	/**
+	 * Quita el id si estaba
+	 */
+	void quitar(int id) {
+		int i = Arrays.binarySearch(ids, 0, tamanio, id);
+		if (i >= 0) {
+			System.arraycopy(ids, i + 1, ids, i, tamanio - i - 1);
+			tamanio--;
+		}
+	}
+
+	/**
+	 * @return posición del primer id mayor que despuesDe
+	 */
+	int posicionDespuesDe(int despuesDe) {
+		int i = Arrays.binarySearch(ids, 0, tamanio, despuesDe);
+		return i >= 0 ? i + 1 : -i - 1;
+	}
+
+	int get(int posicion) {
+		return ids[posicion];
+	}
+
+	int getTamanio() {
+		return tamanio;
+	}
+
+	boolean isEmpty() {
+		return tamanio == 0;
+	}
+
+	private void asegurar() {
+		if (tamanio == ids.length) {
+			ids = Arrays.copyOf(ids, tamanio * 2);
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package almacen;
+
+import java.util.Locale;
+
+/**
+ * Cuándo se espera a que los cambios del diario lleguen al disco (fsync)
+ * - SIEMPRE: cada escritura espera a que su registro esté en disco antes de responder; las escrituras que
+ *   coinciden en el tiempo comparten una sola sincronización (group commit)
+ * - PERIODICA: un hilo sincroniza el diario cada cierto intervalo; tras una caída del equipo se pueden perder
+ *   los cambios de ese último intervalo
+ * - NUNCA: lo decide el sistema operativo; los cambios sobreviven a la caída del proceso, no a la del equipo
+ */
+public enum PoliticaSincronizacion {
+	SIEMPRE,
+	PERIODICA,
+	NUNCA;
+
+	/**
+	 * Obtiene la política a partir de su nombre, sin distinguir mayúsculas
+	 * @param texto nombre de la política
+	 * @return política correspondiente
+	 * @throws IllegalArgumentException si el texto no corresponde a ninguna política
+	 */
+	public static PoliticaSincronizacion desdeTexto(String texto) {
+		try {
+			return valueOf(texto.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Política de sincronización inválida: " + texto);
+		}
+	}
+}
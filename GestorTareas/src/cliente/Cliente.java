@@ -4,7 +4,11 @@ import java.io.*;
 import java.net.Socket;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.UUID;
 /**
  * Clase que representa al cliente de la aplicación de gestión de proyectos y tareas.
  * Se encarga de:
@@ -17,9 +21,26 @@ import java.util.Scanner;
  *     - Los campos a modificar de una tarea solo pueden ser "fecha_fin", "estado" o "urgencia".
  * - Construir los comandos siguiendo el protocolo definido para el servidor.
  * - Enviar los comandos al servidor y mostrar la respuesta.
+ * - Importar tareas desde un fichero CSV enviándolas en lotes con INSERT_TAREAS_BATCH.
+ * - Seguir los cambios de las tareas de un proyecto con SUBSCRIBE_PROYECTO, sin consultar la lista una y otra vez.
+ * - Reenviar los comandos por una conexión nueva si se corta la conexión o el servidor no responde a tiempo; las
+ *   escrituras llevan una clave de idempotencia para que el servidor no las ejecute dos veces (ver Conexion).
  *
  */
 public class Cliente {
+	// Número de tareas enviadas en cada comando INSERT_TAREAS_BATCH al importar un CSV
+	private static final int TAREAS_POR_LOTE = 500;
+	// Reenvíos de un comando sin respuesta antes de darlo por fallido, y espera antes del primero (se duplica en cada uno)
+	private static final int REINTENTOS = 3;
+	private static final long ESPERA_REINTENTO_MS = 500;
+	// Tiempo máximo de espera por la respuesta de un comando
+	private static final int ESPERA_RESPUESTA_MS = 30_000;
+	// Respuesta del servidor a un reenvío cuyo comando original aún no ha terminado
+	private static final String COMANDO_EN_CURSO = "ERROR Comando con la misma clave en curso";
+	// Comandos que modifican datos, que se envían con clave de idempotencia
+	private static final Set<String> ESCRITURAS = Set.of("INSERT_PROYECTO", "UPDATE_PROYECTO", "CAS_PROYECTO",
+			"DELETE_PROYECTO", "INSERT_TAREA", "INSERT_TAREAS_BATCH", "UPDATE_TAREA", "CAS_TAREA", "DELETE_TAREA",
+			"ARCHIVE_TAREAS", "MOVE_TAREAS");
 
 	/**
 	 * Punto de entrada del cliente.
@@ -34,9 +55,7 @@ public class Cliente {
 		final int PUERTO = 5000;
 		
 		
-	    try (Socket sc = new Socket(HOST, PUERTO);
-	         BufferedReader in = new BufferedReader(new InputStreamReader(sc.getInputStream()));
-	         BufferedWriter out = new BufferedWriter(new OutputStreamWriter(sc.getOutputStream()));
+	    try (Conexion conexion = new Conexion(HOST, PUERTO);
 	         Scanner scn = new Scanner(System.in)) {
 	
 	        boolean salir = false;
@@ -48,9 +67,13 @@ public class Cliente {
 	            System.out.println("3. Listar proyectos");  
 	            System.out.println("4. Listar tareas");    
 	            System.out.println("5. Modificar tarea (fecha fin, estado, urgencia)"); 
-	            System.out.println("6. Borrar proyecto");   
+	            System.out.println("6. Borrar proyecto (con sus tareas)");   
 	            System.out.println("7. Borrar tarea");      
-	            System.out.println("8. Salir");             
+	            System.out.println("8. Importar tareas desde CSV");
+	            System.out.println("9. Seguir cambios de un proyecto");
+	            System.out.println("10. Archivar tareas finalizadas de un proyecto");
+	            System.out.println("11. Mover tareas de un proyecto a otro");
+	            System.out.println("12. Salir");
 	            
 	            System.out.print("Seleccione una opción: ");
 	
@@ -215,7 +238,53 @@ public class Cliente {
 	                comando = "DELETE_TAREA;" + idTareaDel;
 	                break;
 	
+	            /*
+	             * 8. Importar tareas desde CSV
+	             * Se pide al usuario la ruta del fichero
+	             * Cada línea del fichero tiene los campos:
+	             * nombre,descripcion,estado,urgencia,fecha_inicio,fecha_fin,proyecto_id
+	             * Las tareas se envían en lotes con el formato:
+	             * INSERT_TAREAS_BATCH;nombre;descripcion;estado;urgencia;fecha_inicio;fecha_fin;proyecto_id|...
+	             */
 	            case "8":
+	                System.out.print("Ruta del fichero CSV: ");
+	                importarCSV(scn.nextLine(), conexion);
+	                continue;
+
+	            /*
+	             * 9. Seguir cambios de un proyecto
+	             * Se pide al usuario la id del proyecto y se muestran sus cambios hasta que pulse Intro
+	             */
+	            case "9":
+	                System.out.print("ID del proyecto a seguir: ");
+	                seguirCambios(HOST, PUERTO, scn.nextLine(), scn);
+	                continue;
+
+	            /*
+	             * 10. Archivar tareas finalizadas
+	             * Se pide al usuario la id del proyecto
+	             * Se traduce al formato:
+	             * ARCHIVE_TAREAS;proyecto_id
+	             */
+	            case "10":
+	                System.out.print("ID del proyecto: ");
+	                comando = "ARCHIVE_TAREAS;" + scn.nextLine();
+	                break;
+
+	            /*
+	             * 11. Mover tareas de un proyecto a otro
+	             * Se pide al usuario la id del proyecto de origen y la del de destino
+	             * Se traduce al formato:
+	             * MOVE_TAREAS;proyecto_origen;proyecto_destino
+	             */
+	            case "11":
+	                System.out.print("ID del proyecto de origen: ");
+	                String idOrigen = scn.nextLine();
+	                System.out.print("ID del proyecto de destino: ");
+	                comando = "MOVE_TAREAS;" + idOrigen + ";" + scn.nextLine();
+	                break;
+
+	            case "12":
 	                salir = true;
 	                continue;
 	                
@@ -224,14 +293,224 @@ public class Cliente {
 	                continue;
 	        }
 	            
-	            out.write(comando + "\n");
-	            out.flush();
-	            String respuesta = in.readLine();
-	            System.out.println("Servidor: " + respuesta);
+	            try {
+	                System.out.println("Servidor: " + conexion.enviar(comando));
+	            } catch (IOException e) {
+	                System.out.println("No se ha podido enviar el comando: " + e.getMessage());
+	            }
 	        }
 	
 	    } catch (IOException e) {
 	        e.printStackTrace();
 	    }
 	}
+
+	/**
+	 * Muestra los cambios de las tareas de un proyecto según los envía el servidor, hasta que el usuario pulsa Intro
+	 * Usa una conexión aparte, para que los eventos no se mezclen con las respuestas del menú.
+	 * @param host nombre o dirección del servidor
+	 * @param puerto puerto del servidor
+	 * @param idProyecto id del proyecto a seguir
+	 * @param scn entrada del usuario
+	 */
+	private static void seguirCambios(String host, int puerto, String idProyecto, Scanner scn) {
+		try (Socket sc = new Socket(host, puerto)) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(sc.getInputStream()));
+			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(sc.getOutputStream()));
+			out.write("SUBSCRIBE_PROYECTO;" + idProyecto + "\n");
+			out.flush();
+			String respuesta = in.readLine();
+			System.out.println("Servidor: " + respuesta);
+			if (respuesta == null || respuesta.startsWith("ERROR")) {
+				return;
+			}
+			System.out.println("Pulse Intro para volver al menú");
+			Thread lector = Thread.ofVirtual().start(() -> {
+				try {
+					String evento;
+					while ((evento = in.readLine()) != null) {
+						System.out.println("Cambio: " + evento);
+					}
+				} catch (IOException e) {
+					// La entrada se cierra al volver al menú
+				}
+			});
+			scn.nextLine();
+			// Cerrar la entrada despierta al lector con fin de flujo; el socket lo cierra el try al salir
+			sc.shutdownInput();
+			lector.join();
+		} catch (IOException e) {
+			System.out.println("No se puede seguir el proyecto: " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Importa las tareas de un fichero CSV y las envía al servidor en lotes
+	 * Se ignoran las líneas vacías y una primera línea de cabecera que empiece por "nombre".
+	 * Las líneas que no se pueden enviar (número de campos incorrecto o caracteres reservados del protocolo)
+	 * se informan y se omiten.
+	 * @param ruta ruta del fichero CSV
+	 * @param conexion conexión con el servidor
+	 * @throws IOException si falla la comunicación con el servidor
+	 */
+	private static void importarCSV(String ruta, Conexion conexion) throws IOException {
+		List<String> lote = new ArrayList<>();
+		int numeroLinea = 0;
+		try (BufferedReader csv = new BufferedReader(new FileReader(ruta))) {
+			String linea;
+			while ((linea = csv.readLine()) != null) {
+				numeroLinea++;
+				if (linea.isBlank() || (numeroLinea == 1 && linea.toLowerCase().startsWith("nombre"))) {
+					continue;
+				}
+				List<String> campos = separarCSV(linea);
+				if (campos.size() != 7) {
+					System.out.println("Línea " + numeroLinea + " omitida: se esperaban 7 campos");
+					continue;
+				}
+				if (campos.stream().anyMatch(c -> c.contains(";") || c.contains("|"))) {
+					System.out.println("Línea " + numeroLinea + " omitida: contiene ';' o '|'");
+					continue;
+				}
+				lote.add(String.join(";", campos));
+				if (lote.size() == TAREAS_POR_LOTE) {
+					enviarLote(lote, conexion);
+				}
+			}
+		} catch (FileNotFoundException e) {
+			System.out.println("No se encuentra el fichero: " + ruta);
+			return;
+		}
+		if (!lote.isEmpty()) {
+			enviarLote(lote, conexion);
+		}
+	}
+
+	/**
+	 * Envía un lote de tareas con INSERT_TAREAS_BATCH, muestra la respuesta y vacía el lote
+	 */
+	private static void enviarLote(List<String> lote, Conexion conexion) throws IOException {
+		System.out.println("Servidor: " + conexion.enviar("INSERT_TAREAS_BATCH;" + String.join("|", lote)));
+		lote.clear();
+	}
+
+	/**
+	 * Separa una línea CSV en campos. Admite campos entre comillas dobles con comas en su interior
+	 * y comillas escapadas duplicándolas ("").
+	 * @param linea línea del fichero
+	 * @return lista de campos
+	 */
+	private static List<String> separarCSV(String linea) {
+		List<String> campos = new ArrayList<>();
+		StringBuilder actual = new StringBuilder();
+		boolean entreComillas = false;
+		for (int i = 0; i < linea.length(); i++) {
+			char c = linea.charAt(i);
+			if (c == '"') {
+				if (entreComillas && i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+					actual.append('"');
+					i++;
+				} else {
+					entreComillas = !entreComillas;
+				}
+			} else if (c == ',' && !entreComillas) {
+				campos.add(actual.toString().trim());
+				actual.setLength(0);
+			} else {
+				actual.append(c);
+			}
+		}
+		campos.add(actual.toString().trim());
+		return campos;
+	}
+
+	/**
+	 * Conexión con el servidor que se rehace cuando falla
+	 * Si se corta la conexión o la respuesta no llega a tiempo, el comando se reenvía por una conexión nueva hasta
+	 * REINTENTOS veces, esperando cada vez el doble. Las escrituras se envían con una clave de idempotencia nueva
+	 * (!clave;COMANDO;...) que se repite en los reenvíos: si el primer envío llegó a ejecutarse, el servidor responde
+	 * lo mismo que entonces en lugar de ejecutarlo otra vez, de modo que un reintento no duplica tareas.
+	 * Tras un fallo no se reutiliza la conexión, para no leer como respuesta la que llegue tarde del envío anterior.
+	 */
+	private static class Conexion implements Closeable {
+		private final String host;
+		private final int puerto;
+		private Socket socket;
+		private BufferedReader in;
+		private BufferedWriter out;
+
+		Conexion(String host, int puerto) throws IOException {
+			this.host = host;
+			this.puerto = puerto;
+			conectar();
+		}
+
+		private void conectar() throws IOException {
+			socket = new Socket(host, puerto);
+			socket.setSoTimeout(ESPERA_RESPUESTA_MS);
+			in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+		}
+
+		/**
+		 * Envía un comando y devuelve su respuesta, reenviándolo si hace falta
+		 * @param comando comando sin el salto de línea
+		 * @return respuesta del servidor
+		 * @throws IOException si no se obtiene respuesta tras todos los reintentos
+		 */
+		String enviar(String comando) throws IOException {
+			int fin = comando.indexOf(';');
+			String nombre = fin < 0 ? comando : comando.substring(0, fin);
+			String linea = ESCRITURAS.contains(nombre) ? "!" + UUID.randomUUID() + ";" + comando : comando;
+			IOException error = null;
+			for (int intento = 0; intento <= REINTENTOS; intento++) {
+				if (intento > 0) {
+					esperar(ESPERA_REINTENTO_MS << (intento - 1));
+				}
+				try {
+					if (socket == null) {
+						conectar();
+					}
+					out.write(linea + "\n");
+					out.flush();
+					String respuesta = in.readLine();
+					if (respuesta == null) {
+						throw new EOFException("el servidor ha cerrado la conexión");
+					}
+					if (!respuesta.equals(COMANDO_EN_CURSO)) {
+						return respuesta;
+					}
+					// El envío anterior sigue ejecutándose: la conexión está bien, se pregunta de nuevo más tarde
+					error = new IOException("el comando sigue en curso en el servidor");
+				} catch (IOException e) {
+					error = e;
+					close();
+				}
+			}
+			throw error;
+		}
+
+		private static void esperar(long ms) throws InterruptedIOException {
+			try {
+				Thread.sleep(ms);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("reintento interrumpido");
+			}
+		}
+
+		@Override
+		public void close() {
+			if (socket != null) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// Se descarta igualmente
+				}
+				socket = null;
+			}
+		}
+	}
 }
@@ -0,0 +1,212 @@
+package cliente;
+
+import java.io.*;
+import java.net.Socket;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import modelos.Estado;
+import modelos.Proyecto;
+import modelos.Tarea;
+import modelos.Urgencia;
+import protocolo.BufferBinario;
+import protocolo.ProtocoloBinario;
+
+/**
+ * Cliente no interactivo que usa el protocolo binario, pensado para programas que mueven muchas tareas
+ * Las peticiones y respuestas viajan como tramas binarias (ver ProtocoloBinario), sin convertir los datos a texto.
+ * Cada llamada espera a su respuesta; no se debe usar desde varios hilos a la vez.
+ */
+public class ClienteBinario implements Closeable {
+	private final Socket socket;
+	private final BufferedInputStream in;
+	private final BufferedOutputStream out;
+	private final BufferBinario peticion = new BufferBinario(1024);
+	private final BufferBinario respuesta = new BufferBinario(1024);
+
+	/**
+	 * Abre la conexión con el servidor y negocia el protocolo binario
+	 * @param host nombre o dirección del servidor
+	 * @param puerto puerto del servidor
+	 * @throws IOException si no se puede conectar o el servidor no acepta el protocolo binario
+	 */
+	public ClienteBinario(String host, int puerto) throws IOException {
+		this.socket = new Socket(host, puerto);
+		this.socket.setTcpNoDelay(true);
+		this.in = new BufferedInputStream(socket.getInputStream());
+		this.out = new BufferedOutputStream(socket.getOutputStream());
+		out.write(ProtocoloBinario.SALUDO);
+		out.flush();
+		byte[] eco = in.readNBytes(ProtocoloBinario.SALUDO.length);
+		if (!Arrays.equals(eco, ProtocoloBinario.SALUDO)) {
+			socket.close();
+			throw new IOException("El servidor no admite el protocolo binario");
+		}
+	}
+
+	public void crearProyecto(String nombre) throws IOException {
+		iniciar(ProtocoloBinario.INSERT_PROYECTO).escribirTexto(nombre);
+		ejecutar();
+	}
+
+	public List<Proyecto> listarProyectos() throws IOException {
+		iniciar(ProtocoloBinario.LIST_PROYECTOS);
+		BufferBinario r = ejecutar();
+		int n = r.leerVarint();
+		List<Proyecto> proyectos = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			proyectos.add(ProtocoloBinario.leerProyecto(r));
+		}
+		return proyectos;
+	}
+
+	public void actualizarProyecto(int id, String nombre) throws IOException {
+		BufferBinario p = iniciar(ProtocoloBinario.UPDATE_PROYECTO);
+		p.escribirVarint(id);
+		p.escribirTexto(nombre);
+		ejecutar();
+	}
+
+	/**
+	 * Elimina un proyecto con todas sus tareas
+	 * @return número de tareas eliminadas con el proyecto
+	 */
+	public int eliminarProyecto(int id) throws IOException {
+		iniciar(ProtocoloBinario.DELETE_PROYECTO).escribirVarint(id);
+		return ejecutar().leerVarint();
+	}
+
+	public void crearTarea(Tarea t) throws IOException {
+		ProtocoloBinario.escribirTarea(iniciar(ProtocoloBinario.INSERT_TAREA), t);
+		ejecutar();
+	}
+
+	/**
+	 * Crea varias tareas en una única transacción
+	 * @param tareas tareas a crear
+	 * @return identificadores generados, en el mismo orden que la lista
+	 * @throws IOException si falla la comunicación o el servidor devuelve un error
+	 */
+	public int[] crearTareas(List<Tarea> tareas) throws IOException {
+		BufferBinario p = iniciar(ProtocoloBinario.INSERT_TAREAS_BATCH);
+		p.escribirVarint(tareas.size());
+		for (Tarea t : tareas) {
+			ProtocoloBinario.escribirTarea(p, t);
+		}
+		BufferBinario r = ejecutar();
+		int[] ids = new int[r.leerVarint()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = r.leerVarint();
+		}
+		return ids;
+	}
+
+	public List<Tarea> listarTareas(int idProyecto) throws IOException {
+		iniciar(ProtocoloBinario.LIST_TAREAS).escribirVarint(idProyecto);
+		return leerTareas(ejecutar());
+	}
+
+	/**
+	 * Obtiene una página de las tareas de un proyecto, ordenadas por id
+	 * @param idProyecto identificador del proyecto
+	 * @param despuesDeId id de la última tarea de la página anterior (0 para la primera)
+	 * @param limite número máximo de tareas de la página
+	 * @return tareas de la página; si hay menos que el límite no quedan más
+	 * @throws IOException si falla la comunicación o el servidor devuelve un error
+	 */
+	public List<Tarea> listarTareas(int idProyecto, int despuesDeId, int limite) throws IOException {
+		BufferBinario p = iniciar(ProtocoloBinario.LIST_TAREAS_PAGINA);
+		p.escribirVarint(idProyecto);
+		p.escribirVarint(despuesDeId);
+		p.escribirVarint(limite);
+		return leerTareas(ejecutar());
+	}
+
+	private static List<Tarea> leerTareas(BufferBinario r) {
+		int n = r.leerVarint();
+		List<Tarea> tareas = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			tareas.add(ProtocoloBinario.leerTarea(r));
+		}
+		return tareas;
+	}
+
+	public void actualizarEstado(int id, Estado estado) throws IOException {
+		BufferBinario p = iniciarActualizacion(id, ProtocoloBinario.CAMPO_ESTADO);
+		p.escribirByte(estado.getCodigo());
+		ejecutar();
+	}
+
+	public void actualizarUrgencia(int id, Urgencia urgencia) throws IOException {
+		BufferBinario p = iniciarActualizacion(id, ProtocoloBinario.CAMPO_URGENCIA);
+		p.escribirByte(urgencia.getCodigo());
+		ejecutar();
+	}
+
+	public void actualizarFechaFin(int id, LocalDate fecha) throws IOException {
+		ProtocoloBinario.escribirFecha(iniciarActualizacion(id, ProtocoloBinario.CAMPO_FECHA_FIN), fecha);
+		ejecutar();
+	}
+
+	public void eliminarTarea(int id) throws IOException {
+		iniciar(ProtocoloBinario.DELETE_TAREA).escribirVarint(id);
+		ejecutar();
+	}
+
+	/**
+	 * Archiva las tareas finalizadas de un proyecto
+	 * @return número de tareas archivadas
+	 */
+	public int archivarFinalizadas(int idProyecto) throws IOException {
+		iniciar(ProtocoloBinario.ARCHIVE_TAREAS).escribirVarint(idProyecto);
+		return ejecutar().leerVarint();
+	}
+
+	/**
+	 * Pasa todas las tareas de un proyecto a otro
+	 * @return número de tareas movidas
+	 */
+	public int moverTareas(int idOrigen, int idDestino) throws IOException {
+		BufferBinario p = iniciar(ProtocoloBinario.MOVE_TAREAS);
+		p.escribirVarint(idOrigen);
+		p.escribirVarint(idDestino);
+		return ejecutar().leerVarint();
+	}
+
+	@Override
+	public void close() throws IOException {
+		socket.close();
+	}
+
+	private BufferBinario iniciar(int operacion) {
+		peticion.limpiar();
+		peticion.escribirByte(operacion);
+		return peticion;
+	}
+
+	private BufferBinario iniciarActualizacion(int id, int campo) {
+		BufferBinario p = iniciar(ProtocoloBinario.UPDATE_TAREA);
+		p.escribirVarint(id);
+		p.escribirByte(campo);
+		return p;
+	}
+
+	/**
+	 * Envía la petición preparada y espera su respuesta
+	 * @return buffer de respuesta, situado tras el código de resultado
+	 * @throws IOException si falla la comunicación o el servidor devuelve un error (con su mensaje)
+	 */
+	private BufferBinario ejecutar() throws IOException {
+		peticion.escribirTrama(out);
+		out.flush();
+		if (!respuesta.leerTrama(in, ProtocoloBinario.MAX_TRAMA)) {
+			throw new EOFException("El servidor ha cerrado la conexión");
+		}
+		if (respuesta.leerByte() == ProtocoloBinario.RESULTADO_ERROR) {
+			throw new IOException("ERROR " + respuesta.leerTexto());
+		}
+		return respuesta;
+	}
+}
@@ -0,0 +1,108 @@
+package cliente;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cliente no interactivo que usa el modo pipeline del protocolo, pensado para scripts y programas
+ * Envía comandos etiquetados (#id;COMANDO) sin esperar a las respuestas anteriores y
+ * entrega cada respuesta a quien envió el comando, aunque lleguen en otro orden.
+ * Se puede usar desde varios hilos a la vez.
+ */
+public class ClientePipeline implements Closeable {
+	private final Socket socket;
+	private final BufferedWriter out;
+	private final Semaphore plazas;
+	private final AtomicLong siguienteId = new AtomicLong();
+	private final Map<Long, CompletableFuture<String>> pendientes = new ConcurrentHashMap<>();
+	private volatile IOException cierre;
+
+	/**
+	 * Abre la conexión con el servidor
+	 * @param host nombre o dirección del servidor
+	 * @param puerto puerto del servidor
+	 * @param maxEnCurso número máximo de comandos enviados sin respuesta; al alcanzarlo enviar() espera
+	 * @throws IOException si no se puede conectar con el servidor
+	 */
+	public ClientePipeline(String host, int puerto, int maxEnCurso) throws IOException {
+		this.socket = new Socket(host, puerto);
+		this.socket.setTcpNoDelay(true);
+		this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+		this.plazas = new Semaphore(maxEnCurso);
+		BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+		Thread.ofVirtual().name("cliente-pipeline-lector").start(() -> leerRespuestas(in));
+	}
+
+	/**
+	 * Envía un comando sin esperar su respuesta
+	 * @param comando comando del protocolo sin etiqueta, por ejemplo "LIST_TAREAS;1"
+	 * @return respuesta del servidor, disponible cuando llegue
+	 * @throws IOException si falla el envío
+	 * @throws InterruptedException si se interrumpe la espera por una plaza libre
+	 */
+	public CompletableFuture<String> enviar(String comando) throws IOException, InterruptedException {
+		plazas.acquire();
+		long id = siguienteId.incrementAndGet();
+		CompletableFuture<String> respuesta = new CompletableFuture<>();
+		pendientes.put(id, respuesta);
+		respuesta.whenComplete((r, e) -> plazas.release());
+		if (cierre != null) {
+			pendientes.remove(id);
+			respuesta.completeExceptionally(cierre);
+			return respuesta;
+		}
+		try {
+			synchronized (out) {
+				out.write("#" + id + ";" + comando + "\n");
+				out.flush();
+			}
+		} catch (IOException e) {
+			pendientes.remove(id);
+			respuesta.completeExceptionally(e);
+			throw e;
+		}
+		return respuesta;
+	}
+
+	/**
+	 * Lee las respuestas del servidor y completa el comando correspondiente a cada una
+	 */
+	private void leerRespuestas(BufferedReader in) {
+		IOException causa = new EOFException("Conexión cerrada por el servidor");
+		try {
+			String linea;
+			while ((linea = in.readLine()) != null) {
+				int separador = linea.indexOf(';');
+				if (!linea.startsWith("#") || separador < 0) {
+					continue;
+				}
+				CompletableFuture<String> respuesta = pendientes.remove(Long.parseLong(linea.substring(1, separador)));
+				if (respuesta != null) {
+					respuesta.complete(linea.substring(separador + 1));
+				}
+			}
+		} catch (IOException e) {
+			causa = e;
+		}
+		cierre = causa;
+		for (Long id : pendientes.keySet()) {
+			CompletableFuture<String> respuesta = pendientes.remove(id);
+			if (respuesta != null) {
+				respuesta.completeExceptionally(causa);
+			}
+		}
+	}
+
+	/**
+	 * Cierra la conexión; los comandos sin respuesta terminan con error
+	 */
+	@Override
+	public void close() throws IOException {
+		socket.close();
+	}
+}
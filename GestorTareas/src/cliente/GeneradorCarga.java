@@ -0,0 +1,543 @@
+package cliente;
+
+import java.io.*;
+import java.net.Socket;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import almacen.AlmacenMemoria;
+import almacen.PoliticaSincronizacion;
+import config.Configuracion;
+import dao.CacheConsultas;
+import dao.RepositoriosMedidos;
+import metricas.Histograma;
+import servidor.MotorRed;
+import servidor.Servidor;
+import servidor.ServicioGestor;
+import servidor.ServidorBloqueante;
+
+/**
+ * Generador de carga sin interfaz para el protocolo de texto del servidor, pensado para planificar su capacidad
+ * Abre muchas conexiones a la vez, cada una atendida por un hilo virtual que envía un comando y espera su respuesta,
+ * y reparte entre ellas un ritmo total de comandos por segundo. Los comandos se eligen al azar según una mezcla de
+ * altas, listados, modificaciones y borrados de tareas, y el proyecto según una distribución de Zipf, de modo que unos
+ * pocos proyectos reciben la mayor parte de la carga, como en producción.
+ * Antes de medir crea sus propios proyectos con unas tareas cada uno y anota los ids de las tareas para modificarlas y
+ * borrarlas después; las altas se hacen con INSERT_TAREAS_BATCH de una fila porque su respuesta lleva el id.
+ * La latencia de cada comando se cuenta desde el instante en que tocaba enviarlo según el ritmo, no desde que se
+ * envía: si el servidor se retrasa, la espera acumulada aparece en los percentiles en lugar de ocultarse
+ * (omisión coordinada). Cada cierto intervalo se escribe una línea con el ritmo conseguido, la tasa de errores y los
+ * percentiles de ese intervalo; al terminar, el resumen por tipo de comando y las métricas del servidor (STATS).
+ * Con gestor.carga.embebido=true arranca en el mismo proceso un servidor con el almacén en memoria sin disco, que
+ * sustituye a la base de datos, para medir sin instalar nada más.
+ * Parámetros configurables (propiedades del sistema):
+ * - gestor.carga.host: servidor al que se conecta (localhost)
+ * - gestor.carga.puerto: puerto del servidor (5000)
+ * - gestor.carga.conexiones: conexiones concurrentes (64)
+ * - gestor.carga.ritmo: comandos por segundo entre todas las conexiones (1000, 0 = tan rápido como responda)
+ * - gestor.carga.duracionS: duración de la medición (30)
+ * - gestor.carga.informeS: segundos entre líneas de progreso (5)
+ * - gestor.carga.mezcla: peso de cada tipo de comando (insert=10,list=30,update=50,delete=10)
+ * - gestor.carga.proyectos: proyectos creados para la prueba (10)
+ * - gestor.carga.tareas: tareas creadas en cada proyecto antes de medir (100)
+ * - gestor.carga.sesgo: exponente de la distribución de Zipf entre proyectos (1.0, 0 = uniforme)
+ * - gestor.carga.embebido: arranca un servidor en el mismo proceso con el almacén en memoria (false)
+ */
+public final class GeneradorCarga {
+	private static final Pattern PROYECTO = Pattern.compile("Proyecto\\{id=(\\d+), nombre='([^']*)'");
+	private static final String[] ESTADOS = { "pendiente", "en progreso", "finalizado" };
+	private static final String[] URGENCIAS = { "alta", "media", "baja" };
+	private static final int TAREAS_POR_LOTE = 500;
+
+	/**
+	 * Tipos de comando de la mezcla, con su nombre en gestor.carga.mezcla
+	 */
+	private enum Tipo {
+		INSERT_TAREA("insert"), LIST_TAREAS("list"), UPDATE_TAREA("update"), DELETE_TAREA("delete");
+
+		private final String clave;
+
+		Tipo(String clave) {
+			this.clave = clave;
+		}
+	}
+
+	/**
+	 * Latencias y errores acumulados de un intervalo o de toda la medición
+	 */
+	private static final class Medidas {
+		final Histograma latencias = new Histograma();
+		final LongAdder errores = new LongAdder();
+
+		void registrar(long nanos, boolean error) {
+			latencias.registrar(nanos);
+			if (error) {
+				errores.increment();
+			}
+		}
+	}
+
+	/**
+	 * Ids de las tareas de un proyecto creadas por el generador y todavía no borradas
+	 */
+	private static final class TareasProyecto {
+		private int[] ids = new int[16];
+		private int n;
+
+		synchronized void poner(int id) {
+			if (n == ids.length) {
+				ids = Arrays.copyOf(ids, n * 2);
+			}
+			ids[n++] = id;
+		}
+
+		/**
+		 * @return una tarea al azar, o -1 si no queda ninguna
+		 */
+		synchronized int cualquiera() {
+			return n == 0 ? -1 : ids[ThreadLocalRandom.current().nextInt(n)];
+		}
+
+		/**
+		 * Quita una tarea al azar para borrarla
+		 * @return su id, o -1 si no queda ninguna
+		 */
+		synchronized int sacar() {
+			if (n == 0) {
+				return -1;
+			}
+			int i = ThreadLocalRandom.current().nextInt(n);
+			int id = ids[i];
+			ids[i] = ids[--n];
+			return id;
+		}
+	}
+
+	private final String host = Configuracion.texto("carga.host", "localhost");
+	private final int puerto = Configuracion.entero("carga.puerto", 5000);
+	private final int conexiones = Configuracion.entero("carga.conexiones", 64);
+	private final int ritmo = Configuracion.entero("carga.ritmo", 1000);
+	private final long duracionS = Configuracion.largo("carga.duracionS", 30);
+	private final long informeS = Configuracion.largo("carga.informeS", 5);
+	private final int numeroProyectos = Configuracion.entero("carga.proyectos", 10);
+	private final int tareasIniciales = Configuracion.entero("carga.tareas", 100);
+	private final double sesgo = Double.parseDouble(Configuracion.texto("carga.sesgo", "1.0"));
+
+	private final Tipo[] tipos = Tipo.values();
+	private final double[] pesosTipo;
+	private final double[] pesosProyecto = new double[numeroProyectos];
+	private final List<Integer> proyectos = new ArrayList<>();
+	private final List<TareasProyecto> tareas = new ArrayList<>();
+	private final Map<Tipo, Medidas> porTipo = new EnumMap<>(Tipo.class);
+	private final AtomicReference<Medidas> intervalo = new AtomicReference<>(new Medidas());
+
+	private GeneradorCarga() {
+		pesosTipo = acumulados(leerMezcla(Configuracion.texto("carga.mezcla", "insert=10,list=30,update=50,delete=10")));
+		for (int i = 0; i < numeroProyectos; i++) {
+			pesosProyecto[i] = 1 / Math.pow(i + 1, sesgo);
+		}
+		acumulados(pesosProyecto);
+		for (Tipo t : tipos) {
+			porTipo.put(t, new Medidas());
+		}
+	}
+
+	/**
+	 * Punto de entrada del generador de carga; los parámetros se leen de las propiedades gestor.carga.*
+	 */
+	public static void main(String[] args) {
+		MotorRed embebido = null;
+		AlmacenMemoria memoria = null;
+		try {
+			GeneradorCarga generador = new GeneradorCarga();
+			if (Configuracion.booleano("carga.embebido", false)) {
+				memoria = new AlmacenMemoria(null, PoliticaSincronizacion.NUNCA);
+				embebido = generador.arrancarServidor(memoria);
+			}
+			generador.preparar();
+			generador.medir();
+		} catch (IOException | InterruptedException | IllegalArgumentException e) {
+			System.out.println("Error en la prueba de carga: " + e.getMessage());
+		} finally {
+			if (embebido != null) {
+				embebido.detener(1_000);
+			}
+			if (memoria != null) {
+				try {
+					memoria.close();
+				} catch (IOException e) {
+					System.out.println("Error al cerrar el almacenamiento: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Arranca un servidor de texto en el puerto configurado con el almacén en memoria y espera a que acepte conexiones
+	 */
+	private MotorRed arrancarServidor(AlmacenMemoria memoria) throws IOException, InterruptedException {
+		RepositoriosMedidos medidos = new RepositoriosMedidos(memoria, memoria);
+		CacheConsultas cache = new CacheConsultas(medidos, medidos, Configuracion.entero("cache.maxEntradas", 1000),
+				Configuracion.largo("cache.ttlMs", 5_000));
+		MotorRed motor = new ServidorBloqueante(puerto, conexiones + 8, 0, 256,
+				Servidor.crearProcesador(new ServicioGestor(medidos, medidos, cache)));
+		Thread hilo = new Thread(() -> {
+			try {
+				motor.ejecutar();
+			} catch (IOException e) {
+				System.out.println("Error en el servidor embebido: " + e.getMessage());
+			}
+		}, "carga-servidor");
+		hilo.setDaemon(true);
+		hilo.start();
+		for (int i = 0; i < 100; i++) {
+			try (Socket s = new Socket(host, puerto)) {
+				System.out.println("Servidor embebido con almacén en memoria en el puerto " + puerto);
+				return motor;
+			} catch (IOException e) {
+				Thread.sleep(50);
+			}
+		}
+		throw new IOException("El servidor embebido no ha arrancado en el puerto " + puerto);
+	}
+
+	// Preparación
+
+	/**
+	 * Crea los proyectos de la prueba, con un nombre propio de esta ejecución, y sus tareas iniciales
+	 */
+	private void preparar() throws IOException {
+		long inicio = System.nanoTime();
+		String prefijo = "carga-" + Long.toString(System.currentTimeMillis(), 36) + "-";
+		try (Conexion c = new Conexion()) {
+			for (int i = 0; i < numeroProyectos; i++) {
+				comprobar(c.enviar("INSERT_PROYECTO;" + prefijo + i));
+			}
+			Matcher m = PROYECTO.matcher(c.enviar("LIST_PROYECTOS"));
+			while (m.find()) {
+				if (m.group(2).startsWith(prefijo)) {
+					proyectos.add(Integer.parseInt(m.group(1)));
+					tareas.add(new TareasProyecto());
+				}
+			}
+			if (proyectos.size() != numeroProyectos) {
+				throw new IOException("Se esperaban " + numeroProyectos + " proyectos de la prueba y hay " + proyectos.size());
+			}
+			for (int p = 0; p < proyectos.size(); p++) {
+				for (int hechas = 0; hechas < tareasIniciales; hechas += TAREAS_POR_LOTE) {
+					StringBuilder lote = new StringBuilder("INSERT_TAREAS_BATCH;");
+					for (int i = 0; i < Math.min(TAREAS_POR_LOTE, tareasIniciales - hechas); i++) {
+						lote.append(i == 0 ? "" : "|").append(filaTarea(proyectos.get(p)));
+					}
+					for (int id : leerIds(comprobar(c.enviar(lote.toString())))) {
+						tareas.get(p).poner(id);
+					}
+				}
+			}
+		}
+		System.out.printf(Locale.ROOT, "Preparados %d proyectos con %d tareas cada uno en %d ms%n", proyectos.size(),
+				tareasIniciales, (System.nanoTime() - inicio) / 1_000_000);
+	}
+
+	// Medición
+
+	/**
+	 * Lanza las conexiones y escribe una línea de progreso cada informeS segundos hasta que terminan
+	 */
+	private void medir() throws IOException, InterruptedException {
+		System.out.printf(Locale.ROOT, "Carga: %d conexiones, %s comandos/s, %d s, mezcla %s%n", conexiones,
+				ritmo > 0 ? Integer.toString(ritmo) : "máximo", duracionS, mezcla());
+		// Las conexiones se abren antes de empezar, para que su establecimiento no cuente en las latencias
+		List<Conexion> abiertas = new ArrayList<>(conexiones);
+		for (int i = 0; i < conexiones; i++) {
+			abiertas.add(new Conexion());
+		}
+		long inicio = System.nanoTime();
+		long fin = inicio + duracionS * 1_000_000_000L;
+		List<Thread> hilos = new ArrayList<>(conexiones);
+		for (int i = 0; i < conexiones; i++) {
+			int numero = i;
+			Conexion c = abiertas.get(i);
+			hilos.add(Thread.ofVirtual().name("carga-" + i).start(() -> ejecutarConexion(c, numero, inicio, fin)));
+		}
+		long desde = inicio;
+		while (desde < fin) {
+			long hasta = Math.min(desde + informeS * 1_000_000_000L, fin);
+			long espera = hasta - System.nanoTime();
+			if (espera > 0) {
+				Thread.sleep(espera / 1_000_000, (int) (espera % 1_000_000));
+			}
+			if (hasta == fin) {
+				// Los últimos comandos en curso cuentan en el último intervalo
+				for (Thread hilo : hilos) {
+					hilo.join();
+				}
+			}
+			informar(inicio, desde);
+			desde = hasta;
+		}
+		long total = System.nanoTime() - inicio;
+		System.out.println("Resumen:");
+		long comandos = 0;
+		long errores = 0;
+		for (Tipo t : tipos) {
+			Medidas m = porTipo.get(t);
+			long n = m.latencias.getTotal();
+			if (n == 0) {
+				continue;
+			}
+			comandos += n;
+			errores += m.errores.sum();
+			System.out.printf(Locale.ROOT, "  %-12s errores=%d %s%n", t, m.errores.sum(), m.latencias);
+		}
+		System.out.printf(Locale.ROOT, "  total: %d comandos en %.1f s, %.0f comandos/s, errores=%d (%.2f%%)%n", comandos,
+				total / 1e9, comandos * 1e9 / total, errores, comandos == 0 ? 0 : errores * 100.0 / comandos);
+		try (Conexion c = new Conexion()) {
+			System.out.println("Métricas del servidor: " + c.enviar("STATS"));
+		}
+	}
+
+	/**
+	 * Escribe las medidas del intervalo que termina ahora y empieza uno nuevo
+	 */
+	private void informar(long inicio, long desde) {
+		Medidas m = intervalo.getAndSet(new Medidas());
+		long ahora = System.nanoTime();
+		long n = m.latencias.getTotal();
+		long[] p = m.latencias.percentiles(50, 99, 99.9);
+		System.out.printf(Locale.ROOT, "[%5.1f s] %7.0f comandos/s errores=%.2f%% p50=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms%n",
+				(ahora - inicio) / 1e9, n * 1e9 / Math.max(1, ahora - desde), n == 0 ? 0 : m.errores.sum() * 100.0 / n,
+				p[0] / 1e6, p[1] / 1e6, p[2] / 1e6, m.latencias.getMaximo() / 1e6);
+	}
+
+	/**
+	 * Envía comandos por una conexión al ritmo que le toca hasta el final de la medición
+	 * Las conexiones empiezan escalonadas dentro del primer intervalo para no enviar todas a la vez. Si la conexión
+	 * se cae, el comando cuenta como error y se abre otra.
+	 */
+	private void ejecutarConexion(Conexion c, int numero, long inicio, long fin) {
+		long periodo = ritmo > 0 ? (long) (conexiones * 1e9 / ritmo) : 0;
+		long previsto = inicio + periodo * numero / conexiones;
+		while (true) {
+			if (periodo > 0) {
+				long espera = previsto - System.nanoTime();
+				if (espera > 0) {
+					LockSupport.parkNanos(espera);
+				}
+			} else {
+				previsto = System.nanoTime();
+			}
+			if (previsto >= fin) {
+				break;
+			}
+			Tipo tipo = tipos[elegir(pesosTipo)];
+			int p = elegir(pesosProyecto);
+			boolean error;
+			try {
+				if (c == null) {
+					c = new Conexion();
+				}
+				error = ejecutar(c, tipo, p);
+			} catch (IOException | RuntimeException e) {
+				error = true;
+				if (c != null) {
+					c.close();
+					c = null;
+				}
+			}
+			long latencia = System.nanoTime() - previsto;
+			porTipo.get(tipo).registrar(latencia, error);
+			intervalo.get().registrar(latencia, error);
+			previsto += periodo;
+		}
+		if (c != null) {
+			c.close();
+		}
+	}
+
+	/**
+	 * Envía un comando del tipo indicado sobre el proyecto de la posición p
+	 * @return true si la respuesta es un error
+	 */
+	private boolean ejecutar(Conexion c, Tipo tipo, int p) throws IOException {
+		int idProyecto = proyectos.get(p);
+		TareasProyecto suyas = tareas.get(p);
+		int idTarea = tipo == Tipo.UPDATE_TAREA ? suyas.cualquiera() : tipo == Tipo.DELETE_TAREA ? suyas.sacar() : 0;
+		if (idTarea < 0) {
+			// No quedan tareas que modificar o borrar en el proyecto: se crea una en su lugar
+			tipo = Tipo.INSERT_TAREA;
+		}
+		String respuesta;
+		ThreadLocalRandom azar = ThreadLocalRandom.current();
+		switch (tipo) {
+		case INSERT_TAREA:
+			respuesta = c.enviar("INSERT_TAREAS_BATCH;" + filaTarea(idProyecto));
+			if (respuesta.startsWith("OK")) {
+				for (int id : leerIds(respuesta)) {
+					suyas.poner(id);
+				}
+			}
+			break;
+		case LIST_TAREAS:
+			respuesta = c.enviar("LIST_TAREAS;" + idProyecto);
+			break;
+		case UPDATE_TAREA:
+			respuesta = azar.nextBoolean()
+					? c.enviar("UPDATE_TAREA;" + idTarea + ";estado;" + ESTADOS[azar.nextInt(ESTADOS.length)])
+					: c.enviar("UPDATE_TAREA;" + idTarea + ";urgencia;" + URGENCIAS[azar.nextInt(URGENCIAS.length)]);
+			break;
+		case DELETE_TAREA:
+			respuesta = c.enviar("DELETE_TAREA;" + idTarea);
+			break;
+		default:
+			throw new IllegalStateException("Tipo de comando desconocido: " + tipo);
+		}
+		return respuesta.startsWith("ERROR");
+	}
+
+	// Utilidades
+
+	/**
+	 * Conexión de texto que envía un comando y espera su respuesta de una línea
+	 */
+	private final class Conexion implements Closeable {
+		private final Socket socket;
+		private final BufferedReader in;
+		private final BufferedWriter out;
+
+		Conexion() throws IOException {
+			socket = new Socket(host, puerto);
+			socket.setTcpNoDelay(true);
+			in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+		}
+
+		String enviar(String comando) throws IOException {
+			out.write(comando);
+			out.newLine();
+			out.flush();
+			String respuesta = in.readLine();
+			if (respuesta == null) {
+				throw new EOFException("Conexión cerrada por el servidor");
+			}
+			return respuesta;
+		}
+
+		@Override
+		public void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Ya estaba cerrada
+			}
+		}
+	}
+
+	private static String comprobar(String respuesta) throws IOException {
+		if (!respuesta.startsWith("OK")) {
+			throw new IOException("Respuesta inesperada al preparar la prueba: " + respuesta);
+		}
+		return respuesta;
+	}
+
+	/**
+	 * @return ids de la respuesta de INSERT_TAREAS_BATCH ("OK n tareas creadas ids=[a, b, ...]")
+	 */
+	private static int[] leerIds(String respuesta) {
+		int inicio = respuesta.indexOf("ids=[");
+		int fin = respuesta.indexOf(']', inicio);
+		if (inicio < 0 || fin < 0 || fin == inicio + 5) {
+			return new int[0];
+		}
+		String[] partes = respuesta.substring(inicio + 5, fin).split(", ");
+		int[] ids = new int[partes.length];
+		for (int i = 0; i < partes.length; i++) {
+			ids[i] = Integer.parseInt(partes[i]);
+		}
+		return ids;
+	}
+
+	private static String filaTarea(int idProyecto) {
+		ThreadLocalRandom azar = ThreadLocalRandom.current();
+		LocalDate inicio = LocalDate.of(2025, 1, 1).plusDays(azar.nextInt(365));
+		return "Tarea de carga;generada por GeneradorCarga;" + ESTADOS[azar.nextInt(ESTADOS.length)] + ";"
+				+ URGENCIAS[azar.nextInt(URGENCIAS.length)] + ";" + inicio + ";" + inicio.plusDays(1 + azar.nextInt(60))
+				+ ";" + idProyecto;
+	}
+
+	/**
+	 * Lee la mezcla de comandos ("insert=10,list=30,...") en el orden de Tipo; los tipos que no aparecen pesan 0
+	 */
+	private double[] leerMezcla(String texto) {
+		double[] pesos = new double[tipos.length];
+		for (String parte : texto.split(",")) {
+			String[] claveValor = parte.trim().split("=");
+			int i = 0;
+			while (i < tipos.length && !tipos[i].clave.equalsIgnoreCase(claveValor[0])) {
+				i++;
+			}
+			if (i == tipos.length || claveValor.length != 2) {
+				throw new IllegalArgumentException("Mezcla de comandos no válida: " + parte);
+			}
+			pesos[i] = Double.parseDouble(claveValor[1]);
+		}
+		return pesos;
+	}
+
+	private String mezcla() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < tipos.length; i++) {
+			double peso = pesosTipo[i] - (i == 0 ? 0 : pesosTipo[i - 1]);
+			sb.append(i == 0 ? "" : ",").append(tipos[i].clave).append('=').append(Math.round(peso * 100)).append('%');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Convierte unos pesos en sus sumas acumuladas normalizadas a 1, para elegir con elegir()
+	 */
+	private static double[] acumulados(double[] pesos) {
+		double suma = 0;
+		for (int i = 0; i < pesos.length; i++) {
+			suma += pesos[i];
+			pesos[i] = suma;
+		}
+		if (suma <= 0) {
+			throw new IllegalArgumentException("Los pesos deben sumar más de 0");
+		}
+		for (int i = 0; i < pesos.length; i++) {
+			pesos[i] /= suma;
+		}
+		return pesos;
+	}
+
+	/**
+	 * @return posición elegida al azar según los pesos acumulados
+	 */
+	private static int elegir(double[] acumulados) {
+		double r = ThreadLocalRandom.current().nextDouble();
+		// Primera posición cuyo acumulado supera r, de modo que los pesos 0 nunca se eligen
+		int desde = 0;
+		int hasta = acumulados.length - 1;
+		while (desde < hasta) {
+			int medio = (desde + hasta) >>> 1;
+			if (acumulados[medio] > r) {
+				hasta = medio;
+			} else {
+				desde = medio + 1;
+			}
+		}
+		return desde;
+	}
+}
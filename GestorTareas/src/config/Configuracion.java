@@ -0,0 +1,54 @@
+package config;
+
+/**
+ * Clase de utilidad para leer los parámetros de configuración de la aplicación
+ * Los valores se toman de las propiedades del sistema con el prefijo "gestor." (por ejemplo -Dgestor.puerto=5000)
+ * Si una propiedad no está definida se utiliza el valor por defecto indicado
+ */
+public final class Configuracion {
+	private static final String PREFIJO = "gestor.";
+
+	private Configuracion() {
+	}
+
+	/**
+	 * Devuelve el valor entero de una propiedad
+	 * @param clave nombre de la propiedad sin el prefijo
+	 * @param porDefecto valor utilizado si la propiedad no está definida
+	 * @return valor de la propiedad
+	 */
+	public static int entero(String clave, int porDefecto) {
+		return Integer.getInteger(PREFIJO + clave, porDefecto);
+	}
+
+	/**
+	 * Devuelve el valor de tipo long de una propiedad
+	 * @param clave nombre de la propiedad sin el prefijo
+	 * @param porDefecto valor utilizado si la propiedad no está definida
+	 * @return valor de la propiedad
+	 */
+	public static long largo(String clave, long porDefecto) {
+		return Long.getLong(PREFIJO + clave, porDefecto);
+	}
+
+	/**
+	 * Devuelve el valor de texto de una propiedad
+	 * @param clave nombre de la propiedad sin el prefijo
+	 * @param porDefecto valor utilizado si la propiedad no está definida
+	 * @return valor de la propiedad
+	 */
+	public static String texto(String clave, String porDefecto) {
+		return System.getProperty(PREFIJO + clave, porDefecto);
+	}
+
+	/**
+	 * Devuelve el valor booleano de una propiedad
+	 * @param clave nombre de la propiedad sin el prefijo
+	 * @param porDefecto valor utilizado si la propiedad no está definida
+	 * @return valor de la propiedad
+	 */
+	public static boolean booleano(String clave, boolean porDefecto) {
+		String valor = System.getProperty(PREFIJO + clave);
+		return valor == null ? porDefecto : Boolean.parseBoolean(valor);
+	}
+}
@@ -0,0 +1,125 @@
+package dao;
+
+import metricas.Metricas;
+import modelos.Proyecto;
+import modelos.Tarea;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caché de lectura delante de RepositorioProyectos.obtenerProyectos y RepositorioTareas.obtenerTareasPorProyecto
+ * Las listas se cargan del almacenamiento la primera vez que se piden y se sirven desde memoria
+ * hasta que una escritura las invalida o caduca su tiempo de vida.
+ * Las listas devueltas son inmutables y se comparten entre hilos, por lo que no deben modificarse.
+ * Cada lectura se registra en Metricas como "cache.metodo", con aciertos y fallos juntos.
+ */
+public class CacheConsultas {
+	private static final String CLAVE_PROYECTOS = "proyectos";
+
+	private final RepositorioProyectos proyectoDAO;
+	private final RepositorioTareas tareaDAO;
+	private final CacheLRU<String, List<Proyecto>> proyectos;
+	private final CacheLRU<Integer, List<Tarea>> tareas;
+	// Proyecto al que pertenece cada tarea de las listas guardadas, para invalidar solo la lista afectada
+	private final Map<Integer, Integer> proyectoDeTarea = new ConcurrentHashMap<>();
+	private final Metricas metricas = Metricas.global();
+
+	/**
+	 * @param proyectoDAO repositorio de proyectos usado para cargar los datos
+	 * @param tareaDAO repositorio de tareas usado para cargar los datos
+	 * @param maxEntradas número máximo de listas de tareas guardadas
+	 * @param ttlMs tiempo de vida de cada lista en milisegundos
+	 */
+	public CacheConsultas(RepositorioProyectos proyectoDAO, RepositorioTareas tareaDAO, int maxEntradas, long ttlMs) {
+		this.proyectoDAO = proyectoDAO;
+		this.tareaDAO = tareaDAO;
+		this.proyectos = new CacheLRU<>(1, ttlMs, null);
+		// La correspondencia se rellena solo con las listas que llegan a guardarse: si una carga se descarta nunca
+		// pasaría por alRetirar y sus tareas se quedarían en ella para siempre
+		this.tareas = new CacheLRU<>(maxEntradas, ttlMs,
+				(idProyecto, lista) -> lista.forEach(t -> proyectoDeTarea.put(t.getId(), idProyecto)),
+				(idProyecto, lista) -> lista.forEach(t -> proyectoDeTarea.remove(t.getId(), idProyecto)));
+	}
+
+	/**
+	 * Obtiene la lista de proyectos, desde la caché si está disponible
+	 * @return List inmutable de proyectos
+	 * @throws SQLException si falla la carga desde la base de datos
+	 */
+	public List<Proyecto> obtenerProyectos() throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			List<Proyecto> lista = proyectos.obtener(CLAVE_PROYECTOS, () -> List.copyOf(proyectoDAO.obtenerProyectos()));
+			error = false;
+			return lista;
+		} finally {
+			metricas.terminarAcceso("cache.obtenerProyectos", inicio, error);
+		}
+	}
+
+	/**
+	 * Obtiene la lista de tareas de un proyecto, desde la caché si está disponible
+	 * @param idProyecto identificador del proyecto
+	 * @return List inmutable de tareas del proyecto
+	 * @throws SQLException si falla la carga desde la base de datos
+	 */
+	public List<Tarea> obtenerTareasPorProyecto(int idProyecto) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			List<Tarea> resultado = tareas.obtener(idProyecto,
+					() -> List.copyOf(tareaDAO.obtenerTareasPorProyecto(idProyecto)));
+			error = false;
+			return resultado;
+		} finally {
+			metricas.terminarAcceso("cache.obtenerTareasPorProyecto", inicio, error);
+		}
+	}
+
+	/**
+	 * Invalida la lista de proyectos (tras crear, renombrar o eliminar un proyecto)
+	 */
+	public void invalidarProyectos() {
+		proyectos.invalidarTodo();
+	}
+
+	/**
+	 * Invalida la lista de tareas de un proyecto (tras crear una tarea o eliminar el proyecto)
+	 * @param idProyecto identificador del proyecto
+	 */
+	public void invalidarTareasDeProyecto(int idProyecto) {
+		tareas.invalidar(idProyecto);
+	}
+
+	/**
+	 * Invalida la lista de tareas que contiene la tarea indicada (tras modificarla o eliminarla)
+	 * Si la tarea no está en ninguna lista guardada solo se descartan las cargas en curso.
+	 * @param idTarea identificador de la tarea
+	 */
+	public void invalidarTarea(int idTarea) {
+		Integer idProyecto = proyectoDeTarea.get(idTarea);
+		if (idProyecto != null) {
+			tareas.invalidar(idProyecto);
+		} else {
+			tareas.anularCargasEnCurso();
+		}
+	}
+
+	/**
+	 * @param idTarea identificador de la tarea
+	 * @return proyecto de la tarea si está en alguna lista guardada, o null si no se sabe
+	 */
+	public Integer proyectoDeTarea(int idTarea) {
+		return proyectoDeTarea.get(idTarea);
+	}
+
+	@Override
+	public String toString() {
+		return "CacheConsultas{proyectos: " + proyectos + "; tareas: " + tareas
+				+ "; tareas localizadas: " + proyectoDeTarea.size() + "}";
+	}
+}
@@ -0,0 +1,164 @@
+package dao;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Caché en memoria acotada por número de entradas con expulsión LRU (la entrada usada hace más tiempo)
+ * y tiempo de vida (TTL) por entrada, para que los cambios hechos directamente en la base de datos acaben viéndose.
+ * Es segura para usarse desde varios hilos. Lleva la cuenta de aciertos, fallos y expulsiones.
+ * @param <K> tipo de la clave
+ * @param <V> tipo del valor guardado
+ */
+public class CacheLRU<K, V> {
+
+	/**
+	 * Carga el valor de una entrada que no está en la caché
+	 * @param <V> tipo del valor cargado
+	 */
+	@FunctionalInterface
+	public interface Cargador<V> {
+		V cargar() throws SQLException;
+	}
+
+	private final int maxEntradas;
+	private final long ttlNanos;
+	private final BiConsumer<K, V> alGuardar;
+	private final BiConsumer<K, V> alRetirar;
+	private final LinkedHashMap<K, Entrada<V>> entradas = new LinkedHashMap<>(16, 0.75f, true);
+	// Aumenta en cada invalidación para descartar cargas que empezaron antes de ella
+	private long generacion;
+
+	private final LongAdder aciertos = new LongAdder();
+	private final LongAdder fallos = new LongAdder();
+	private final LongAdder expulsiones = new LongAdder();
+
+	/**
+	 * @param maxEntradas número máximo de entradas guardadas
+	 * @param ttlMs tiempo de vida de cada entrada en milisegundos
+	 * @param alRetirar acción a ejecutar cuando una entrada sale de la caché por cualquier motivo (puede ser null)
+	 */
+	public CacheLRU(int maxEntradas, long ttlMs, BiConsumer<K, V> alRetirar) {
+		this(maxEntradas, ttlMs, null, alRetirar);
+	}
+
+	/**
+	 * @param maxEntradas número máximo de entradas guardadas
+	 * @param ttlMs tiempo de vida de cada entrada en milisegundos
+	 * @param alGuardar acción a ejecutar cuando un valor cargado se guarda (no si se descarta porque una
+	 * invalidación ha llegado durante la carga); con el cerrojo de la caché, como alRetirar (puede ser null)
+	 * @param alRetirar acción a ejecutar cuando una entrada sale de la caché por cualquier motivo (puede ser null)
+	 */
+	public CacheLRU(int maxEntradas, long ttlMs, BiConsumer<K, V> alGuardar, BiConsumer<K, V> alRetirar) {
+		this.maxEntradas = maxEntradas;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+		this.alGuardar = alGuardar != null ? alGuardar : (k, v) -> { };
+		this.alRetirar = alRetirar != null ? alRetirar : (k, v) -> { };
+	}
+
+	/**
+	 * Devuelve el valor guardado para la clave o lo carga y lo guarda si no está o ha caducado
+	 * @param clave clave de la entrada
+	 * @param cargador obtiene el valor de la fuente original en caso de fallo
+	 * @return valor de la entrada
+	 * @throws SQLException si falla la carga del valor
+	 */
+	public V obtener(K clave, Cargador<V> cargador) throws SQLException {
+		long generacionCarga;
+		synchronized (this) {
+			Entrada<V> e = entradas.get(clave);
+			if (e != null) {
+				if (System.nanoTime() < e.caduca) {
+					aciertos.increment();
+					return e.valor;
+				}
+				entradas.remove(clave);
+				alRetirar.accept(clave, e.valor);
+			}
+			generacionCarga = generacion;
+		}
+		fallos.increment();
+		// La carga se hace fuera del cerrojo para no bloquear al resto de claves
+		V valor = cargador.cargar();
+		synchronized (this) {
+			if (generacionCarga == generacion) {
+				Entrada<V> anterior = entradas.put(clave, new Entrada<>(valor, System.nanoTime() + ttlNanos));
+				if (anterior != null) {
+					alRetirar.accept(clave, anterior.valor);
+				}
+				alGuardar.accept(clave, valor);
+				expulsarSobrantes();
+			}
+		}
+		return valor;
+	}
+
+	private void expulsarSobrantes() {
+		Iterator<Map.Entry<K, Entrada<V>>> it = entradas.entrySet().iterator();
+		while (entradas.size() > maxEntradas && it.hasNext()) {
+			Map.Entry<K, Entrada<V>> mayor = it.next();
+			it.remove();
+			expulsiones.increment();
+			alRetirar.accept(mayor.getKey(), mayor.getValue().valor);
+		}
+	}
+
+	/**
+	 * Elimina una entrada de la caché
+	 * @param clave clave de la entrada a eliminar
+	 */
+	public synchronized void invalidar(K clave) {
+		generacion++;
+		Entrada<V> e = entradas.remove(clave);
+		if (e != null) {
+			alRetirar.accept(clave, e.valor);
+		}
+	}
+
+	/**
+	 * Elimina todas las entradas de la caché
+	 */
+	public synchronized void invalidarTodo() {
+		generacion++;
+		entradas.forEach((k, e) -> alRetirar.accept(k, e.valor));
+		entradas.clear();
+	}
+
+	/**
+	 * Impide que se guarden las cargas que estén en curso, sin eliminar ninguna entrada.
+	 * Se usa cuando cambia un dato que no está en ninguna entrada guardada.
+	 */
+	public synchronized void anularCargasEnCurso() {
+		generacion++;
+	}
+
+	public long getAciertos() {
+		return aciertos.sum();
+	}
+
+	public long getFallos() {
+		return fallos.sum();
+	}
+
+	public long getExpulsiones() {
+		return expulsiones.sum();
+	}
+
+	public synchronized int getTamanio() {
+		return entradas.size();
+	}
+
+	@Override
+	public String toString() {
+		return "aciertos=" + getAciertos() + ", fallos=" + getFallos()
+				+ ", expulsiones=" + getExpulsiones() + ", entradas=" + getTamanio();
+	}
+
+	private record Entrada<V>(V valor, long caduca) {
+	}
+}
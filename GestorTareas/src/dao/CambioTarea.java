@@ -0,0 +1,81 @@
+package dao;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+import modelos.Estado;
+import modelos.Tarea;
+import modelos.Urgencia;
+
+/**
+ * Cambio de un campo modificable de una tarea ("fecha_fin", "estado" o "urgencia"), ya validado
+ * Se crea con validar(), que deja el campo en minúsculas y el valor en su forma canónica (por ejemplo "completa"
+ * pasa a "finalizado"), de modo que aplicarlo más tarde en la base de datos no puede fallar por el valor.
+ * @param idTarea identificador de la tarea
+ * @param campo nombre del campo, en minúsculas
+ * @param valor nuevo valor, tal como se guarda en la base de datos
+ */
+public record CambioTarea(int idTarea, String campo, String valor) {
+	/** Campos modificables, en el orden de sus índices (ver indiceCampo) */
+	static final String[] CAMPOS = { "fecha_fin", "estado", "urgencia" };
+
+	/**
+	 * Comprueba el campo y el valor de un cambio y los pasa a su forma canónica
+	 * @param idTarea identificador de la tarea
+	 * @param campo nombre del campo, sin distinguir mayúsculas
+	 * @param valor nuevo valor del campo
+	 * @return cambio validado
+	 * @throws SQLException si el campo no se puede modificar o el valor no es válido
+	 */
+	public static CambioTarea validar(int idTarea, String campo, String valor) throws SQLException {
+		String nombre = campo.toLowerCase(Locale.ROOT);
+		try {
+			switch (nombre) {
+			case "fecha_fin":
+				return new CambioTarea(idTarea, nombre, LocalDate.parse(valor).toString());
+			case "estado":
+				return new CambioTarea(idTarea, nombre, Estado.desdeTexto(valor).getTexto());
+			case "urgencia":
+				return new CambioTarea(idTarea, nombre, Urgencia.desdeTexto(valor).getTexto());
+			default:
+				throw new SQLException("Campo no modificable: " + campo);
+			}
+		} catch (DateTimeParseException | IllegalArgumentException e) {
+			throw new SQLException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return posición del campo en CAMPOS, o -1 si no es modificable
+	 */
+	int indiceCampo() {
+		for (int i = 0; i < CAMPOS.length; i++) {
+			if (CAMPOS[i].equals(campo)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Aplica el cambio a una copia en memoria de la tarea
+	 * @param t tarea con el mismo id
+	 */
+	void aplicar(Tarea t) {
+		switch (campo) {
+		case "fecha_fin":
+			t.setEntrega(LocalDate.parse(valor));
+			break;
+		case "estado":
+			t.setEstado(valor);
+			break;
+		case "urgencia":
+			t.setUrgencia(valor);
+			break;
+		default:
+			throw new IllegalStateException("Campo no modificable: " + campo);
+		}
+	}
+}
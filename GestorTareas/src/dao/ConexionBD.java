@@ -1,24 +1,49 @@
 package dao;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
+import config.Configuracion;
+
 /**
  * Clase de utilidad para manejar la conexión a la base de datos MySQL
- * Contiene los parámetros de conexión y proporciona un método estático para obtener la conexión a la base de datos
+ * Contiene los parámetros de conexión y proporciona un método estático para obtener la conexión a la base de datos.
+ * Las conexiones se toman de un pool compartido, por lo que cerrarlas las devuelve al pool en lugar de cerrar la conexión física.
+ * Parámetros configurables (propiedades del sistema):
+ * - gestor.bd.url, gestor.bd.usuario, gestor.bd.clave: datos de conexión
+ *   (la URL por defecto activa useCursorFetch para que setFetchSize lea las consultas largas por bloques)
+ * - gestor.bd.maxConexiones: tamaño máximo del pool (20)
+ * - gestor.bd.esperaMs: tiempo máximo de espera por una conexión libre (5000)
+ * - gestor.bd.vidaMaximaMs: tiempo de vida máximo de una conexión (1800000)
+ * - gestor.bd.inactividadMs: tiempo tras el que se cierra una conexión libre sin usar (600000)
+ * - gestor.bd.sentenciasCacheadas: sentencias preparadas guardadas por conexión (64, 0 = sin caché)
  */
 public class ConexionBD {
-	private static final String URL = "jdbc:mysql://localhost:3306/gestortareas";
-	private static final String USER = "root";
-	private static final String PASS = "root";
-	
+	private static final String URL = Configuracion.texto("bd.url", "jdbc:mysql://localhost:3306/gestortareas?useServerPrepStmts=true&rewriteBatchedStatements=true&useCursorFetch=true");
+	private static final String USER = Configuracion.texto("bd.usuario", "root");
+	private static final String PASS = Configuracion.texto("bd.clave", "root");
+
+	private static final PoolConexiones POOL = new PoolConexiones(URL, USER, PASS,
+			Configuracion.entero("bd.maxConexiones", 20),
+			Configuracion.largo("bd.esperaMs", 5_000),
+			Configuracion.largo("bd.vidaMaximaMs", 1_800_000),
+			Configuracion.largo("bd.inactividadMs", 600_000),
+			Configuracion.entero("bd.sentenciasCacheadas", 64));
+
 	/**
-	 * Devuelve la conexión a la base de datos utilizando los parámetros definidos
-	 * @return devuelve un objeto Connection para interactuar con la base de datos
-	 * @throws SQLException si ocurre un error al conectarse a la base de datos
+	 * Devuelve una conexión del pool a la base de datos utilizando los parámetros definidos
+	 * @return devuelve un objeto Connection para interactuar con la base de datos; al cerrarlo vuelve al pool
+	 * @throws SQLException si ocurre un error al conectarse a la base de datos o no hay conexiones libres a tiempo
 	 */
 	public static Connection getConnection() throws SQLException {
-	    return DriverManager.getConnection(URL, USER, PASS);
+	    return POOL.obtener();
+	}
+
+	/**
+	 * Devuelve el pool de conexiones, para consultar sus contadores o cerrarlo
+	 * @return pool de conexiones compartido
+	 */
+	public static PoolConexiones getPool() {
+		return POOL;
 	}
 }
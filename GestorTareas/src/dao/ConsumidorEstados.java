@@ -0,0 +1,16 @@
+package dao;
+
+/**
+ * Recibe uno a uno el proyecto, el estado y la urgencia de las tareas leídas por RepositorioTareas.recorrerEstados
+ */
+@FunctionalInterface
+public interface ConsumidorEstados {
+
+	/**
+	 * @param idTarea identificador de la tarea
+	 * @param idProyecto proyecto de la tarea
+	 * @param codigoEstado código del estado (Estado.getCodigo)
+	 * @param codigoUrgencia código de la urgencia (Urgencia.getCodigo)
+	 */
+	void aceptar(int idTarea, int idProyecto, int codigoEstado, int codigoUrgencia);
+}
@@ -0,0 +1,18 @@
+package dao;
+
+import java.io.IOException;
+
+import modelos.Tarea;
+
+/**
+ * Recibe una a una las tareas leídas por TareaDAO.recorrerTareasPorProyecto
+ */
+@FunctionalInterface
+public interface ConsumidorTareas {
+
+	/**
+	 * @param t tarea leída de la base de datos
+	 * @throws IOException si falla el envío de la tarea; interrumpe el recorrido
+	 */
+	void aceptar(Tarea t) throws IOException;
+}
@@ -0,0 +1,15 @@
+package dao;
+
+/**
+ * Recibe uno a uno el proyecto y la fecha de fin de las tareas leídas por RepositorioTareas.recorrerVencimientos
+ */
+@FunctionalInterface
+public interface ConsumidorVencimientos {
+
+	/**
+	 * @param idTarea identificador de la tarea
+	 * @param idProyecto proyecto de la tarea
+	 * @param diaFin fecha de fin en días desde 1970-01-01
+	 */
+	void aceptar(int idTarea, int idProyecto, int diaFin);
+}
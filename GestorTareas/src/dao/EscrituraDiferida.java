@@ -0,0 +1,580 @@
+package dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLSyntaxErrorException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import metricas.Metricas;
+import modelos.Tarea;
+
+/**
+ * Repositorio de tareas que escribe las modificaciones de tareas (actualizarTarea) en segundo plano
+ * Cada cambio se valida, se guarda en una cola en memoria y se da por hecho; un hilo escritor los aplica en lotes
+ * de hasta maxLote cambios, cada lote en una única transacción (RepositorioTareas.actualizarTareas). El resto de
+ * operaciones se delegan sin cambios en el repositorio envuelto.
+ * - Fusión: si llega un cambio de un campo de una tarea que todavía no se ha escrito, sustituye al anterior, de
+ *   modo que una tarea que cambia de estado muchas veces seguidas solo se escribe una vez.
+ * - Contrapresión: la cola admite como mucho maxPendientes cambios distintos; con la cola llena se espera hasta
+ *   esperaMs a que el escritor haga sitio y después se responde con error.
+ * - Lecturas: los listados de un proyecto aplican sobre las tareas leídas los cambios que todavía no se han
+ *   escrito, y consultarTareas, que filtra y ordena en el almacenamiento, espera a que se escriban los cambios
+ *   anteriores a ella. Así un cliente siempre ve sus propias modificaciones.
+ * - Apagado: close() deja de aceptar cambios en la cola (los siguientes se escriben directamente), espera a que el
+ *   escritor vacíe la cola y lo detiene.
+ * - Errores: los cambios ya se han confirmado al cliente (y el servidor ya ha actualizado con ellos sus contadores,
+ *   su índice y los avisos a los suscriptores), por lo que no se pueden perder por un fallo pasajero. Si la base de
+ *   datos falla de forma transitoria (conexión perdida, pool agotado, interbloqueo...) el lote se reintenta entero,
+ *   esperando cada vez el doble, sin tomar más cambios: la cola se llena y la contrapresión frena a los clientes.
+ *   Solo se descartan los cambios que fallan de forma permanente (restricción incumplida, dato no válido), que se
+ *   aíslan escribiendo el lote cambio a cambio; se anotan en la salida de errores y se cuentan en STATS.
+ * Es segura para usarse desde varios hilos a la vez.
+ */
+public class EscrituraDiferida implements RepositorioTareas, Closeable {
+	// Espera antes del primer reintento de un lote que falla de forma transitoria; se duplica hasta el máximo
+	private static final long ESPERA_REINTENTO_MS = 50;
+	private static final long MAX_ESPERA_REINTENTO_MS = 5_000;
+	// Reintentos de un lote una vez cerrada la cola, para que el apagado no espere para siempre a la base de datos
+	private static final int REINTENTOS_AL_CERRAR = 5;
+
+	private final RepositorioTareas tareas;
+	private final int maxPendientes;
+	private final int maxLote;
+	private final long esperaLoteNanos;
+	private final long esperaNanos;
+	private final Thread escritor;
+	private final Metricas metricas = Metricas.global();
+
+	private final ReentrantLock cerrojo = new ReentrantLock();
+	private final Condition hayCambios = cerrojo.newCondition();
+	private final Condition haySitio = cerrojo.newCondition();
+	private final Condition loteEscrito = cerrojo.newCondition();
+	// Cambios sin escribir por tarea y campo, en el orden de su última modificación
+	private final LinkedHashMap<Long, Pendiente> pendientes = new LinkedHashMap<>();
+	// Cambios del lote que se está escribiendo, visibles para las lecturas hasta que termina la transacción
+	private final Map<Long, Pendiente> enEscritura = new HashMap<>();
+	// Número del último cambio encolado y número hasta el que están escritos todos los cambios
+	private long encolados;
+	private long escritos;
+	// Aumenta cada vez que termina un lote, para repetir las lecturas que se solapan con él
+	private long lotes;
+	// Hilos esperando en esperarEscritos(); mientras haya alguno el escritor no espera a completar el lote
+	private int esperando;
+	private boolean cerrada;
+
+	private long fusionados;
+	private long rechazados;
+	private long aplicados;
+	private long reintentos;
+	private long descartados;
+	private long perdidos;
+
+	/**
+	 * Cambio pendiente de escribir y su número de orden
+	 */
+	private record Pendiente(CambioTarea cambio, long numero) {
+	}
+
+	/**
+	 * Crea la cola y arranca el hilo escritor
+	 * @param tareas repositorio donde se escriben los cambios y al que se delega el resto de operaciones
+	 * @param maxPendientes número máximo de cambios distintos sin escribir
+	 * @param maxLote número máximo de cambios escritos en cada transacción
+	 * @param esperaLoteMs tiempo que espera el escritor a juntar un lote completo antes de escribir uno menor
+	 * @param esperaMs tiempo máximo que espera quien encola un cambio si la cola está llena
+	 */
+	public EscrituraDiferida(RepositorioTareas tareas, int maxPendientes, int maxLote, long esperaLoteMs, long esperaMs) {
+		this.tareas = tareas;
+		this.maxPendientes = maxPendientes;
+		this.maxLote = maxLote;
+		this.esperaLoteNanos = TimeUnit.MILLISECONDS.toNanos(esperaLoteMs);
+		this.esperaNanos = TimeUnit.MILLISECONDS.toNanos(esperaMs);
+		this.escritor = new Thread(this::escribirLotes, "escritura-diferida");
+		escritor.setDaemon(true);
+		escritor.start();
+		metricas.registrarEstado("escrituraDiferida", this::toString);
+	}
+
+	private static long clave(int idTarea, int campo) {
+		return (long) idTarea << 2 | campo;
+	}
+
+	// Escrituras
+
+	/**
+	 * Valida el cambio y lo deja en la cola; vuelve sin esperar a que se escriba
+	 * @throws SQLException si el campo o el valor no son válidos, o si la cola sigue llena pasado esperaMs
+	 */
+	@Override
+	public void actualizarTarea(int id, String campo, String valor) throws SQLException {
+		CambioTarea cambio = CambioTarea.validar(id, campo, valor);
+		long clave = clave(id, cambio.indiceCampo());
+		cerrojo.lock();
+		try {
+			if (!cerrada && encolar(clave, cambio)) {
+				return;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrumpido esperando sitio en la cola de escritura", e);
+		} finally {
+			cerrojo.unlock();
+		}
+		actualizarTareas(List.of(cambio));
+	}
+
+	/**
+	 * Añade un cambio a la cola o sustituye al pendiente de la misma tarea y campo (con el cerrojo tomado)
+	 * @return false si se ha cerrado la cola mientras se esperaba sitio
+	 */
+	private boolean encolar(long clave, CambioTarea cambio) throws SQLException, InterruptedException {
+		Pendiente anterior = pendientes.remove(clave);
+		if (anterior != null) {
+			fusionados++;
+		} else {
+			long espera = esperaNanos;
+			while (pendientes.size() >= maxPendientes) {
+				if (cerrada) {
+					return false;
+				}
+				if (espera <= 0) {
+					rechazados++;
+					throw new SQLException("Cola de escritura llena");
+				}
+				espera = haySitio.awaitNanos(espera);
+			}
+		}
+		// Se vuelve a añadir al final para que el orden de la cola sea el de la última modificación
+		pendientes.put(clave, new Pendiente(cambio, ++encolados));
+		if (pendientes.size() == 1 || pendientes.size() == maxLote) {
+			hayCambios.signal();
+		}
+		return true;
+	}
+
+	/**
+	 * Aplica varios cambios de inmediato, después de los que ya están en la cola
+	 */
+	@Override
+	public void actualizarTareas(List<CambioTarea> cambios) throws SQLException {
+		esperarEscritos();
+		tareas.actualizarTareas(cambios);
+	}
+
+	/**
+	 * Aplica el cambio de inmediato, después de los que ya están en la cola, para comparar con la versión escrita
+	 */
+	@Override
+	public int actualizarTareaSiVersion(int id, String campo, String valor, int version) throws SQLException {
+		esperarEscritos();
+		return tareas.actualizarTareaSiVersion(id, campo, valor, version);
+	}
+
+	/**
+	 * Elimina la tarea directamente; sus cambios pendientes se descartan
+	 */
+	@Override
+	public void eliminarTarea(int id) throws SQLException {
+		cerrojo.lock();
+		try {
+			for (int campo = 0; campo < CambioTarea.CAMPOS.length; campo++) {
+				pendientes.remove(clave(id, campo));
+			}
+			actualizarEscritos();
+			haySitio.signalAll();
+		} finally {
+			cerrojo.unlock();
+		}
+		tareas.eliminarTarea(id);
+	}
+
+	/**
+	 * Archiva después de escribir los cambios encolados, para que cuenten los cambios de estado ya confirmados
+	 */
+	@Override
+	public int archivarFinalizadas(int idProyecto) throws SQLException {
+		esperarEscritos();
+		return tareas.archivarFinalizadas(idProyecto);
+	}
+
+	/**
+	 * Mueve las tareas directamente; sus cambios pendientes siguen siendo válidos porque van por id de tarea
+	 */
+	@Override
+	public int moverTareas(int idOrigen, int idDestino) throws SQLException {
+		return tareas.moverTareas(idOrigen, idDestino);
+	}
+
+	@Override
+	public int crearTarea(Tarea t) throws SQLException {
+		return tareas.crearTarea(t);
+	}
+
+	@Override
+	public int[] crearTareas(List<Tarea> lista) throws SQLException {
+		return tareas.crearTareas(lista);
+	}
+
+	// Lecturas
+
+	@Override
+	public Tarea obtenerTarea(int id) throws SQLException {
+		while (true) {
+			long lote = loteActual();
+			Tarea t = tareas.obtenerTarea(id);
+			if (t == null || aplicarPendientes(List.of(t), lote)) {
+				return t;
+			}
+		}
+	}
+
+	@Override
+	public List<Tarea> obtenerTareas(List<Integer> ids) throws SQLException {
+		while (true) {
+			long lote = loteActual();
+			List<Tarea> lista = tareas.obtenerTareas(ids);
+			if (aplicarPendientes(lista, lote)) {
+				return lista;
+			}
+		}
+	}
+
+	@Override
+	public List<Tarea> obtenerTareasPorProyecto(int idProyecto) throws SQLException {
+		while (true) {
+			long lote = loteActual();
+			List<Tarea> lista = tareas.obtenerTareasPorProyecto(idProyecto);
+			if (aplicarPendientes(lista, lote)) {
+				return lista;
+			}
+		}
+	}
+
+	@Override
+	public List<Tarea> obtenerPaginaTareas(int idProyecto, int despuesDeId, int limite) throws SQLException {
+		while (true) {
+			long lote = loteActual();
+			List<Tarea> lista = tareas.obtenerPaginaTareas(idProyecto, despuesDeId, limite);
+			if (aplicarPendientes(lista, lote)) {
+				return lista;
+			}
+		}
+	}
+
+	/**
+	 * Las tareas se entregan según se leen, por lo que no se puede repetir la lectura si termina un lote a la vez:
+	 * cada tarea lleva los cambios pendientes en el momento de entregarla
+	 */
+	@Override
+	public int recorrerTareasPorProyecto(int idProyecto, int tamanioBloque, ConsumidorTareas consumidor)
+			throws SQLException, IOException {
+		return tareas.recorrerTareasPorProyecto(idProyecto, tamanioBloque, t -> {
+			cerrojo.lock();
+			try {
+				aplicarPendientes(t);
+			} finally {
+				cerrojo.unlock();
+			}
+			consumidor.aceptar(t);
+		});
+	}
+
+	@Override
+	public List<Tarea> consultarTareas(FiltroTareas filtro) throws SQLException {
+		esperarEscritos();
+		return tareas.consultarTareas(filtro);
+	}
+
+	@Override
+	public int recorrerEstados(int tamanioBloque, ConsumidorEstados consumidor) throws SQLException {
+		esperarEscritos();
+		return tareas.recorrerEstados(tamanioBloque, consumidor);
+	}
+
+	@Override
+	public int recorrerVencimientos(int limite, int tamanioBloque, ConsumidorVencimientos consumidor)
+			throws SQLException {
+		esperarEscritos();
+		return tareas.recorrerVencimientos(limite, tamanioBloque, consumidor);
+	}
+
+	private long loteActual() {
+		cerrojo.lock();
+		try {
+			return lotes;
+		} finally {
+			cerrojo.unlock();
+		}
+	}
+
+	/**
+	 * Aplica a las tareas leídas los cambios sin escribir
+	 * @param lote valor de lotes antes de la lectura
+	 * @return false si ha terminado algún lote durante la lectura y hay que repetirla, porque sus cambios pueden
+	 * no estar en lo leído y ya no estar pendientes
+	 */
+	private boolean aplicarPendientes(List<Tarea> lista, long lote) {
+		cerrojo.lock();
+		try {
+			if (lotes != lote) {
+				return false;
+			}
+			if (!pendientes.isEmpty() || !enEscritura.isEmpty()) {
+				for (Tarea t : lista) {
+					aplicarPendientes(t);
+				}
+			}
+			return true;
+		} finally {
+			cerrojo.unlock();
+		}
+	}
+
+	/**
+	 * Cada cambio sin escribir, en la cola o en el lote en curso, sumará uno a la versión cuando se escriba
+	 */
+	private void aplicarPendientes(Tarea t) {
+		int sinEscribir = 0;
+		for (int campo = 0; campo < CambioTarea.CAMPOS.length; campo++) {
+			long clave = clave(t.getId(), campo);
+			Pendiente p = pendientes.get(clave);
+			Pendiente e = enEscritura.get(clave);
+			if (e != null) {
+				sinEscribir++;
+			}
+			if (p != null) {
+				sinEscribir++;
+			} else {
+				p = e;
+			}
+			if (p != null) {
+				p.cambio().aplicar(t);
+			}
+		}
+		t.setVersion(t.getVersion() + sinEscribir);
+	}
+
+	/**
+	 * Espera a que se escriban todos los cambios encolados hasta ahora
+	 */
+	private void esperarEscritos() throws SQLException {
+		cerrojo.lock();
+		try {
+			long objetivo = encolados;
+			if (escritos < objetivo) {
+				esperando++;
+				hayCambios.signal();
+				try {
+					while (escritos < objetivo) {
+						loteEscrito.await();
+					}
+				} finally {
+					esperando--;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrumpido esperando a la cola de escritura", e);
+		} finally {
+			cerrojo.unlock();
+		}
+	}
+
+	// Hilo escritor
+
+	private void escribirLotes() {
+		while (true) {
+			List<CambioTarea> lote;
+			cerrojo.lock();
+			try {
+				while (pendientes.isEmpty() && !cerrada) {
+					hayCambios.awaitUninterruptibly();
+				}
+				if (pendientes.isEmpty()) {
+					return;
+				}
+				// Se espera un poco a que se junte un lote completo, salvo al cerrar o si alguien espera a la cola
+				long espera = esperaLoteNanos;
+				while (pendientes.size() < maxLote && !cerrada && esperando == 0 && espera > 0) {
+					try {
+						espera = hayCambios.awaitNanos(espera);
+					} catch (InterruptedException e) {
+						espera = 0;
+					}
+				}
+				lote = new ArrayList<>(Math.min(pendientes.size(), maxLote));
+				Iterator<Map.Entry<Long, Pendiente>> it = pendientes.entrySet().iterator();
+				while (it.hasNext() && lote.size() < maxLote) {
+					Map.Entry<Long, Pendiente> e = it.next();
+					it.remove();
+					enEscritura.put(e.getKey(), e.getValue());
+					lote.add(e.getValue().cambio());
+				}
+				haySitio.signalAll();
+			} finally {
+				cerrojo.unlock();
+			}
+			int fallos = escribir(lote);
+			cerrojo.lock();
+			try {
+				lotes++;
+				enEscritura.clear();
+				actualizarEscritos();
+				aplicados += lote.size() - fallos;
+			} finally {
+				cerrojo.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Avanza escritos hasta el cambio anterior al pendiente más antiguo, si no hay un lote escribiéndose
+	 * La cola está ordenada por número, por lo que todo lo anterior ya se ha escrito o se ha descartado.
+	 */
+	private void actualizarEscritos() {
+		if (enEscritura.isEmpty()) {
+			escritos = pendientes.isEmpty() ? encolados : pendientes.values().iterator().next().numero() - 1;
+			loteEscrito.signalAll();
+		}
+	}
+
+	/**
+	 * Escribe un lote en una transacción, reintentándolo mientras falle de forma transitoria
+	 * Si falla de forma permanente se escribe cambio a cambio para no perder los correctos y se descartan los que
+	 * fallan. Cerrada la cola solo se hacen REINTENTOS_AL_CERRAR reintentos; lo que no se escribe se da por perdido.
+	 * Mientras tanto el lote sigue en enEscritura, de modo que las lecturas siguen viendo sus cambios.
+	 * @return número de cambios que no se han podido escribir
+	 */
+	private int escribir(List<CambioTarea> lote) {
+		long espera = ESPERA_REINTENTO_MS;
+		int reintentosAlCerrar = 0;
+		while (true) {
+			long inicio = metricas.iniciarAcceso();
+			boolean error = true;
+			try {
+				tareas.actualizarTareas(lote);
+				error = false;
+				return 0;
+			} catch (SQLException | RuntimeException e) {
+				if (esPermanente(e)) {
+					if (lote.size() == 1) {
+						System.err.println("Cambio descartado " + lote.get(0) + ": " + e.getMessage());
+						contar(1, 0, 0);
+						return 1;
+					}
+					System.err.println("Error al escribir un lote de " + lote.size()
+							+ " cambios, se escriben uno a uno: " + e.getMessage());
+					int fallos = 0;
+					for (CambioTarea c : lote) {
+						fallos += escribir(List.of(c));
+					}
+					return fallos;
+				}
+				if (estaCerrada() && ++reintentosAlCerrar > REINTENTOS_AL_CERRAR) {
+					for (CambioTarea c : lote) {
+						System.err.println("Cambio perdido al cerrar " + c + ": " + e.getMessage());
+					}
+					contar(0, lote.size(), 0);
+					return lote.size();
+				}
+				System.err.println("Error transitorio al escribir un lote de " + lote.size() + " cambios, se reintenta en "
+						+ espera + " ms: " + e.getMessage());
+			} finally {
+				metricas.terminarAcceso("diferida.escribirLote", inicio, error);
+			}
+			contar(0, 0, 1);
+			try {
+				Thread.sleep(espera);
+			} catch (InterruptedException e) {
+				// El escritor no se interrumpe nunca; si ocurre, simplemente se reintenta antes
+			}
+			espera = Math.min(espera * 2, MAX_ESPERA_REINTENTO_MS);
+		}
+	}
+
+	/**
+	 * Indica si un error al escribir se repetiría igual al reintentar: restricciones, datos no válidos, sintaxis
+	 * (clases SQLSTATE 22, 23 y 42) o errores de programación. El resto se consideran transitorios.
+	 */
+	private static boolean esPermanente(Exception e) {
+		if (e instanceof RuntimeException || e instanceof SQLIntegrityConstraintViolationException
+				|| e instanceof SQLDataException || e instanceof SQLSyntaxErrorException) {
+			return true;
+		}
+		// Los controladores suelen envolver el error de la sentencia (por ejemplo en BatchUpdateException)
+		for (Throwable t = e; t instanceof SQLException sql; t = t.getCause()) {
+			String estado = sql.getSQLState();
+			if (estado != null && (estado.startsWith("22") || estado.startsWith("23") || estado.startsWith("42"))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean estaCerrada() {
+		cerrojo.lock();
+		try {
+			return cerrada;
+		} finally {
+			cerrojo.unlock();
+		}
+	}
+
+	private void contar(int descartados, int perdidos, int reintentos) {
+		cerrojo.lock();
+		try {
+			this.descartados += descartados;
+			this.perdidos += perdidos;
+			this.reintentos += reintentos;
+		} finally {
+			cerrojo.unlock();
+		}
+	}
+
+	/**
+	 * Deja de encolar cambios y espera a que el escritor escriba todos los pendientes
+	 */
+	@Override
+	public void close() {
+		cerrojo.lock();
+		try {
+			cerrada = true;
+			hayCambios.signalAll();
+			haySitio.signalAll();
+		} finally {
+			cerrojo.unlock();
+		}
+		try {
+			escritor.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return estado de la cola y contadores de cambios encolados, fusionados, rechazados, escritos, descartados por
+	 * un error permanente y perdidos al cerrar, y de reintentos de lotes
+	 */
+	@Override
+	public String toString() {
+		cerrojo.lock();
+		try {
+			return "EscrituraDiferida{pendientes=" + pendientes.size() + ", encolados=" + encolados + ", fusionados="
+					+ fusionados + ", rechazados=" + rechazados + ", escritos=" + aplicados + ", descartados=" + descartados
+					+ ", perdidos=" + perdidos + ", reintentos=" + reintentos + ", lotes=" + lotes + "}";
+		} finally {
+			cerrojo.unlock();
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package dao;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+import modelos.Estado;
+import modelos.Tarea;
+import modelos.Urgencia;
+
+/**
+ * Criterios de una consulta de tareas (QUERY_TAREAS): filtros, orden y número máximo de resultados
+ * Los filtros que valen null (o un conjunto vacío) no se aplican. Los intervalos de fechas incluyen sus extremos
+ * y un filtro por fecha de fin excluye las tareas sin fecha de fin.
+ * El orden es el de la columna elegida y, a igualdad, el id, siempre en el mismo sentido. Como en MySQL, las
+ * tareas sin fecha de fin van al principio en orden ascendente y al final en descendente, y la urgencia y el
+ * estado se ordenan según su declaración (alta, media, baja; pendiente, en progreso, finalizado).
+ * @param idProyecto proyecto de las tareas, o null para buscar en todos
+ * @param estados estados admitidos
+ * @param urgencias urgencias admitidas
+ * @param inicioDesde primera fecha de inicio admitida
+ * @param inicioHasta última fecha de inicio admitida
+ * @param finDesde primera fecha de fin admitida
+ * @param finHasta última fecha de fin admitida
+ * @param orden columna por la que se ordena
+ * @param descendente si es true el orden es de mayor a menor
+ * @param limite número máximo de tareas devueltas (al menos 1)
+ */
+public record FiltroTareas(Integer idProyecto, Set<Estado> estados, Set<Urgencia> urgencias,
+		LocalDate inicioDesde, LocalDate inicioHasta, LocalDate finDesde, LocalDate finHasta,
+		Orden orden, boolean descendente, int limite) {
+
+	/**
+	 * Columnas por las que se puede ordenar el resultado
+	 */
+	public enum Orden {
+		ID("id", Comparator.comparingInt(Tarea::getId)),
+		FECHA_INICIO("fecha_inicio", Comparator.comparingInt(Tarea::getDiaInicio)),
+		// SIN_FECHA es menor que cualquier fecha, como NULL en MySQL
+		FECHA_FIN("fecha_fin", Comparator.comparingInt(Tarea::getDiaEntrega)),
+		// Los códigos siguen el orden de declaración de los enumerados
+		URGENCIA("urgencia", Comparator.comparingInt(Tarea::getCodigoUrgencia)),
+		ESTADO("estado", Comparator.comparingInt(Tarea::getCodigoEstado));
+
+		private final String columna;
+		private final Comparator<Tarea> comparador;
+
+		Orden(String columna, Comparator<Tarea> comparador) {
+			this.columna = columna;
+			this.comparador = comparador;
+		}
+
+		/**
+		 * @return nombre de la columna en la tabla tarea
+		 */
+		public String getColumna() {
+			return columna;
+		}
+
+		/**
+		 * Obtiene el orden a partir del nombre de su columna, sin distinguir mayúsculas
+		 * @throws IllegalArgumentException si la columna no admite ordenación
+		 */
+		public static Orden desdeTexto(String texto) {
+			for (Orden o : values()) {
+				if (o.columna.equalsIgnoreCase(texto)) {
+					return o;
+				}
+			}
+			throw new IllegalArgumentException("No se puede ordenar por: " + texto);
+		}
+	}
+
+	public FiltroTareas {
+		estados = estados == null || estados.isEmpty() ? EnumSet.noneOf(Estado.class) : EnumSet.copyOf(estados);
+		urgencias = urgencias == null || urgencias.isEmpty() ? EnumSet.noneOf(Urgencia.class) : EnumSet.copyOf(urgencias);
+		if (orden == null) {
+			orden = Orden.ID;
+		}
+		if (limite < 1) {
+			throw new IllegalArgumentException("El límite debe ser al menos 1");
+		}
+	}
+
+	/**
+	 * @return true si hay que filtrar por estado (se admiten algunos estados, no todos)
+	 */
+	public boolean filtraEstado() {
+		return !estados.isEmpty() && estados.size() < Estado.values().length;
+	}
+
+	/**
+	 * @return true si hay que filtrar por urgencia (se admiten algunas urgencias, no todas)
+	 */
+	public boolean filtraUrgencia() {
+		return !urgencias.isEmpty() && urgencias.size() < Urgencia.values().length;
+	}
+
+	/**
+	 * @return true si hay que filtrar por fecha de fin
+	 */
+	public boolean filtraFechaFin() {
+		return finDesde != null || finHasta != null;
+	}
+
+	/**
+	 * Comprueba si una tarea cumple todos los filtros (para los almacenes que no usan SQL)
+	 */
+	public boolean cumple(Tarea t) {
+		return cumple(t.getIdProyecto(), t.getCodigoEstado(), t.getCodigoUrgencia(), t.getDiaInicio(), t.getDiaEntrega());
+	}
+
+	/**
+	 * Comprueba si una tarea cumple todos los filtros a partir de sus valores codificados, sin crear la tarea
+	 * (para recorrer las columnas de BloqueTareas)
+	 * @param diaInicio fecha de inicio en días desde 1970-01-01
+	 * @param diaFin fecha de fin en días desde 1970-01-01, o Tarea.SIN_FECHA
+	 */
+	public boolean cumple(int idProyecto, int codigoEstado, int codigoUrgencia, int diaInicio, int diaFin) {
+		if (this.idProyecto != null && idProyecto != this.idProyecto) {
+			return false;
+		}
+		if (filtraEstado() && !estados.contains(Estado.desdeCodigo(codigoEstado))) {
+			return false;
+		}
+		if (filtraUrgencia() && !urgencias.contains(Urgencia.desdeCodigo(codigoUrgencia))) {
+			return false;
+		}
+		if (inicioDesde != null && diaInicio < inicioDesde.toEpochDay()
+				|| inicioHasta != null && diaInicio > inicioHasta.toEpochDay()) {
+			return false;
+		}
+		if (filtraFechaFin()) {
+			return diaFin != Tarea.SIN_FECHA && (finDesde == null || diaFin >= finDesde.toEpochDay())
+					&& (finHasta == null || diaFin <= finHasta.toEpochDay());
+		}
+		return true;
+	}
+
+	/**
+	 * @return comparador con el orden pedido, igual que el ORDER BY de TareaDAO
+	 */
+	public Comparator<Tarea> comparador() {
+		Comparator<Tarea> c = orden == Orden.ID ? orden.comparador
+				: orden.comparador.thenComparingInt(Tarea::getId);
+		return descendente ? c.reversed() : c;
+	}
+
+	@Override
+	public String toString() {
+		return "FiltroTareas{proyecto=" + idProyecto + ", estados=" + estados + ", urgencias=" + urgencias
+				+ ", inicio=[" + inicioDesde + ", " + inicioHasta + "], fin=[" + finDesde + ", " + finHasta
+				+ "], orden=" + orden.name().toLowerCase(Locale.ROOT) + (descendente ? " desc" : "")
+				+ ", limite=" + limite + "}";
+	}
+}
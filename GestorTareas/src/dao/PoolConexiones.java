@@ -0,0 +1,539 @@
+package dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool acotado de conexiones JDBC
+ * Reutiliza las conexiones físicas a la base de datos en lugar de abrir una nueva en cada operación.
+ * - Como máximo mantiene abiertas 'maximo' conexiones; si no hay ninguna libre el llamante espera hasta 'esperaMs'.
+ * - Al prestar una conexión comprueba que sigue siendo válida (salvo que se haya usado hace muy poco).
+ * - Las conexiones se descartan al superar su tiempo de vida máximo o al pasar demasiado tiempo sin usarse,
+ *   siempre estando libres: una conexión prestada nunca se cierra, como mucho se descarta al devolverla.
+ * - Cada conexión física guarda una caché acotada (LRU) de sentencias preparadas indexada por el texto SQL,
+ *   de modo que las consultas fijas de las DAO solo se preparan una vez por conexión. Las consultas cuyo texto
+ *   cambia con cada llamada se preparan con prepararSinCache, para que no expulsen a las fijas.
+ * Las conexiones prestadas se devuelven al pool al llamar a close(), por lo que el código que usa
+ * try-with-resources no necesita ningún cambio.
+ */
+public class PoolConexiones {
+	private final String url;
+	private final String usuario;
+	private final String clave;
+	private final int maximo;
+	private final long esperaNanos;
+	private final long vidaMaximaNanos;
+	private final long inactividadMaximaNanos;
+	private final long validacionTrasNanos;
+	private final int maxSentencias;
+
+	private final ReentrantLock cerrojo = new ReentrantLock();
+	private final Condition disponible = cerrojo.newCondition();
+	// Conexiones libres; la primera es la usada más recientemente
+	private final Deque<ConexionFisica> libres = new ArrayDeque<>();
+	private final ScheduledExecutorService mantenimiento;
+	private int abiertas;
+	private int activas;
+	private int esperando;
+	private boolean cerrado;
+
+	/**
+	 * Crea el pool. Las conexiones se abren bajo demanda.
+	 * @param url URL JDBC de la base de datos
+	 * @param usuario usuario de la base de datos
+	 * @param clave contraseña del usuario
+	 * @param maximo número máximo de conexiones abiertas a la vez
+	 * @param esperaMs tiempo máximo que un llamante espera por una conexión libre
+	 * @param vidaMaximaMs tiempo tras el cual una conexión deja de reutilizarse; una prestada no se interrumpe, se
+	 * cierra al devolverla, y una libre se cierra al ir a prestarla o en el siguiente mantenimiento
+	 * @param inactividadMaximaMs tiempo tras el cual se cierra una conexión libre que no se usa
+	 * @param maxSentencias número máximo de sentencias preparadas guardadas por conexión (0 desactiva la caché)
+	 */
+	public PoolConexiones(String url, String usuario, String clave, int maximo,
+			long esperaMs, long vidaMaximaMs, long inactividadMaximaMs, int maxSentencias) {
+		this.url = url;
+		this.usuario = usuario;
+		this.clave = clave;
+		this.maximo = maximo;
+		this.esperaNanos = TimeUnit.MILLISECONDS.toNanos(esperaMs);
+		this.vidaMaximaNanos = TimeUnit.MILLISECONDS.toNanos(vidaMaximaMs);
+		this.inactividadMaximaNanos = TimeUnit.MILLISECONDS.toNanos(inactividadMaximaMs);
+		this.validacionTrasNanos = TimeUnit.MILLISECONDS.toNanos(500);
+		this.maxSentencias = maxSentencias;
+
+		this.mantenimiento = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "pool-conexiones-mantenimiento");
+			t.setDaemon(true);
+			return t;
+		});
+		long periodo = Math.max(1000, Math.min(inactividadMaximaMs, vidaMaximaMs) / 4);
+		mantenimiento.scheduleWithFixedDelay(this::expulsarCaducadas, periodo, periodo, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Presta una conexión del pool. Debe cerrarse (devolverse) al terminar de usarla.
+	 * @return conexión lista para usar
+	 * @throws SQLTimeoutException si no queda ninguna conexión libre en el tiempo de espera
+	 * @throws SQLException si ocurre un error al abrir una nueva conexión
+	 */
+	public Connection obtener() throws SQLException {
+		long limite = System.nanoTime() + esperaNanos;
+		while (true) {
+			ConexionFisica c = reservar(limite);
+			if (c == null) {
+				// Hay hueco para una conexión nueva, se abre fuera del cerrojo
+				try {
+					c = new ConexionFisica(DriverManager.getConnection(url, usuario, clave));
+				} catch (SQLException | RuntimeException e) {
+					descartar(null);
+					throw e;
+				}
+			} else if (!valida(c)) {
+				descartar(c);
+				continue;
+			}
+			return c.prestar();
+		}
+	}
+
+	/**
+	 * Toma una conexión libre o reserva hueco para abrir una nueva, esperando si es necesario
+	 * @return conexión libre, o null si el llamante debe abrir una conexión nueva
+	 */
+	private ConexionFisica reservar(long limite) throws SQLException {
+		cerrojo.lock();
+		try {
+			while (true) {
+				if (cerrado) {
+					throw new SQLException("El pool de conexiones está cerrado");
+				}
+				ConexionFisica c = libres.pollFirst();
+				if (c != null) {
+					activas++;
+					return c;
+				}
+				if (abiertas < maximo) {
+					abiertas++;
+					activas++;
+					return null;
+				}
+				long restante = limite - System.nanoTime();
+				if (restante <= 0) {
+					throw new SQLTimeoutException("No hay conexiones libres con la base de datos (" + maximo + " en uso)");
+				}
+				esperando++;
+				try {
+					disponible.awaitNanos(restante);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("Interrumpido esperando una conexión", e);
+				} finally {
+					esperando--;
+				}
+			}
+		} finally {
+			cerrojo.unlock();
+		}
+	}
+
+	/**
+	 * Comprueba si una conexión libre puede prestarse
+	 */
+	private boolean valida(ConexionFisica c) {
+		long ahora = System.nanoTime();
+		if (ahora - c.creada > vidaMaximaNanos) {
+			return false;
+		}
+		if (ahora - c.ultimoUso < validacionTrasNanos) {
+			return true;
+		}
+		try {
+			return c.real.isValid(2);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Recibe una conexión devuelta por un llamante
+	 */
+	private void devolver(ConexionFisica c) {
+		boolean reutilizable = !cerradoSinCerrojo() && System.nanoTime() - c.creada <= vidaMaximaNanos;
+		if (reutilizable) {
+			try {
+				// Se deja la conexión como estaba al prestarla
+				if (!c.real.getAutoCommit()) {
+					c.real.rollback();
+					c.real.setAutoCommit(true);
+				}
+				c.real.clearWarnings();
+			} catch (SQLException e) {
+				reutilizable = false;
+			}
+		}
+		if (!reutilizable) {
+			descartar(c);
+			return;
+		}
+		c.ultimoUso = System.nanoTime();
+		cerrojo.lock();
+		try {
+			activas--;
+			if (cerrado) {
+				abiertas--;
+			} else {
+				libres.addFirst(c);
+				c = null;
+			}
+			disponible.signal();
+		} finally {
+			cerrojo.unlock();
+		}
+		if (c != null) {
+			c.cerrarFisica();
+		}
+	}
+
+	/**
+	 * Cierra una conexión prestada que no debe volver al pool y libera su hueco
+	 * @param c conexión a cerrar, o null si no llegó a abrirse
+	 */
+	private void descartar(ConexionFisica c) {
+		if (c != null) {
+			c.cerrarFisica();
+		}
+		cerrojo.lock();
+		try {
+			abiertas--;
+			activas--;
+			disponible.signal();
+		} finally {
+			cerrojo.unlock();
+		}
+	}
+
+	private boolean cerradoSinCerrojo() {
+		cerrojo.lock();
+		try {
+			return cerrado;
+		} finally {
+			cerrojo.unlock();
+		}
+	}
+
+	/**
+	 * Cierra las conexiones libres que han superado el tiempo de inactividad o de vida máximo.
+	 * Se ejecuta periódicamente en segundo plano.
+	 */
+	private void expulsarCaducadas() {
+		List<ConexionFisica> caducadas = new ArrayList<>();
+		long ahora = System.nanoTime();
+		cerrojo.lock();
+		try {
+			Iterator<ConexionFisica> it = libres.descendingIterator();
+			while (it.hasNext()) {
+				ConexionFisica c = it.next();
+				if (ahora - c.ultimoUso > inactividadMaximaNanos || ahora - c.creada > vidaMaximaNanos) {
+					it.remove();
+					abiertas--;
+					caducadas.add(c);
+				}
+			}
+			if (!caducadas.isEmpty()) {
+				disponible.signalAll();
+			}
+		} finally {
+			cerrojo.unlock();
+		}
+		caducadas.forEach(ConexionFisica::cerrarFisica);
+	}
+
+	/**
+	 * Cierra el pool y las conexiones libres. Las conexiones prestadas se cierran al devolverse.
+	 */
+	public void cerrar() {
+		List<ConexionFisica> pendientes;
+		cerrojo.lock();
+		try {
+			cerrado = true;
+			pendientes = new ArrayList<>(libres);
+			abiertas -= libres.size();
+			libres.clear();
+			disponible.signalAll();
+		} finally {
+			cerrojo.unlock();
+		}
+		mantenimiento.shutdownNow();
+		pendientes.forEach(ConexionFisica::cerrarFisica);
+	}
+
+	/**
+	 * @return número de conexiones prestadas en este momento
+	 */
+	public int getActivas() {
+		cerrojo.lock();
+		try {
+			return activas;
+		} finally {
+			cerrojo.unlock();
+		}
+	}
+
+	/**
+	 * @return número de conexiones abiertas y libres para prestar
+	 */
+	public int getLibres() {
+		cerrojo.lock();
+		try {
+			return libres.size();
+		} finally {
+			cerrojo.unlock();
+		}
+	}
+
+	/**
+	 * @return número de llamantes esperando por una conexión
+	 */
+	public int getEsperando() {
+		cerrojo.lock();
+		try {
+			return esperando;
+		} finally {
+			cerrojo.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		cerrojo.lock();
+		try {
+			return "PoolConexiones{activas=" + activas + ", libres=" + libres.size() + ", esperando=" + esperando
+					+ ", abiertas=" + abiertas + ", maximo=" + maximo + "}";
+		} finally {
+			cerrojo.unlock();
+		}
+	}
+
+	/**
+	 * Prepara una sentencia sin pasar por la caché de sentencias de la conexión, para las consultas montadas a
+	 * partir de filtros opcionales, cuyo texto cambia de una llamada a otra: cada forma distinta ocuparía una
+	 * entrada de la caché y expulsaría a las sentencias fijas. La sentencia real se cierra al cerrarla.
+	 * @param con conexión prestada por el pool (con cualquier otra conexión es un prepareStatement normal)
+	 * @param sql texto de la sentencia
+	 */
+	public static PreparedStatement prepararSinCache(Connection con, String sql) throws SQLException {
+		// El préstamo solo cachea prepareStatement(sql) y prepareStatement(sql, clavesGeneradas)
+		return con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+	}
+
+	/**
+	 * Conexión física a la base de datos gestionada por el pool
+	 */
+	private final class ConexionFisica {
+		private final Connection real;
+		private final long creada = System.nanoTime();
+		private long ultimoUso = creada;
+		// Solo la usa el hilo que tiene prestada la conexión, por lo que no necesita sincronización
+		private final Map<String, SentenciaCacheada> sentencias = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, SentenciaCacheada> mayor) {
+				if (size() > maxSentencias) {
+					mayor.getValue().expulsar();
+					return true;
+				}
+				return false;
+			}
+		};
+
+		ConexionFisica(Connection real) {
+			this.real = real;
+		}
+
+		/**
+		 * Devuelve la sentencia preparada para el SQL indicado, preparándola solo si no estaba en la caché
+		 * @param sql texto de la sentencia
+		 * @param clavesGeneradas Statement.RETURN_GENERATED_KEYS o Statement.NO_GENERATED_KEYS
+		 */
+		PreparedStatement preparar(String sql, int clavesGeneradas) throws SQLException {
+			if (maxSentencias <= 0) {
+				return real.prepareStatement(sql, clavesGeneradas);
+			}
+			String clave = clavesGeneradas + sql;
+			SentenciaCacheada s = sentencias.get(clave);
+			if (s == null || s.enUso) {
+				// Si ya está en uso dentro del mismo préstamo se prepara otra que sustituye a la anterior
+				s = new SentenciaCacheada(real.prepareStatement(sql, clavesGeneradas));
+				SentenciaCacheada anterior = sentencias.put(clave, s);
+				if (anterior != null) {
+					anterior.expulsar();
+				}
+			}
+			return s.prestar();
+		}
+
+		/**
+		 * Devuelve un envoltorio de la conexión cuyo close() la devuelve al pool
+		 */
+		Connection prestar() {
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, new Prestamo(this));
+		}
+
+		void cerrarFisica() {
+			try {
+				real.close();
+			} catch (SQLException e) {
+				// La conexión ya no es utilizable, no hay nada más que hacer
+			}
+		}
+	}
+
+	/**
+	 * Sentencia preparada guardada en la caché de una conexión física.
+	 * Al cerrarla desde el código llamante solo se limpian sus parámetros; la sentencia real se cierra
+	 * cuando se expulsa de la caché o se cierra la conexión.
+	 */
+	private static final class SentenciaCacheada implements InvocationHandler {
+		private final PreparedStatement real;
+		private ResultSet resultado;
+		private boolean enUso;
+		private boolean expulsada;
+
+		SentenciaCacheada(PreparedStatement real) {
+			this.real = real;
+		}
+
+		PreparedStatement prestar() {
+			enUso = true;
+			return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, this);
+		}
+
+		void expulsar() {
+			expulsada = true;
+			if (!enUso) {
+				cerrarReal();
+			}
+		}
+
+		private void cerrarReal() {
+			try {
+				real.close();
+			} catch (SQLException e) {
+				// La sentencia ya no es utilizable
+			}
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method metodo, Object[] args) throws Throwable {
+			switch (metodo.getName()) {
+			case "close":
+				if (enUso) {
+					enUso = false;
+					if (resultado != null) {
+						resultado.close();
+						resultado = null;
+					}
+					if (expulsada) {
+						cerrarReal();
+					} else {
+						real.clearParameters();
+						real.clearBatch();
+					}
+				}
+				return null;
+			case "isClosed":
+				return !enUso || real.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				if (!enUso) {
+					throw new SQLException("La sentencia ya está cerrada");
+				}
+				try {
+					Object r = metodo.invoke(real, args);
+					if (r instanceof ResultSet rs && metodo.getName().startsWith("execute")) {
+						resultado = rs;
+					}
+					return r;
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gestiona las llamadas a una conexión prestada.
+	 * Cada préstamo tiene su propio envoltorio, así una conexión devuelta no puede seguir usándose por error.
+	 */
+	private final class Prestamo implements InvocationHandler {
+		private final ConexionFisica conexion;
+		private boolean devuelta;
+
+		Prestamo(ConexionFisica conexion) {
+			this.conexion = conexion;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method metodo, Object[] args) throws Throwable {
+			switch (metodo.getName()) {
+			case "close":
+				if (!devuelta) {
+					devuelta = true;
+					devolver(conexion);
+				}
+				return null;
+			case "isClosed":
+				return devuelta || conexion.real.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Conexión del pool " + conexion.real;
+			default:
+				if (devuelta) {
+					throw new SQLException("La conexión ya se ha devuelto al pool");
+				}
+				// El resto de formas de prepareStatement (prepararSinCache) van a la conexión real sin caché
+				if (metodo.getName().equals("prepareStatement")) {
+					if (args.length == 1) {
+						return conexion.preparar((String) args[0], Statement.NO_GENERATED_KEYS);
+					}
+					if (args.length == 2 && args[1] instanceof Integer clavesGeneradas) {
+						return conexion.preparar((String) args[0], clavesGeneradas);
+					}
+				}
+				try {
+					return metodo.invoke(conexion.real, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+	}
+}
@@ -9,20 +9,33 @@ import java.util.List;
  * Clase DAO (Data access Object) para la entidad Proyecto
  * Proporciona métodos para ejecutar las operaciones CRUD sobre la tabla 'proyecto' en la base de datos.
  * Utiliza ConexionBD para obtener conexiones.
+ * No guarda estado entre llamadas, por lo que una misma instancia puede usarse desde varios hilos a la vez.
  */
-public class ProyectoDAO {
+public class ProyectoDAO implements RepositorioProyectos {
 	/**
 	 * Crea un nuevo proyecto en la base de datos
 	 * @param p objeto Proyecto con los datos del nuevo proyecto
+	 * @return identificador generado por la base de datos
 	 * @throws SQLException si ocurre un error al conectarse o ejecutar la consulta
 	 */
-	public void crearProyecto(Proyecto p) throws SQLException {
+	@Override
+	public int crearProyecto(Proyecto p) throws SQLException {
 	    String sql = "INSERT INTO proyecto(nombre) VALUES(?)";
 	    try (Connection con = ConexionBD.getConnection();
-	         PreparedStatement pst = con.prepareStatement(sql)) {
+	         PreparedStatement pst = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 	
 	        pst.setString(1, p.getNombre());
 	        pst.executeUpdate();
+	        return idGenerado(pst);
+	    }
+	}
+
+	/**
+	 * Lee el identificador generado por la última inserción de una sentencia
+	 */
+	static int idGenerado(PreparedStatement pst) throws SQLException {
+	    try (ResultSet rs = pst.getGeneratedKeys()) {
+	        return rs.next() ? rs.getInt(1) : 0;
 	    }
 	}
 	
@@ -32,6 +45,7 @@ public class ProyectoDAO {
 	 * @return List de objetos Proyectos almacenados
 	 * @throws SQLException si ocurre un error al conectarse o ejecutar la consulta
 	 */
+	@Override
 	public List<Proyecto> obtenerProyectos() throws SQLException {
 	    String sql = "SELECT * FROM proyecto";
 	    List<Proyecto> lista = new ArrayList<>();
@@ -41,7 +55,7 @@ public class ProyectoDAO {
 	         ResultSet rs = st.executeQuery(sql)) {
 	
 	        while (rs.next()) {
-	            lista.add(new Proyecto(rs.getInt("id"), rs.getString("nombre")));
+	            lista.add(new Proyecto(rs.getInt("id"), rs.getString("nombre"), rs.getInt("version")));
 	        }
 	    }
 	    return lista;
@@ -53,8 +67,9 @@ public class ProyectoDAO {
 	 * @param nuevoNombre nuevo nombre asignado al proyecto seleccionado
 	 * @throws SQLException si ocurre un error al conectarse o ejecutar la consulta
 	 */
+	@Override
 	public void actualizarProyecto(int id, String nuevoNombre) throws SQLException {
-	    String sql = "UPDATE proyecto SET nombre=? WHERE id=?";
+	    String sql = "UPDATE proyecto SET nombre=?, version=version+1 WHERE id=?";
 	    try (Connection con = ConexionBD.getConnection();
 	         PreparedStatement pst = con.prepareStatement(sql)) {
 	
@@ -63,19 +78,86 @@ public class ProyectoDAO {
 	        pst.executeUpdate();
 	    }
 	}
-	
+
 	/**
-	 * Elimina el proyecto seleccionado
-	 * @param id identificador del proyecto a eliminar
+	 * Actualiza el nombre del proyecto con una sola sentencia condicionada a su versión
+	 * @param id identificador del proyecto seleccionado
+	 * @param nuevoNombre nuevo nombre asignado al proyecto seleccionado
+	 * @param version versión que debe tener el proyecto
+	 * @return nueva versión del proyecto, o -1 si no existe o su versión es otra
 	 * @throws SQLException si ocurre un error al conectarse o ejecutar la consulta
 	 */
-	public void eliminarProyecto(int id) throws SQLException {    
-		String sql = "DELETE FROM proyecto WHERE id=?";
+	@Override
+	public int actualizarProyectoSiVersion(int id, String nuevoNombre, int version) throws SQLException {
+	    String sql = "UPDATE proyecto SET nombre=?, version=version+1 WHERE id=? AND version=?";
 	    try (Connection con = ConexionBD.getConnection();
 	         PreparedStatement pst = con.prepareStatement(sql)) {
+	        pst.setString(1, nuevoNombre);
+	        pst.setInt(2, id);
+	        pst.setInt(3, version);
+	        return pst.executeUpdate() == 1 ? version + 1 : -1;
+	    }
+	}
 	
-	        pst.setInt(1, id);
-	        pst.executeUpdate();
+	/**
+	 * Elimina el proyecto seleccionado y todas sus tareas, también las archivadas, en una única transacción
+	 * Son tres sentencias DELETE por proyecto_id, sin leer antes las tareas, por lo que el coste en viajes a la
+	 * base de datos no depende de cuántas tenga. Las tareas se borran antes que el proyecto por la clave ajena.
+	 * @param id identificador del proyecto a eliminar
+	 * @return número de tareas eliminadas, sin contar las archivadas
+	 * @throws SQLException si ocurre un error al conectarse o ejecutar la consulta; en ese caso no se elimina nada
+	 */
+	@Override
+	public int eliminarProyecto(int id) throws SQLException {
+	    return eliminar(id, false, 0);
+	}
+
+	/**
+	 * Elimina el proyecto y sus tareas como eliminarProyecto si sigue en la versión indicada
+	 * La fila del proyecto se bloquea (SELECT ... FOR UPDATE) al comprobar la versión, de modo que nadie puede
+	 * cambiarla entre la comprobación y el borrado.
+	 * @param id identificador del proyecto a eliminar
+	 * @param version versión que debe tener el proyecto
+	 * @return número de tareas eliminadas, o -1 si el proyecto no existe o su versión es otra
+	 * @throws SQLException si ocurre un error al conectarse o ejecutar la consulta; en ese caso no se elimina nada
+	 */
+	@Override
+	public int eliminarProyectoSiVersion(int id, int version) throws SQLException {
+	    return eliminar(id, true, version);
+	}
+
+	/**
+	 * @param comprobarVersion si es false se elimina sin mirar la versión
+	 * @param version versión que debe tener el proyecto cuando se comprueba
+	 */
+	private static int eliminar(int id, boolean comprobarVersion, int version) throws SQLException {
+	    try (Connection con = ConexionBD.getConnection()) {
+	        con.setAutoCommit(false);
+	        try (PreparedStatement comprobar = con.prepareStatement("SELECT version FROM proyecto WHERE id=? FOR UPDATE");
+	             PreparedStatement archivadas = con.prepareStatement("DELETE FROM tarea_archivada WHERE proyecto_id=?");
+	             PreparedStatement tareas = con.prepareStatement("DELETE FROM tarea WHERE proyecto_id=?");
+	             PreparedStatement proyecto = con.prepareStatement("DELETE FROM proyecto WHERE id=?")) {
+	            if (comprobarVersion) {
+	                comprobar.setInt(1, id);
+	                try (ResultSet rs = comprobar.executeQuery()) {
+	                    if (!rs.next() || rs.getInt(1) != version) {
+	                        con.rollback();
+	                        return -1;
+	                    }
+	                }
+	            }
+	            archivadas.setInt(1, id);
+	            archivadas.executeUpdate();
+	            tareas.setInt(1, id);
+	            int eliminadas = tareas.executeUpdate();
+	            proyecto.setInt(1, id);
+	            proyecto.executeUpdate();
+	            con.commit();
+	            return eliminadas;
+	        } catch (SQLException e) {
+	            con.rollback();
+	            throw e;
+	        }
 	    }
 	}
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package dao;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import modelos.Proyecto;
+
+/**
+ * Operaciones de almacenamiento de proyectos, independientes del motor que las implemente
+ * Implementaciones: ProyectoDAO (MySQL) y almacen.AlmacenMemoria (memoria con diario en disco).
+ * Las implementaciones deben poder usarse desde varios hilos a la vez. Cada cambio de nombre aumenta en uno la
+ * versión del proyecto; las operaciones "SiVersion" comprueban la versión y aplican el cambio de forma atómica.
+ */
+public interface RepositorioProyectos {
+
+	/**
+	 * Crea un nuevo proyecto
+	 * @param p objeto Proyecto con los datos del nuevo proyecto
+	 * @return identificador asignado al proyecto
+	 * @throws SQLException si falla el almacenamiento
+	 */
+	int crearProyecto(Proyecto p) throws SQLException;
+
+	/**
+	 * Obtiene la lista de proyectos almacenados
+	 * @return List de objetos Proyecto
+	 * @throws SQLException si falla el almacenamiento
+	 */
+	List<Proyecto> obtenerProyectos() throws SQLException;
+
+	/**
+	 * Actualiza el nombre de un proyecto
+	 * @param id identificador del proyecto
+	 * @param nuevoNombre nuevo nombre del proyecto
+	 * @throws SQLException si falla el almacenamiento
+	 */
+	void actualizarProyecto(int id, String nuevoNombre) throws SQLException;
+
+	/**
+	 * Actualiza el nombre de un proyecto solo si sigue en la versión indicada
+	 * @param id identificador del proyecto
+	 * @param nuevoNombre nuevo nombre del proyecto
+	 * @param version versión que debe tener el proyecto
+	 * @return nueva versión del proyecto, o -1 si no existe o su versión es otra
+	 * @throws SQLException si falla el almacenamiento
+	 */
+	int actualizarProyectoSiVersion(int id, String nuevoNombre, int version) throws SQLException;
+
+	/**
+	 * Elimina un proyecto junto con sus tareas, también las archivadas, de forma atómica
+	 * @param id identificador del proyecto a eliminar
+	 * @return número de tareas eliminadas con el proyecto, sin contar las archivadas (0 si el proyecto no existía)
+	 * @throws SQLException si falla el almacenamiento; en ese caso no se elimina nada
+	 */
+	int eliminarProyecto(int id) throws SQLException;
+
+	/**
+	 * Elimina un proyecto junto con sus tareas, como eliminarProyecto, solo si sigue en la versión indicada
+	 * @param id identificador del proyecto a eliminar
+	 * @param version versión que debe tener el proyecto
+	 * @return número de tareas eliminadas con el proyecto, o -1 si no existe o su versión es otra
+	 * @throws SQLException si falla el almacenamiento; en ese caso no se elimina nada
+	 */
+	int eliminarProyectoSiVersion(int id, int version) throws SQLException;
+}
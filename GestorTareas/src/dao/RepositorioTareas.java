@@ -0,0 +1,160 @@
+package dao;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+import modelos.Tarea;
+
+/**
+ * Operaciones de almacenamiento de tareas, independientes del motor que las implemente
+ * Implementaciones: TareaDAO (MySQL) y almacen.AlmacenMemoria (memoria con diario en disco).
+ * Las implementaciones deben poder usarse desde varios hilos a la vez. Cada modificación de una tarea (un campo o
+ * su proyecto) aumenta en uno su versión, que empieza en 0 al crearla.
+ */
+public interface RepositorioTareas {
+
+	/**
+	 * Crea una nueva tarea
+	 * @param t objeto Tarea con los datos de la nueva tarea
+	 * @return identificador asignado a la tarea
+	 * @throws SQLException si el proyecto no existe o falla el almacenamiento
+	 */
+	int crearTarea(Tarea t) throws SQLException;
+
+	/**
+	 * Crea varias tareas de forma atómica: si alguna falla no se crea ninguna
+	 * @param tareas lista de tareas a crear
+	 * @return identificadores generados, en el mismo orden que la lista recibida
+	 * @throws SQLException si falla alguna creación
+	 */
+	int[] crearTareas(List<Tarea> tareas) throws SQLException;
+
+	/**
+	 * Obtiene una tarea por su id
+	 * @param id identificador de la tarea
+	 * @return la tarea, o null si no existe
+	 * @throws SQLException si falla el almacenamiento
+	 */
+	Tarea obtenerTarea(int id) throws SQLException;
+
+	/**
+	 * Obtiene varias tareas por su id en una sola operación del almacenamiento
+	 * @param ids identificadores de las tareas
+	 * @return las tareas que existen, en cualquier orden
+	 * @throws SQLException si falla el almacenamiento
+	 */
+	List<Tarea> obtenerTareas(List<Integer> ids) throws SQLException;
+
+	/**
+	 * Obtiene las tareas de un proyecto
+	 * @param idProyecto identificador del proyecto
+	 * @return List de objetos Tarea del proyecto
+	 * @throws SQLException si falla el almacenamiento
+	 */
+	List<Tarea> obtenerTareasPorProyecto(int idProyecto) throws SQLException;
+
+	/**
+	 * Obtiene una página de las tareas de un proyecto, ordenadas por id
+	 * @param idProyecto identificador del proyecto
+	 * @param despuesDeId solo se devuelven tareas con id mayor que este (0 para empezar)
+	 * @param limite número máximo de tareas de la página
+	 * @return tareas de la página
+	 * @throws SQLException si falla el almacenamiento
+	 */
+	List<Tarea> obtenerPaginaTareas(int idProyecto, int despuesDeId, int limite) throws SQLException;
+
+	/**
+	 * Entrega una a una las tareas de un proyecto, ordenadas por id, sin cargarlas todas en memoria
+	 * @param idProyecto identificador del proyecto
+	 * @param tamanioBloque tareas leídas de una vez del almacenamiento, cuando aplica
+	 * @param consumidor recibe cada tarea
+	 * @return número de tareas recorridas
+	 * @throws SQLException si falla el almacenamiento
+	 * @throws IOException si el consumidor falla al enviar una tarea
+	 */
+	int recorrerTareasPorProyecto(int idProyecto, int tamanioBloque, ConsumidorTareas consumidor)
+			throws SQLException, IOException;
+
+	/**
+	 * Busca tareas de uno o de todos los proyectos que cumplan unos filtros, ordenadas y limitadas
+	 * @param filtro filtros, orden y número máximo de tareas
+	 * @return tareas encontradas, en el orden pedido
+	 * @throws SQLException si falla el almacenamiento
+	 */
+	List<Tarea> consultarTareas(FiltroTareas filtro) throws SQLException;
+
+	/**
+	 * Recorre el proyecto, el estado y la urgencia de todas las tareas (no archivadas), sin leer el resto de columnas
+	 * @param tamanioBloque filas leídas del almacenamiento en cada viaje
+	 * @param consumidor recibe cada tarea, en cualquier orden
+	 * @return número de tareas recorridas
+	 * @throws SQLException si falla el almacenamiento
+	 */
+	int recorrerEstados(int tamanioBloque, ConsumidorEstados consumidor) throws SQLException;
+
+	/**
+	 * Recorre el proyecto y la fecha de fin de las tareas no finalizadas (ni archivadas) que tienen fecha de fin,
+	 * por fecha de fin de la más próxima a la más lejana, sin leer el resto de columnas
+	 * @param limite número máximo de tareas recorridas
+	 * @param tamanioBloque filas leídas del almacenamiento en cada viaje
+	 * @param consumidor recibe cada tarea
+	 * @return número de tareas recorridas
+	 * @throws SQLException si falla el almacenamiento
+	 */
+	int recorrerVencimientos(int limite, int tamanioBloque, ConsumidorVencimientos consumidor) throws SQLException;
+
+	/**
+	 * Actualiza un campo de una tarea ("fecha_fin", "estado" o "urgencia")
+	 * @param id identificador de la tarea
+	 * @param campo nombre del campo a actualizar
+	 * @param valor nuevo valor del campo
+	 * @throws SQLException si el campo o el valor no son válidos o falla el almacenamiento
+	 */
+	void actualizarTarea(int id, String campo, String valor) throws SQLException;
+
+	/**
+	 * Actualiza un campo de una tarea solo si sigue en la versión indicada, comprobándolo y cambiándolo de forma atómica
+	 * @param id identificador de la tarea
+	 * @param campo nombre del campo a actualizar
+	 * @param valor nuevo valor del campo
+	 * @param version versión que debe tener la tarea
+	 * @return nueva versión de la tarea, o -1 si no existe o su versión es otra
+	 * @throws SQLException si el campo o el valor no son válidos o falla el almacenamiento
+	 */
+	int actualizarTareaSiVersion(int id, String campo, String valor, int version) throws SQLException;
+
+	/**
+	 * Aplica varios cambios de campos de tareas de forma atómica y en el orden de la lista
+	 * Los cambios de tareas que ya no existen se ignoran, como en actualizarTarea.
+	 * @param cambios cambios validados con CambioTarea.validar
+	 * @throws SQLException si falla el almacenamiento; en ese caso no se aplica ninguno
+	 */
+	void actualizarTareas(List<CambioTarea> cambios) throws SQLException;
+
+	/**
+	 * Elimina una tarea
+	 * @param id identificador de la tarea a eliminar
+	 * @throws SQLException si falla el almacenamiento
+	 */
+	void eliminarTarea(int id) throws SQLException;
+
+	/**
+	 * Archiva de forma atómica todas las tareas finalizadas de un proyecto: dejan de estar entre sus tareas
+	 * (listados y consultas) y se guardan aparte hasta que se elimina el proyecto
+	 * @param idProyecto identificador del proyecto
+	 * @return número de tareas archivadas
+	 * @throws SQLException si falla el almacenamiento; en ese caso no se archiva ninguna
+	 */
+	int archivarFinalizadas(int idProyecto) throws SQLException;
+
+	/**
+	 * Pasa de forma atómica todas las tareas de un proyecto a otro
+	 * @param idOrigen proyecto del que salen las tareas
+	 * @param idDestino proyecto al que pasan
+	 * @return número de tareas movidas
+	 * @throws SQLException si el proyecto de destino no existe o falla el almacenamiento; en ese caso no se
+	 * mueve ninguna
+	 */
+	int moverTareas(int idOrigen, int idDestino) throws SQLException;
+}
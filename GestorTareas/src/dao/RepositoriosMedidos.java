@@ -0,0 +1,318 @@
+package dao;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+import metricas.Metricas;
+import modelos.Proyecto;
+import modelos.Tarea;
+
+/**
+ * Repositorio de proyectos y tareas que mide cada operación del almacenamiento que envuelve
+ * Registra en Metricas la latencia y los errores de cada método con el nombre "dao.metodo", y marca el tiempo
+ * como fase de datos del comando en curso. En recorrerTareasPorProyecto el tiempo incluye el del consumidor
+ * (el envío de cada tarea al cliente), porque las filas se leen según se envían.
+ */
+public class RepositoriosMedidos implements RepositorioProyectos, RepositorioTareas {
+	private final RepositorioProyectos proyectos;
+	private final RepositorioTareas tareas;
+	private final Metricas metricas = Metricas.global();
+
+	/**
+	 * @param proyectos repositorio de proyectos medido
+	 * @param tareas repositorio de tareas medido
+	 */
+	public RepositoriosMedidos(RepositorioProyectos proyectos, RepositorioTareas tareas) {
+		this.proyectos = proyectos;
+		this.tareas = tareas;
+	}
+
+	// Proyectos
+
+	@Override
+	public int crearProyecto(Proyecto p) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			int id = proyectos.crearProyecto(p);
+			error = false;
+			return id;
+		} finally {
+			metricas.terminarAcceso("dao.crearProyecto", inicio, error);
+		}
+	}
+
+	@Override
+	public List<Proyecto> obtenerProyectos() throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			List<Proyecto> lista = proyectos.obtenerProyectos();
+			error = false;
+			return lista;
+		} finally {
+			metricas.terminarAcceso("dao.obtenerProyectos", inicio, error);
+		}
+	}
+
+	@Override
+	public void actualizarProyecto(int id, String nuevoNombre) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			proyectos.actualizarProyecto(id, nuevoNombre);
+			error = false;
+		} finally {
+			metricas.terminarAcceso("dao.actualizarProyecto", inicio, error);
+		}
+	}
+
+	@Override
+	public int eliminarProyecto(int id) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			int n = proyectos.eliminarProyecto(id);
+			error = false;
+			return n;
+		} finally {
+			metricas.terminarAcceso("dao.eliminarProyecto", inicio, error);
+		}
+	}
+
+	@Override
+	public int actualizarProyectoSiVersion(int id, String nuevoNombre, int version) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			int v = proyectos.actualizarProyectoSiVersion(id, nuevoNombre, version);
+			error = false;
+			return v;
+		} finally {
+			metricas.terminarAcceso("dao.actualizarProyectoSiVersion", inicio, error);
+		}
+	}
+
+	@Override
+	public int eliminarProyectoSiVersion(int id, int version) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			int v = proyectos.eliminarProyectoSiVersion(id, version);
+			error = false;
+			return v;
+		} finally {
+			metricas.terminarAcceso("dao.eliminarProyectoSiVersion", inicio, error);
+		}
+	}
+
+	// Tareas
+
+	@Override
+	public int crearTarea(Tarea t) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			int id = tareas.crearTarea(t);
+			error = false;
+			return id;
+		} finally {
+			metricas.terminarAcceso("dao.crearTarea", inicio, error);
+		}
+	}
+
+	@Override
+	public int[] crearTareas(List<Tarea> lista) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			int[] ids = tareas.crearTareas(lista);
+			error = false;
+			return ids;
+		} finally {
+			metricas.terminarAcceso("dao.crearTareas", inicio, error);
+		}
+	}
+
+	@Override
+	public Tarea obtenerTarea(int id) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			Tarea t = tareas.obtenerTarea(id);
+			error = false;
+			return t;
+		} finally {
+			metricas.terminarAcceso("dao.obtenerTarea", inicio, error);
+		}
+	}
+
+	@Override
+	public List<Tarea> obtenerTareas(List<Integer> ids) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			List<Tarea> lista = tareas.obtenerTareas(ids);
+			error = false;
+			return lista;
+		} finally {
+			metricas.terminarAcceso("dao.obtenerTareas", inicio, error);
+		}
+	}
+
+	@Override
+	public List<Tarea> obtenerTareasPorProyecto(int idProyecto) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			List<Tarea> lista = tareas.obtenerTareasPorProyecto(idProyecto);
+			error = false;
+			return lista;
+		} finally {
+			metricas.terminarAcceso("dao.obtenerTareasPorProyecto", inicio, error);
+		}
+	}
+
+	@Override
+	public List<Tarea> obtenerPaginaTareas(int idProyecto, int despuesDeId, int limite) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			List<Tarea> lista = tareas.obtenerPaginaTareas(idProyecto, despuesDeId, limite);
+			error = false;
+			return lista;
+		} finally {
+			metricas.terminarAcceso("dao.obtenerPaginaTareas", inicio, error);
+		}
+	}
+
+	@Override
+	public int recorrerTareasPorProyecto(int idProyecto, int tamanioBloque, ConsumidorTareas consumidor)
+			throws SQLException, IOException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			int n = tareas.recorrerTareasPorProyecto(idProyecto, tamanioBloque, consumidor);
+			error = false;
+			return n;
+		} finally {
+			metricas.terminarAcceso("dao.recorrerTareasPorProyecto", inicio, error);
+		}
+	}
+
+	@Override
+	public List<Tarea> consultarTareas(FiltroTareas filtro) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			List<Tarea> lista = tareas.consultarTareas(filtro);
+			error = false;
+			return lista;
+		} finally {
+			metricas.terminarAcceso("dao.consultarTareas", inicio, error);
+		}
+	}
+
+	@Override
+	public int recorrerEstados(int tamanioBloque, ConsumidorEstados consumidor) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			int n = tareas.recorrerEstados(tamanioBloque, consumidor);
+			error = false;
+			return n;
+		} finally {
+			metricas.terminarAcceso("dao.recorrerEstados", inicio, error);
+		}
+	}
+
+	@Override
+	public int recorrerVencimientos(int limite, int tamanioBloque, ConsumidorVencimientos consumidor)
+			throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			int n = tareas.recorrerVencimientos(limite, tamanioBloque, consumidor);
+			error = false;
+			return n;
+		} finally {
+			metricas.terminarAcceso("dao.recorrerVencimientos", inicio, error);
+		}
+	}
+
+	@Override
+	public void actualizarTarea(int id, String campo, String valor) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			tareas.actualizarTarea(id, campo, valor);
+			error = false;
+		} finally {
+			metricas.terminarAcceso("dao.actualizarTarea", inicio, error);
+		}
+	}
+
+	@Override
+	public int actualizarTareaSiVersion(int id, String campo, String valor, int version) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			int v = tareas.actualizarTareaSiVersion(id, campo, valor, version);
+			error = false;
+			return v;
+		} finally {
+			metricas.terminarAcceso("dao.actualizarTareaSiVersion", inicio, error);
+		}
+	}
+
+	@Override
+	public void actualizarTareas(List<CambioTarea> cambios) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			tareas.actualizarTareas(cambios);
+			error = false;
+		} finally {
+			metricas.terminarAcceso("dao.actualizarTareas", inicio, error);
+		}
+	}
+
+	@Override
+	public void eliminarTarea(int id) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			tareas.eliminarTarea(id);
+			error = false;
+		} finally {
+			metricas.terminarAcceso("dao.eliminarTarea", inicio, error);
+		}
+	}
+
+	@Override
+	public int archivarFinalizadas(int idProyecto) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			int n = tareas.archivarFinalizadas(idProyecto);
+			error = false;
+			return n;
+		} finally {
+			metricas.terminarAcceso("dao.archivarFinalizadas", inicio, error);
+		}
+	}
+
+	@Override
+	public int moverTareas(int idOrigen, int idDestino) throws SQLException {
+		long inicio = metricas.iniciarAcceso();
+		boolean error = true;
+		try {
+			int n = tareas.moverTareas(idOrigen, idDestino);
+			error = false;
+			return n;
+		} finally {
+			metricas.terminarAcceso("dao.moverTareas", inicio, error);
+		}
+	}
+}
@@ -1,48 +1,178 @@
 package dao;
 
+import modelos.Estado;
 import modelos.Tarea;
+import modelos.Urgencia;
 
+import java.io.IOException;
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Clase DAO (Data access Object) para la entidad Tarea
  * Proporciona métodos para ejecutar las operaciones CRUD sobre la tabla 'tarea' en la base de datos.
  * Utiliza ConexionBD para obtener conexiones.
+ * No guarda estado entre llamadas, por lo que una misma instancia puede usarse desde varios hilos a la vez.
  */
-public class TareaDAO {
+public class TareaDAO implements RepositorioTareas {
+	// Sentencias de actualización permitidas, una por cada campo modificable; todas aumentan la versión
+	private static final Map<String, String> SQL_ACTUALIZAR = Map.of(
+			"fecha_fin", "UPDATE tarea SET fecha_fin=?, version=version+1 WHERE id=?",
+			"estado", "UPDATE tarea SET estado=?, version=version+1 WHERE id=?",
+			"urgencia", "UPDATE tarea SET urgencia=?, version=version+1 WHERE id=?");
+	// Las mismas, condicionadas a la versión que leyó el cliente (CAS_TAREA)
+	private static final Map<String, String> SQL_ACTUALIZAR_SI_VERSION = Map.of(
+			"fecha_fin", "UPDATE tarea SET fecha_fin=?, version=version+1 WHERE id=? AND version=?",
+			"estado", "UPDATE tarea SET estado=?, version=version+1 WHERE id=? AND version=?",
+			"urgencia", "UPDATE tarea SET urgencia=?, version=version+1 WHERE id=? AND version=?");
+
+	private static final String SQL_INSERTAR = """
+	        INSERT INTO tarea(nombre, descripcion, estado, urgencia, fecha_inicio, fecha_fin, proyecto_id)
+	        VALUES(?,?,?,?,?,?,?)
+	    """;
+	// Tamaños de la lista WHERE id IN (...) de obtenerTareas: se rellena hasta el siguiente, para que haya solo
+	// cuatro sentencias distintas en la caché del pool (y cuatro preparaciones en el servidor) y no una por tamaño
+	private static final int[] TAMANIOS_IN = { 8, 32, 128, 512 };
+	private static final String[] SQL_OBTENER_VARIAS = new String[TAMANIOS_IN.length];
+	static {
+	    for (int i = 0; i < TAMANIOS_IN.length; i++) {
+	        SQL_OBTENER_VARIAS[i] = "SELECT * FROM tarea WHERE id IN (?" + ",?".repeat(TAMANIOS_IN[i] - 1) + ")";
+	    }
+	}
+
 	/**
 	 * Crea una nueva tarea en la base de datos
 	 * @param t objeto Tarea con los datos de la nueva tarea
+	 * @return identificador generado por la base de datos
 	 * @throws SQLException si ocurre un error al conectarse o ejecutar la consulta
 	 */
-	public void crearTarea(Tarea t) throws SQLException {
-	    String sql = """
-	        INSERT INTO tarea(nombre, descripcion, estado, urgencia, fecha_inicio, fecha_fin, proyecto_id)
-	        VALUES(?,?,?,?,?,?,?)
-	    """;
-	
+	@Override
+	public int crearTarea(Tarea t) throws SQLException {
 	    try (Connection con = ConexionBD.getConnection();
-	         PreparedStatement pst = con.prepareStatement(sql)) {
+	         PreparedStatement pst = con.prepareStatement(SQL_INSERTAR, Statement.RETURN_GENERATED_KEYS)) {
 	
-	    	pst.setString(1, t.getNombre());
-	        pst.setString(2, t.getDescripcion());
-	        pst.setString(3, t.getEstado());
-	        pst.setString(4, t.getUrgencia());    
-	        pst.setDate(5, Date.valueOf(t.getInicio()));
-	        pst.setDate(6, Date.valueOf(t.getEntrega()));
-	        pst.setInt(7, t.getIdProyecto());     
+	    	asignarParametros(pst, t);
 	        pst.executeUpdate();
+	        return ProyectoDAO.idGenerado(pst);
 	    }
 	}
+
+	/**
+	 * Crea varias tareas en la base de datos en una única transacción
+	 * Las inserciones se envían en lote (addBatch/executeBatch); si alguna falla no se inserta ninguna.
+	 * @param tareas lista de tareas a crear
+	 * @return identificadores generados, en el mismo orden que la lista recibida
+	 * @throws BatchUpdateException si falla alguna inserción del lote; sus contadores indican hasta qué fila llegó
+	 * @throws SQLException si ocurre un error al conectarse o ejecutar la consulta
+	 */
+	@Override
+	public int[] crearTareas(List<Tarea> tareas) throws SQLException {
+	    int[] ids = new int[tareas.size()];
+	    try (Connection con = ConexionBD.getConnection()) {
+	        con.setAutoCommit(false);
+	        try (PreparedStatement pst = con.prepareStatement(SQL_INSERTAR, Statement.RETURN_GENERATED_KEYS)) {
+	            for (Tarea t : tareas) {
+	                asignarParametros(pst, t);
+	                pst.addBatch();
+	            }
+	            pst.executeBatch();
+	            try (ResultSet rs = pst.getGeneratedKeys()) {
+	                for (int i = 0; i < ids.length && rs.next(); i++) {
+	                    ids[i] = rs.getInt(1);
+	                }
+	            }
+	            con.commit();
+	        } catch (SQLException e) {
+	            con.rollback();
+	            throw e;
+	        }
+	    }
+	    return ids;
+	}
+
+	/**
+	 * Asigna los datos de una tarea a los parámetros de la sentencia de inserción
+	 */
+	private static void asignarParametros(PreparedStatement pst, Tarea t) throws SQLException {
+	    pst.setString(1, t.getNombre());
+	    pst.setString(2, t.getDescripcion());
+	    pst.setString(3, t.getEstado());
+	    pst.setString(4, t.getUrgencia());    
+	    pst.setDate(5, Date.valueOf(t.getInicio()));
+	    // La fecha de fin es opcional (el protocolo binario permite tareas sin ella)
+	    if (t.getEntrega() == null) {
+	        pst.setNull(6, Types.DATE);
+	    } else {
+	        pst.setDate(6, Date.valueOf(t.getEntrega()));
+	    }
+	    pst.setInt(7, t.getIdProyecto());     
+	}
 	
+	/**
+	 * Obtiene una tarea por su id
+	 * @param id identificador de la tarea
+	 * @return la tarea, o null si no existe
+	 * @throws SQLException si falla la conexión con la base de datos
+	 */
+	@Override
+	public Tarea obtenerTarea(int id) throws SQLException {
+	    try (Connection con = ConexionBD.getConnection();
+	         PreparedStatement pst = con.prepareStatement("SELECT * FROM tarea WHERE id=?")) {
+	        pst.setInt(1, id);
+	        try (ResultSet rs = pst.executeQuery()) {
+	            return rs.next() ? leerTarea(rs) : null;
+	        }
+	    }
+	}
+
+	/**
+	 * Obtiene varias tareas por su id con una consulta WHERE id IN (...), en bloques de como mucho 512 ids
+	 * Cada bloque se rellena repitiendo su último id hasta uno de los tamaños fijos de la lista (TAMANIOS_IN); los
+	 * ids repetidos no duplican filas.
+	 * @param ids identificadores de las tareas
+	 * @return las tareas que existen, en el orden en que las devuelve la base de datos
+	 * @throws SQLException si falla la conexión con la base de datos
+	 */
+	@Override
+	public List<Tarea> obtenerTareas(List<Integer> ids) throws SQLException {
+	    List<Tarea> lista = new ArrayList<>(ids.size());
+	    if (ids.isEmpty()) {
+	        return lista;
+	    }
+	    try (Connection con = ConexionBD.getConnection()) {
+	        int maximo = TAMANIOS_IN[TAMANIOS_IN.length - 1];
+	        for (int desde = 0; desde < ids.size(); desde += maximo) {
+	            List<Integer> bloque = ids.subList(desde, Math.min(ids.size(), desde + maximo));
+	            int t = 0;
+	            while (TAMANIOS_IN[t] < bloque.size()) {
+	                t++;
+	            }
+	            try (PreparedStatement pst = con.prepareStatement(SQL_OBTENER_VARIAS[t])) {
+	                for (int i = 0; i < TAMANIOS_IN[t]; i++) {
+	                    pst.setInt(i + 1, bloque.get(Math.min(i, bloque.size() - 1)));
+	                }
+	                try (ResultSet rs = pst.executeQuery()) {
+	                    while (rs.next()) {
+	                        lista.add(leerTarea(rs));
+	                    }
+	                }
+	            }
+	        }
+	    }
+	    return lista;
+	}
+
 	/**
 	 * Obtener la lista de tareas asociadas a un proyecto específico
 	 * @param idProyecto identificador del proyecto
 	 * @return List de objetos Tarea correspondientes al proyecto
 	 * @throws SQLException si falla la conexión con la base de datos
 	 */
+	@Override
 	public List<Tarea> obtenerTareasPorProyecto(int idProyecto) throws SQLException {
 	    String sql = "SELECT * FROM tarea WHERE proyecto_id=?";
 	    List<Tarea> lista = new ArrayList<>();
@@ -51,31 +181,227 @@ public class TareaDAO {
 	        pst.setInt(1, idProyecto);
 	        ResultSet rs = pst.executeQuery();
 	        while (rs.next()) {
-	            lista.add(new Tarea(
-	                rs.getInt("id"),
-	                rs.getString("nombre"),
-	                rs.getString("descripcion"), 
-	                rs.getString("estado"),
-	                rs.getString("urgencia"),   
-	                rs.getDate("fecha_inicio").toLocalDate(),
-	                rs.getDate("fecha_fin").toLocalDate(),
-	                rs.getInt("proyecto_id")
-	            ));
+	            lista.add(leerTarea(rs));
 	        }
 	    }
 	    return lista;
 	}
+
+	/**
+	 * Obtiene una página de las tareas de un proyecto, ordenadas por id (paginación por clave)
+	 * La página siguiente se pide con el id de la última tarea recibida, por lo que el coste
+	 * no depende de cuántas páginas se hayan leído antes, a diferencia de OFFSET.
+	 * @param idProyecto identificador del proyecto
+	 * @param despuesDeId solo se devuelven tareas con id mayor que este (0 para empezar)
+	 * @param limite número máximo de tareas de la página
+	 * @return tareas de la página; si hay menos que el límite no quedan más
+	 * @throws SQLException si falla la conexión con la base de datos
+	 */
+	@Override
+	public List<Tarea> obtenerPaginaTareas(int idProyecto, int despuesDeId, int limite) throws SQLException {
+	    String sql = "SELECT * FROM tarea WHERE proyecto_id=? AND id>? ORDER BY id LIMIT ?";
+	    List<Tarea> lista = new ArrayList<>(Math.min(limite, 1024));
+	    try (Connection con = ConexionBD.getConnection();
+	         PreparedStatement pst = con.prepareStatement(sql)) {
+	        pst.setInt(1, idProyecto);
+	        pst.setInt(2, despuesDeId);
+	        pst.setInt(3, limite);
+	        ResultSet rs = pst.executeQuery();
+	        while (rs.next()) {
+	            lista.add(leerTarea(rs));
+	        }
+	    }
+	    return lista;
+	}
+
+	/**
+	 * Recorre todas las tareas de un proyecto, ordenadas por id, sin cargarlas en memoria a la vez
+	 * El controlador lee las filas de la base de datos por bloques de tamanioBloque y cada tarea se entrega
+	 * al consumidor según se lee; la conexión queda ocupada hasta terminar el recorrido.
+	 * @param idProyecto identificador del proyecto
+	 * @param tamanioBloque filas leídas de la base de datos en cada viaje (fetch size)
+	 * @param consumidor recibe cada tarea; si lanza una excepción el recorrido se interrumpe
+	 * @return número de tareas recorridas
+	 * @throws SQLException si falla la conexión con la base de datos
+	 * @throws IOException si el consumidor falla al enviar una tarea
+	 */
+	@Override
+	public int recorrerTareasPorProyecto(int idProyecto, int tamanioBloque, ConsumidorTareas consumidor)
+	        throws SQLException, IOException {
+	    String sql = "SELECT * FROM tarea WHERE proyecto_id=? ORDER BY id";
+	    int n = 0;
+	    try (Connection con = ConexionBD.getConnection();
+	         PreparedStatement pst = con.prepareStatement(sql)) {
+	        pst.setFetchSize(tamanioBloque);
+	        pst.setInt(1, idProyecto);
+	        try (ResultSet rs = pst.executeQuery()) {
+	            while (rs.next()) {
+	                consumidor.aceptar(leerTarea(rs));
+	                n++;
+	            }
+	        }
+	    }
+	    return n;
+	}
+
+	/**
+	 * Busca tareas que cumplan unos filtros con una única consulta
+	 * Solo se añaden al WHERE las condiciones de los filtros indicados, para que MySQL pueda elegir el índice
+	 * compuesto adecuado (ver database/GestorTareas.sql); el orden y el límite también los resuelve la base de datos.
+	 * Como el texto cambia con cada combinación de filtros, se prepara fuera de la caché de sentencias del pool.
+	 * @param filtro filtros, orden y número máximo de tareas
+	 * @return tareas encontradas, en el orden pedido
+	 * @throws SQLException si falla la conexión con la base de datos
+	 */
+	@Override
+	public List<Tarea> consultarTareas(FiltroTareas filtro) throws SQLException {
+	    StringBuilder sql = new StringBuilder("SELECT * FROM tarea WHERE 1=1");
+	    List<Object> parametros = new ArrayList<>();
+	    if (filtro.idProyecto() != null) {
+	        sql.append(" AND proyecto_id=?");
+	        parametros.add(filtro.idProyecto());
+	    }
+	    if (filtro.filtraEstado()) {
+	        condicionIn(sql, parametros, "estado", filtro.estados().stream().map(Estado::getTexto).toList());
+	    }
+	    if (filtro.filtraUrgencia()) {
+	        condicionIn(sql, parametros, "urgencia", filtro.urgencias().stream().map(Urgencia::getTexto).toList());
+	    }
+	    condicionFecha(sql, parametros, "fecha_inicio>=?", filtro.inicioDesde());
+	    condicionFecha(sql, parametros, "fecha_inicio<=?", filtro.inicioHasta());
+	    condicionFecha(sql, parametros, "fecha_fin>=?", filtro.finDesde());
+	    condicionFecha(sql, parametros, "fecha_fin<=?", filtro.finHasta());
+	    String sentido = filtro.descendente() ? " DESC" : "";
+	    sql.append(" ORDER BY ").append(filtro.orden().getColumna()).append(sentido);
+	    if (filtro.orden() != FiltroTareas.Orden.ID) {
+	        sql.append(", id").append(sentido);
+	    }
+	    sql.append(" LIMIT ?");
+	    parametros.add(filtro.limite());
+
+	    List<Tarea> lista = new ArrayList<>(Math.min(filtro.limite(), 1024));
+	    try (Connection con = ConexionBD.getConnection();
+	         PreparedStatement pst = PoolConexiones.prepararSinCache(con, sql.toString())) {
+	        for (int i = 0; i < parametros.size(); i++) {
+	            pst.setObject(i + 1, parametros.get(i));
+	        }
+	        try (ResultSet rs = pst.executeQuery()) {
+	            while (rs.next()) {
+	                lista.add(leerTarea(rs));
+	            }
+	        }
+	    }
+	    return lista;
+	}
+
+	/**
+	 * Recorre las tareas con una única consulta de cuatro columnas, leída por bloques de tamanioBloque filas;
+	 * ni el nombre ni la descripción viajan al servidor
+	 * @param tamanioBloque filas leídas de la base de datos en cada viaje (fetch size)
+	 * @param consumidor recibe cada tarea según se lee
+	 * @return número de tareas recorridas
+	 * @throws SQLException si falla la conexión con la base de datos
+	 */
+	@Override
+	public int recorrerEstados(int tamanioBloque, ConsumidorEstados consumidor) throws SQLException {
+	    String sql = "SELECT id, proyecto_id, estado, urgencia FROM tarea";
+	    int n = 0;
+	    try (Connection con = ConexionBD.getConnection();
+	         PreparedStatement pst = con.prepareStatement(sql)) {
+	        pst.setFetchSize(tamanioBloque);
+	        try (ResultSet rs = pst.executeQuery()) {
+	            while (rs.next()) {
+	                consumidor.aceptar(rs.getInt("id"), rs.getInt("proyecto_id"),
+	                        Estado.desdeTexto(rs.getString("estado")).getCodigo(),
+	                        Urgencia.desdeTexto(rs.getString("urgencia")).getCodigo());
+	                n++;
+	            }
+	        }
+	    }
+	    return n;
+	}
+
+	/**
+	 * Recorre las tareas abiertas con fecha de fin con una consulta de tres columnas, leída por bloques de
+	 * tamanioBloque filas
+	 * @param limite número máximo de tareas recorridas
+	 * @param tamanioBloque filas leídas de la base de datos en cada viaje (fetch size)
+	 * @param consumidor recibe cada tarea según se lee
+	 * @return número de tareas recorridas
+	 * @throws SQLException si falla la conexión con la base de datos
+	 */
+	@Override
+	public int recorrerVencimientos(int limite, int tamanioBloque, ConsumidorVencimientos consumidor)
+	        throws SQLException {
+	    String sql = "SELECT id, proyecto_id, fecha_fin FROM tarea WHERE estado<>? AND fecha_fin IS NOT NULL "
+	            + "ORDER BY fecha_fin, id LIMIT ?";
+	    int n = 0;
+	    try (Connection con = ConexionBD.getConnection();
+	         PreparedStatement pst = con.prepareStatement(sql)) {
+	        pst.setString(1, Estado.FINALIZADO.getTexto());
+	        pst.setInt(2, limite);
+	        pst.setFetchSize(tamanioBloque);
+	        try (ResultSet rs = pst.executeQuery()) {
+	            while (rs.next()) {
+	                consumidor.aceptar(rs.getInt("id"), rs.getInt("proyecto_id"),
+	                        Math.toIntExact(rs.getDate("fecha_fin").toLocalDate().toEpochDay()));
+	                n++;
+	            }
+	        }
+	    }
+	    return n;
+	}
+
+	private static void condicionIn(StringBuilder sql, List<Object> parametros, String columna, List<String> valores) {
+	    sql.append(" AND ").append(columna).append(" IN (");
+	    for (int i = 0; i < valores.size(); i++) {
+	        sql.append(i == 0 ? "?" : ",?");
+	        parametros.add(valores.get(i));
+	    }
+	    sql.append(')');
+	}
+
+	private static void condicionFecha(StringBuilder sql, List<Object> parametros, String condicion, LocalDate fecha) {
+	    if (fecha != null) {
+	        sql.append(" AND ").append(condicion);
+	        parametros.add(Date.valueOf(fecha));
+	    }
+	}
+
+	/**
+	 * Construye una tarea a partir de la fila actual de un ResultSet
+	 */
+	private static Tarea leerTarea(ResultSet rs) throws SQLException {
+	    Date fin = rs.getDate("fecha_fin");
+	    Tarea t = new Tarea(
+	        rs.getInt("id"),
+	        rs.getString("nombre"),
+	        rs.getString("descripcion"), 
+	        rs.getString("estado"),
+	        rs.getString("urgencia"),   
+	        rs.getDate("fecha_inicio").toLocalDate(),
+	        fin == null ? null : fin.toLocalDate(),
+	        rs.getInt("proyecto_id")
+	    );
+	    t.setVersion(rs.getInt("version"));
+	    return t;
+	}
 	
 	/**
 	 * Actualiza un campo específico de una tarea
+	 * Solo se permiten los campos "fecha_fin", "estado" y "urgencia", cada uno con su sentencia fija.
 	 * @param id identificador de la tarea a modificar
 	 * @param campo nombre del campo a actualizar
 	 * @param valor nuevo valor del campo
-	 * @throws SQLException si falla la conexión con la base de datos
+	 * @throws SQLException si el campo no se puede modificar o falla la conexión con la base de datos
 	 */
+	@Override
 	public void actualizarTarea(int id, String campo, String valor) throws SQLException {
 
-	    String sql = "UPDATE tarea SET " + campo + "=? WHERE id=?";
+	    String sql = SQL_ACTUALIZAR.get(campo.toLowerCase(Locale.ROOT));
+	    if (sql == null) {
+	    	throw new SQLException("Campo no modificable: " + campo);
+	    }
 	
 	    try (Connection con = ConexionBD.getConnection();
 	         PreparedStatement pst = con.prepareStatement(sql)) {
@@ -84,11 +410,87 @@ public class TareaDAO {
 		        pst.executeUpdate();
 	    }
 	}
+
+	/**
+	 * Actualiza un campo de una tarea con una sola sentencia condicionada a su versión (UPDATE ... AND version=?)
+	 * La base de datos comprueba la versión y cambia la fila de forma atómica, por lo que dos clientes que parten
+	 * de la misma versión no pueden aplicar los dos su cambio: al segundo no le coincide ninguna fila.
+	 * @param id identificador de la tarea a modificar
+	 * @param campo nombre del campo a actualizar
+	 * @param valor nuevo valor del campo
+	 * @param version versión que debe tener la tarea
+	 * @return nueva versión de la tarea, o -1 si no existe o su versión es otra
+	 * @throws SQLException si el campo no se puede modificar o falla la conexión con la base de datos
+	 */
+	@Override
+	public int actualizarTareaSiVersion(int id, String campo, String valor, int version) throws SQLException {
+	    String sql = SQL_ACTUALIZAR_SI_VERSION.get(campo.toLowerCase(Locale.ROOT));
+	    if (sql == null) {
+	        throw new SQLException("Campo no modificable: " + campo);
+	    }
+	    try (Connection con = ConexionBD.getConnection();
+	         PreparedStatement pst = con.prepareStatement(sql)) {
+	        pst.setString(1, valor);
+	        pst.setInt(2, id);
+	        pst.setInt(3, version);
+	        return pst.executeUpdate() == 1 ? version + 1 : -1;
+	    }
+	}
+
+	/**
+	 * Aplica varios cambios en una única transacción
+	 * Se prepara una sentencia por cada campo distinto y los cambios se envían en lote (addBatch/executeBatch),
+	 * de modo que cada campo cuesta un viaje a la base de datos. Se respeta el orden entre los cambios de un mismo
+	 * campo, que son los únicos que pueden pisarse.
+	 * @param cambios cambios validados con CambioTarea.validar
+	 * @throws SQLException si falla la conexión con la base de datos; en ese caso no se aplica ninguno
+	 */
+	@Override
+	public void actualizarTareas(List<CambioTarea> cambios) throws SQLException {
+	    if (cambios.isEmpty()) {
+	        return;
+	    }
+	    try (Connection con = ConexionBD.getConnection()) {
+	        con.setAutoCommit(false);
+	        PreparedStatement[] sentencias = new PreparedStatement[CambioTarea.CAMPOS.length];
+	        try {
+	            for (CambioTarea c : cambios) {
+	                int campo = c.indiceCampo();
+	                if (campo < 0) {
+	                    throw new SQLException("Campo no modificable: " + c.campo());
+	                }
+	                if (sentencias[campo] == null) {
+	                    sentencias[campo] = con.prepareStatement(SQL_ACTUALIZAR.get(c.campo()));
+	                }
+	                sentencias[campo].setString(1, c.valor());
+	                sentencias[campo].setInt(2, c.idTarea());
+	                sentencias[campo].addBatch();
+	            }
+	            for (PreparedStatement pst : sentencias) {
+	                if (pst != null) {
+	                    pst.executeBatch();
+	                }
+	            }
+	            con.commit();
+	        } catch (SQLException e) {
+	            con.rollback();
+	            throw e;
+	        } finally {
+	            for (PreparedStatement pst : sentencias) {
+	                if (pst != null) {
+	                    pst.close();
+	                }
+	            }
+	        }
+	    }
+	}
+
 	/**
 	 * Elimina una tarea de la base de datos
 	 * @param id identificador de la tarea a eliminar
 	 * @throws SQLException si falla la conexión con la base de datos
 	 */
+	@Override
 	public void eliminarTarea(int id) throws SQLException {
 	    String sql = "DELETE FROM tarea WHERE id=?";
 	    try (Connection con = ConexionBD.getConnection();
@@ -98,4 +500,62 @@ public class TareaDAO {
 	        pst.executeUpdate();
 	    }
 	}
+
+	/**
+	 * Archiva las tareas finalizadas de un proyecto con dos sentencias en una única transacción
+	 * Se copian a tarea_archivada con INSERT ... SELECT, que deja bloqueadas las filas copiadas hasta el final de la
+	 * transacción, y después se borran de tarea con la misma condición; ninguna fila viaja al servidor.
+	 * @param idProyecto identificador del proyecto
+	 * @return número de tareas archivadas
+	 * @throws SQLException si falla la conexión con la base de datos; en ese caso no se archiva ninguna
+	 */
+	@Override
+	public int archivarFinalizadas(int idProyecto) throws SQLException {
+	    String copiar = """
+	            INSERT INTO tarea_archivada(id, nombre, descripcion, fecha_inicio, fecha_fin, urgencia, estado,
+	                proyecto_id, fecha_archivo)
+	            SELECT id, nombre, descripcion, fecha_inicio, fecha_fin, urgencia, estado, proyecto_id, CURRENT_DATE
+	            FROM tarea WHERE proyecto_id=? AND estado=?
+	        """;
+	    String borrar = "DELETE FROM tarea WHERE proyecto_id=? AND estado=?";
+	    try (Connection con = ConexionBD.getConnection()) {
+	        con.setAutoCommit(false);
+	        try (PreparedStatement pstCopiar = con.prepareStatement(copiar);
+	             PreparedStatement pstBorrar = con.prepareStatement(borrar)) {
+	            pstCopiar.setInt(1, idProyecto);
+	            pstCopiar.setString(2, Estado.FINALIZADO.getTexto());
+	            int copiadas = pstCopiar.executeUpdate();
+	            pstBorrar.setInt(1, idProyecto);
+	            pstBorrar.setString(2, Estado.FINALIZADO.getTexto());
+	            int borradas = pstBorrar.executeUpdate();
+	            if (borradas != copiadas) {
+	                throw new SQLException("Se han copiado " + copiadas + " tareas al archivo y borrado " + borradas);
+	            }
+	            con.commit();
+	            return borradas;
+	        } catch (SQLException e) {
+	            con.rollback();
+	            throw e;
+	        }
+	    }
+	}
+
+	/**
+	 * Mueve las tareas de un proyecto a otro con una sola sentencia UPDATE, que aumenta la versión de cada una
+	 * La clave ajena de proyecto_id hace que falle si el proyecto de destino no existe.
+	 * @param idOrigen proyecto del que salen las tareas
+	 * @param idDestino proyecto al que pasan
+	 * @return número de tareas movidas
+	 * @throws SQLException si el destino no existe o falla la conexión con la base de datos
+	 */
+	@Override
+	public int moverTareas(int idOrigen, int idDestino) throws SQLException {
+	    String sql = "UPDATE tarea SET proyecto_id=?, version=version+1 WHERE proyecto_id=?";
+	    try (Connection con = ConexionBD.getConnection();
+	         PreparedStatement pst = con.prepareStatement(sql)) {
+	        pst.setInt(1, idDestino);
+	        pst.setInt(2, idOrigen);
+	        return pst.executeUpdate();
+	    }
+	}
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+package metricas;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias en nanosegundos, seguro para usarse desde varios hilos sin cerrojos
+ * Cada potencia de dos se divide en SUBDIVISIONES cubos iguales (como en HdrHistogram), de modo que cualquier
+ * valor se guarda con un error menor del 1/SUBDIVISIONES (6%) y el histograma ocupa siempre lo mismo.
+ * Registrar un valor es un incremento atómico de su cubo más dos LongAdder (total y suma); el máximo solo se
+ * actualiza con CAS cuando se supera. Los percentiles se calculan leyendo los cubos sin detener a quien registra, por lo que
+ * son aproximados mientras llegan valores nuevos.
+ * Lo usan también los benchmarks (benchmark.Arnes), con un histograma por hilo que al final se suman con sumar().
+ */
+public final class Histograma {
+	private static final int BITS_SUBDIVISION = 4;
+	private static final int SUBDIVISIONES = 1 << BITS_SUBDIVISION;
+
+	private final AtomicLongArray cubos = new AtomicLongArray(64 * SUBDIVISIONES);
+	private final LongAdder total = new LongAdder();
+	private final LongAdder suma = new LongAdder();
+	private final AtomicLong maximo = new AtomicLong();
+
+	/**
+	 * @param nanos duración medida (los valores negativos cuentan como 0)
+	 */
+	public void registrar(long nanos) {
+		long valor = Math.max(0, nanos);
+		cubos.incrementAndGet(indice(valor));
+		total.increment();
+		suma.add(valor);
+		long actual = maximo.get();
+		while (valor > actual && !maximo.compareAndSet(actual, valor)) {
+			actual = maximo.get();
+		}
+	}
+
+	/**
+	 * Añade a este histograma todos los valores de otro
+	 * Como los percentiles, no es una copia instantánea si el otro sigue recibiendo valores.
+	 */
+	public void sumar(Histograma otro) {
+		for (int i = 0; i < cubos.length(); i++) {
+			long n = otro.cubos.get(i);
+			if (n != 0) {
+				cubos.addAndGet(i, n);
+			}
+		}
+		total.add(otro.total.sum());
+		suma.add(otro.suma.sum());
+		long valor = otro.maximo.get();
+		long actual = maximo.get();
+		while (valor > actual && !maximo.compareAndSet(actual, valor)) {
+			actual = maximo.get();
+		}
+	}
+
+	public long getTotal() {
+		return total.sum();
+	}
+
+	public long getMaximo() {
+		return maximo.get();
+	}
+
+	/**
+	 * @return media en nanosegundos, o 0 si no hay valores
+	 */
+	public long getMedia() {
+		long n = total.sum();
+		return n == 0 ? 0 : suma.sum() / n;
+	}
+
+	/**
+	 * @param percentil valor entre 0 y 100
+	 * @return límite superior del cubo donde cae el percentil, en nanosegundos
+	 */
+	public long percentil(double percentil) {
+		return percentiles(percentil)[0];
+	}
+
+	/**
+	 * Calcula varios percentiles sobre una misma copia de los cubos
+	 * @param percentiles valores entre 0 y 100
+	 * @return límite superior del cubo donde cae cada percentil, en nanosegundos
+	 */
+	public long[] percentiles(double... percentiles) {
+		long[] copia = new long[cubos.length()];
+		long n = 0;
+		for (int i = 0; i < copia.length; i++) {
+			copia[i] = cubos.get(i);
+			n += copia[i];
+		}
+		long max = maximo.get();
+		long[] resultado = new long[percentiles.length];
+		for (int p = 0; p < percentiles.length && n > 0; p++) {
+			long objetivo = (long) Math.ceil(n * percentiles[p] / 100.0);
+			long acumulado = 0;
+			resultado[p] = max;
+			for (int i = 0; i < copia.length; i++) {
+				acumulado += copia[i];
+				if (acumulado >= objetivo) {
+					resultado[p] = Math.min(limiteSuperior(i), max);
+					break;
+				}
+			}
+		}
+		return resultado;
+	}
+
+	/**
+	 * @return resumen en microsegundos: número de valores, media, percentiles 50, 90, 99 y 99,9 y máximo
+	 */
+	@Override
+	public String toString() {
+		long[] p = percentiles(50, 90, 99, 99.9);
+		return String.format(Locale.ROOT, "n=%d media=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+				getTotal(), getMedia() / 1e3, p[0] / 1e3, p[1] / 1e3, p[2] / 1e3, p[3] / 1e3, getMaximo() / 1e3);
+	}
+
+	private static int indice(long valor) {
+		if (valor < SUBDIVISIONES) {
+			return (int) valor;
+		}
+		int exponente = 63 - Long.numberOfLeadingZeros(valor);
+		int sub = (int) (valor >>> (exponente - BITS_SUBDIVISION)) & (SUBDIVISIONES - 1);
+		return (exponente - BITS_SUBDIVISION + 1) * SUBDIVISIONES + sub;
+	}
+
+	private static long limiteSuperior(int indice) {
+		if (indice < SUBDIVISIONES) {
+			return indice;
+		}
+		int exponente = indice / SUBDIVISIONES + BITS_SUBDIVISION - 1;
+		long sub = indice % SUBDIVISIONES;
+		return ((SUBDIVISIONES + sub + 1) << (exponente - BITS_SUBDIVISION)) - 1;
+	}
+}
@@ -0,0 +1,341 @@
+package metricas;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import config.Configuracion;
+
+/**
+ * Métricas del servidor: contadores y latencias por comando y por operación del almacenamiento, conexiones
+ * abiertas, tiempo de envío de respuestas y registro de comandos lentos
+ * Hay una única instancia (global()) que usan el procesador de comandos, los motores de red y las DAO.
+ * Todo lo que se llama en cada comando evita cerrojos: contadores LongAdder, histogramas con incrementos
+ * atómicos y una medición por hilo (ThreadLocal) donde se acumula el tiempo de cada fase. Solo los comandos
+ * lentos, que son pocos, pasan por un bloque sincronizado. Con gestor.metricas.activas=false no se mide nada.
+ * Parámetros configurables:
+ * - gestor.metricas.activas: si se toman métricas (true)
+ * - gestor.metricas.lentoMs: duración a partir de la cual un comando se registra como lento (100, 0 = ninguno)
+ */
+public final class Metricas {
+	private static final boolean ACTIVAS = Configuracion.booleano("metricas.activas", true);
+	private static final long LENTO_NANOS = TimeUnit.MILLISECONDS.toNanos(Configuracion.largo("metricas.lentoMs", 100));
+	/** Máximo de nombres distintos; el resto se agrupa en OTROS para que un cliente no pueda llenar la memoria */
+	private static final int MAX_NOMBRES = 128;
+	private static final String OTROS = "OTROS";
+	private static final int MAX_LENTOS = 20;
+	private static final int MAX_DETALLE = 200;
+
+	private static final Metricas GLOBAL = new Metricas();
+	private static final ThreadLocal<Medicion> MEDICION = ThreadLocal.withInitial(Medicion::new);
+
+	private final Map<String, MetricasOperacion> comandos = new ConcurrentHashMap<>();
+	private final Map<String, MetricasOperacion> operaciones = new ConcurrentHashMap<>();
+	private final AtomicInteger conexionesActivas = new AtomicInteger();
+	private final AtomicInteger maxConexiones = new AtomicInteger();
+	private final LongAdder conexionesAceptadas = new LongAdder();
+	private final LongAdder conexionesRechazadas = new LongAdder();
+	private final Histograma envio = new Histograma();
+	private final LongAdder lentos = new LongAdder();
+	private final ArrayDeque<String> ultimosLentos = new ArrayDeque<>();
+	// Estado de otros componentes (colas, cachés...) que se añade al resumen y al informe
+	private final Map<String, Supplier<String>> estados = new ConcurrentHashMap<>();
+	private final long inicio = System.nanoTime();
+
+	/**
+	 * Tiempos del comando que está ejecutando el hilo
+	 */
+	private static final class Medicion {
+		long inicio;
+		long primerAcceso;
+		long finUltimoAcceso;
+		long datos;
+		int profundidad;
+		long inicioAcceso;
+	}
+
+	private Metricas() {
+	}
+
+	/**
+	 * @return instancia compartida por todo el servidor
+	 */
+	public static Metricas global() {
+		return GLOBAL;
+	}
+
+	// Comandos
+
+	/**
+	 * Marca el principio de un comando en el hilo actual
+	 */
+	public void iniciarComando() {
+		if (!ACTIVAS) {
+			return;
+		}
+		Medicion m = MEDICION.get();
+		m.primerAcceso = 0;
+		m.datos = 0;
+		m.profundidad = 0;
+		m.inicio = System.nanoTime();
+	}
+
+	/**
+	 * Registra el comando que empezó con iniciarComando() en este mismo hilo
+	 * @param nombre nombre del comando (por ejemplo "LIST_TAREAS")
+	 * @param error si la respuesta ha sido un error
+	 * @param detalle comando recibido, para el registro de comandos lentos; su toString() solo se llama si el
+	 * comando ha sido lento, así que no hace falta convertirlo a texto en cada comando
+	 */
+	public void terminarComando(String nombre, boolean error, Object detalle) {
+		if (!ACTIVAS) {
+			return;
+		}
+		long fin = System.nanoTime();
+		Medicion m = MEDICION.get();
+		long total = fin - m.inicio;
+		long analisis = m.primerAcceso == 0 ? total : m.primerAcceso - m.inicio;
+		long serializacion = m.primerAcceso == 0 ? 0 : fin - m.finUltimoAcceso;
+		MetricasOperacion metricas = buscar(comandos, nombre, true);
+		metricas.registrar(total, error);
+		metricas.registrarFases(analisis, m.datos, serializacion);
+		if (LENTO_NANOS > 0 && total >= LENTO_NANOS) {
+			registrarLento(total, analisis, m.datos, serializacion, detalle);
+		}
+	}
+
+	/**
+	 * Marca el principio de un acceso a los datos (caché o almacenamiento)
+	 * Los accesos pueden anidarse (la caché llama al almacenamiento): para las fases del comando solo cuenta el exterior.
+	 * @return instante de inicio, para pasarlo a terminarAcceso()
+	 */
+	public long iniciarAcceso() {
+		if (!ACTIVAS) {
+			return 0;
+		}
+		long ahora = System.nanoTime();
+		Medicion m = MEDICION.get();
+		if (m.profundidad++ == 0) {
+			m.inicioAcceso = ahora;
+			if (m.primerAcceso == 0) {
+				m.primerAcceso = ahora;
+			}
+		}
+		return ahora;
+	}
+
+	/**
+	 * Registra un acceso a los datos que empezó con iniciarAcceso() en este mismo hilo
+	 * @param operacion nombre de la operación (por ejemplo "dao.obtenerTareasPorProyecto")
+	 * @param inicio valor devuelto por iniciarAcceso()
+	 * @param error si la operación ha terminado con una excepción
+	 */
+	public void terminarAcceso(String operacion, long inicio, boolean error) {
+		if (!ACTIVAS) {
+			return;
+		}
+		long fin = System.nanoTime();
+		Medicion m = MEDICION.get();
+		if (m.profundidad > 0 && --m.profundidad == 0) {
+			m.datos += fin - m.inicioAcceso;
+			m.finUltimoAcceso = fin;
+		}
+		buscar(operaciones, operacion, false).registrar(fin - inicio, error);
+	}
+
+	private static MetricasOperacion buscar(Map<String, MetricasOperacion> mapa, String nombre, boolean porFases) {
+		MetricasOperacion metricas = mapa.get(nombre);
+		if (metricas != null) {
+			return metricas;
+		}
+		if (mapa.size() >= MAX_NOMBRES) {
+			nombre = OTROS;
+		}
+		return mapa.computeIfAbsent(nombre, n -> new MetricasOperacion(n, porFases));
+	}
+
+	private void registrarLento(long total, long analisis, long datos, long serializacion, Object objeto) {
+		lentos.increment();
+		String detalle = objeto == null ? "" : objeto.toString();
+		String texto = detalle.length() > MAX_DETALLE ? detalle.substring(0, MAX_DETALLE) + "..." : detalle;
+		String linea = LocalDateTime.now() + " " + total / 1_000_000 + " ms (análisis " + analisis / 1_000_000
+				+ " ms, datos " + datos / 1_000_000 + " ms, serialización " + serializacion / 1_000_000 + " ms): " + texto;
+		System.out.println("Comando lento: " + linea);
+		synchronized (ultimosLentos) {
+			if (ultimosLentos.size() == MAX_LENTOS) {
+				ultimosLentos.removeFirst();
+			}
+			ultimosLentos.addLast(linea);
+		}
+	}
+
+	// Red
+
+	public void conexionAbierta() {
+		if (!ACTIVAS) {
+			return;
+		}
+		conexionesAceptadas.increment();
+		maxConexiones.accumulateAndGet(conexionesActivas.incrementAndGet(), Math::max);
+	}
+
+	public void conexionCerrada() {
+		if (ACTIVAS) {
+			conexionesActivas.decrementAndGet();
+		}
+	}
+
+	public void conexionRechazada() {
+		if (ACTIVAS) {
+			conexionesRechazadas.increment();
+		}
+	}
+
+	/**
+	 * Registra lo que ha tardado en escribirse una respuesta en el socket
+	 * @param nanos duración de la escritura
+	 */
+	public void registrarEnvio(long nanos) {
+		if (ACTIVAS) {
+			envio.registrar(nanos);
+		}
+	}
+
+	/**
+	 * @return tiempo de inicio para medir un envío, o 0 si las métricas están desactivadas
+	 */
+	public static long ahora() {
+		return ACTIVAS ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Añade al resumen (STATS) y al informe el estado de un componente, obtenido en cada consulta
+	 * @param nombre nombre del componente; si ya había uno con el mismo nombre se sustituye
+	 * @param estado devuelve el estado en una línea
+	 */
+	public void registrarEstado(String nombre, Supplier<String> estado) {
+		estados.put(nombre, estado);
+	}
+
+	// Consulta
+
+	/**
+	 * @return métricas de un comando, o null si todavía no se ha ejecutado
+	 */
+	public MetricasOperacion getComando(String nombre) {
+		return comandos.get(nombre);
+	}
+
+	/**
+	 * @return métricas de una operación del almacenamiento o de la caché, o null si todavía no se ha ejecutado
+	 */
+	public MetricasOperacion getOperacion(String nombre) {
+		return operaciones.get(nombre);
+	}
+
+	public int getConexionesActivas() {
+		return conexionesActivas.get();
+	}
+
+	/**
+	 * @return todas las métricas en una línea (comando STATS)
+	 */
+	public String resumen() {
+		StringBuilder sb = new StringBuilder("OK ").append(cabecera());
+		for (MetricasOperacion m : new TreeMap<>(comandos).values()) {
+			sb.append(" | ").append(m);
+		}
+		for (MetricasOperacion m : new TreeMap<>(operaciones).values()) {
+			sb.append(" | ").append(m);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return todas las métricas, una por línea, y los últimos comandos lentos (fichero de volcado)
+	 */
+	public String informe() {
+		StringBuilder sb = new StringBuilder("# Métricas del gestor de tareas, ").append(LocalDateTime.now()).append('\n');
+		sb.append(cabecera()).append('\n');
+		sb.append("\n# Comandos\n");
+		for (MetricasOperacion m : new TreeMap<>(comandos).values()) {
+			sb.append(m).append('\n');
+		}
+		sb.append("\n# Caché y almacenamiento\n");
+		for (MetricasOperacion m : new TreeMap<>(operaciones).values()) {
+			sb.append(m).append('\n');
+		}
+		sb.append("\n# Últimos comandos lentos\n");
+		synchronized (ultimosLentos) {
+			for (String linea : ultimosLentos) {
+				sb.append(linea).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	private String cabecera() {
+		return "activo=" + Duration.ofNanos(System.nanoTime() - inicio).toSeconds() + "s conexiones{activas="
+				+ conexionesActivas.get() + ", max=" + maxConexiones.get() + ", aceptadas=" + conexionesAceptadas.sum()
+				+ ", rechazadas=" + conexionesRechazadas.sum() + "} envio[" + envio + "] lentos=" + lentos.sum()
+				+ estadosComponentes();
+	}
+
+	private String estadosComponentes() {
+		StringBuilder sb = new StringBuilder();
+		for (Supplier<String> estado : new TreeMap<>(estados).values()) {
+			sb.append(' ').append(estado.get());
+		}
+		return sb.toString();
+	}
+
+	// Volcado a fichero
+
+	/**
+	 * Escribe el informe en un fichero temporal y lo renombra, para que quien lo lea nunca vea uno a medias
+	 * @param fichero fichero de destino
+	 * @throws IOException si no se puede escribir
+	 */
+	public void volcar(Path fichero) throws IOException {
+		Path temporal = fichero.resolveSibling(fichero.getFileName() + ".tmp");
+		try (Writer out = Files.newBufferedWriter(temporal, StandardCharsets.UTF_8)) {
+			out.write(informe());
+		}
+		Files.move(temporal, fichero, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Vuelca el informe al fichero cada cierto intervalo desde un hilo en segundo plano
+	 * @param fichero fichero de destino
+	 * @param intervaloS segundos entre volcados
+	 */
+	public void programarVolcado(Path fichero, long intervaloS) {
+		ScheduledExecutorService volcado = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread hilo = new Thread(r, "metricas");
+			hilo.setDaemon(true);
+			return hilo;
+		});
+		volcado.scheduleWithFixedDelay(() -> {
+			try {
+				volcar(fichero);
+			} catch (IOException e) {
+				System.err.println("Error al guardar las métricas: " + e.getMessage());
+			}
+		}, intervaloS, intervaloS, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,98 @@
+package metricas;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores y latencias de un comando del protocolo o de una operación del almacenamiento
+ * Los comandos separan además su tiempo en tres fases:
+ * - análisis: desde que empieza el comando hasta el primer acceso a los datos (interpretar los parámetros)
+ * - datos: tiempo dentro de la caché y del almacenamiento (MySQL o memoria)
+ * - serialización: desde el último acceso a los datos hasta tener la respuesta
+ * Un comando que no llega a acceder a los datos (por ejemplo por un error en sus parámetros) cuenta todo su
+ * tiempo como análisis. Es segura para usarse desde varios hilos a la vez.
+ */
+public final class MetricasOperacion {
+	private final String nombre;
+	private final LongAdder errores = new LongAdder();
+	private final Histograma total = new Histograma();
+	private final Histograma analisis;
+	private final Histograma datos;
+	private final Histograma serializacion;
+
+	MetricasOperacion(String nombre, boolean porFases) {
+		this.nombre = nombre;
+		this.analisis = porFases ? new Histograma() : null;
+		this.datos = porFases ? new Histograma() : null;
+		this.serializacion = porFases ? new Histograma() : null;
+	}
+
+	void registrar(long nanos, boolean error) {
+		total.registrar(nanos);
+		if (error) {
+			errores.increment();
+		}
+	}
+
+	void registrarFases(long nanosAnalisis, long nanosDatos, long nanosSerializacion) {
+		analisis.registrar(nanosAnalisis);
+		datos.registrar(nanosDatos);
+		serializacion.registrar(nanosSerializacion);
+	}
+
+	public String getNombre() {
+		return nombre;
+	}
+
+	/**
+	 * @return número de ejecuciones, con error o sin él
+	 */
+	public long getEjecuciones() {
+		return total.getTotal();
+	}
+
+	public long getErrores() {
+		return errores.sum();
+	}
+
+	/**
+	 * @return latencia completa de cada ejecución
+	 */
+	public Histograma getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return latencia de la fase de análisis, o null si no se mide por fases
+	 */
+	public Histograma getAnalisis() {
+		return analisis;
+	}
+
+	/**
+	 * @return latencia de la fase de datos, o null si no se mide por fases
+	 */
+	public Histograma getDatos() {
+		return datos;
+	}
+
+	/**
+	 * @return latencia de la fase de serialización, o null si no se mide por fases
+	 */
+	public Histograma getSerializacion() {
+		return serializacion;
+	}
+
+	/**
+	 * @return resumen en una línea
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(nombre).append("{errores=").append(getErrores())
+				.append(", total[").append(total).append(']');
+		if (analisis != null) {
+			sb.append(", analisis[").append(analisis).append("], datos[").append(datos)
+					.append("], serializacion[").append(serializacion).append(']');
+		}
+		return sb.append('}').toString();
+	}
+}
@@ -0,0 +1,314 @@
+package modelos;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Conjunto de tareas guardadas por columnas, en arrays de tipos primitivos indexados por el id de la tarea
+ * Cada tarea ocupa unos 29 bytes fijos más sus textos, sin objetos propios: el estado y la urgencia son el
+ * código de un byte de su enumerado, las fechas son días desde 1970-01-01 (Tarea.SIN_FECHA si no hay) y el
+ * nombre y la descripción se guardan en UTF-8 en un único array compartido, precedidos de su longitud.
+ * Así el recolector de basura no tiene que recorrer un objeto por tarea y los recorridos masivos (filtros,
+ * índices) leen memoria contigua. tarea() devuelve una Tarea con los valores de una fila, creada al pedirla.
+ * Los ids se asignan de forma consecutiva, por lo que los huecos que dejan las tareas eliminadas son pocos.
+ * Cuando los textos sustituidos ocupan más que los vigentes, el array de textos se compacta.
+ * No es seguro para usarse desde varios hilos a la vez (AlmacenMemoria lo protege con su cerrojo).
+ */
+public final class BloqueTareas {
+	private static final int CAPACIDAD_INICIAL = 1024;
+	private static final int SIN_TEXTO = -1;
+
+	private final BitSet vivas = new BitSet();
+	private int tamanio;
+	private int[] proyecto;
+	private byte[] estado;
+	private byte[] urgencia;
+	private int[] inicio;
+	private int[] fin;
+	private int[] nombre;
+	private int[] descripcion;
+	private int[] version;
+
+	private byte[] textos;
+	private int usados;
+	/** Bytes de textos que ya no usa ninguna tarea */
+	private int basura;
+
+	public BloqueTareas() {
+		this(CAPACIDAD_INICIAL);
+	}
+
+	/**
+	 * @param capacidad número de ids para los que se reserva espacio (se amplía al necesitar más)
+	 */
+	public BloqueTareas(int capacidad) {
+		int n = Math.max(capacidad, 16);
+		proyecto = new int[n];
+		estado = new byte[n];
+		urgencia = new byte[n];
+		inicio = new int[n];
+		fin = new int[n];
+		nombre = new int[n];
+		descripcion = new int[n];
+		version = new int[n];
+		textos = new byte[n * 16];
+	}
+
+	/**
+	 * Añade la tarea o sustituye la que tenga su id
+	 * Los textos que no cambian se reutilizan sin copiarlos de nuevo.
+	 * @param t tarea con id mayor que 0
+	 */
+	public void poner(Tarea t) {
+		int id = t.getId();
+		if (id <= 0) {
+			throw new IllegalArgumentException("Id de tarea inválido: " + id);
+		}
+		asegurar(id + 1);
+		if (vivas.get(id)) {
+			nombre[id] = sustituir(nombre[id], t.getNombre());
+			descripcion[id] = sustituir(descripcion[id], t.getDescripcion());
+		} else {
+			vivas.set(id);
+			tamanio++;
+			nombre[id] = guardar(t.getNombre());
+			descripcion[id] = guardar(t.getDescripcion());
+		}
+		proyecto[id] = t.getIdProyecto();
+		estado[id] = t.getCodigoEstado();
+		urgencia[id] = t.getCodigoUrgencia();
+		inicio[id] = t.getDiaInicio();
+		fin[id] = t.getDiaEntrega();
+		version[id] = t.getVersion();
+		compactarSiHaceFalta();
+	}
+
+	/**
+	 * Quita la tarea con el id indicado
+	 * @return true si existía
+	 */
+	public boolean quitar(int id) {
+		if (!contiene(id)) {
+			return false;
+		}
+		vivas.clear(id);
+		tamanio--;
+		basura += ocupados(textos, nombre[id]) + ocupados(textos, descripcion[id]);
+		nombre[id] = SIN_TEXTO;
+		descripcion[id] = SIN_TEXTO;
+		compactarSiHaceFalta();
+		return true;
+	}
+
+	/**
+	 * Cambia el proyecto de una tarea existente sin tocar el resto de columnas (para mover tareas en bloque)
+	 */
+	public void setIdProyecto(int id, int idProyecto) {
+		proyecto[id] = idProyecto;
+	}
+
+	public boolean contiene(int id) {
+		return id > 0 && vivas.get(id);
+	}
+
+	/**
+	 * @return tarea con los valores actuales del id, o null si no existe
+	 */
+	public Tarea tarea(int id) {
+		if (!contiene(id)) {
+			return null;
+		}
+		Tarea t = new Tarea(id, leer(nombre[id]), leer(descripcion[id]), Estado.desdeCodigo(estado[id]),
+				Urgencia.desdeCodigo(urgencia[id]), inicio[id], fin[id], proyecto[id]);
+		t.setVersion(version[id]);
+		return t;
+	}
+
+	/**
+	 * @return primer id existente mayor o igual que desde, o -1 si no hay más (para recorrer todas las tareas)
+	 */
+	public int siguiente(int desde) {
+		return vivas.nextSetBit(Math.max(desde, 0));
+	}
+
+	/**
+	 * @return número de tareas
+	 */
+	public int getTamanio() {
+		return tamanio;
+	}
+
+	// Columnas (solo para ids existentes)
+
+	public int getIdProyecto(int id) {
+		return proyecto[id];
+	}
+
+	public byte getCodigoEstado(int id) {
+		return estado[id];
+	}
+
+	public byte getCodigoUrgencia(int id) {
+		return urgencia[id];
+	}
+
+	public int getDiaInicio(int id) {
+		return inicio[id];
+	}
+
+	public int getDiaEntrega(int id) {
+		return fin[id];
+	}
+
+	public int getVersion(int id) {
+		return version[id];
+	}
+
+	/**
+	 * Cambia la versión de una tarea existente sin tocar el resto de columnas
+	 */
+	public void setVersion(int id, int v) {
+		version[id] = v;
+	}
+
+	/**
+	 * @return copia independiente del bloque (para guardarla en una instantánea sin bloquear a los demás)
+	 */
+	public BloqueTareas copia() {
+		BloqueTareas c = new BloqueTareas(16);
+		c.vivas.or(vivas);
+		c.tamanio = tamanio;
+		c.proyecto = proyecto.clone();
+		c.estado = estado.clone();
+		c.urgencia = urgencia.clone();
+		c.inicio = inicio.clone();
+		c.fin = fin.clone();
+		c.nombre = nombre.clone();
+		c.descripcion = descripcion.clone();
+		c.version = version.clone();
+		c.textos = Arrays.copyOf(textos, usados);
+		c.usados = usados;
+		c.basura = basura;
+		return c;
+	}
+
+	/**
+	 * @return memoria aproximada que ocupan los arrays, en bytes
+	 */
+	public long getBytes() {
+		return (long) proyecto.length * 26 + textos.length + vivas.size() / 8;
+	}
+
+	@Override
+	public String toString() {
+		return "BloqueTareas{tareas=" + tamanio + ", capacidad=" + proyecto.length + ", textos=" + usados
+				+ " bytes (" + basura + " sin uso), memoria=" + getBytes() / 1024 + " KB}";
+	}
+
+	// Textos: longitud en varint y bytes UTF-8, o SIN_TEXTO para null
+
+	private int guardar(String texto) {
+		if (texto == null) {
+			return SIN_TEXTO;
+		}
+		byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+		if (textos.length - usados < bytes.length + 5) {
+			textos = Arrays.copyOf(textos, Math.max(textos.length * 2, usados + bytes.length + 5));
+		}
+		int posicion = usados;
+		int n = bytes.length;
+		while ((n & ~0x7F) != 0) {
+			textos[usados++] = (byte) ((n & 0x7F) | 0x80);
+			n >>>= 7;
+		}
+		textos[usados++] = (byte) n;
+		System.arraycopy(bytes, 0, textos, usados, bytes.length);
+		usados += bytes.length;
+		return posicion;
+	}
+
+	private int sustituir(int posicion, String texto) {
+		if (texto != null && posicion != SIN_TEXTO && texto.equals(leer(posicion))) {
+			return posicion;
+		}
+		basura += ocupados(textos, posicion);
+		return guardar(texto);
+	}
+
+	private String leer(int posicion) {
+		if (posicion == SIN_TEXTO) {
+			return null;
+		}
+		int longitud = 0;
+		int desplazamiento = 0;
+		byte b;
+		do {
+			b = textos[posicion++];
+			longitud |= (b & 0x7F) << desplazamiento;
+			desplazamiento += 7;
+		} while (b < 0);
+		return new String(textos, posicion, longitud, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return bytes que ocupa el texto guardado en la posición, longitud incluida
+	 */
+	private static int ocupados(byte[] datos, int posicion) {
+		if (posicion == SIN_TEXTO) {
+			return 0;
+		}
+		int inicioTexto = posicion;
+		int longitud = 0;
+		int desplazamiento = 0;
+		byte b;
+		do {
+			b = datos[posicion++];
+			longitud |= (b & 0x7F) << desplazamiento;
+			desplazamiento += 7;
+		} while (b < 0);
+		return posicion - inicioTexto + longitud;
+	}
+
+	/**
+	 * Copia los textos vigentes a un array nuevo cuando los que no se usan ocupan más de la mitad
+	 */
+	private void compactarSiHaceFalta() {
+		if (basura < 64 * 1024 || basura < usados / 2) {
+			return;
+		}
+		byte[] anteriores = textos;
+		textos = new byte[Math.max((usados - basura) * 3 / 2, 1024)];
+		usados = 0;
+		basura = 0;
+		for (int id = vivas.nextSetBit(0); id >= 0; id = vivas.nextSetBit(id + 1)) {
+			nombre[id] = mover(anteriores, nombre[id]);
+			descripcion[id] = mover(anteriores, descripcion[id]);
+		}
+	}
+
+	private int mover(byte[] anteriores, int posicion) {
+		if (posicion == SIN_TEXTO) {
+			return SIN_TEXTO;
+		}
+		int n = ocupados(anteriores, posicion);
+		System.arraycopy(anteriores, posicion, textos, usados, n);
+		usados += n;
+		return usados - n;
+	}
+
+	private void asegurar(int capacidad) {
+		if (capacidad <= proyecto.length) {
+			return;
+		}
+		int n = Math.max(capacidad, proyecto.length + (proyecto.length >> 1));
+		proyecto = Arrays.copyOf(proyecto, n);
+		estado = Arrays.copyOf(estado, n);
+		urgencia = Arrays.copyOf(urgencia, n);
+		inicio = Arrays.copyOf(inicio, n);
+		fin = Arrays.copyOf(fin, n);
+		nombre = Arrays.copyOf(nombre, n);
+		descripcion = Arrays.copyOf(descripcion, n);
+		version = Arrays.copyOf(version, n);
+	}
+}
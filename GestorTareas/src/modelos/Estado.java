@@ -0,0 +1,66 @@
+package modelos;
+
+/**
+ * Valores permitidos para el estado de una tarea
+ * Cada valor tiene el texto usado en la base de datos y en el protocolo de texto,
+ * y un código de un byte usado en el protocolo binario.
+ */
+public enum Estado {
+	PENDIENTE("pendiente"),
+	EN_PROGRESO("en progreso"),
+	FINALIZADO("finalizado");
+
+	private static final Estado[] VALORES = values();
+
+	private final String texto;
+
+	Estado(String texto) {
+		this.texto = texto;
+	}
+
+	/**
+	 * @return texto del estado tal como se guarda en la base de datos
+	 */
+	public String getTexto() {
+		return texto;
+	}
+
+	/**
+	 * @return código de un byte del estado
+	 */
+	public byte getCodigo() {
+		return (byte) ordinal();
+	}
+
+	/**
+	 * Obtiene el estado a partir de su código
+	 * @param codigo código de un byte
+	 * @return estado correspondiente
+	 * @throws IllegalArgumentException si el código no corresponde a ningún estado
+	 */
+	public static Estado desdeCodigo(int codigo) {
+		if (codigo < 0 || codigo >= VALORES.length) {
+			throw new IllegalArgumentException("Código de estado inválido: " + codigo);
+		}
+		return VALORES[codigo];
+	}
+
+	/**
+	 * Obtiene el estado a partir de su texto, sin distinguir mayúsculas
+	 * Se acepta "completa", que es el valor que ofrece el cliente, como sinónimo de "finalizado".
+	 * @param texto texto del estado
+	 * @return estado correspondiente
+	 * @throws IllegalArgumentException si el texto no corresponde a ningún estado
+	 */
+	public static Estado desdeTexto(String texto) {
+		for (Estado e : VALORES) {
+			if (e.texto.equalsIgnoreCase(texto)) {
+				return e;
+			}
+		}
+		if ("completa".equalsIgnoreCase(texto)) {
+			return FINALIZADO;
+		}
+		throw new IllegalArgumentException("Estado inválido: " + texto);
+	}
+}
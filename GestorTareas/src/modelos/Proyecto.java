@@ -4,14 +4,21 @@ package modelos;
  * Representa un proyecto en la aplicación de gestión de tareas
  * Contiene los atributos básicos del proyecto (id, nombre)
  * Se utiliza por el servidor y los DAO para almacenar y obtener información de la base de datos
+ * La versión empieza en 0 y el almacenamiento la aumenta cada vez que cambia el nombre (ver CAS_PROYECTO).
  */
 public class Proyecto {
 	private int id;
 	private String nombre;
+	private int version;
 	//Constructores
 	public Proyecto(int id, String nombre) {
+	    this(id, nombre, 0);
+	}
+
+	public Proyecto(int id, String nombre, int version) {
 	    this.id = id;
 	    this.nombre = nombre;
+	    this.version = version;
 	}
 	
 	public Proyecto(String nombre) {
@@ -24,12 +31,15 @@ public class Proyecto {
 	public String getNombre() { 
 		return nombre; 
 		}
+	public int getVersion() { 
+		return version; 
+		}
 	public void setNombre(String nombre) { 
 		this.nombre = nombre;
 		}
 	
 	@Override
 	public String toString() {
-	    return "Proyecto{id=" + id + ", nombre='" + nombre + "'}";
+	    return "Proyecto{id=" + id + ", nombre='" + nombre + "', version=" + version + "}";
 	}
 }
\ No newline at end of file
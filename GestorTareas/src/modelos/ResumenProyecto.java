@@ -0,0 +1,31 @@
+package modelos;
+
+/**
+ * Número de tareas de un proyecto por estado y por urgencia, y de tareas vencidas (STATS_PROYECTO y STATS_ALL)
+ * Las tareas archivadas no se cuentan.
+ * @param idProyecto identificador del proyecto
+ * @param pendientes tareas pendientes
+ * @param enProgreso tareas en progreso
+ * @param finalizadas tareas finalizadas
+ * @param alta tareas de urgencia alta
+ * @param media tareas de urgencia media
+ * @param baja tareas de urgencia baja
+ * @param vencidas tareas no finalizadas cuya fecha de fin ha pasado, o -1 si no se siguen los vencimientos
+ */
+public record ResumenProyecto(int idProyecto, int pendientes, int enProgreso, int finalizadas, int alta, int media,
+		int baja, int vencidas) {
+
+	/**
+	 * @return número total de tareas del proyecto
+	 */
+	public int tareas() {
+		return pendientes + enProgreso + finalizadas;
+	}
+
+	@Override
+	public String toString() {
+		return "ResumenProyecto{id=" + idProyecto + ", tareas=" + tareas() + ", pendiente=" + pendientes
+				+ ", en_progreso=" + enProgreso + ", finalizado=" + finalizadas + ", alta=" + alta + ", media=" + media
+				+ ", baja=" + baja + ", vencidas=" + vencidas + "}";
+	}
+}
@@ -6,90 +6,144 @@ import java.time.LocalDate;
  * Representa una tarea en la aplicación de gestión de tareas
  * Contiene los atributos básicos de la tarea (id, nombre, descripción, estado, urgencia, inicio, entrega e id del proyecto asociado)
  * Se utiliza por el servidor y los DAO para almacenar y obtener información de la base de datos
+ * Para ocupar poca memoria el estado y la urgencia se guardan como el código de un byte de su enumerado y las
+ * fechas como días desde 1970-01-01; los getters de texto y de fecha los convierten al leerlos. Por eso el estado
+ * y la urgencia se validan al crear la tarea, y "completa" se guarda como "finalizado".
+ * Las tareas de un almacén grande se guardan por columnas en BloqueTareas, que las devuelve como objetos Tarea.
+ * La versión empieza en 0 y el almacenamiento la aumenta en cada modificación; sirve para las actualizaciones
+ * condicionales (CAS_TAREA), que solo se aplican si la tarea sigue en la versión que leyó el cliente.
  */
 public class Tarea {
+	/** Valor de getDiaInicio() y getDiaEntrega() cuando no hay fecha; es menor que cualquier fecha real */
+	public static final int SIN_FECHA = Integer.MIN_VALUE;
+
 	private int id;
 	private String nombre;
 	private String descripcion;
-	private String estado;
-	private String urgencia;
-	private LocalDate inicio;
-	private LocalDate entrega;
+	private byte estado;
+	private byte urgencia;
+	private int inicio;
+	private int entrega;
 	private int idProyecto;
-    
+	private int version;
+
 	//Constructores
-	public Tarea(int id, String nombre, String descripcion, String estado, String urgencia, 
+	public Tarea(int id, String nombre, String descripcion, String estado, String urgencia,
             LocalDate inicio, LocalDate entrega, int idProyecto) {
-	   this.id = id;
-	   this.nombre = nombre;
-	   this.descripcion = descripcion; // Nuevo campo
-	   this.estado = estado;
-	   this.urgencia = urgencia;
-	   this.inicio = inicio;
-	   this.entrega = entrega;
-	   this.idProyecto = idProyecto;
+	   this(id, nombre, descripcion, Estado.desdeTexto(estado), Urgencia.desdeTexto(urgencia),
+			   dia(inicio), dia(entrega), idProyecto);
 	}
-	
-    public Tarea(String nombre, String descripcion, String estado, String urgencia, 
+
+    public Tarea(String nombre, String descripcion, String estado, String urgencia,
             LocalDate inicio, LocalDate entrega, int idProyecto) {
-	   this.nombre = nombre;
-	   this.descripcion = descripcion;
-	   this.estado = estado;
-	   this.urgencia = urgencia;
-	   this.inicio = inicio;
-	   this.entrega = entrega;
-	   this.idProyecto = idProyecto;
+	   this(0, nombre, descripcion, estado, urgencia, inicio, entrega, idProyecto);
+	}
+
+	/**
+	 * Crea una tarea a partir de sus valores ya codificados, sin conversiones (protocolo binario y BloqueTareas)
+	 * @param diaInicio días desde 1970-01-01, o SIN_FECHA
+	 * @param diaEntrega días desde 1970-01-01, o SIN_FECHA
+	 */
+	public Tarea(int id, String nombre, String descripcion, Estado estado, Urgencia urgencia,
+			int diaInicio, int diaEntrega, int idProyecto) {
+		this.id = id;
+		this.nombre = nombre;
+		this.descripcion = descripcion;
+		this.estado = estado.getCodigo();
+		this.urgencia = urgencia.getCodigo();
+		this.inicio = diaInicio;
+		this.entrega = diaEntrega;
+		this.idProyecto = idProyecto;
 	}
-    
+
+	private static int dia(LocalDate fecha) {
+		return fecha == null ? SIN_FECHA : Math.toIntExact(fecha.toEpochDay());
+	}
+
+	private static LocalDate fecha(int dia) {
+		return dia == SIN_FECHA ? null : LocalDate.ofEpochDay(dia);
+	}
+
 	// Getters y setters
-	public int getId() { 
-		return id; 
+	public int getId() {
+		return id;
 		}
-	public String getNombre() { 
-		return nombre; 
+	public String getNombre() {
+		return nombre;
 		}
 	public String getDescripcion() {
 		return descripcion;
 	}
-	public String getEstado() { 
-		return estado; 
+	public String getEstado() {
+		return Estado.desdeCodigo(estado).getTexto();
 		}
-	public String getUrgencia() { 
-		return urgencia; 
+	public String getUrgencia() {
+		return Urgencia.desdeCodigo(urgencia).getTexto();
 		}
-	public LocalDate getInicio() { 
-		return inicio; 
+	public LocalDate getInicio() {
+		return fecha(inicio);
 		}
-	public LocalDate getEntrega() { 
-		return entrega; 
+	public LocalDate getEntrega() {
+		return fecha(entrega);
 		}
-	public int getIdProyecto() { 
-		return idProyecto; 
+	public int getIdProyecto() {
+		return idProyecto;
 		}
-	
-	public void setNombre(String nombre) { 
-		this.nombre = nombre; 
+	public int getVersion() {
+		return version;
 		}
-	public void setEstado(String estado) { 
-		this.estado = estado; 
+
+	/**
+	 * @return código de un byte del estado (Estado.getCodigo)
+	 */
+	public byte getCodigoEstado() {
+		return estado;
+	}
+	/**
+	 * @return código de un byte de la urgencia (Urgencia.getCodigo)
+	 */
+	public byte getCodigoUrgencia() {
+		return urgencia;
+	}
+	/**
+	 * @return fecha de inicio en días desde 1970-01-01, o SIN_FECHA
+	 */
+	public int getDiaInicio() {
+		return inicio;
+	}
+	/**
+	 * @return fecha de fin en días desde 1970-01-01, o SIN_FECHA
+	 */
+	public int getDiaEntrega() {
+		return entrega;
+	}
+
+	public void setNombre(String nombre) {
+		this.nombre = nombre;
+		}
+	public void setEstado(String estado) {
+		this.estado = Estado.desdeTexto(estado).getCodigo();
+		}
+	public void setUrgencia(String urgencia) {
+		this.urgencia = Urgencia.desdeTexto(urgencia).getCodigo();
 		}
-	public void setUrgencia(String urgencia) { 
-		this.urgencia = urgencia; 
+	public void setInicio(LocalDate inicio) {
+		this.inicio = dia(inicio);
 		}
-	public void setInicio(LocalDate inicio) { 
-		this.inicio = inicio; 
+	public void setEntrega(LocalDate entrega) {
+		this.entrega = dia(entrega);
 		}
-	public void setEntrega(LocalDate entrega) { 
-		this.entrega = entrega; 
+	public void setIdProyecto(int idProyecto) {
+		this.idProyecto = idProyecto;
 		}
-	public void setIdProyecto(int idProyecto) { 
-		this.idProyecto = idProyecto; 
+	public void setVersion(int version) {
+		this.version = version;
 		}
-	
+
 	@Override
 		public String toString() {
-	        return "Tarea{id=" + id + ", nombre='" + nombre + "', descripcion='" + descripcion + 
-	               "', estado='" + estado + "', urgencia=" + urgencia + ", inicio=" + inicio + 
-	               ", entrega=" + entrega + ", idProyecto=" + idProyecto + "}";
+	        return "Tarea{id=" + id + ", nombre='" + nombre + "', descripcion='" + descripcion +
+	               "', estado='" + getEstado() + "', urgencia=" + getUrgencia() + ", inicio=" + getInicio() +
+	               ", entrega=" + getEntrega() + ", idProyecto=" + idProyecto + ", version=" + version + "}";
 	    }
-	}
\ No newline at end of file
+	}
@@ -0,0 +1,62 @@
+package modelos;
+
+/**
+ * Valores permitidos para la urgencia de una tarea
+ * Cada valor tiene el texto usado en la base de datos y en el protocolo de texto,
+ * y un código de un byte usado en el protocolo binario.
+ */
+public enum Urgencia {
+	ALTA("alta"),
+	MEDIA("media"),
+	BAJA("baja");
+
+	private static final Urgencia[] VALORES = values();
+
+	private final String texto;
+
+	Urgencia(String texto) {
+		this.texto = texto;
+	}
+
+	/**
+	 * @return texto de la urgencia tal como se guarda en la base de datos
+	 */
+	public String getTexto() {
+		return texto;
+	}
+
+	/**
+	 * @return código de un byte de la urgencia
+	 */
+	public byte getCodigo() {
+		return (byte) ordinal();
+	}
+
+	/**
+	 * Obtiene la urgencia a partir de su código
+	 * @param codigo código de un byte
+	 * @return urgencia correspondiente
+	 * @throws IllegalArgumentException si el código no corresponde a ninguna urgencia
+	 */
+	public static Urgencia desdeCodigo(int codigo) {
+		if (codigo < 0 || codigo >= VALORES.length) {
+			throw new IllegalArgumentException("Código de urgencia inválido: " + codigo);
+		}
+		return VALORES[codigo];
+	}
+
+	/**
+	 * Obtiene la urgencia a partir de su texto, sin distinguir mayúsculas
+	 * @param texto texto de la urgencia
+	 * @return urgencia correspondiente
+	 * @throws IllegalArgumentException si el texto no corresponde a ninguna urgencia
+	 */
+	public static Urgencia desdeTexto(String texto) {
+		for (Urgencia u : VALORES) {
+			if (u.texto.equalsIgnoreCase(texto)) {
+				return u;
+			}
+		}
+		throw new IllegalArgumentException("Urgencia inválida: " + texto);
+	}
+}
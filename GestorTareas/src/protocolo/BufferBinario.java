@@ -0,0 +1,277 @@
+package protocolo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Buffer de bytes reutilizable para codificar y decodificar mensajes del protocolo binario
+ * Crece según se necesita y se vacía con limpiar(), de modo que una conexión puede usar siempre el mismo.
+ * Tipos básicos:
+ * - varint: entero sin signo en base 128 (7 bits por byte, el bit alto indica que sigue otro byte)
+ * - zigzag: entero con signo codificado como varint (0, -1, 1, -2, ... pasan a 0, 1, 2, 3, ...)
+ * - texto: longitud en bytes como varint seguida del texto en UTF-8
+ * No es seguro para usarse desde varios hilos a la vez.
+ */
+public class BufferBinario {
+	private byte[] datos;
+	private int escritura;
+	private int lectura;
+
+	public BufferBinario(int capacidadInicial) {
+		this.datos = new byte[Math.max(16, capacidadInicial)];
+	}
+
+	/**
+	 * Vacía el buffer para reutilizarlo
+	 */
+	public void limpiar() {
+		escritura = 0;
+		lectura = 0;
+	}
+
+	/**
+	 * @return número de bytes escritos
+	 */
+	public int getLongitud() {
+		return escritura;
+	}
+
+	/**
+	 * @return true si quedan bytes por leer
+	 */
+	public boolean quedanDatos() {
+		return lectura < escritura;
+	}
+
+	private void asegurar(int adicionales) {
+		if (escritura + adicionales > datos.length) {
+			datos = Arrays.copyOf(datos, Math.max(datos.length * 2, escritura + adicionales));
+		}
+	}
+
+	// Escritura
+
+	public void escribirByte(int b) {
+		asegurar(1);
+		datos[escritura++] = (byte) b;
+	}
+
+	public void escribirBytes(byte[] origen, int desde, int longitud) {
+		asegurar(longitud);
+		System.arraycopy(origen, desde, datos, escritura, longitud);
+		escritura += longitud;
+	}
+
+	public void escribirVarint(int valor) {
+		asegurar(5);
+		while ((valor & ~0x7F) != 0) {
+			datos[escritura++] = (byte) ((valor & 0x7F) | 0x80);
+			valor >>>= 7;
+		}
+		datos[escritura++] = (byte) valor;
+	}
+
+	public void escribirZigzag(int valor) {
+		escribirVarint((valor << 1) ^ (valor >> 31));
+	}
+
+	/**
+	 * Escribe un texto en UTF-8 precedido de su longitud en bytes, codificándolo directamente
+	 * sobre el buffer sin crear arrays intermedios
+	 * @param texto texto a escribir (no puede ser null)
+	 */
+	public void escribirTexto(String texto) {
+		int n = texto.length();
+		int bytes = longitudUTF8(texto);
+		escribirVarint(bytes);
+		asegurar(bytes);
+		for (int i = 0; i < n; i++) {
+			char c = texto.charAt(i);
+			if (c < 0x80) {
+				datos[escritura++] = (byte) c;
+			} else if (c < 0x800) {
+				datos[escritura++] = (byte) (0xC0 | (c >> 6));
+				datos[escritura++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(texto.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, texto.charAt(++i));
+				datos[escritura++] = (byte) (0xF0 | (cp >> 18));
+				datos[escritura++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				datos[escritura++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				datos[escritura++] = (byte) (0x80 | (cp & 0x3F));
+			} else {
+				if (Character.isSurrogate(c)) {
+					// Sustituto suelto: se codifica como '?' igual que String.getBytes
+					c = '?';
+					datos[escritura++] = (byte) c;
+					continue;
+				}
+				datos[escritura++] = (byte) (0xE0 | (c >> 12));
+				datos[escritura++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				datos[escritura++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	private static int longitudUTF8(String texto) {
+		int n = texto.length();
+		int bytes = n;
+		for (int i = 0; i < n; i++) {
+			char c = texto.charAt(i);
+			if (c >= 0x800) {
+				if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(texto.charAt(i + 1))) {
+					bytes += 2;
+					i++;
+				} else if (!Character.isSurrogate(c)) {
+					bytes += 2;
+				}
+			} else if (c >= 0x80) {
+				bytes += 1;
+			}
+		}
+		return bytes;
+	}
+
+	// Lectura
+
+	private void comprobar(int necesarios) {
+		if (lectura + necesarios > escritura) {
+			throw new IllegalArgumentException("Mensaje binario incompleto");
+		}
+	}
+
+	public int leerByte() {
+		comprobar(1);
+		return datos[lectura++] & 0xFF;
+	}
+
+	public int leerVarint() {
+		int valor = 0;
+		for (int desplazamiento = 0; desplazamiento < 35; desplazamiento += 7) {
+			int b = leerByte();
+			valor |= (b & 0x7F) << desplazamiento;
+			if ((b & 0x80) == 0) {
+				return valor;
+			}
+		}
+		throw new IllegalArgumentException("Varint mal formado");
+	}
+
+	public int leerZigzag() {
+		int v = leerVarint();
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	public String leerTexto() {
+		int longitud = leerVarint();
+		comprobar(longitud);
+		String texto = new String(datos, lectura, longitud, StandardCharsets.UTF_8);
+		lectura += longitud;
+		return texto;
+	}
+
+	// Tramas: cada mensaje va precedido de su longitud en bytes como varint
+
+	/**
+	 * Lee una trama completa de un flujo, sustituyendo el contenido del buffer
+	 * @param in flujo de entrada
+	 * @param maxLongitud longitud máxima admitida para la trama
+	 * @return false si el flujo terminó antes de empezar la trama
+	 * @throws IOException si falla la lectura o el flujo termina a mitad de la trama
+	 */
+	public boolean leerTrama(InputStream in, int maxLongitud) throws IOException {
+		limpiar();
+		int longitud = 0;
+		for (int desplazamiento = 0; ; desplazamiento += 7) {
+			int b = in.read();
+			if (b < 0) {
+				if (desplazamiento == 0) {
+					return false;
+				}
+				throw new EOFException("Trama binaria incompleta");
+			}
+			if (desplazamiento > 28) {
+				throw new IOException("Longitud de trama mal formada");
+			}
+			longitud |= (b & 0x7F) << desplazamiento;
+			if ((b & 0x80) == 0) {
+				break;
+			}
+		}
+		if (longitud < 0 || longitud > maxLongitud) {
+			throw new IOException("Trama binaria demasiado larga: " + longitud);
+		}
+		asegurar(longitud);
+		int leidos = in.readNBytes(datos, 0, longitud);
+		if (leidos < longitud) {
+			throw new EOFException("Trama binaria incompleta");
+		}
+		escritura = longitud;
+		return true;
+	}
+
+	/**
+	 * Escribe el contenido del buffer como una trama (longitud + datos)
+	 * @param out flujo de salida
+	 * @throws IOException si falla la escritura
+	 */
+	public void escribirTrama(OutputStream out) throws IOException {
+		int valor = escritura;
+		while ((valor & ~0x7F) != 0) {
+			out.write((valor & 0x7F) | 0x80);
+			valor >>>= 7;
+		}
+		out.write(valor);
+		out.write(datos, 0, escritura);
+	}
+
+	/**
+	 * Copia el contenido del buffer como una trama en un array nuevo
+	 * @return longitud en varint seguida de los datos
+	 */
+	public byte[] aTrama() {
+		int cabecera = 1;
+		for (int v = escritura >>> 7; v != 0; v >>>= 7) {
+			cabecera++;
+		}
+		byte[] trama = new byte[cabecera + escritura];
+		int pos = 0;
+		int valor = escritura;
+		while ((valor & ~0x7F) != 0) {
+			trama[pos++] = (byte) ((valor & 0x7F) | 0x80);
+			valor >>>= 7;
+		}
+		trama[pos++] = (byte) valor;
+		System.arraycopy(datos, 0, trama, pos, escritura);
+		return trama;
+	}
+
+	/**
+	 * Sustituye el contenido del buffer por los bytes indicados (sin longitud)
+	 */
+	public void cargar(byte[] origen, int desde, int longitud) {
+		limpiar();
+		escribirBytes(origen, desde, longitud);
+	}
+
+	/**
+	 * Sustituye el contenido del buffer por los siguientes bytes de origen, avanzando su posición
+	 */
+	public void cargar(ByteBuffer origen, int longitud) {
+		limpiar();
+		asegurar(longitud);
+		origen.get(datos, 0, longitud);
+		escritura = longitud;
+	}
+
+	/**
+	 * Copia el contenido del buffer (sin longitud) en destino, avanzando su posición
+	 */
+	public void copiarEn(ByteBuffer destino) {
+		destino.put(datos, 0, escritura);
+	}
+}
@@ -0,0 +1,615 @@
+package protocolo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Línea reutilizable del protocolo de texto, partida en campos por ';' sin copiarla
+ * Lee las líneas de un flujo en su propio buffer (o las recibe ya leídas con cargar) y solo guarda dónde empieza
+ * y termina cada campo. Los enteros y las fechas ISO se leen directamente de los bytes, y los textos conocidos
+ * (nombres de comandos, estados...) se devuelven como la constante que coincide, sin crear cadenas. Solo crean
+ * objetos texto(i) con textos libres y los errores, que repiten los mensajes de Integer.parseInt y LocalDate.parse
+ * para que la respuesta sea la misma que con String.split.
+ * Los campos siguen las reglas de String.split(";"): los vacíos del final no cuentan y una línea vacía tiene un campo.
+ * Los criterios clave=valor, las listas separadas por ',' dentro de un valor y las filas separadas por '|' de los
+ * lotes se leen también por posiciones, sin partir la línea en cadenas.
+ * No es seguro para usarse desde varios hilos a la vez.
+ */
+public class ComandoTexto {
+	private byte[] datos;
+	// Línea actual en datos: [inicioLinea, finLinea)
+	private int inicioLinea;
+	private int finLinea;
+	// Bytes leídos del flujo y aún sin entregar, a partir de finLinea (más el terminador)
+	private int finDatos;
+	private int siguiente;
+	private boolean saltarLF;
+	private int[] inicios = new int[16];
+	private int[] fines = new int[16];
+	private int campos;
+	// Filas de partirFilas: la fila f ocupa los campos [filas[f], filas[f + 1])
+	private int[] filas = new int[16];
+
+	public ComandoTexto(int capacidadInicial) {
+		this.datos = new byte[Math.max(16, capacidadInicial)];
+	}
+
+	/**
+	 * Si el buffer ha crecido por encima de un máximo, vuelve a la capacidad indicada; se pierde lo leído
+	 * Para los comandos que se guardan mucho tiempo (uno por hilo) después de una línea muy larga.
+	 */
+	public void recortar(int maximo, int capacidad) {
+		if (datos.length > maximo) {
+			datos = new byte[capacidad];
+			finDatos = 0;
+			siguiente = 0;
+			saltarLF = false;
+			cargarLinea(0, 0);
+		}
+	}
+
+	// Lectura
+
+	/**
+	 * Lee la siguiente línea de un flujo, terminada en "\n", "\r" o "\r\n" como BufferedReader.readLine
+	 * Los bytes que sobran se quedan en el buffer para la siguiente llamada, que debe hacerse con el mismo flujo.
+	 * @return false si el flujo ha terminado sin más líneas; una última línea sin terminador sí se devuelve
+	 * @throws IOException si falla la lectura
+	 */
+	public boolean leer(InputStream in) throws IOException {
+		int pos = siguiente;
+		while (true) {
+			if (saltarLF && pos < finDatos) {
+				saltarLF = false;
+				if (datos[pos] == '\n') {
+					pos++;
+					siguiente = pos;
+				}
+			}
+			for (int i = pos; i < finDatos; i++) {
+				byte b = datos[i];
+				if (b == '\n' || b == '\r') {
+					saltarLF = b == '\r';
+					cargarLinea(siguiente, i);
+					siguiente = i + 1;
+					return true;
+				}
+			}
+			pos = finDatos;
+			// Sin línea completa: se mueve lo pendiente al principio y se lee más
+			if (siguiente > 0) {
+				System.arraycopy(datos, siguiente, datos, 0, finDatos - siguiente);
+				finDatos -= siguiente;
+				pos -= siguiente;
+				siguiente = 0;
+			}
+			if (finDatos == datos.length) {
+				datos = Arrays.copyOf(datos, datos.length * 2);
+			}
+			int leidos = in.read(datos, finDatos, datos.length - finDatos);
+			if (leidos < 0) {
+				if (finDatos > siguiente) {
+					cargarLinea(siguiente, finDatos);
+					siguiente = finDatos;
+					return true;
+				}
+				return false;
+			}
+			finDatos += leidos;
+		}
+	}
+
+	/**
+	 * Carga una línea ya recibida como texto (comandos etiquetados, motor NIO), codificándola en el buffer propio
+	 * No se puede mezclar con leer() sobre un flujo.
+	 * @param linea línea sin el salto de línea
+	 */
+	public void cargar(String linea) {
+		int n = linea.length();
+		if (n * 3 > datos.length) {
+			datos = new byte[Math.max(datos.length * 2, n * 3)];
+		}
+		int p = 0;
+		for (int i = 0; i < n; i++) {
+			char c = linea.charAt(i);
+			if (c < 0x80) {
+				datos[p++] = (byte) c;
+			} else if (c < 0x800) {
+				datos[p++] = (byte) (0xC0 | (c >> 6));
+				datos[p++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(linea.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, linea.charAt(++i));
+				datos[p++] = (byte) (0xF0 | (cp >> 18));
+				datos[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				datos[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				datos[p++] = (byte) (0x80 | (cp & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				datos[p++] = '?';
+			} else {
+				datos[p++] = (byte) (0xE0 | (c >> 12));
+				datos[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				datos[p++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		finDatos = 0;
+		siguiente = 0;
+		saltarLF = false;
+		cargarLinea(0, p);
+	}
+
+	private void cargarLinea(int inicio, int fin) {
+		inicioLinea = inicio;
+		finLinea = fin;
+		campos = 0;
+		int desde = inicio;
+		for (int i = inicio; i <= fin; i++) {
+			if (i == fin || datos[i] == ';') {
+				anadirCampo(desde, i);
+				desde = i + 1;
+			}
+		}
+		// Como String.split: fuera los campos vacíos del final, salvo que la línea entera esté vacía
+		if (fin > inicio) {
+			while (campos > 0 && inicios[campos - 1] == fines[campos - 1]) {
+				campos--;
+			}
+		}
+	}
+
+	private void anadirCampo(int inicio, int fin) {
+		if (campos == inicios.length) {
+			inicios = Arrays.copyOf(inicios, campos * 2);
+			fines = Arrays.copyOf(fines, campos * 2);
+		}
+		inicios[campos] = inicio;
+		fines[campos] = fin;
+		campos++;
+	}
+
+	// Campos
+
+	/**
+	 * @return número de campos de la línea
+	 */
+	public int campos() {
+		return campos;
+	}
+
+	/**
+	 * @return true si la línea empieza por '#' (comando etiquetado del modo pipeline)
+	 */
+	public boolean esEtiquetado() {
+		return finLinea > inicioLinea && datos[inicioLinea] == '#';
+	}
+
+	/**
+	 * @return true si la línea empieza por '!' (comando con clave de idempotencia: !clave;COMANDO;...)
+	 */
+	public boolean tieneClave() {
+		return finLinea > inicioLinea && datos[inicioLinea] == '!';
+	}
+
+	/**
+	 * Quita de la línea el primer campo (!clave), de modo que el comando pasa a ser el campo 0
+	 * @return la clave, sin el '!'
+	 */
+	public String extraerClave() {
+		String clave = new String(datos, inicios[0] + 1, fines[0] - inicios[0] - 1, StandardCharsets.UTF_8);
+		// "!clave;" sin comando queda como una línea vacía, igual que con String.split
+		cargarLinea(campos > 1 ? inicios[1] : finLinea, finLinea);
+		return clave;
+	}
+
+	/**
+	 * Quita de la línea la etiqueta del modo pipeline (#id;COMANDO;...), de modo que el comando pasa a ser el campo 0
+	 * @return el identificador, sin el '#', o null si está vacío o la línea no tiene ';'
+	 */
+	public String extraerEtiqueta() {
+		if (fines[0] == finLinea || fines[0] - inicios[0] < 2) {
+			return null;
+		}
+		String id = new String(datos, inicios[0] + 1, fines[0] - inicios[0] - 1, StandardCharsets.UTF_8);
+		cargarLinea(fines[0] + 1, finLinea);
+		return id;
+	}
+
+	/**
+	 * @return huella de 64 bits (FNV-1a) de los bytes de la línea, para comparar comandos sin guardarlos
+	 */
+	public long huella() {
+		long h = 0xcbf29ce484222325L;
+		for (int i = inicioLinea; i < finLinea; i++) {
+			h = (h ^ (datos[i] & 0xFF)) * 0x100000001b3L;
+		}
+		return h;
+	}
+
+	/**
+	 * @return true si el campo es exactamente el texto indicado, que debe ser ASCII
+	 */
+	public boolean es(int i, String texto) {
+		comprobar(i);
+		return es(inicios[i], fines[i], texto);
+	}
+
+	/**
+	 * Devuelve el texto de un campo reutilizando la constante que coincida con él, sin crear una cadena
+	 * @param conocidos textos ASCII esperados en el campo
+	 * @return la constante de conocidos igual al campo o, si no hay ninguna, un texto nuevo
+	 */
+	public String texto(int i, String[] conocidos) {
+		comprobar(i);
+		return texto(inicios[i], fines[i], conocidos);
+	}
+
+	/**
+	 * @return texto del campo, decodificado de UTF-8
+	 */
+	public String texto(int i) {
+		comprobar(i);
+		return texto(inicios[i], fines[i]);
+	}
+
+	/**
+	 * @return texto desde el principio del campo hasta el final de la línea, con los ';' que contenga
+	 */
+	public String resto(int i) {
+		comprobar(i);
+		return new String(datos, inicios[i], finLinea - inicios[i], StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Lee un entero en base 10 directamente de los bytes del campo
+	 * @throws NumberFormatException con el mismo mensaje que Integer.parseInt si no es un entero válido
+	 */
+	public int entero(int i) {
+		comprobar(i);
+		return entero(inicios[i], fines[i]);
+	}
+
+	private int entero(int p, int fin) {
+		int inicio = p;
+		boolean negativo = p < fin && datos[p] == '-';
+		if (negativo) {
+			p++;
+		}
+		if (p == fin || fin - p > 10) {
+			return Integer.parseInt(texto(inicio, fin));
+		}
+		long valor = 0;
+		for (; p < fin; p++) {
+			int d = datos[p] - '0';
+			if (d < 0 || d > 9) {
+				// Signo '+', dígitos no ASCII o un error: Integer.parseInt decide
+				return Integer.parseInt(texto(inicio, fin));
+			}
+			valor = valor * 10 + d;
+		}
+		valor = negativo ? -valor : valor;
+		if (valor < Integer.MIN_VALUE || valor > Integer.MAX_VALUE) {
+			return Integer.parseInt(texto(inicio, fin));
+		}
+		return (int) valor;
+	}
+
+	/**
+	 * Lee una fecha ISO (aaaa-mm-dd) directamente de los bytes del campo
+	 * @return días desde 1970-01-01, como LocalDate.toEpochDay
+	 * @throws java.time.format.DateTimeParseException con el mismo mensaje que LocalDate.parse si no es válida
+	 */
+	public int dia(int i) {
+		comprobar(i);
+		return dia(inicios[i], fines[i]);
+	}
+
+	private int dia(int p, int fin) {
+		if (fin - p == 10 && datos[p + 4] == '-' && datos[p + 7] == '-') {
+			int anio = digitos(p, 4);
+			int mes = digitos(p + 5, 2);
+			int dia = digitos(p + 8, 2);
+			if (anio >= 0 && mes >= 1 && mes <= 12 && dia >= 1 && dia <= diasDelMes(anio, mes)) {
+				return diaEpoca(anio, mes, dia);
+			}
+		}
+		return Math.toIntExact(LocalDate.parse(texto(p, fin)).toEpochDay());
+	}
+
+	private int digitos(int p, int n) {
+		int valor = 0;
+		for (int j = p; j < p + n; j++) {
+			int d = datos[j] - '0';
+			if (d < 0 || d > 9) {
+				return -1;
+			}
+			valor = valor * 10 + d;
+		}
+		return valor;
+	}
+
+	private static int diasDelMes(int anio, int mes) {
+		switch (mes) {
+		case 2:
+			return (anio % 4 == 0 && (anio % 100 != 0 || anio % 400 == 0)) ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/**
+	 * Días desde 1970-01-01 de una fecha válida, con el mismo cálculo que LocalDate.toEpochDay
+	 */
+	static int diaEpoca(int anio, int mes, int dia) {
+		long y = anio;
+		long total = 365 * y;
+		total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+		total += (367 * mes - 362) / 12;
+		total += dia - 1;
+		if (mes > 2) {
+			total--;
+			if (!(anio % 4 == 0 && (anio % 100 != 0 || anio % 400 == 0))) {
+				total--;
+			}
+		}
+		// 719528 días desde el año 0 hasta 1970-01-01
+		return (int) (total - 719_528);
+	}
+
+	// Criterios clave=valor
+
+	/**
+	 * @return true si el campo solo tiene espacios (bytes hasta ' ', los que quita String.trim) o está vacío
+	 */
+	public boolean enBlanco(int i) {
+		comprobar(i);
+		return saltarEspacios(inicios[i], fines[i]) == fines[i];
+	}
+
+	/**
+	 * Reconoce la clave de un campo clave=valor sin crear cadenas
+	 * Se compara sin los espacios de alrededor y sin distinguir mayúsculas, como trim().toLowerCase(Locale.ROOT).
+	 * @param conocidas claves esperadas, ASCII en minúsculas
+	 * @return la constante de conocidas igual a la clave o, si no hay ninguna, la clave como texto nuevo en
+	 * minúsculas; null si el campo no tiene '='
+	 */
+	public String clave(int i, String[] conocidas) {
+		comprobar(i);
+		int igual = buscar(inicios[i], fines[i], '=');
+		if (igual < 0) {
+			return null;
+		}
+		int p = saltarEspacios(inicios[i], igual);
+		int fin = quitarEspacios(p, igual);
+		for (String c : conocidas) {
+			if (esSinMayusculas(p, fin, c)) {
+				return c;
+			}
+		}
+		return texto(p, fin).toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * @param conocidos textos ASCII esperados en el valor
+	 * @return valor del campo clave=valor, sin los espacios de alrededor: la constante de conocidos igual a él o, si
+	 * no hay ninguna, un texto nuevo
+	 */
+	public String valor(int i, String[] conocidos) {
+		int p = inicioValor(i);
+		return texto(p, quitarEspacios(p, fines[i]), conocidos);
+	}
+
+	/**
+	 * @return valor del campo clave=valor como entero, con los mismos errores que Integer.parseInt
+	 */
+	public int enteroValor(int i) {
+		int p = inicioValor(i);
+		return entero(p, quitarEspacios(p, fines[i]));
+	}
+
+	/**
+	 * @return valor del campo clave=valor como fecha ISO, en días desde 1970-01-01 (ver dia)
+	 */
+	public int diaValor(int i) {
+		int p = inicioValor(i);
+		return dia(p, quitarEspacios(p, fines[i]));
+	}
+
+	/**
+	 * Cuenta los elementos del valor de un campo clave=valor separados por ',', con las reglas de String.split(","):
+	 * los vacíos del final no cuentan y un valor vacío tiene un elemento
+	 */
+	public int elementos(int i) {
+		int p = inicioValor(i);
+		int fin = quitarEspacios(p, fines[i]);
+		if (p == fin) {
+			return 1;
+		}
+		int n = 0;
+		int utiles = 0;
+		int desde = p;
+		for (int j = p; j <= fin; j++) {
+			if (j == fin || datos[j] == ',') {
+				n++;
+				if (j > desde) {
+					utiles = n;
+				}
+				desde = j + 1;
+			}
+		}
+		return utiles;
+	}
+
+	/**
+	 * @param j posición del elemento, menor que elementos(i)
+	 * @param conocidos textos ASCII esperados en el elemento
+	 * @return elemento j del valor, sin los espacios de alrededor: la constante de conocidos igual a él o, si no hay
+	 * ninguna, un texto nuevo
+	 */
+	public String elemento(int i, int j, String[] conocidos) {
+		int p = inicioValor(i);
+		int fin = quitarEspacios(p, fines[i]);
+		for (int k = 0; k < j; k++) {
+			p = buscar(p, fin, ',') + 1;
+		}
+		int finElemento = buscar(p, fin, ',');
+		finElemento = finElemento < 0 ? fin : finElemento;
+		p = saltarEspacios(p, finElemento);
+		return texto(p, quitarEspacios(p, finElemento), conocidos);
+	}
+
+	/**
+	 * @return posición del primer byte del valor de un campo clave=valor, sin espacios delante
+	 * @throws IllegalArgumentException si el campo no tiene '='
+	 */
+	private int inicioValor(int i) {
+		comprobar(i);
+		int igual = buscar(inicios[i], fines[i], '=');
+		if (igual < 0) {
+			throw new IllegalArgumentException("Se esperaba clave=valor: " + texto(i));
+		}
+		return saltarEspacios(igual + 1, fines[i]);
+	}
+
+	// Filas de los lotes
+
+	/**
+	 * Vuelve a partir la línea desde el campo i en filas separadas por '|', cada una con sus campos separados por
+	 * ';', sin copiarla; como String.split("\\|") sobre el resto de la línea y después split(";", -1) en cada fila
+	 * Los campos anteriores a i no cambian y los de las filas se numeran a continuación (ver inicioFila), de modo que
+	 * se leen con texto, entero y dia. Si i es el número de campos, el resto es vacío y hay una fila vacía.
+	 * @return número de filas
+	 */
+	public int partirFilas(int i) {
+		if (i < 0 || i > campos) {
+			comprobar(i);
+		}
+		int desde = i < campos ? inicios[i] : finLinea;
+		boolean vacio = desde == finLinea;
+		campos = i;
+		int numFilas = 0;
+		filas[numFilas++] = campos;
+		for (int p = desde; p <= finLinea; p++) {
+			if (p == finLinea || datos[p] == ';' || datos[p] == '|') {
+				anadirCampo(desde, p);
+				desde = p + 1;
+				if (p < finLinea && datos[p] == '|') {
+					if (numFilas + 1 == filas.length) {
+						filas = Arrays.copyOf(filas, filas.length * 2);
+					}
+					filas[numFilas++] = campos;
+				}
+			}
+		}
+		// Como String.split: fuera las filas vacías del final, salvo que el resto de la línea esté vacío
+		while (!vacio && numFilas > 0 && campos - filas[numFilas - 1] == 1 && inicios[campos - 1] == fines[campos - 1]) {
+			numFilas--;
+			campos--;
+		}
+		filas[numFilas] = campos;
+		return numFilas;
+	}
+
+	/**
+	 * @param f fila de la última llamada a partirFilas
+	 * @return número del primer campo de la fila
+	 */
+	public int inicioFila(int f) {
+		return filas[f];
+	}
+
+	/**
+	 * @param f fila de la última llamada a partirFilas
+	 * @return número de campos de la fila
+	 */
+	public int camposFila(int f) {
+		return filas[f + 1] - filas[f];
+	}
+
+	private String texto(int p, int fin) {
+		return new String(datos, p, fin - p, StandardCharsets.UTF_8);
+	}
+
+	private String texto(int p, int fin, String[] conocidos) {
+		for (String c : conocidos) {
+			if (es(p, fin, c)) {
+				return c;
+			}
+		}
+		return texto(p, fin);
+	}
+
+	private boolean es(int p, int fin, String texto) {
+		if (fin - p != texto.length()) {
+			return false;
+		}
+		for (int j = 0; j < fin - p; j++) {
+			if (datos[p + j] != texto.charAt(j)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean esSinMayusculas(int p, int fin, String texto) {
+		if (fin - p != texto.length()) {
+			return false;
+		}
+		for (int j = 0; j < fin - p; j++) {
+			int b = datos[p + j];
+			if (b >= 'A' && b <= 'Z') {
+				b += 'a' - 'A';
+			}
+			if (b != texto.charAt(j)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int buscar(int p, int fin, char c) {
+		for (int j = p; j < fin; j++) {
+			if (datos[j] == c) {
+				return j;
+			}
+		}
+		return -1;
+	}
+
+	private int saltarEspacios(int p, int fin) {
+		while (p < fin && (datos[p] & 0xFF) <= ' ') {
+			p++;
+		}
+		return p;
+	}
+
+	private int quitarEspacios(int p, int fin) {
+		while (fin > p && (datos[fin - 1] & 0xFF) <= ' ') {
+			fin--;
+		}
+		return fin;
+	}
+
+	private void comprobar(int i) {
+		if (i < 0 || i >= campos) {
+			// Mismo mensaje que el acceso fuera de rango al array de String.split
+			throw new ArrayIndexOutOfBoundsException("Index " + i + " out of bounds for length " + campos);
+		}
+	}
+
+	/**
+	 * @return la línea completa como texto; solo para los caminos que necesitan una cadena (pipeline, registro
+	 * de comandos lentos)
+	 */
+	@Override
+	public String toString() {
+		return new String(datos, inicioLinea, finLinea - inicioLinea, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,179 @@
+package protocolo;
+
+import java.time.LocalDate;
+
+import modelos.Estado;
+import modelos.Proyecto;
+import modelos.Tarea;
+import modelos.Urgencia;
+
+/**
+ * Definición del protocolo binario, alternativo al protocolo de texto separado por ';'
+ *
+ * Negociación: nada más conectar, el cliente envía los 4 bytes de SALUDO. El servidor responde con los
+ * mismos 4 bytes y a partir de ahí la conexión usa tramas binarias. Si el primer byte no es el de SALUDO
+ * la conexión usa el protocolo de texto de siempre.
+ *
+ * Trama: longitud de los datos (varint) seguida de los datos.
+ * Petición: código de operación (1 byte) seguido de sus parámetros.
+ * Respuesta: RESULTADO_OK o RESULTADO_ERROR (1 byte); tras un error va el mensaje como texto.
+ *
+ * Operaciones y parámetros (respuesta OK entre corchetes):
+ * - INSERT_PROYECTO: nombre [vacía]
+ * - LIST_PROYECTOS: - [n (varint) y n proyectos]
+ * - UPDATE_PROYECTO: id (varint), nombre [vacía]
+ * - DELETE_PROYECTO: id (varint) [n tareas eliminadas con el proyecto (varint)]
+ * - INSERT_TAREA: tarea [vacía]
+ * - INSERT_TAREAS_BATCH: n (varint) y n tareas [n (varint) y n ids (varint)]
+ * - LIST_TAREAS: id de proyecto (varint) [n (varint) y n tareas]
+ * - LIST_TAREAS_PAGINA: id de proyecto, id tras el que empezar y límite (varint) [n (varint) y n tareas, por id]
+ * - UPDATE_TAREA: id (varint), campo (1 byte) y valor: código de estado o urgencia (1 byte) o fecha [vacía]
+ * - DELETE_TAREA: id (varint) [vacía]
+ * - ARCHIVE_TAREAS: id de proyecto (varint) [n tareas finalizadas archivadas (varint)]
+ * - MOVE_TAREAS: id de proyecto de origen y de destino (varint) [n tareas movidas (varint)]
+ *
+ * Proyecto: id (varint), nombre (texto)
+ * Tarea: id (varint), id de proyecto (varint), indicadores (1 byte: bit 0 hay descripción, bit 1 hay fecha fin),
+ * nombre (texto), [descripción (texto)], estado (1 byte), urgencia (1 byte), fecha inicio, [fecha fin]
+ * Fecha: día desde 1970-01-01 codificado en zigzag
+ */
+public final class ProtocoloBinario {
+	/** Saludo que abre una conexión binaria: un byte no ASCII, "GT" y la versión del protocolo */
+	public static final byte[] SALUDO = { (byte) 0xB1, 'G', 'T', 1 };
+	/** Longitud máxima admitida para una trama */
+	public static final int MAX_TRAMA = 64 * 1024 * 1024;
+
+	public static final int INSERT_PROYECTO = 0x01;
+	public static final int LIST_PROYECTOS = 0x02;
+	public static final int UPDATE_PROYECTO = 0x03;
+	public static final int DELETE_PROYECTO = 0x04;
+	public static final int INSERT_TAREA = 0x10;
+	public static final int INSERT_TAREAS_BATCH = 0x11;
+	public static final int LIST_TAREAS = 0x12;
+	public static final int UPDATE_TAREA = 0x13;
+	public static final int DELETE_TAREA = 0x14;
+	public static final int LIST_TAREAS_PAGINA = 0x15;
+	public static final int ARCHIVE_TAREAS = 0x16;
+	public static final int MOVE_TAREAS = 0x17;
+
+	public static final int RESULTADO_OK = 0;
+	public static final int RESULTADO_ERROR = 1;
+
+	public static final int CAMPO_FECHA_FIN = 0;
+	public static final int CAMPO_ESTADO = 1;
+	public static final int CAMPO_URGENCIA = 2;
+
+	private static final int HAY_DESCRIPCION = 1;
+	private static final int HAY_FECHA_FIN = 2;
+
+	private ProtocoloBinario() {
+	}
+
+	/**
+	 * Comprueba si los primeros bytes de una conexión son el saludo binario
+	 * @param primerByte primer byte recibido
+	 * @return true si coincide con el primer byte del saludo
+	 */
+	public static boolean esSaludo(int primerByte) {
+		return (byte) primerByte == SALUDO[0];
+	}
+
+	/**
+	 * Nombre de columna de la base de datos para un código de campo de UPDATE_TAREA
+	 */
+	public static String nombreCampo(int campo) {
+		switch (campo) {
+		case CAMPO_FECHA_FIN:
+			return "fecha_fin";
+		case CAMPO_ESTADO:
+			return "estado";
+		case CAMPO_URGENCIA:
+			return "urgencia";
+		default:
+			throw new IllegalArgumentException("Campo inválido: " + campo);
+		}
+	}
+
+	/**
+	 * Nombre de una operación para las métricas, como el del comando de texto equivalente y con el prefijo "bin."
+	 */
+	public static String nombreOperacion(int operacion) {
+		switch (operacion) {
+		case INSERT_PROYECTO:
+			return "bin.INSERT_PROYECTO";
+		case LIST_PROYECTOS:
+			return "bin.LIST_PROYECTOS";
+		case UPDATE_PROYECTO:
+			return "bin.UPDATE_PROYECTO";
+		case DELETE_PROYECTO:
+			return "bin.DELETE_PROYECTO";
+		case INSERT_TAREA:
+			return "bin.INSERT_TAREA";
+		case INSERT_TAREAS_BATCH:
+			return "bin.INSERT_TAREAS_BATCH";
+		case LIST_TAREAS:
+			return "bin.LIST_TAREAS";
+		case UPDATE_TAREA:
+			return "bin.UPDATE_TAREA";
+		case DELETE_TAREA:
+			return "bin.DELETE_TAREA";
+		case LIST_TAREAS_PAGINA:
+			return "bin.LIST_TAREAS_PAGINA";
+		case ARCHIVE_TAREAS:
+			return "bin.ARCHIVE_TAREAS";
+		case MOVE_TAREAS:
+			return "bin.MOVE_TAREAS";
+		default:
+			return "bin.DESCONOCIDO";
+		}
+	}
+
+	public static void escribirFecha(BufferBinario b, LocalDate fecha) {
+		b.escribirZigzag(Math.toIntExact(fecha.toEpochDay()));
+	}
+
+	public static LocalDate leerFecha(BufferBinario b) {
+		return LocalDate.ofEpochDay(b.leerZigzag());
+	}
+
+	public static void escribirProyecto(BufferBinario b, Proyecto p) {
+		b.escribirVarint(p.getId());
+		b.escribirTexto(p.getNombre());
+	}
+
+	public static Proyecto leerProyecto(BufferBinario b) {
+		int id = b.leerVarint();
+		return new Proyecto(id, b.leerTexto());
+	}
+
+	public static void escribirTarea(BufferBinario b, Tarea t) {
+		b.escribirVarint(t.getId());
+		b.escribirVarint(t.getIdProyecto());
+		boolean hayFechaFin = t.getDiaEntrega() != Tarea.SIN_FECHA;
+		int indicadores = (t.getDescripcion() != null ? HAY_DESCRIPCION : 0) | (hayFechaFin ? HAY_FECHA_FIN : 0);
+		b.escribirByte(indicadores);
+		b.escribirTexto(t.getNombre());
+		if (t.getDescripcion() != null) {
+			b.escribirTexto(t.getDescripcion());
+		}
+		b.escribirByte(t.getCodigoEstado());
+		b.escribirByte(t.getCodigoUrgencia());
+		b.escribirZigzag(t.getDiaInicio());
+		if (hayFechaFin) {
+			b.escribirZigzag(t.getDiaEntrega());
+		}
+	}
+
+	public static Tarea leerTarea(BufferBinario b) {
+		int id = b.leerVarint();
+		int idProyecto = b.leerVarint();
+		int indicadores = b.leerByte();
+		String nombre = b.leerTexto();
+		String descripcion = (indicadores & HAY_DESCRIPCION) != 0 ? b.leerTexto() : null;
+		Estado estado = Estado.desdeCodigo(b.leerByte());
+		Urgencia urgencia = Urgencia.desdeCodigo(b.leerByte());
+		int inicio = b.leerZigzag();
+		int entrega = (indicadores & HAY_FECHA_FIN) != 0 ? b.leerZigzag() : Tarea.SIN_FECHA;
+		return new Tarea(id, nombre, descripcion, estado, urgencia, inicio, entrega, idProyecto);
+	}
+}
@@ -0,0 +1,286 @@
+package protocolo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import modelos.Proyecto;
+import modelos.Tarea;
+
+/**
+ * Buffer reutilizable donde se escribe en UTF-8 la respuesta de un comando del protocolo de texto
+ * Los textos, enteros, fechas, tareas y proyectos se codifican directamente sobre el buffer, sin cadenas
+ * intermedias, con el mismo formato que sus toString() (y las listas con el de List.toString()), de modo que el
+ * cliente recibe exactamente lo mismo. No incluye el salto de línea final, que añade quien envía la respuesta.
+ * Crece según se necesita y se vacía con limpiar(), de modo que una conexión puede usar siempre el mismo.
+ * No es seguro para usarse desde varios hilos a la vez.
+ */
+public class RespuestaTexto {
+	private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+
+	private byte[] datos;
+	private int longitud;
+
+	public RespuestaTexto(int capacidadInicial) {
+		this.datos = new byte[Math.max(16, capacidadInicial)];
+	}
+
+	/**
+	 * Vacía el buffer para reutilizarlo
+	 */
+	public void limpiar() {
+		longitud = 0;
+	}
+
+	/**
+	 * @return número de bytes escritos
+	 */
+	public int getLongitud() {
+		return longitud;
+	}
+
+	/**
+	 * Vacía el buffer y, si ha crecido por encima de un máximo, vuelve a la capacidad indicada
+	 * Para los buffers que se guardan mucho tiempo (uno por hilo) después de una respuesta muy grande.
+	 */
+	public void recortar(int maximo, int capacidad) {
+		longitud = 0;
+		if (datos.length > maximo) {
+			datos = new byte[capacidad];
+		}
+	}
+
+	private void asegurar(int adicionales) {
+		if (longitud + adicionales > datos.length) {
+			datos = Arrays.copyOf(datos, Math.max(datos.length * 2, longitud + adicionales));
+		}
+	}
+
+	// Escritura
+
+	public RespuestaTexto caracter(char c) {
+		asegurar(1);
+		datos[longitud++] = (byte) c;
+		return this;
+	}
+
+	/**
+	 * Escribe un texto en UTF-8; los sustitutos sueltos se escriben como '?', igual que String.getBytes
+	 * @param texto texto a escribir; null se escribe "null"
+	 */
+	public RespuestaTexto texto(String texto) {
+		if (texto == null) {
+			return bytes(NULL);
+		}
+		int n = texto.length();
+		asegurar(n * 3);
+		for (int i = 0; i < n; i++) {
+			char c = texto.charAt(i);
+			if (c < 0x80) {
+				datos[longitud++] = (byte) c;
+			} else if (c < 0x800) {
+				datos[longitud++] = (byte) (0xC0 | (c >> 6));
+				datos[longitud++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(texto.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, texto.charAt(++i));
+				datos[longitud++] = (byte) (0xF0 | (cp >> 18));
+				datos[longitud++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				datos[longitud++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				datos[longitud++] = (byte) (0x80 | (cp & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				datos[longitud++] = '?';
+			} else {
+				datos[longitud++] = (byte) (0xE0 | (c >> 12));
+				datos[longitud++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				datos[longitud++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Escribe bytes ya codificados, por ejemplo una respuesta guardada con copiar()
+	 */
+	public RespuestaTexto bytes(byte[] b) {
+		asegurar(b.length);
+		System.arraycopy(b, 0, datos, longitud, b.length);
+		longitud += b.length;
+		return this;
+	}
+
+	/**
+	 * Escribe un entero en base 10, como Integer.toString
+	 */
+	public RespuestaTexto entero(long valor) {
+		asegurar(20);
+		if (valor == Long.MIN_VALUE) {
+			return texto(Long.toString(valor));
+		}
+		if (valor < 0) {
+			datos[longitud++] = '-';
+			valor = -valor;
+		}
+		int inicio = longitud;
+		do {
+			datos[longitud++] = (byte) ('0' + valor % 10);
+			valor /= 10;
+		} while (valor != 0);
+		// Los dígitos han salido al revés
+		for (int i = inicio, j = longitud - 1; i < j; i++, j--) {
+			byte b = datos[i];
+			datos[i] = datos[j];
+			datos[j] = b;
+		}
+		return this;
+	}
+
+	/**
+	 * Escribe una fecha como LocalDate.toString (aaaa-mm-dd)
+	 * @param dia días desde 1970-01-01, o Tarea.SIN_FECHA para escribir "null"
+	 */
+	public RespuestaTexto fecha(int dia) {
+		if (dia == Tarea.SIN_FECHA) {
+			return bytes(NULL);
+		}
+		// Algoritmo de LocalDate.ofEpochDay, para no crear el LocalDate
+		long cero = dia + 719_528L - 60;
+		long ajuste = 0;
+		if (cero < 0) {
+			long ciclos = (cero + 1) / 146_097 - 1;
+			ajuste = ciclos * 400;
+			cero += -ciclos * 146_097;
+		}
+		long anio = (400 * cero + 591) / 146_097;
+		long diaDelAnio = cero - (365 * anio + anio / 4 - anio / 100 + anio / 400);
+		if (diaDelAnio < 0) {
+			anio--;
+			diaDelAnio = cero - (365 * anio + anio / 4 - anio / 100 + anio / 400);
+		}
+		anio += ajuste;
+		int marzo = (int) diaDelAnio;
+		int mes0 = (marzo * 5 + 2) / 153;
+		int mes = (mes0 + 2) % 12 + 1;
+		int diaMes = marzo - (mes0 * 306 + 5) / 10 + 1;
+		anio += mes0 / 10;
+		if (anio < 0 || anio > 9999) {
+			// Fuera de cuatro cifras LocalDate añade signo; caso raro que no merece otro formato propio
+			return texto(LocalDate.ofEpochDay(dia).toString());
+		}
+		asegurar(10);
+		cifras((int) anio, 4);
+		datos[longitud++] = '-';
+		cifras(mes, 2);
+		datos[longitud++] = '-';
+		cifras(diaMes, 2);
+		return this;
+	}
+
+	private void cifras(int valor, int n) {
+		for (int i = longitud + n - 1; i >= longitud; i--) {
+			datos[i] = (byte) ('0' + valor % 10);
+			valor /= 10;
+		}
+		longitud += n;
+	}
+
+	/**
+	 * Escribe una tarea con el formato de Tarea.toString()
+	 */
+	public RespuestaTexto tarea(Tarea t) {
+		texto("Tarea{id=").entero(t.getId());
+		texto(", nombre='").texto(t.getNombre());
+		texto("', descripcion='").texto(t.getDescripcion());
+		texto("', estado='").texto(t.getEstado());
+		texto("', urgencia=").texto(t.getUrgencia());
+		texto(", inicio=").fecha(t.getDiaInicio());
+		texto(", entrega=").fecha(t.getDiaEntrega());
+		texto(", idProyecto=").entero(t.getIdProyecto());
+		texto(", version=").entero(t.getVersion());
+		return caracter('}');
+	}
+
+	/**
+	 * Escribe un proyecto con el formato de Proyecto.toString()
+	 */
+	public RespuestaTexto proyecto(Proyecto p) {
+		texto("Proyecto{id=").entero(p.getId());
+		texto(", nombre='").texto(p.getNombre());
+		texto("', version=").entero(p.getVersion());
+		return caracter('}');
+	}
+
+	/**
+	 * Escribe una lista con el formato de List.toString() ([a, b, c]); las tareas y los proyectos se codifican
+	 * directamente y el resto de elementos con su toString()
+	 */
+	public RespuestaTexto lista(List<?> lista) {
+		caracter('[');
+		for (int i = 0; i < lista.size(); i++) {
+			if (i > 0) {
+				caracter(',').caracter(' ');
+			}
+			Object o = lista.get(i);
+			if (o instanceof Tarea t) {
+				tarea(t);
+			} else if (o instanceof Proyecto p) {
+				proyecto(p);
+			} else {
+				texto(String.valueOf(o));
+			}
+		}
+		return caracter(']');
+	}
+
+	// Lectura
+
+	/**
+	 * @return true si la respuesta empieza por el texto indicado, que debe ser ASCII
+	 */
+	public boolean empiezaPor(String prefijo) {
+		if (longitud < prefijo.length()) {
+			return false;
+		}
+		for (int i = 0; i < prefijo.length(); i++) {
+			if (datos[i] != prefijo.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Escribe la respuesta seguida del salto de línea en un flujo, sin vaciarlo
+	 */
+	public void escribirLinea(OutputStream out) throws IOException {
+		out.write(datos, 0, longitud);
+		out.write('\n');
+	}
+
+	/**
+	 * @return copia de la respuesta, sin salto de línea, para guardarla y volver a escribirla con bytes()
+	 */
+	public byte[] copiar() {
+		return Arrays.copyOf(datos, longitud);
+	}
+
+	/**
+	 * @return copia de la respuesta seguida del salto de línea, lista para encolarla en un canal
+	 */
+	public ByteBuffer copiarLinea() {
+		ByteBuffer b = ByteBuffer.allocate(longitud + 1);
+		b.put(datos, 0, longitud).put((byte) '\n');
+		return b.flip();
+	}
+
+	/**
+	 * @return la respuesta como texto; para los caminos que necesitan una cadena (pipeline)
+	 */
+	@Override
+	public String toString() {
+		return new String(datos, 0, longitud, StandardCharsets.UTF_8);
+	}
+}
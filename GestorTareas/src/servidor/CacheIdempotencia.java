@@ -0,0 +1,160 @@
+package servidor;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Respuestas recientes de las escrituras enviadas con clave de idempotencia (!clave;COMANDO;...), para que un
+ * cliente que reintenta un comando (porque se cortó la conexión o no llegó la respuesta a tiempo) reciba la
+ * respuesta de la primera ejecución en lugar de ejecutarlo otra vez.
+ * Cada clave se registra al empezar su comando: un reintento que llega mientras el primero sigue en curso espera
+ * a que termine y devuelve su misma respuesta. Terminado, la respuesta se guarda durante un tiempo de vida (TTL)
+ * si ha ido bien; si ha fallado la clave se libera y el siguiente reintento vuelve a ejecutar el comando.
+ * Está acotada por número de claves: al superarlo se olvidan las más antiguas, aunque sigan en curso. Las
+ * caducadas se retiran al registrar claves nuevas, sin un hilo aparte.
+ * Con cada clave se guarda una huella del comando, para rechazar la misma clave usada con otro comando.
+ * Es segura para usarse desde varios hilos a la vez.
+ */
+final class CacheIdempotencia {
+
+	/**
+	 * Comando registrado con una clave; respuesta se completa al terminar, con null si ha fallado
+	 */
+	static final class Peticion {
+		private final String clave;
+		private final long huella;
+		private final CompletableFuture<byte[]> respuesta = new CompletableFuture<>();
+		// Solo se accede con el cerrojo de la caché; 0 mientras está en curso
+		private long caduca;
+
+		Peticion(String clave, long huella) {
+			this.clave = clave;
+			this.huella = huella;
+		}
+
+		/**
+		 * @return true si la petición corresponde al mismo comando
+		 */
+		boolean mismoComando(long huella) {
+			return this.huella == huella;
+		}
+	}
+
+	private final int maxClaves;
+	private final long ttlNanos;
+	private final long esperaMs;
+	// En orden de registro o de fin: las terminadas quedan en orden de caducidad
+	private final LinkedHashMap<String, Peticion> peticiones = new LinkedHashMap<>();
+
+	private final LongAdder ejecutadas = new LongAdder();
+	private final LongAdder repetidas = new LongAdder();
+	private final LongAdder esperadas = new LongAdder();
+	private final LongAdder expulsiones = new LongAdder();
+
+	/**
+	 * @param maxClaves número máximo de claves recordadas
+	 * @param ttlMs tiempo durante el que se recuerda la respuesta de un comando terminado
+	 * @param esperaMs espera máxima de un reintento a que termine el comando en curso con su misma clave
+	 */
+	CacheIdempotencia(int maxClaves, long ttlMs, long esperaMs) {
+		this.maxClaves = Math.max(maxClaves, 1);
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+		this.esperaMs = esperaMs;
+	}
+
+	/**
+	 * Registra una clave antes de ejecutar su comando
+	 * @param nueva petición con la clave y la huella del comando
+	 * @return null si la clave es nueva (o había caducado) y hay que ejecutar el comando y llamar a terminar;
+	 * si no, la petición ya registrada con esa clave, cuya respuesta se obtiene con esperar
+	 */
+	synchronized Peticion registrar(Peticion nueva) {
+		long ahora = System.nanoTime();
+		retirarCaducadas(ahora);
+		Peticion previa = peticiones.get(nueva.clave);
+		if (previa != null && (previa.caduca == 0 || ahora < previa.caduca)) {
+			return previa;
+		}
+		peticiones.remove(nueva.clave);
+		peticiones.put(nueva.clave, nueva);
+		Iterator<Peticion> it = peticiones.values().iterator();
+		while (peticiones.size() > maxClaves && it.hasNext()) {
+			it.next();
+			it.remove();
+			expulsiones.increment();
+		}
+		ejecutadas.increment();
+		return null;
+	}
+
+	private void retirarCaducadas(long ahora) {
+		Iterator<Peticion> it = peticiones.values().iterator();
+		while (it.hasNext()) {
+			Peticion p = it.next();
+			if (p.caduca == 0) {
+				// En curso: puede haber terminadas detrás
+				continue;
+			}
+			if (ahora < p.caduca) {
+				break;
+			}
+			it.remove();
+		}
+	}
+
+	/**
+	 * Termina un comando registrado y despierta a los reintentos que lo esperan
+	 * @param peticion petición devuelta a registrar
+	 * @param respuesta respuesta enviada al cliente
+	 * @param correcta si se guarda la respuesta; si no, la clave se libera para que el siguiente reintento
+	 * ejecute el comando de nuevo (los que ya esperan reciben esta misma respuesta)
+	 */
+	void terminar(Peticion peticion, byte[] respuesta, boolean correcta) {
+		synchronized (this) {
+			// Si se ha expulsado mientras estaba en curso no se vuelve a guardar
+			if (peticiones.remove(peticion.clave, peticion) && correcta) {
+				peticion.caduca = System.nanoTime() + ttlNanos;
+				// Al final, para que las terminadas sigan en orden de caducidad
+				peticiones.put(peticion.clave, peticion);
+			}
+		}
+		peticion.respuesta.complete(respuesta);
+	}
+
+	/**
+	 * Obtiene la respuesta de un comando registrado por otro, esperando a que termine si sigue en curso
+	 * @return respuesta del comando, o null si no ha terminado dentro de la espera máxima
+	 * @throws InterruptedException si se interrumpe la espera
+	 */
+	byte[] esperar(Peticion peticion) throws InterruptedException {
+		if (peticion.respuesta.isDone()) {
+			repetidas.increment();
+		} else {
+			esperadas.increment();
+		}
+		try {
+			return peticion.respuesta.get(esperaMs, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			return null;
+		} catch (ExecutionException e) {
+			// Nunca se completa con excepción
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	public synchronized int getTamanio() {
+		return peticiones.size();
+	}
+
+	@Override
+	public String toString() {
+		return "CacheIdempotencia{claves=" + getTamanio() + ", ejecutadas=" + ejecutadas.sum()
+				+ ", repetidas=" + repetidas.sum() + ", esperadas=" + esperadas.sum()
+				+ ", expulsiones=" + expulsiones.sum() + "}";
+	}
+}
@@ -0,0 +1,130 @@
+package servidor;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Cerrojos por proyecto repartidos en un número fijo de franjas, para coordinar las escrituras de un mismo
+ * proyecto dentro del servidor sin un cerrojo global ni uno por proyecto
+ * Cada proyecto cae siempre en la misma franja (por un hash de su id), de modo que los cambios de proyectos
+ * distintos casi nunca se esperan entre sí y la memoria no crece con el número de proyectos. Las operaciones
+ * sobre un proyecto entero (renombrar, eliminar, archivar, mover) toman su franja en exclusiva; las que solo
+ * tocan una tarea la toman compartida, por lo que van en paralelo entre ellas pero no se cruzan con aquellas.
+ * Quien necesita dos proyectos los toma con bloquearAmbos, y quien cambia tareas de varios con bloquearVarios,
+ * siempre en orden de franja para no interbloquearse.
+ * Es segura para usarse desde varios hilos a la vez.
+ */
+final class CerrojosProyecto {
+	private final ReentrantReadWriteLock[] franjas;
+	private final int mascara;
+	private final LongAdder esperas = new LongAdder();
+
+	/**
+	 * @param franjas número de franjas; se redondea a la potencia de dos siguiente
+	 */
+	CerrojosProyecto(int franjas) {
+		int n = Integer.highestOneBit(Math.max(franjas, 1) * 2 - 1);
+		this.franjas = new ReentrantReadWriteLock[n];
+		for (int i = 0; i < n; i++) {
+			this.franjas[i] = new ReentrantReadWriteLock();
+		}
+		this.mascara = n - 1;
+	}
+
+	/**
+	 * @return franja del proyecto; los ids consecutivos se reparten por todas las franjas
+	 */
+	private int franja(int idProyecto) {
+		int h = idProyecto * 0x9E3779B9;
+		return (h ^ h >>> 16) & mascara;
+	}
+
+	/**
+	 * Toma la franja del proyecto compartida (cambios de una tarea)
+	 * @return cerrojo tomado, que hay que soltar con unlock()
+	 */
+	Lock bloquearCompartido(int idProyecto) {
+		return tomar(franjas[franja(idProyecto)].readLock());
+	}
+
+	/**
+	 * Toma la franja del proyecto en exclusiva (cambios del proyecto entero)
+	 * @return cerrojo tomado, que hay que soltar con unlock()
+	 */
+	Lock bloquearExclusivo(int idProyecto) {
+		return tomar(franjas[franja(idProyecto)].writeLock());
+	}
+
+	/**
+	 * Toma en exclusiva las franjas de dos proyectos, la de número menor primero; si coinciden se toma una vez
+	 */
+	void bloquearAmbos(int idA, int idB) {
+		int a = franja(idA);
+		int b = franja(idB);
+		tomar(franjas[Math.min(a, b)].writeLock());
+		if (a != b) {
+			tomar(franjas[Math.max(a, b)].writeLock());
+		}
+	}
+
+	/**
+	 * Suelta las franjas tomadas con bloquearAmbos
+	 */
+	void desbloquearAmbos(int idA, int idB) {
+		int a = franja(idA);
+		int b = franja(idB);
+		if (a != b) {
+			franjas[Math.max(a, b)].writeLock().unlock();
+		}
+		franjas[Math.min(a, b)].writeLock().unlock();
+	}
+
+	/**
+	 * Toma compartidas las franjas de varios proyectos (altas de tareas de varios a la vez), en orden de número de
+	 * franja como bloquearAmbos; cada franja se toma una vez aunque caigan en ella varios proyectos
+	 */
+	void bloquearVarios(int[] idProyectos) {
+		for (int f : franjasDe(idProyectos)) {
+			tomar(franjas[f].readLock());
+		}
+	}
+
+	/**
+	 * Suelta las franjas tomadas con bloquearVarios
+	 */
+	void desbloquearVarios(int[] idProyectos) {
+		int[] f = franjasDe(idProyectos);
+		for (int i = f.length - 1; i >= 0; i--) {
+			franjas[f[i]].readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return franjas distintas de los proyectos, de menor a mayor
+	 */
+	private int[] franjasDe(int[] idProyectos) {
+		int[] f = new int[idProyectos.length];
+		for (int i = 0; i < f.length; i++) {
+			f[i] = franja(idProyectos[i]);
+		}
+		return Arrays.stream(f).sorted().distinct().toArray();
+	}
+
+	/**
+	 * Toma el cerrojo contando las veces que ha habido que esperar a otro hilo
+	 */
+	private Lock tomar(Lock cerrojo) {
+		if (!cerrojo.tryLock()) {
+			esperas.increment();
+			cerrojo.lock();
+		}
+		return cerrojo;
+	}
+
+	@Override
+	public String toString() {
+		return "CerrojosProyecto{franjas=" + franjas.length + ", esperas=" + esperas.sum() + "}";
+	}
+}
@@ -0,0 +1,159 @@
+package servidor;
+
+import static protocolo.ProtocoloBinario.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import metricas.Metricas;
+import modelos.Estado;
+import modelos.Proyecto;
+import modelos.Tarea;
+import modelos.Urgencia;
+import protocolo.BufferBinario;
+import protocolo.ProtocoloBinario;
+
+/**
+ * Ejecuta los comandos del protocolo binario (ver ProtocoloBinario)
+ * Las tareas y proyectos se leen y escriben directamente sobre los buffers, sin pasar por texto.
+ */
+final class ComandosBinarios {
+	private ComandosBinarios() {
+	}
+
+	/**
+	 * Ejecuta una petición y escribe su respuesta
+	 * Cualquier error, incluido un mensaje mal formado, se responde con RESULTADO_ERROR y su descripción.
+	 * Cada petición se mide en Metricas con el nombre de ProtocoloBinario.nombreOperacion.
+	 * @param peticion datos de la petición
+	 * @param respuesta buffer vacío donde escribir la respuesta
+	 * @param servicio operaciones sobre proyectos y tareas
+	 */
+	static void procesar(BufferBinario peticion, BufferBinario respuesta, ServicioGestor servicio) {
+		Metricas metricas = Metricas.global();
+		metricas.iniciarComando();
+		int operacion = -1;
+		boolean error = false;
+		try {
+			operacion = peticion.leerByte();
+			switch (operacion) {
+			case INSERT_PROYECTO:
+				servicio.crearProyecto(peticion.leerTexto());
+				respuesta.escribirByte(RESULTADO_OK);
+				break;
+
+			case LIST_PROYECTOS:
+				List<Proyecto> proyectos = servicio.listarProyectos();
+				respuesta.escribirByte(RESULTADO_OK);
+				respuesta.escribirVarint(proyectos.size());
+				for (Proyecto p : proyectos) {
+					escribirProyecto(respuesta, p);
+				}
+				break;
+
+			case UPDATE_PROYECTO:
+				int idUpd = peticion.leerVarint();
+				servicio.actualizarProyecto(idUpd, peticion.leerTexto());
+				respuesta.escribirByte(RESULTADO_OK);
+				break;
+
+			case DELETE_PROYECTO:
+				int eliminadas = servicio.eliminarProyecto(peticion.leerVarint());
+				respuesta.escribirByte(RESULTADO_OK);
+				respuesta.escribirVarint(eliminadas);
+				break;
+
+			case INSERT_TAREA:
+				servicio.crearTarea(leerTarea(peticion));
+				respuesta.escribirByte(RESULTADO_OK);
+				break;
+
+			case INSERT_TAREAS_BATCH:
+				int n = peticion.leerVarint();
+				if (n > Servidor.MAX_TAREAS_LOTE) {
+					throw new IllegalArgumentException("El lote supera el máximo de " + Servidor.MAX_TAREAS_LOTE + " tareas");
+				}
+				List<Tarea> tareas = new ArrayList<>(n);
+				for (int i = 0; i < n; i++) {
+					tareas.add(leerTarea(peticion));
+				}
+				int[] ids = servicio.crearTareas(tareas);
+				respuesta.escribirByte(RESULTADO_OK);
+				respuesta.escribirVarint(ids.length);
+				for (int id : ids) {
+					respuesta.escribirVarint(id);
+				}
+				break;
+
+			case LIST_TAREAS:
+				List<Tarea> lista = servicio.listarTareas(peticion.leerVarint());
+				respuesta.escribirByte(RESULTADO_OK);
+				respuesta.escribirVarint(lista.size());
+				for (Tarea t : lista) {
+					escribirTarea(respuesta, t);
+				}
+				break;
+
+			case LIST_TAREAS_PAGINA:
+				int idProyecto = peticion.leerVarint();
+				int despuesDeId = peticion.leerVarint();
+				List<Tarea> pagina = servicio.listarPaginaTareas(idProyecto, despuesDeId, peticion.leerVarint());
+				respuesta.escribirByte(RESULTADO_OK);
+				respuesta.escribirVarint(pagina.size());
+				for (Tarea t : pagina) {
+					escribirTarea(respuesta, t);
+				}
+				break;
+
+			case UPDATE_TAREA:
+				int idTarea = peticion.leerVarint();
+				int campo = peticion.leerByte();
+				String columna = ProtocoloBinario.nombreCampo(campo);
+				String valor;
+				switch (campo) {
+				case CAMPO_ESTADO:
+					valor = Estado.desdeCodigo(peticion.leerByte()).getTexto();
+					break;
+				case CAMPO_URGENCIA:
+					valor = Urgencia.desdeCodigo(peticion.leerByte()).getTexto();
+					break;
+				default:
+					// La fecha se pasa al DAO en formato ISO, igual que en el protocolo de texto
+					valor = LocalDate.ofEpochDay(peticion.leerZigzag()).toString();
+				}
+				servicio.actualizarTarea(idTarea, columna, valor);
+				respuesta.escribirByte(RESULTADO_OK);
+				break;
+
+			case DELETE_TAREA:
+				servicio.eliminarTarea(peticion.leerVarint());
+				respuesta.escribirByte(RESULTADO_OK);
+				break;
+
+			case ARCHIVE_TAREAS:
+				int archivadas = servicio.archivarFinalizadas(peticion.leerVarint());
+				respuesta.escribirByte(RESULTADO_OK);
+				respuesta.escribirVarint(archivadas);
+				break;
+
+			case MOVE_TAREAS:
+				int idOrigen = peticion.leerVarint();
+				int movidas = servicio.moverTareas(idOrigen, peticion.leerVarint());
+				respuesta.escribirByte(RESULTADO_OK);
+				respuesta.escribirVarint(movidas);
+				break;
+
+			default:
+				throw new IllegalArgumentException("Comando desconocido: " + operacion);
+			}
+		} catch (Exception e) {
+			error = true;
+			respuesta.limpiar();
+			respuesta.escribirByte(RESULTADO_ERROR);
+			respuesta.escribirTexto(String.valueOf(e.getMessage()));
+		}
+		String nombre = ProtocoloBinario.nombreOperacion(operacion);
+		metricas.terminarComando(nombre, error, nombre);
+	}
+}
@@ -0,0 +1,270 @@
+package servidor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import dao.CambioTarea;
+import modelos.Estado;
+import modelos.ResumenProyecto;
+import modelos.Tarea;
+import modelos.Urgencia;
+
+/**
+ * Número de tareas de cada proyecto por estado y urgencia, mantenido en memoria para STATS_PROYECTO y STATS_ALL
+ * Se carga una vez recorriendo el proyecto, el estado y la urgencia de todas las tareas (RepositorioTareas.
+ * recorrerEstados) y después ServicioGestor lo cambia con cada alta, cambio de estado o urgencia, borrado, archivado
+ * y movimiento, de modo que leer el resumen de un proyecto no toca el almacenamiento y cuesta siempre lo mismo.
+ * Cada proyecto tiene una matriz estado x urgencia de contadores atómicos: el archivado necesita saber cuántas
+ * finalizadas hay de cada urgencia.
+ * Para saber de qué celda sale una tarea que cambia o se borra sin leerla del almacenamiento, se guarda además el
+ * proyecto de cada tarea y, por proyecto, la celda de cada una de sus tareas, en tablas de enteros (MapaEnteros)
+ * que ocupan según las tareas vivas, no según el mayor id; las operaciones sobre un proyecto entero solo recorren
+ * las tareas de ese proyecto. Las tareas que no están en ellas (creadas por fuera del servidor después de la carga)
+ * no se cuentan ni se descuentan.
+ * Quien cambia los contadores tiene tomada la franja del proyecto (ver CerrojosProyecto): compartida para los
+ * cambios de una tarea, que solo suman o restan, y exclusiva para los de un proyecto entero; y, para los cambios de
+ * una tarea ya existente, la franja de la tarea en exclusiva, de modo que su registro no cambia entre leerlo y
+ * actualizarlo. Las tablas en sí se protegen con el monitor de este objeto.
+ * Mientras no se carga, los cambios se ignoran.
+ */
+final class ContadoresProyectos {
+	private static final Estado[] ESTADOS = Estado.values();
+	private static final Urgencia[] URGENCIAS = Urgencia.values();
+
+	private final ConcurrentHashMap<Integer, AtomicIntegerArray> porProyecto = new ConcurrentHashMap<>();
+	// Proyecto de cada tarea, y celda de cada tarea por proyecto; solo se accede con el monitor de este objeto
+	private final MapaEnteros proyectoDeTarea = new MapaEnteros();
+	private final Map<Integer, MapaEnteros> tareasPorProyecto = new HashMap<>();
+	private volatile boolean activo;
+
+	/**
+	 * Cuenta una tarea durante la carga inicial, antes de activar
+	 */
+	void cargar(int idTarea, int idProyecto, int codigoEstado, int codigoUrgencia) {
+		int celda = indice(codigoEstado, codigoUrgencia);
+		celdas(idProyecto).incrementAndGet(celda);
+		registrar(idTarea, idProyecto, celda);
+	}
+
+	/**
+	 * Empieza a seguir los cambios, una vez cargadas todas las tareas
+	 */
+	void activar() {
+		activo = true;
+	}
+
+	/**
+	 * @return true si se han cargado; mientras no, los cambios no se siguen
+	 */
+	boolean activo() {
+		return activo;
+	}
+
+	/**
+	 * Suma una tarea recién creada
+	 * @param id identificador asignado a la tarea
+	 */
+	void sumar(int id, Tarea t) {
+		if (activo) {
+			int celda = indice(t.getCodigoEstado(), t.getCodigoUrgencia());
+			celdas(t.getIdProyecto()).incrementAndGet(celda);
+			registrar(id, t.getIdProyecto(), celda);
+		}
+	}
+
+	/**
+	 * Resta una tarea eliminada y la olvida; si no se conocía no hace nada
+	 */
+	synchronized void restar(int id) {
+		int p = activo ? proyectoDeTarea.quitar(id, -1) : -1;
+		if (p < 0) {
+			return;
+		}
+		MapaEnteros suyas = tareasPorProyecto.get(p);
+		celdas(p).decrementAndGet(suyas.quitar(id, 0));
+		if (suyas.isEmpty()) {
+			tareasPorProyecto.remove(p);
+		}
+	}
+
+	/**
+	 * Pasa una tarea de su estado y urgencia anteriores a los que deja un cambio ya aplicado; si la tarea no se
+	 * conocía no hace nada
+	 */
+	synchronized void cambiar(CambioTarea cambio) {
+		int p = activo ? proyectoDeTarea.get(cambio.idTarea(), -1) : -1;
+		if (p < 0) {
+			return;
+		}
+		MapaEnteros suyas = tareasPorProyecto.get(p);
+		int antes = suyas.get(cambio.idTarea(), 0);
+		int estado = antes / URGENCIAS.length;
+		int urgencia = antes % URGENCIAS.length;
+		switch (cambio.campo()) {
+		case "estado":
+			estado = Estado.desdeTexto(cambio.valor()).getCodigo();
+			break;
+		case "urgencia":
+			urgencia = Urgencia.desdeTexto(cambio.valor()).getCodigo();
+			break;
+		default:
+			return;
+		}
+		int despues = indice(estado, urgencia);
+		if (antes != despues) {
+			AtomicIntegerArray celdas = celdas(p);
+			celdas.decrementAndGet(antes);
+			celdas.incrementAndGet(despues);
+			suyas.poner(cambio.idTarea(), despues);
+		}
+	}
+
+	/**
+	 * @return proyecto de una tarea, o -1 si no se conoce (no existe, o se creó por fuera del servidor)
+	 */
+	synchronized int proyectoDe(int idTarea) {
+		return activo ? proyectoDeTarea.get(idTarea, -1) : -1;
+	}
+
+	/**
+	 * @return true si el cambio puede pasar la tarea a otra celda (cambia el estado o la urgencia)
+	 */
+	boolean cuenta(CambioTarea cambio) {
+		return activo && !cambio.campo().equals("fecha_fin");
+	}
+
+	/**
+	 * Pone a cero las finalizadas de un proyecto, que se acaban de archivar todas
+	 */
+	void archivarFinalizadas(int idProyecto) {
+		AtomicIntegerArray celdas = porProyecto.get(idProyecto);
+		if (celdas != null) {
+			for (Urgencia u : URGENCIAS) {
+				celdas.set(indice(Estado.FINALIZADO.getCodigo(), u.getCodigo()), 0);
+			}
+			int finalizado = Estado.FINALIZADO.getCodigo();
+			synchronized (this) {
+				MapaEnteros suyas = tareasPorProyecto.remove(idProyecto);
+				if (suyas != null) {
+					MapaEnteros quedan = new MapaEnteros();
+					suyas.recorrer((id, celda) -> {
+						if (celda / URGENCIAS.length == finalizado) {
+							proyectoDeTarea.quitar(id, -1);
+						} else {
+							quedan.poner(id, celda);
+						}
+					});
+					if (!quedan.isEmpty()) {
+						tareasPorProyecto.put(idProyecto, quedan);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Suma las tareas de un proyecto a las de otro, al que se acaban de mover todas
+	 */
+	void mover(int idOrigen, int idDestino) {
+		AtomicIntegerArray origen = porProyecto.remove(idOrigen);
+		if (origen != null) {
+			AtomicIntegerArray destino = celdas(idDestino);
+			for (int i = 0; i < origen.length(); i++) {
+				destino.addAndGet(i, origen.get(i));
+			}
+			synchronized (this) {
+				MapaEnteros movidas = tareasPorProyecto.remove(idOrigen);
+				if (movidas != null) {
+					MapaEnteros suyas = tareasPorProyecto.putIfAbsent(idDestino, movidas);
+					movidas.recorrer((id, celda) -> {
+						proyectoDeTarea.poner(id, idDestino);
+						if (suyas != null) {
+							suyas.poner(id, celda);
+						}
+					});
+				}
+			}
+		}
+	}
+
+	/**
+	 * Olvida un proyecto eliminado con sus tareas
+	 */
+	void eliminarProyecto(int idProyecto) {
+		if (porProyecto.remove(idProyecto) != null) {
+			synchronized (this) {
+				MapaEnteros suyas = tareasPorProyecto.remove(idProyecto);
+				if (suyas != null) {
+					suyas.recorrer((id, celda) -> proyectoDeTarea.quitar(id, -1));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true si el proyecto tiene o ha tenido tareas desde la carga
+	 */
+	boolean conoce(int idProyecto) {
+		return porProyecto.containsKey(idProyecto);
+	}
+
+	/**
+	 * @return número de proyectos con contadores
+	 */
+	int numProyectos() {
+		return porProyecto.size();
+	}
+
+	/**
+	 * @param vencidas tareas vencidas del proyecto, que lleva Vencimientos
+	 * @return resumen del proyecto; uno sin tareas tiene todo a cero
+	 */
+	ResumenProyecto resumen(int idProyecto, int vencidas) {
+		int[] porEstado = new int[ESTADOS.length];
+		int[] porUrgencia = new int[URGENCIAS.length];
+		AtomicIntegerArray celdas = porProyecto.get(idProyecto);
+		if (celdas != null) {
+			for (int e = 0; e < ESTADOS.length; e++) {
+				for (int u = 0; u < URGENCIAS.length; u++) {
+					int n = celdas.get(indice(e, u));
+					porEstado[e] += n;
+					porUrgencia[u] += n;
+				}
+			}
+		}
+		return new ResumenProyecto(idProyecto, porEstado[Estado.PENDIENTE.getCodigo()],
+				porEstado[Estado.EN_PROGRESO.getCodigo()], porEstado[Estado.FINALIZADO.getCodigo()],
+				porUrgencia[Urgencia.ALTA.getCodigo()], porUrgencia[Urgencia.MEDIA.getCodigo()],
+				porUrgencia[Urgencia.BAJA.getCodigo()], vencidas);
+	}
+
+	private AtomicIntegerArray celdas(int idProyecto) {
+		return porProyecto.computeIfAbsent(idProyecto, k -> new AtomicIntegerArray(ESTADOS.length * URGENCIAS.length));
+	}
+
+	private static int indice(int estado, int urgencia) {
+		return estado * URGENCIAS.length + urgencia;
+	}
+
+	// Registro de cada tarea
+
+	/**
+	 * Guarda el proyecto y la celda de una tarea
+	 */
+	private synchronized void registrar(int id, int idProyecto, int celda) {
+		int anterior = proyectoDeTarea.get(id, -1);
+		if (anterior >= 0 && anterior != idProyecto) {
+			tareasPorProyecto.get(anterior).quitar(id, 0);
+		}
+		proyectoDeTarea.poner(id, idProyecto);
+		tareasPorProyecto.computeIfAbsent(idProyecto, k -> new MapaEnteros()).poner(id, celda);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ContadoresProyectos{activos=" + activo + ", proyectos=" + porProyecto.size() + ", tareas=" + proyectoDeTarea.getTamanio()
+				+ "}";
+	}
+}
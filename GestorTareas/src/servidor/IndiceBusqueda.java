@@ -0,0 +1,565 @@
+package servidor;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import modelos.Estado;
+import modelos.Tarea;
+
+/**
+ * Índice invertido en memoria de las palabras del nombre y la descripción de las tareas (SEARCH_TAREAS)
+ * Las palabras se normalizan sin tildes ni diéresis y en minúsculas ("Revisión" y "revision" son la misma), y se
+ * descartan las de una letra y las palabras vacías más frecuentes del español. Cada palabra tiene su lista de
+ * tareas ordenada por id, con un peso por tarea: cada aparición en el nombre cuenta PESO_NOMBRE y en la
+ * descripción PESO_DESCRIPCION. Las palabras se guardan en un TreeMap, de modo que cada palabra de la búsqueda
+ * encuentra también las que empiezan por ella (como mucho maxExpansion, por orden alfabético).
+ * Una tarea encaja si encaja con todas las palabras de la búsqueda. Su puntuación suma, por cada palabra
+ * encontrada, su peso por la rareza de la palabra (idf, log(1 + tareas / tareas con la palabra)), a la mitad
+ * si solo encaja como prefijo. Las listas de cada palabra de la búsqueda se cruzan empezando por la más corta.
+ * El nombre y la descripción no se pueden cambiar, así que después de crearse una tarea solo cambian su proyecto
+ * (al moverlas) y si está finalizada (para el archivado). Borrar o archivar las tareas de un proyecto y moverlas
+ * recorre todas las tareas del índice, porque no se guarda una lista por proyecto.
+ * Se llena con cargar y, hasta que se activa, ignora los cambios y no atiende búsquedas.
+ * Es seguro para usarse desde varios hilos a la vez: las búsquedas comparten el cerrojo de lectura.
+ */
+final class IndiceBusqueda {
+	private static final int PESO_NOMBRE = 3;
+	private static final int PESO_DESCRIPCION = 1;
+	private static final Set<String> VACIAS = Set.of("al", "con", "de", "del", "el", "en", "es", "la", "las", "lo",
+			"los", "para", "por", "que", "se", "su", "un", "una", "uno", "y");
+
+	/**
+	 * Tareas que contienen una palabra, ordenadas por id, con su peso
+	 */
+	private static final class Apariciones {
+		int[] ids = new int[2];
+		byte[] pesos = new byte[2];
+		int n;
+		boolean desordenada;
+
+		void poner(int id, int peso) {
+			if (n == 0 || id > ids[n - 1]) {
+				anadir(id, peso);
+				return;
+			}
+			int i = Arrays.binarySearch(ids, 0, n, id);
+			if (i >= 0) {
+				pesos[i] = (byte) peso;
+				return;
+			}
+			i = -i - 1;
+			if (n == ids.length) {
+				ids = Arrays.copyOf(ids, n * 2);
+				pesos = Arrays.copyOf(pesos, n * 2);
+			}
+			System.arraycopy(ids, i, ids, i + 1, n - i);
+			System.arraycopy(pesos, i, pesos, i + 1, n - i);
+			ids[i] = id;
+			pesos[i] = (byte) peso;
+			n++;
+		}
+
+		/**
+		 * Añade al final sin buscar el sitio; si el id no es el mayor la lista queda desordenada hasta ordenar()
+		 */
+		void anadir(int id, int peso) {
+			if (n == ids.length) {
+				ids = Arrays.copyOf(ids, n * 2);
+				pesos = Arrays.copyOf(pesos, n * 2);
+			}
+			desordenada |= n > 0 && id < ids[n - 1];
+			ids[n] = id;
+			pesos[n] = (byte) peso;
+			n++;
+		}
+
+		void ordenar() {
+			if (!desordenada) {
+				return;
+			}
+			long[] pares = new long[n];
+			for (int i = 0; i < n; i++) {
+				pares[i] = (long) ids[i] << 8 | pesos[i] & 0xFF;
+			}
+			Arrays.sort(pares);
+			for (int i = 0; i < n; i++) {
+				ids[i] = (int) (pares[i] >>> 8);
+				pesos[i] = (byte) pares[i];
+			}
+			desordenada = false;
+		}
+
+		void quitar(int id) {
+			int i = Arrays.binarySearch(ids, 0, n, id);
+			if (i >= 0) {
+				System.arraycopy(ids, i + 1, ids, i, n - i - 1);
+				System.arraycopy(pesos, i + 1, pesos, i, n - i - 1);
+				n--;
+			}
+		}
+	}
+
+	/**
+	 * Lo que el índice guarda de cada tarea para poder quitarla
+	 */
+	private static final class Documento {
+		int proyecto;
+		boolean finalizada;
+		final String[] palabras;
+
+		Documento(int proyecto, boolean finalizada, String[] palabras) {
+			this.proyecto = proyecto;
+			this.finalizada = finalizada;
+			this.palabras = palabras;
+		}
+	}
+
+	/**
+	 * Tareas que encajan con una palabra de la búsqueda, ordenadas por id, con su puntuación
+	 */
+	private static final class Coincidencias {
+		final int[] ids;
+		final float[] puntos;
+		final int n;
+
+		Coincidencias(int[] ids, float[] puntos, int n) {
+			this.ids = ids;
+			this.puntos = puntos;
+			this.n = n;
+		}
+	}
+
+	private final int maxExpansion;
+	private final ReentrantReadWriteLock cerrojo = new ReentrantReadWriteLock();
+	private final TreeMap<String, Apariciones> palabras = new TreeMap<>();
+	/** Documentos por id de tarea: los ids son correlativos, así que un array ocupa menos que un mapa */
+	private Documento[] documentos = new Documento[1024];
+	private int numDocumentos;
+	private volatile boolean activo;
+
+	/**
+	 * @param maxExpansion palabras del índice que se buscan como mucho por cada palabra de la búsqueda
+	 */
+	IndiceBusqueda(int maxExpansion) {
+		this.maxExpansion = Math.max(1, maxExpansion);
+	}
+
+	/**
+	 * Normaliza un texto y lo parte en palabras
+	 * @return palabras del texto sin tildes y en minúsculas, sin las de una letra ni las vacías, en orden y con
+	 * repeticiones
+	 */
+	static List<String> palabras(String texto) {
+		List<String> lista = new ArrayList<>();
+		if (texto == null || texto.isEmpty()) {
+			return lista;
+		}
+		// Solo se descompone el texto si tiene algún carácter fuera de ASCII, que es lo raro
+		String normal = texto;
+		for (int i = 0; i < texto.length(); i++) {
+			if (texto.charAt(i) >= 0x80) {
+				normal = Normalizer.normalize(texto, Normalizer.Form.NFD);
+				break;
+			}
+		}
+		StringBuilder palabra = new StringBuilder();
+		for (int i = 0; i <= normal.length(); i++) {
+			char c = i < normal.length() ? normal.charAt(i) : ' ';
+			if (Character.isLetterOrDigit(c)) {
+				palabra.append(Character.toLowerCase(c));
+			} else if (!esMarca(c)) {
+				// Las marcas (tildes, diéresis) separadas por la descomposición se saltan sin cortar la palabra
+				if (palabra.length() > 1) {
+					String p = palabra.toString();
+					if (!VACIAS.contains(p)) {
+						lista.add(p);
+					}
+				}
+				palabra.setLength(0);
+			}
+		}
+		return lista;
+	}
+
+	private static boolean esMarca(char c) {
+		int tipo = Character.getType(c);
+		return tipo == Character.NON_SPACING_MARK || tipo == Character.COMBINING_SPACING_MARK
+				|| tipo == Character.ENCLOSING_MARK;
+	}
+
+	/**
+	 * Añade una tarea durante la carga inicial
+	 * La carga recorre las tareas proyecto a proyecto, así que los ids no llegan en orden: se añaden al final de
+	 * cada lista y las listas se ordenan una sola vez al activar el índice.
+	 */
+	void cargar(Tarea t) {
+		ponerDocumento(t.getId(), t, true);
+	}
+
+	/**
+	 * Ordena las listas cargadas y empieza a seguir los cambios y a atender búsquedas
+	 */
+	void activar() {
+		cerrojo.writeLock().lock();
+		try {
+			for (Apariciones a : palabras.values()) {
+				a.ordenar();
+			}
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+		activo = true;
+	}
+
+	/**
+	 * @return true si se ha cargado y atiende búsquedas
+	 */
+	boolean activo() {
+		return activo;
+	}
+
+	/**
+	 * Añade una tarea recién creada
+	 * @param id identificador generado
+	 * @param t datos de la tarea
+	 */
+	void poner(int id, Tarea t) {
+		if (activo) {
+			ponerDocumento(id, t, false);
+		}
+	}
+
+	private void ponerDocumento(int id, Tarea t, boolean carga) {
+		Map<String, Integer> pesos = new LinkedHashMap<>();
+		for (String p : palabras(t.getNombre())) {
+			pesos.merge(p, PESO_NOMBRE, Integer::sum);
+		}
+		for (String p : palabras(t.getDescripcion())) {
+			pesos.merge(p, PESO_DESCRIPCION, Integer::sum);
+		}
+		boolean finalizada = t.getCodigoEstado() == Estado.FINALIZADO.getCodigo();
+		cerrojo.writeLock().lock();
+		try {
+			if (!carga) {
+				quitarDocumento(id);
+			}
+			String[] suyas = new String[pesos.size()];
+			int i = 0;
+			for (Map.Entry<String, Integer> e : pesos.entrySet()) {
+				// Se guarda la misma cadena que la clave del índice, para no repetirla en cada tarea
+				Map.Entry<String, Apariciones> entrada = palabras.ceilingEntry(e.getKey());
+				String palabra;
+				Apariciones apariciones;
+				if (entrada != null && entrada.getKey().equals(e.getKey())) {
+					palabra = entrada.getKey();
+					apariciones = entrada.getValue();
+				} else {
+					palabra = e.getKey();
+					apariciones = new Apariciones();
+					palabras.put(palabra, apariciones);
+				}
+				int peso = Math.min(e.getValue(), Byte.MAX_VALUE);
+				if (carga) {
+					apariciones.anadir(id, peso);
+				} else {
+					apariciones.poner(id, peso);
+				}
+				suyas[i++] = palabra;
+			}
+			if (id >= documentos.length) {
+				documentos = Arrays.copyOf(documentos, Math.max(id + 1, documentos.length * 2));
+			}
+			documentos[id] = new Documento(t.getIdProyecto(), finalizada, suyas);
+			numDocumentos++;
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Quita una tarea eliminada
+	 */
+	void quitar(int id) {
+		if (!activo) {
+			return;
+		}
+		cerrojo.writeLock().lock();
+		try {
+			quitarDocumento(id);
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Anota si una tarea está finalizada, para quitarla cuando se archiven las de su proyecto
+	 */
+	void cambiarEstado(int id, boolean finalizada) {
+		if (!activo) {
+			return;
+		}
+		cerrojo.writeLock().lock();
+		try {
+			Documento d = documento(id);
+			if (d != null) {
+				d.finalizada = finalizada;
+			}
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Quita las tareas finalizadas de un proyecto, que se acaban de archivar
+	 */
+	void archivarFinalizadas(int idProyecto) {
+		quitarDeProyecto(idProyecto, true);
+	}
+
+	/**
+	 * Quita las tareas de un proyecto eliminado
+	 */
+	void eliminarProyecto(int idProyecto) {
+		quitarDeProyecto(idProyecto, false);
+	}
+
+	/**
+	 * Pasa las tareas de un proyecto a otro
+	 */
+	void mover(int idOrigen, int idDestino) {
+		if (!activo) {
+			return;
+		}
+		cerrojo.writeLock().lock();
+		try {
+			for (Documento d : documentos) {
+				if (d != null && d.proyecto == idOrigen) {
+					d.proyecto = idDestino;
+				}
+			}
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Busca las tareas que contienen todas las palabras de un texto, o palabras que empiezan por ellas
+	 * @param texto palabras buscadas
+	 * @param idProyecto proyecto de las tareas, o null para buscar en todos
+	 * @param limite número máximo de tareas
+	 * @return ids de las tareas encontradas, de mayor a menor puntuación y, a igualdad, por id
+	 * @throws IllegalArgumentException si el texto no tiene ninguna palabra que se pueda buscar
+	 */
+	List<Integer> buscar(String texto, Integer idProyecto, int limite) {
+		List<String> consulta = palabras(texto).stream().distinct().toList();
+		if (consulta.isEmpty()) {
+			throw new IllegalArgumentException("La búsqueda no tiene ninguna palabra");
+		}
+		cerrojo.readLock().lock();
+		try {
+			List<Coincidencias> listas = new ArrayList<>(consulta.size());
+			for (String palabra : consulta) {
+				Coincidencias c = coincidencias(palabra);
+				if (c.n == 0) {
+					return List.of();
+				}
+				listas.add(c);
+			}
+			listas.sort((a, b) -> Integer.compare(a.n, b.n));
+			return mejores(listas, idProyecto, limite);
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	// Con el cerrojo tomado
+
+	private Documento documento(int id) {
+		return id >= 0 && id < documentos.length ? documentos[id] : null;
+	}
+
+	private void quitarDocumento(int id) {
+		Documento d = documento(id);
+		if (d == null) {
+			return;
+		}
+		documentos[id] = null;
+		numDocumentos--;
+		for (String palabra : d.palabras) {
+			Apariciones a = palabras.get(palabra);
+			a.quitar(id);
+			if (a.n == 0) {
+				palabras.remove(palabra);
+			}
+		}
+	}
+
+	private void quitarDeProyecto(int idProyecto, boolean soloFinalizadas) {
+		if (!activo) {
+			return;
+		}
+		cerrojo.writeLock().lock();
+		try {
+			for (int id = 0; id < documentos.length; id++) {
+				Documento d = documentos[id];
+				if (d != null && d.proyecto == idProyecto && (d.finalizada || !soloFinalizadas)) {
+					quitarDocumento(id);
+				}
+			}
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Junta las listas de las palabras del índice que empiezan por la palabra buscada, puntuando cada tarea
+	 */
+	private Coincidencias coincidencias(String buscada) {
+		List<Apariciones> listas = new ArrayList<>();
+		float[] factores = new float[maxExpansion];
+		Iterator<Map.Entry<String, Apariciones>> it = palabras.tailMap(buscada, true).entrySet().iterator();
+		while (it.hasNext() && listas.size() < maxExpansion) {
+			Map.Entry<String, Apariciones> e = it.next();
+			if (!e.getKey().startsWith(buscada)) {
+				break;
+			}
+			Apariciones a = e.getValue();
+			float idf = (float) Math.log1p((double) numDocumentos / a.n);
+			factores[listas.size()] = e.getKey().length() == buscada.length() ? idf : idf / 2;
+			listas.add(a);
+		}
+		List<Coincidencias> parciales = new ArrayList<>(listas.size());
+		for (int l = 0; l < listas.size(); l++) {
+			Apariciones a = listas.get(l);
+			float[] puntos = new float[a.n];
+			for (int i = 0; i < a.n; i++) {
+				puntos[i] = a.pesos[i] * factores[l];
+			}
+			parciales.add(new Coincidencias(a.ids, puntos, a.n));
+		}
+		// Mezcla de las listas ordenadas de dos en dos, hasta que queda una; una tarea con varias de las palabras
+		// suma las puntuaciones
+		while (parciales.size() > 1) {
+			List<Coincidencias> siguientes = new ArrayList<>((parciales.size() + 1) / 2);
+			for (int i = 0; i + 1 < parciales.size(); i += 2) {
+				siguientes.add(mezclar(parciales.get(i), parciales.get(i + 1)));
+			}
+			if (parciales.size() % 2 == 1) {
+				siguientes.add(parciales.get(parciales.size() - 1));
+			}
+			parciales = siguientes;
+		}
+		return parciales.isEmpty() ? new Coincidencias(new int[0], new float[0], 0) : parciales.get(0);
+	}
+
+	private static Coincidencias mezclar(Coincidencias a, Coincidencias b) {
+		int[] ids = new int[a.n + b.n];
+		float[] puntos = new float[a.n + b.n];
+		int i = 0;
+		int j = 0;
+		int n = 0;
+		while (i < a.n && j < b.n) {
+			if (a.ids[i] < b.ids[j]) {
+				ids[n] = a.ids[i];
+				puntos[n++] = a.puntos[i++];
+			} else if (a.ids[i] > b.ids[j]) {
+				ids[n] = b.ids[j];
+				puntos[n++] = b.puntos[j++];
+			} else {
+				ids[n] = a.ids[i];
+				puntos[n++] = a.puntos[i++] + b.puntos[j++];
+			}
+		}
+		for (; i < a.n; i++, n++) {
+			ids[n] = a.ids[i];
+			puntos[n] = a.puntos[i];
+		}
+		for (; j < b.n; j++, n++) {
+			ids[n] = b.ids[j];
+			puntos[n] = b.puntos[j];
+		}
+		return new Coincidencias(ids, puntos, n);
+	}
+
+	/**
+	 * Cruza las listas (la primera es la más corta) y se queda con las limite tareas de más puntuación
+	 */
+	private List<Integer> mejores(List<Coincidencias> listas, Integer idProyecto, int limite) {
+		// Montículo con la peor de las mejores arriba: menor puntuación y, a igualdad, mayor id. Las puntuaciones
+		// son positivas, así que sus bits se ordenan igual que ellas
+		PriorityQueue<long[]> peores = new PriorityQueue<>(
+				(x, y) -> x[1] != y[1] ? Long.compare(x[1], y[1]) : Long.compare(y[0], x[0]));
+		Coincidencias primera = listas.get(0);
+		int proyecto = idProyecto == null ? -1 : idProyecto;
+		int[] desde = new int[listas.size()];
+		candidatas:
+		for (int i = 0; i < primera.n; i++) {
+			int id = primera.ids[i];
+			float puntos = primera.puntos[i];
+			for (int l = 1; l < listas.size(); l++) {
+				Coincidencias otra = listas.get(l);
+				int j = buscarDesde(otra.ids, desde[l], otra.n, id);
+				if (j < 0) {
+					desde[l] = -j - 1;
+					continue candidatas;
+				}
+				desde[l] = j + 1;
+				puntos += otra.puntos[j];
+			}
+			if (proyecto >= 0 && documentos[id].proyecto != proyecto) {
+				continue;
+			}
+			long bits = Float.floatToIntBits(puntos);
+			if (peores.size() < limite) {
+				peores.add(new long[] { id, bits });
+			} else {
+				// Solo entra si supera a la peor: más puntuación o, a igualdad, menor id
+				long[] peor = peores.peek();
+				if (bits > peor[1] || bits == peor[1] && id < peor[0]) {
+					peores.poll();
+					peores.add(new long[] { id, bits });
+				}
+			}
+		}
+		Integer[] ids = new Integer[peores.size()];
+		for (int i = ids.length - 1; i >= 0; i--) {
+			ids[i] = (int) peores.poll()[0];
+		}
+		return Arrays.asList(ids);
+	}
+
+	/**
+	 * Búsqueda binaria que empieza por saltos crecientes desde una posición: cuesta el logaritmo de la distancia
+	 * recorrida y no el de la lista, lo que importa al cruzar listas largas de tamaño parecido
+	 * @return igual que Arrays.binarySearch
+	 */
+	private static int buscarDesde(int[] ids, int desde, int hasta, int id) {
+		int salto = 1;
+		int fin = desde;
+		while (fin < hasta && ids[fin] < id) {
+			desde = fin + 1;
+			fin += salto;
+			salto <<= 1;
+		}
+		return Arrays.binarySearch(ids, desde, Math.min(fin + 1, hasta), id);
+	}
+
+	@Override
+	public String toString() {
+		cerrojo.readLock().lock();
+		try {
+			return "IndiceBusqueda{tareas=" + numDocumentos + ", palabras=" + palabras.size() + "}";
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package servidor;
+
+import java.util.Arrays;
+
+/**
+ * Tabla de int a int con direccionamiento abierto (sondeo lineal), sin objetos por entrada
+ * Sustituye a un HashMap<Integer, Integer> donde hay una entrada por tarea: cada una ocupa 8 bytes en dos arrays
+ * en lugar de un nodo y dos Integer. La capacidad es una potencia de dos que se dobla al pasar de 3/4 llena y se
+ * reduce a la mitad al bajar de 1/8, de modo que la memoria sigue al número de entradas.
+ * Al quitar se desplazan hacia atrás las entradas siguientes del mismo grupo, sin dejar marcas de borrado.
+ * Las claves no pueden ser Integer.MIN_VALUE, que marca los huecos.
+ * No es segura para usarse desde varios hilos a la vez.
+ */
+final class MapaEnteros {
+	private static final int VACIO = Integer.MIN_VALUE;
+	private static final int CAPACIDAD_MINIMA = 4;
+
+	/**
+	 * Recibe cada entrada al recorrer la tabla
+	 */
+	interface Consumidor {
+		void aceptar(int clave, int valor);
+	}
+
+	private int[] claves;
+	private int[] valores;
+	private int tamanio;
+
+	MapaEnteros() {
+		crear(CAPACIDAD_MINIMA);
+	}
+
+	/**
+	 * @return valor de la clave, o siNoEsta si no está
+	 */
+	int get(int clave, int siNoEsta) {
+		int i = buscar(clave);
+		return claves[i] == VACIO ? siNoEsta : valores[i];
+	}
+
+	/**
+	 * Pone o cambia el valor de una clave
+	 */
+	void poner(int clave, int valor) {
+		int i = buscar(clave);
+		if (claves[i] == VACIO) {
+			claves[i] = clave;
+			tamanio++;
+		}
+		valores[i] = valor;
+		if (tamanio * 4 > claves.length * 3) {
+			redimensionar(claves.length * 2);
+		}
+	}
+
+	/**
+	 * Quita una clave
+	 * @return valor que tenía, o siNoEsta si no estaba
+	 */
+	int quitar(int clave, int siNoEsta) {
+		int i = buscar(clave);
+		if (claves[i] == VACIO) {
+			return siNoEsta;
+		}
+		int valor = valores[i];
+		int mascara = claves.length - 1;
+		// Desplaza hacia el hueco las entradas siguientes que no quedarían alcanzables desde su posición ideal
+		int hueco = i;
+		for (int j = (i + 1) & mascara; claves[j] != VACIO; j = (j + 1) & mascara) {
+			int ideal = posicion(claves[j]);
+			if (((j - ideal) & mascara) >= ((j - hueco) & mascara)) {
+				claves[hueco] = claves[j];
+				valores[hueco] = valores[j];
+				hueco = j;
+			}
+		}
+		claves[hueco] = VACIO;
+		tamanio--;
+		if (claves.length > CAPACIDAD_MINIMA && tamanio * 8 < claves.length) {
+			redimensionar(claves.length / 2);
+		}
+		return valor;
+	}
+
+	/**
+	 * Recorre las entradas, en cualquier orden; el consumidor no debe cambiar la tabla
+	 */
+	void recorrer(Consumidor consumidor) {
+		for (int i = 0; i < claves.length; i++) {
+			if (claves[i] != VACIO) {
+				consumidor.aceptar(claves[i], valores[i]);
+			}
+		}
+	}
+
+	int getTamanio() {
+		return tamanio;
+	}
+
+	boolean isEmpty() {
+		return tamanio == 0;
+	}
+
+	/**
+	 * @return posición de la clave, o del hueco donde iría
+	 */
+	private int buscar(int clave) {
+		int mascara = claves.length - 1;
+		int i = posicion(clave);
+		while (claves[i] != VACIO && claves[i] != clave) {
+			i = (i + 1) & mascara;
+		}
+		return i;
+	}
+
+	private int posicion(int clave) {
+		int h = clave * 0x9E3779B9;
+		return (h ^ h >>> 16) & (claves.length - 1);
+	}
+
+	private void crear(int capacidad) {
+		claves = new int[capacidad];
+		Arrays.fill(claves, VACIO);
+		valores = new int[capacidad];
+	}
+
+	private void redimensionar(int capacidad) {
+		int[] viejasClaves = claves;
+		int[] viejosValores = valores;
+		crear(capacidad);
+		for (int i = 0; i < viejasClaves.length; i++) {
+			if (viejasClaves[i] != VACIO) {
+				int j = buscar(viejasClaves[i]);
+				claves[j] = viejasClaves[i];
+				valores[j] = viejosValores[i];
+			}
+		}
+	}
+}
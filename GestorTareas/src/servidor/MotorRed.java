@@ -0,0 +1,25 @@
+package servidor;
+
+import java.io.IOException;
+
+/**
+ * Motor de red del servidor: acepta conexiones de clientes y les entrega los comandos recibidos
+ * Hay dos implementaciones, seleccionables al arrancar con la propiedad gestor.red:
+ * - ServidorBloqueante ("bloqueante"): un hilo virtual por cliente con sockets bloqueantes.
+ * - ServidorNIO ("nio"): pocos hilos de E/S con Selector y un pool aparte para los comandos.
+ */
+public interface MotorRed {
+
+	/**
+	 * Abre el puerto y atiende clientes hasta que se detiene el motor
+	 * @throws IOException si no se puede abrir el puerto
+	 */
+	void ejecutar() throws IOException;
+
+	/**
+	 * Detiene el motor de forma ordenada: deja de aceptar conexiones y de leer comandos,
+	 * espera a que terminen los comandos en curso y cierra las conexiones
+	 * @param esperaMs tiempo máximo de espera a los comandos en curso
+	 */
+	void detener(long esperaMs);
+}
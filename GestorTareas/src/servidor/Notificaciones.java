@@ -0,0 +1,195 @@
+package servidor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reparto de eventos de cambios a las conexiones suscritas a un proyecto (SUBSCRIBE_PROYECTO)
+ * Quien publica (el hilo del comando que ha hecho el cambio) nunca espera: el evento se deja en la cola acotada de
+ * cada suscriptor y un hilo virtual por suscriptor lo envía por su conexión, intercalado con las respuestas.
+ * Si la cola de un suscriptor se llena porque no lee lo bastante rápido, se le da de baja y se cierra su conexión,
+ * de modo que un cliente lento no retrasa a los demás ni hace crecer la memoria del servidor.
+ * Los eventos de un proyecto llegan en el orden en que terminan los cambios en el servidor.
+ * Es segura para usarse desde varios hilos a la vez.
+ */
+final class Notificaciones {
+	// Evento vacío que despierta al hilo emisor tras la baja para que termine
+	private static final String FIN = "";
+	// Eventos acumulados que se envían de una vez como máximo
+	private static final int MAX_POR_ENVIO = 256;
+
+	private final int maxEventos;
+	private final Map<Integer, Set<Suscriptor>> porProyecto = new ConcurrentHashMap<>();
+	private final Map<SalidaCliente, Suscriptor> suscriptores = new ConcurrentHashMap<>();
+	private final LongAdder publicados = new LongAdder();
+	private final LongAdder lentos = new LongAdder();
+
+	/**
+	 * @param maxEventos eventos sin enviar admitidos por suscriptor antes de desconectarlo
+	 */
+	Notificaciones(int maxEventos) {
+		this.maxEventos = maxEventos;
+	}
+
+	/**
+	 * Conexión suscrita a uno o varios proyectos, con su cola de eventos y el hilo que los envía
+	 */
+	private final class Suscriptor {
+		private final SalidaCliente salida;
+		private final Set<Integer> proyectos = ConcurrentHashMap.newKeySet();
+		private final BlockingQueue<String> cola = new ArrayBlockingQueue<>(maxEventos);
+		private volatile boolean baja;
+
+		Suscriptor(SalidaCliente salida) {
+			this.salida = salida;
+			Thread.ofVirtual().name("suscriptor").start(this::enviarEventos);
+		}
+
+		/**
+		 * Deja el evento en la cola sin esperar; si está llena desconecta al suscriptor
+		 */
+		void ofrecer(String evento) {
+			if (baja || cola.offer(evento)) {
+				return;
+			}
+			lentos.increment();
+			System.out.println("Suscriptor lento desconectado: " + cola.size() + " eventos sin enviar");
+			darDeBaja(this);
+			salida.cerrar();
+		}
+
+		/**
+		 * Envía los eventos según llegan; los que se han acumulado mientras tanto van juntos en un solo envío
+		 */
+		private void enviarEventos() {
+			List<String> lote = new ArrayList<>();
+			try {
+				while (true) {
+					lote.add(cola.take());
+					cola.drainTo(lote, MAX_POR_ENVIO - 1);
+					if (baja) {
+						break;
+					}
+					salida.enviar(String.join("\n", lote));
+					lote.clear();
+				}
+			} catch (InterruptedException | IOException e) {
+				// Baja del suscriptor o conexión cerrada
+			}
+			darDeBaja(this);
+		}
+	}
+
+	/**
+	 * Suscribe una conexión a los eventos de unos proyectos
+	 * @param salida conexión del cliente
+	 * @param ids proyectos a los que se suscribe, además de los que ya tuviera
+	 * @return número de proyectos a los que queda suscrita la conexión
+	 */
+	int suscribir(SalidaCliente salida, Collection<Integer> ids) {
+		Suscriptor s = suscriptores.computeIfAbsent(salida, Suscriptor::new);
+		for (int id : ids) {
+			s.proyectos.add(id);
+			porProyecto.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(s);
+		}
+		return s.proyectos.size();
+	}
+
+	/**
+	 * Da de baja una conexión de los eventos de un proyecto
+	 * @return true si estaba suscrita
+	 */
+	boolean cancelar(SalidaCliente salida, int idProyecto) {
+		Suscriptor s = suscriptores.get(salida);
+		if (s == null || !s.proyectos.remove(idProyecto)) {
+			return false;
+		}
+		quitar(idProyecto, s);
+		return true;
+	}
+
+	/**
+	 * Da de baja todas las suscripciones de una conexión que se ha cerrado
+	 */
+	void desconectada(SalidaCliente salida) {
+		Suscriptor s = suscriptores.get(salida);
+		if (s != null) {
+			darDeBaja(s);
+		}
+	}
+
+	private void darDeBaja(Suscriptor s) {
+		s.baja = true;
+		suscriptores.remove(s.salida, s);
+		for (int id : s.proyectos) {
+			quitar(id, s);
+		}
+		// No se interrumpe al emisor: en un hilo virtual eso cerraría el socket si está escribiendo
+		s.cola.clear();
+		s.cola.offer(FIN);
+	}
+
+	private void quitar(int idProyecto, Suscriptor s) {
+		porProyecto.computeIfPresent(idProyecto, (k, conjunto) -> {
+			conjunto.remove(s);
+			return conjunto.isEmpty() ? null : conjunto;
+		});
+	}
+
+	/**
+	 * @return true si alguna conexión está suscrita a algún proyecto; si no, no hace falta preparar eventos
+	 */
+	boolean haySuscriptores() {
+		return !porProyecto.isEmpty();
+	}
+
+	/**
+	 * @return true si alguna conexión está suscrita al proyecto
+	 */
+	boolean haySuscriptores(int idProyecto) {
+		return porProyecto.containsKey(idProyecto);
+	}
+
+	/**
+	 * Entrega un evento a todos los suscriptores del proyecto, sin esperar a que se envíe
+	 * @param idProyecto proyecto al que afecta el cambio
+	 * @param evento línea a enviar, que empieza por "EVENTO;"
+	 */
+	void publicar(int idProyecto, String evento) {
+		Set<Suscriptor> conjunto = porProyecto.get(idProyecto);
+		if (conjunto == null) {
+			return;
+		}
+		publicados.increment();
+		for (Suscriptor s : conjunto) {
+			s.ofrecer(evento);
+		}
+	}
+
+	/**
+	 * Publica el borrado de un proyecto y da de baja sus suscripciones
+	 */
+	void proyectoEliminado(int idProyecto) {
+		publicar(idProyecto, "EVENTO;PROYECTO_ELIMINADO;" + idProyecto);
+		Set<Suscriptor> conjunto = porProyecto.remove(idProyecto);
+		if (conjunto != null) {
+			for (Suscriptor s : conjunto) {
+				s.proyectos.remove(idProyecto);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Notificaciones{suscriptores=" + suscriptores.size() + ", proyectos=" + porProyecto.size()
+				+ ", publicados=" + publicados.sum() + ", lentosDesconectados=" + lentos.sum() + "}";
+	}
+}
@@ -0,0 +1,216 @@
+package servidor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+import protocolo.ComandoTexto;
+
+/**
+ * Atiende los comandos etiquetados de una conexión (modo pipeline)
+ * El cliente puede enviar varios comandos sin esperar las respuestas, cada uno precedido de un identificador:
+ * #id;COMANDO;...
+ * y el servidor responde con el mismo identificador en cuanto termina cada uno, aunque sea en otro orden:
+ * #id;respuesta
+ * Orden de ejecución:
+ * - Las lecturas (LIST_PROYECTOS, LIST_TAREAS, ...) se ejecutan en paralelo sin esperar a nadie.
+ * - Las escrituras sobre un mismo proyecto se ejecutan en el orden de llegada, una detrás de otra.
+ *   Las que identifican la tarea por su id (UPDATE_TAREA, CAS_TAREA, DELETE_TAREA) se ordenan por tarea, porque
+ *   al recibirlas no se sabe su proyecto; por eso las operaciones en bloque (ARCHIVE_TAREAS, MOVE_TAREAS,
+ *   DELETE_PROYECTO) esperan además a todas las de tareas anteriores, y las de tareas a las en bloque anteriores.
+ * Si el cliente necesita que una lectura vea una escritura anterior debe esperar antes la respuesta de la escritura.
+ */
+public class Pipeline {
+	// Clave de orden de las operaciones en bloque sobre las tareas de un proyecto
+	static final String EN_BLOQUE = "bloque";
+	private static final int CAPACIDAD_LINEA = 1024;
+	private static final int MAX_LINEA_RETENIDA = 64 * 1024;
+
+	private final Function<String, String> procesador;
+	private final SalidaCliente salida;
+	private final Executor ejecutor;
+	private final Semaphore plazas;
+	private final int maxEnCurso;
+	// Última escritura encolada para cada clave de orden; solo se accede con el cerrojo de 'colas'
+	private final Map<String, CompletableFuture<Void>> colas = new HashMap<>();
+	// Línea recibida, partida en campos; recibir solo se llama desde el lector de la conexión
+	private final ComandoTexto linea = new ComandoTexto(CAPACIDAD_LINEA);
+
+	/**
+	 * @param procesador función que ejecuta un comando y devuelve su respuesta
+	 * @param salida canal de salida hacia el cliente
+	 * @param ejecutor ejecutor en el que se procesan los comandos
+	 * @param maxEnCurso número máximo de comandos sin responder; al alcanzarlo se deja de leer del cliente
+	 */
+	public Pipeline(Function<String, String> procesador, SalidaCliente salida, Executor ejecutor, int maxEnCurso) {
+		this.procesador = procesador;
+		this.salida = salida;
+		this.ejecutor = ejecutor;
+		this.maxEnCurso = maxEnCurso;
+		this.plazas = new Semaphore(maxEnCurso);
+	}
+
+	/**
+	 * Indica si una línea recibida es un comando etiquetado
+	 * @param linea línea recibida del cliente
+	 * @return true si empieza por '#'
+	 */
+	public static boolean esEtiquetado(String linea) {
+		return !linea.isEmpty() && linea.charAt(0) == '#';
+	}
+
+	/**
+	 * Recibe un comando etiquetado y lo pone en ejecución
+	 * Bloquea al llamante si ya hay demasiados comandos en curso.
+	 * @param etiquetado comando con el formato #id;COMANDO;...
+	 * @throws IOException si no se puede responder al cliente
+	 * @throws InterruptedException si se interrumpe la espera por una plaza libre
+	 */
+	public void recibir(String etiquetado) throws IOException, InterruptedException {
+		linea.recortar(MAX_LINEA_RETENIDA, CAPACIDAD_LINEA);
+		linea.cargar(etiquetado);
+		String id = linea.extraerEtiqueta();
+		if (id == null) {
+			salida.enviar("ERROR Identificador de petición mal formado");
+			return;
+		}
+		String comando = linea.toString();
+
+		plazas.acquire();
+		Runnable tarea = () -> ejecutar(id, comando);
+		List<String> claves = clavesDeOrden(linea);
+		if (claves.isEmpty()) {
+			ejecutor.execute(tarea);
+			return;
+		}
+
+		synchronized (colas) {
+			List<CompletableFuture<Void>> previas = new ArrayList<>();
+			for (String clave : claves) {
+				CompletableFuture<Void> previa = colas.get(clave);
+				if (previa != null) {
+					previas.add(previa);
+				}
+			}
+			// Una escritura de tarea puede ser de cualquier proyecto: se cruza con cualquier operación en bloque
+			if (claves.contains(EN_BLOQUE)) {
+				for (Map.Entry<String, CompletableFuture<Void>> e : colas.entrySet()) {
+					if (e.getKey().startsWith("T")) {
+						previas.add(e.getValue());
+					}
+				}
+			} else if (claves.get(0).startsWith("T") && colas.containsKey(EN_BLOQUE)) {
+				previas.add(colas.get(EN_BLOQUE));
+			}
+			CompletableFuture<Void> siguiente = CompletableFuture
+					.allOf(previas.toArray(new CompletableFuture<?>[0]))
+					.thenRunAsync(tarea, ejecutor);
+			for (String clave : claves) {
+				colas.put(clave, siguiente);
+			}
+			siguiente.whenComplete((r, e) -> {
+				synchronized (colas) {
+					for (String clave : claves) {
+						colas.remove(clave, siguiente);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Ejecuta un comando y envía su respuesta etiquetada
+	 */
+	private void ejecutar(String id, String comando) {
+		String respuesta;
+		try {
+			respuesta = procesador.apply(comando);
+		} catch (RuntimeException e) {
+			// Nunca debe terminar con excepción: las escrituras siguientes de la misma clave no se ejecutarían
+			respuesta = "ERROR " + e.getMessage();
+		}
+		try {
+			salida.enviar("#" + id + ";" + respuesta);
+		} catch (IOException e) {
+			// El cliente se ha desconectado; el resto de respuestas también fallarán
+		} finally {
+			plazas.release();
+		}
+	}
+
+	/**
+	 * Espera a que terminen los comandos en curso, para poder cerrar la conexión después de responderlos
+	 * @throws InterruptedException si se interrumpe la espera
+	 */
+	public void esperarPendientes() throws InterruptedException {
+		plazas.acquire(maxEnCurso);
+		plazas.release(maxEnCurso);
+	}
+
+	/**
+	 * @return true si hay comandos etiquetados sin responder
+	 */
+	public boolean hayPendientes() {
+		return plazas.availablePermits() < maxEnCurso;
+	}
+
+	/**
+	 * Obtiene las claves que determinan el orden de un comando
+	 * @param comando comando sin etiqueta, partido en campos; si lleva clave de idempotencia (!clave;COMANDO;...) se
+	 * ordena por el comando, y la clave se quita del ComandoTexto
+	 * @return lista vacía si el comando es una lectura o no se reconoce; en otro caso las claves de orden, con
+	 * EN_BLOQUE si es una operación en bloque
+	 */
+	static List<String> clavesDeOrden(ComandoTexto comando) {
+		if (comando.tieneClave()) {
+			comando.extraerClave();
+		}
+		try {
+			switch (comando.texto(0, Servidor.COMANDOS)) {
+			case "INSERT_PROYECTO":
+				return List.of("proyectos");
+			case "UPDATE_PROYECTO":
+			case "CAS_PROYECTO":
+				return List.of("proyectos", "P" + comando.entero(1));
+			case "DELETE_PROYECTO":
+				return List.of("proyectos", "P" + comando.entero(1), EN_BLOQUE);
+			case "INSERT_TAREA":
+				return List.of("P" + comando.entero(7));
+			case "INSERT_TAREAS_BATCH": {
+				List<String> claves = new ArrayList<>();
+				int filas = comando.partirFilas(1);
+				for (int f = 0; f < filas; f++) {
+					try {
+						String clave = "P" + comando.entero(comando.inicioFila(f) + comando.camposFila(f) - 1);
+						if (!claves.contains(clave)) {
+							claves.add(clave);
+						}
+					} catch (NumberFormatException e) {
+						// Fila mal formada: no se insertará
+					}
+				}
+				return claves;
+			}
+			case "UPDATE_TAREA":
+			case "CAS_TAREA":
+			case "DELETE_TAREA":
+				return List.of("T" + comando.entero(1));
+			case "ARCHIVE_TAREAS":
+				return List.of("P" + comando.entero(1), EN_BLOQUE);
+			case "MOVE_TAREAS":
+				return List.of("P" + comando.entero(1), "P" + comando.entero(2), EN_BLOQUE);
+			default:
+				return List.of();
+			}
+		} catch (RuntimeException e) {
+			// Comando mal formado: no modifica nada y responderá con un error
+			return List.of();
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package servidor;
+
+import java.io.IOException;
+
+import protocolo.BufferBinario;
+import protocolo.ComandoTexto;
+import protocolo.RespuestaTexto;
+
+/**
+ * Ejecuta los comandos recibidos por los motores de red, en cualquiera de los dos protocolos
+ * Debe poder usarse desde varios hilos a la vez.
+ */
+public interface ProcesadorComandos {
+
+	/**
+	 * Ejecuta un comando del protocolo de texto
+	 * @param mensaje comando recibido, sin el salto de línea
+	 * @return respuesta a enviar al cliente
+	 */
+	String procesarTexto(String mensaje);
+
+	/**
+	 * Ejecuta un comando del protocolo de texto enviando su respuesta, que puede ocupar varias líneas
+	 * (por ejemplo STREAM_TAREAS). Solo se usa para comandos sin etiqueta de pipeline.
+	 * Por defecto envía la única línea devuelta por procesarTexto(mensaje).
+	 * @param mensaje comando recibido, sin el salto de línea
+	 * @param salida salida de la conexión del cliente
+	 * @throws IOException si falla el envío
+	 */
+	default void procesarTexto(String mensaje, SalidaCliente salida) throws IOException {
+		salida.enviar(procesarTexto(mensaje));
+	}
+
+	/**
+	 * Ejecuta un comando del protocolo de texto ya leído en un buffer, sin etiqueta de pipeline, y envía su
+	 * respuesta con salida.enviar(RespuestaTexto). Es el camino de los motores que leen las líneas en buffers
+	 * reutilizables: la implementación del servidor no crea cadenas para los campos ni para la respuesta.
+	 * Por defecto convierte el comando a texto y llama a procesarTexto(mensaje, salida).
+	 * @param comando comando recibido, partido en campos
+	 * @param respuesta buffer vacío donde codificar la respuesta
+	 * @param salida salida de la conexión del cliente
+	 * @throws IOException si falla el envío
+	 */
+	default void procesarTexto(ComandoTexto comando, RespuestaTexto respuesta, SalidaCliente salida)
+			throws IOException {
+		procesarTexto(comando.toString(), salida);
+	}
+
+	/**
+	 * Ejecuta un comando del protocolo binario
+	 * @param peticion datos de la trama recibida, sin la longitud
+	 * @param respuesta buffer vacío donde se escribe la respuesta, sin la longitud
+	 */
+	void procesarBinario(BufferBinario peticion, BufferBinario respuesta);
+
+	/**
+	 * Avisa de que se ha cerrado una conexión de texto, para liberar lo asociado a su salida (suscripciones)
+	 * @param salida salida de la conexión cerrada
+	 */
+	default void conexionCerrada(SalidaCliente salida) {
+	}
+}
@@ -0,0 +1,35 @@
+package servidor;
+
+import java.io.IOException;
+
+import protocolo.RespuestaTexto;
+
+/**
+ * Canal de salida hacia un cliente conectado
+ * Las implementaciones deben permitir que varios hilos envíen líneas a la vez sin que se mezclen.
+ */
+public interface SalidaCliente {
+
+	/**
+	 * Envía una línea completa al cliente. El salto de línea final lo añade la implementación.
+	 * @param linea texto a enviar
+	 * @throws IOException si falla la conexión con el cliente
+	 */
+	void enviar(String linea) throws IOException;
+
+	/**
+	 * Envía una línea ya codificada en un buffer de respuesta. El salto de línea final lo añade la implementación.
+	 * Por defecto la convierte a texto; los motores de red la escriben directamente.
+	 * @param respuesta respuesta a enviar; se puede reutilizar en cuanto vuelve la llamada
+	 * @throws IOException si falla la conexión con el cliente
+	 */
+	default void enviar(RespuestaTexto respuesta) throws IOException {
+		enviar(respuesta.toString());
+	}
+
+	/**
+	 * Cierra la conexión con el cliente sin esperar a lo pendiente de enviar
+	 * Lo usan las suscripciones para desconectar a un cliente que no lee sus eventos (ver Notificaciones).
+	 */
+	void cerrar();
+}
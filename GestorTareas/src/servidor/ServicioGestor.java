@@ -0,0 +1,767 @@
+package servidor;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+import config.Configuracion;
+import dao.CacheConsultas;
+import dao.CambioTarea;
+import dao.ConsumidorTareas;
+import dao.FiltroTareas;
+import dao.RepositorioProyectos;
+import dao.RepositorioTareas;
+import modelos.Estado;
+import modelos.Proyecto;
+import modelos.ResumenProyecto;
+import modelos.Tarea;
+import modelos.Urgencia;
+
+/**
+ * Operaciones del servidor sobre proyectos y tareas, independientes del protocolo usado por el cliente
+ * Las usan tanto el protocolo de texto (Servidor.procesarComando) como el binario (ComandosBinarios).
+ * Se encarga de leer a través de la caché y de invalidarla tras cada escritura, y de publicar los cambios de
+ * tareas a las conexiones suscritas a su proyecto (ver Notificaciones), y de mantener al día el motor de
+ * vencimientos (ver Vencimientos), que avisa de las tareas abiertas cuya fecha de fin pasa, y los contadores de
+ * tareas por proyecto (ver ContadoresProyectos) y el índice de búsqueda por palabras (ver IndiceBusqueda).
+ * Las escrituras de un mismo proyecto se coordinan con CerrojosProyecto: las que afectan al proyecto entero lo
+ * toman en exclusiva y las altas de tareas y los cambios condicionados a la versión (CAS_TAREA) lo toman
+ * compartido, de modo que, por ejemplo, ninguna tarea cambia de estado mientras se archivan las finalizadas.
+ * UPDATE_TAREA de la fecha de fin no toma ninguno: no necesita saber el proyecto de la tarea y, como antes, gana la
+ * última escritura. Los cambios condicionados a la versión son los que evitan perder el de otro cliente.
+ * Con los contadores activos, los cambios de estado o urgencia y los borrados de tareas necesitan el estado anterior,
+ * que ContadoresProyectos guarda de cada tarea: toman en exclusiva la franja de la tarea (en otro CerrojosProyecto,
+ * indexado por id de tarea) y compartida la de su proyecto, sin leer la tarea del almacenamiento (ver bloquearTarea).
+ * Es segura para usarse desde varios hilos a la vez.
+ */
+public class ServicioGestor {
+	// Filas leídas de la base de datos en cada viaje al recorrer un listado completo
+	private static final int TAMANIO_BLOQUE = Configuracion.entero("listado.tamanioBloque", 500);
+	// Número máximo de tareas de una página
+	static final int MAX_PAGINA = Configuracion.entero("listado.maxPagina", 10_000);
+	// Eventos sin enviar admitidos por suscriptor antes de desconectarlo
+	private static final int MAX_EVENTOS = Configuracion.entero("suscripcion.maxEventos", 1000);
+	// Franjas de cerrojos por proyecto
+	private static final int FRANJAS = Configuracion.entero("cerrojos.franjas", 64);
+	// Número máximo de tareas abiertas con fecha de fin que se cargan al iniciar los vencimientos
+	private static final int MAX_VENCIMIENTOS = Configuracion.entero("vencimientos.maxTareas", 1_000_000);
+	// Palabras del índice que encajan como mucho con cada palabra buscada como prefijo
+	private static final int MAX_EXPANSION = Configuracion.entero("busqueda.maxExpansion", 64);
+	// Número máximo de tareas de una búsqueda, menor que el de una página: cada una se lee entera
+	static final int MAX_BUSQUEDA = Configuracion.entero("busqueda.maxLimite", 200);
+
+	private final RepositorioProyectos proyectoDAO;
+	private final RepositorioTareas tareaDAO;
+	private final CacheConsultas cache;
+	private final Notificaciones notificaciones = new Notificaciones(MAX_EVENTOS);
+	private final CerrojosProyecto cerrojos = new CerrojosProyecto(FRANJAS);
+	// Las mismas franjas sirven para ids de tarea: se toman siempre antes que la del proyecto
+	private final CerrojosProyecto cerrojosTarea = new CerrojosProyecto(FRANJAS);
+	private final Vencimientos vencimientos = new Vencimientos(this::publicarVencida);
+	private final ContadoresProyectos contadores = new ContadoresProyectos();
+	private final IndiceBusqueda indice = new IndiceBusqueda(MAX_EXPANSION);
+
+	/**
+	 * @param proyectoDAO repositorio de proyectos (MySQL o memoria)
+	 * @param tareaDAO repositorio de tareas (MySQL o memoria)
+	 * @param cache caché de lectura de proyectos y tareas
+	 */
+	public ServicioGestor(RepositorioProyectos proyectoDAO, RepositorioTareas tareaDAO, CacheConsultas cache) {
+		this.proyectoDAO = proyectoDAO;
+		this.tareaDAO = tareaDAO;
+		this.cache = cache;
+	}
+
+	/**
+	 * Crea un proyecto
+	 * @param nombre nombre del nuevo proyecto
+	 * @return identificador del proyecto creado
+	 */
+	public int crearProyecto(String nombre) throws SQLException {
+		int id = proyectoDAO.crearProyecto(new Proyecto(nombre));
+		cache.invalidarProyectos();
+		return id;
+	}
+
+	/**
+	 * Obtiene todos los proyectos, desde la caché si están disponibles
+	 * @return lista inmutable de proyectos
+	 */
+	public List<Proyecto> listarProyectos() throws SQLException {
+		return cache.obtenerProyectos();
+	}
+
+	/**
+	 * Cambia el nombre de un proyecto
+	 * @param id identificador del proyecto
+	 * @param nombre nuevo nombre
+	 */
+	public void actualizarProyecto(int id, String nombre) throws SQLException {
+		Lock cerrojo = cerrojos.bloquearExclusivo(id);
+		try {
+			proyectoDAO.actualizarProyecto(id, nombre);
+		} finally {
+			cerrojo.unlock();
+		}
+		cache.invalidarProyectos();
+	}
+
+	/**
+	 * Cambia el nombre de un proyecto solo si sigue en la versión que conoce el cliente
+	 * @param id identificador del proyecto
+	 * @param nombre nuevo nombre
+	 * @param version versión leída por el cliente
+	 * @return nueva versión del proyecto
+	 * @throws SQLException si el proyecto no existe
+	 * @throws IllegalStateException si el proyecto tiene otra versión ("CONFLICTO version=N", con la actual)
+	 */
+	public int actualizarProyectoSiVersion(int id, String nombre, int version) throws SQLException {
+		Lock cerrojo = cerrojos.bloquearExclusivo(id);
+		try {
+			int nueva = proyectoDAO.actualizarProyectoSiVersion(id, nombre, version);
+			if (nueva < 0) {
+				rechazar(versionProyecto(id), "El proyecto " + id + " no existe");
+			}
+			cache.invalidarProyectos();
+			return nueva;
+		} finally {
+			cerrojo.unlock();
+		}
+	}
+
+	/**
+	 * Elimina un proyecto con todas sus tareas en una única operación del almacenamiento
+	 * @param id identificador del proyecto
+	 * @return número de tareas eliminadas con el proyecto
+	 */
+	public int eliminarProyecto(int id) throws SQLException {
+		int eliminadas;
+		Lock cerrojo = cerrojos.bloquearExclusivo(id);
+		try {
+			eliminadas = proyectoDAO.eliminarProyecto(id);
+			contadores.eliminarProyecto(id);
+		} finally {
+			cerrojo.unlock();
+		}
+		proyectoEliminado(id);
+		return eliminadas;
+	}
+
+	/**
+	 * Elimina un proyecto con todas sus tareas solo si sigue en la versión que conoce el cliente
+	 * @param id identificador del proyecto
+	 * @param version versión leída por el cliente
+	 * @return número de tareas eliminadas con el proyecto
+	 * @throws SQLException si el proyecto no existe
+	 * @throws IllegalStateException si el proyecto tiene otra versión ("CONFLICTO version=N", con la actual)
+	 */
+	public int eliminarProyectoSiVersion(int id, int version) throws SQLException {
+		int eliminadas;
+		Lock cerrojo = cerrojos.bloquearExclusivo(id);
+		try {
+			eliminadas = proyectoDAO.eliminarProyectoSiVersion(id, version);
+			if (eliminadas < 0) {
+				rechazar(versionProyecto(id), "El proyecto " + id + " no existe");
+			}
+			contadores.eliminarProyecto(id);
+		} finally {
+			cerrojo.unlock();
+		}
+		proyectoEliminado(id);
+		return eliminadas;
+	}
+
+	private void proyectoEliminado(int id) {
+		vencimientos.dejarProyecto(id);
+		indice.eliminarProyecto(id);
+		cache.invalidarProyectos();
+		cache.invalidarTareasDeProyecto(id);
+		notificaciones.proyectoEliminado(id);
+	}
+
+	/**
+	 * @return versión actual del proyecto, o -1 si no existe
+	 */
+	private int versionProyecto(int id) throws SQLException {
+		for (Proyecto p : proyectoDAO.obtenerProyectos()) {
+			if (p.getId() == id) {
+				return p.getVersion();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Crea una tarea
+	 * @param t datos de la nueva tarea
+	 * @return identificador de la tarea creada
+	 */
+	public int crearTarea(Tarea t) throws SQLException {
+		int id;
+		Lock cerrojo = cerrojos.bloquearCompartido(t.getIdProyecto());
+		try {
+			id = tareaDAO.crearTarea(t);
+			contadores.sumar(id, t);
+		} finally {
+			cerrojo.unlock();
+		}
+		cache.invalidarTareasDeProyecto(t.getIdProyecto());
+		publicarCreada(id, t);
+		seguirCreada(id, t);
+		indice.poner(id, t);
+		return id;
+	}
+
+	/**
+	 * Crea varias tareas en una única transacción
+	 * @param tareas tareas a crear
+	 * @return identificadores generados, en el mismo orden que la lista recibida
+	 */
+	public int[] crearTareas(List<Tarea> tareas) throws SQLException {
+		int[] proyectos = tareas.stream().mapToInt(Tarea::getIdProyecto).distinct().toArray();
+		int[] ids;
+		// Las franjas de todos sus proyectos, para que ningún borrado o movimiento de uno de ellos se cuele entre el
+		// alta y los contadores
+		cerrojos.bloquearVarios(proyectos);
+		try {
+			ids = tareaDAO.crearTareas(tareas);
+			for (int i = 0; i < ids.length; i++) {
+				contadores.sumar(ids[i], tareas.get(i));
+			}
+		} finally {
+			cerrojos.desbloquearVarios(proyectos);
+		}
+		for (int p : proyectos) {
+			cache.invalidarTareasDeProyecto(p);
+		}
+		for (int i = 0; i < ids.length; i++) {
+			publicarCreada(ids[i], tareas.get(i));
+			seguirCreada(ids[i], tareas.get(i));
+			indice.poner(ids[i], tareas.get(i));
+		}
+		return ids;
+	}
+
+	/**
+	 * Obtiene las tareas de un proyecto, desde la caché si están disponibles
+	 * @param idProyecto identificador del proyecto
+	 * @return lista inmutable de tareas del proyecto
+	 */
+	public List<Tarea> listarTareas(int idProyecto) throws SQLException {
+		return cache.obtenerTareasPorProyecto(idProyecto);
+	}
+
+	/**
+	 * Obtiene una página de las tareas de un proyecto ordenadas por id, sin pasar por la caché
+	 * @param idProyecto identificador del proyecto
+	 * @param despuesDeId id de la última tarea de la página anterior (0 para la primera)
+	 * @param limite número máximo de tareas, entre 1 y MAX_PAGINA
+	 * @return tareas de la página
+	 */
+	public List<Tarea> listarPaginaTareas(int idProyecto, int despuesDeId, int limite) throws SQLException {
+		if (limite < 1 || limite > MAX_PAGINA) {
+			throw new IllegalArgumentException("El límite debe estar entre 1 y " + MAX_PAGINA);
+		}
+		return tareaDAO.obtenerPaginaTareas(idProyecto, despuesDeId, limite);
+	}
+
+	/**
+	 * Entrega una a una todas las tareas de un proyecto ordenadas por id, sin pasar por la caché
+	 * ni cargar la lista completa en memoria
+	 * @param idProyecto identificador del proyecto
+	 * @param consumidor recibe cada tarea según se lee de la base de datos
+	 * @return número de tareas entregadas
+	 */
+	public int recorrerTareas(int idProyecto, ConsumidorTareas consumidor) throws SQLException, IOException {
+		return tareaDAO.recorrerTareasPorProyecto(idProyecto, TAMANIO_BLOQUE, consumidor);
+	}
+
+	/**
+	 * Busca tareas con filtros, orden y límite, sin pasar por la caché
+	 * @param filtro filtros, orden y número máximo de tareas (entre 1 y MAX_PAGINA)
+	 * @return tareas encontradas, en el orden pedido
+	 */
+	public List<Tarea> consultarTareas(FiltroTareas filtro) throws SQLException {
+		if (filtro.limite() > MAX_PAGINA) {
+			throw new IllegalArgumentException("El límite debe estar entre 1 y " + MAX_PAGINA);
+		}
+		return tareaDAO.consultarTareas(filtro);
+	}
+
+	/**
+	 * Modifica un campo de una tarea ("fecha_fin", "estado" o "urgencia")
+	 * @param id identificador de la tarea
+	 * @param campo campo a modificar
+	 * @param valor nuevo valor
+	 */
+	public void actualizarTarea(int id, String campo, String valor) throws SQLException {
+		CambioTarea cambio = CambioTarea.validar(id, campo, valor);
+		boolean publicar = interesa(id);
+		TareaBloqueada bloqueada = contadores.cuenta(cambio) ? bloquearTarea(id) : null;
+		if (bloqueada == null) {
+			tareaDAO.actualizarTarea(id, cambio.campo(), cambio.valor());
+		} else {
+			try {
+				tareaDAO.actualizarTarea(id, cambio.campo(), cambio.valor());
+				contadores.cambiar(cambio);
+			} finally {
+				bloqueada.soltar();
+			}
+		}
+		cache.invalidarTarea(id);
+		if (publicar) {
+			Tarea t = tareaDAO.obtenerTarea(id);
+			if (t != null) {
+				notificaciones.publicar(t.getIdProyecto(), "EVENTO;TAREA_ACTUALIZADA;" + t.getIdProyecto() + ";" + t);
+			}
+		}
+		seguirCambio(cambio);
+	}
+
+	/**
+	 * Modifica un campo de una tarea solo si sigue en la versión que conoce el cliente
+	 * El almacenamiento compara y cambia en una sola operación atómica; además se toma compartida la franja del
+	 * proyecto de la tarea para no cruzarse con un archivado o un movimiento de ese proyecto.
+	 * @param id identificador de la tarea
+	 * @param campo campo a modificar
+	 * @param valor nuevo valor
+	 * @param version versión leída por el cliente
+	 * @return nueva versión de la tarea
+	 * @throws SQLException si la tarea no existe o el campo o el valor no son válidos
+	 * @throws IllegalStateException si la tarea tiene otra versión ("CONFLICTO version=N", con la actual)
+	 */
+	public int actualizarTareaSiVersion(int id, String campo, String valor, int version) throws SQLException {
+		CambioTarea cambio = CambioTarea.validar(id, campo, valor);
+		int p;
+		int nueva;
+		// Sin contadores, o si no conocen la tarea (creada por fuera del servidor), se busca su proyecto
+		TareaBloqueada bloqueada = contadores.cuenta(cambio) ? bloquearTarea(id) : null;
+		if (bloqueada != null) {
+			try {
+				p = bloqueada.proyecto();
+				nueva = tareaDAO.actualizarTareaSiVersion(id, cambio.campo(), cambio.valor(), version);
+				if (nueva >= 0) {
+					contadores.cambiar(cambio);
+				}
+			} finally {
+				bloqueada.soltar();
+			}
+		} else {
+			int conocido = contadores.proyectoDe(id);
+			Integer proyecto = conocido >= 0 ? Integer.valueOf(conocido) : cache.proyectoDeTarea(id);
+			if (proyecto == null) {
+				Tarea t = tareaDAO.obtenerTarea(id);
+				if (t == null) {
+					throw new SQLException("La tarea " + id + " no existe");
+				}
+				proyecto = t.getIdProyecto();
+			}
+			p = proyecto;
+			// Si la tarea cambia de proyecto entre la búsqueda y el cerrojo, el movimiento ha cambiado su versión
+			Lock cerrojo = cerrojos.bloquearCompartido(p);
+			try {
+				nueva = tareaDAO.actualizarTareaSiVersion(id, cambio.campo(), cambio.valor(), version);
+			} finally {
+				cerrojo.unlock();
+			}
+		}
+		if (nueva < 0) {
+			Tarea actual = tareaDAO.obtenerTarea(id);
+			rechazar(actual == null ? -1 : actual.getVersion(), "La tarea " + id + " no existe");
+		}
+		cache.invalidarTarea(id);
+		if (notificaciones.haySuscriptores(p)) {
+			Tarea t = tareaDAO.obtenerTarea(id);
+			if (t != null) {
+				notificaciones.publicar(t.getIdProyecto(), "EVENTO;TAREA_ACTUALIZADA;" + t.getIdProyecto() + ";" + t);
+			}
+		}
+		seguirCambio(cambio);
+		return nueva;
+	}
+
+	/**
+	 * Rechaza un cambio condicionado que no se ha aplicado
+	 * @param actual versión actual, o -1 si ya no existe
+	 * @param noExiste mensaje si ya no existe
+	 */
+	private static void rechazar(int actual, String noExiste) throws SQLException {
+		if (actual < 0) {
+			throw new SQLException(noExiste);
+		}
+		throw new IllegalStateException("CONFLICTO version=" + actual);
+	}
+
+	/**
+	 * Elimina una tarea
+	 * @param id identificador de la tarea
+	 */
+	public void eliminarTarea(int id) throws SQLException {
+		// El proyecto de la tarea hay que buscarlo antes de eliminarla
+		int p = -1;
+		TareaBloqueada bloqueada = contadores.activo() ? bloquearTarea(id) : null;
+		if (bloqueada != null) {
+			try {
+				tareaDAO.eliminarTarea(id);
+				contadores.restar(id);
+				p = bloqueada.proyecto();
+			} finally {
+				bloqueada.soltar();
+			}
+		} else {
+			Tarea eliminada = interesa(id) ? tareaDAO.obtenerTarea(id) : null;
+			tareaDAO.eliminarTarea(id);
+			if (eliminada != null) {
+				p = eliminada.getIdProyecto();
+			}
+		}
+		cache.invalidarTarea(id);
+		vencimientos.dejar(id);
+		indice.quitar(id);
+		if (p >= 0 && notificaciones.haySuscriptores(p)) {
+			notificaciones.publicar(p, "EVENTO;TAREA_ELIMINADA;" + p + ";" + id);
+		}
+	}
+
+	/**
+	 * Archiva todas las tareas finalizadas de un proyecto en una única operación del almacenamiento
+	 * Los suscriptores del proyecto reciben un solo evento con el número de tareas archivadas.
+	 * @param idProyecto identificador del proyecto
+	 * @return número de tareas archivadas
+	 */
+	public int archivarFinalizadas(int idProyecto) throws SQLException {
+		int archivadas;
+		Lock cerrojo = cerrojos.bloquearExclusivo(idProyecto);
+		try {
+			archivadas = tareaDAO.archivarFinalizadas(idProyecto);
+			if (archivadas > 0) {
+				contadores.archivarFinalizadas(idProyecto);
+			}
+		} finally {
+			cerrojo.unlock();
+		}
+		if (archivadas > 0) {
+			indice.archivarFinalizadas(idProyecto);
+			cache.invalidarTareasDeProyecto(idProyecto);
+			notificaciones.publicar(idProyecto, "EVENTO;TAREAS_ARCHIVADAS;" + idProyecto + ";" + archivadas);
+		}
+		return archivadas;
+	}
+
+	/**
+	 * Pasa todas las tareas de un proyecto a otro en una única operación del almacenamiento
+	 * Los suscriptores de cada uno de los dos proyectos reciben un solo evento con el número de tareas movidas.
+	 * @param idOrigen proyecto del que salen las tareas
+	 * @param idDestino proyecto al que pasan, que debe existir
+	 * @return número de tareas movidas
+	 */
+	public int moverTareas(int idOrigen, int idDestino) throws SQLException {
+		if (idOrigen == idDestino) {
+			throw new IllegalArgumentException("El proyecto de origen y el de destino son el mismo");
+		}
+		int movidas;
+		cerrojos.bloquearAmbos(idOrigen, idDestino);
+		try {
+			movidas = tareaDAO.moverTareas(idOrigen, idDestino);
+			if (movidas > 0) {
+				contadores.mover(idOrigen, idDestino);
+			}
+		} finally {
+			cerrojos.desbloquearAmbos(idOrigen, idDestino);
+		}
+		if (movidas > 0) {
+			vencimientos.moverProyecto(idOrigen, idDestino);
+			indice.mover(idOrigen, idDestino);
+			cache.invalidarTareasDeProyecto(idOrigen);
+			cache.invalidarTareasDeProyecto(idDestino);
+			String evento = "EVENTO;TAREAS_MOVIDAS;" + idOrigen + ";" + idDestino + ";" + movidas;
+			notificaciones.publicar(idOrigen, evento);
+			notificaciones.publicar(idDestino, evento);
+		}
+		return movidas;
+	}
+
+	/**
+	 * Tarea con su franja tomada en exclusiva y la de su proyecto compartida
+	 */
+	private record TareaBloqueada(int proyecto, Lock franjaTarea, Lock franjaProyecto) {
+		void soltar() {
+			franjaProyecto.unlock();
+			franjaTarea.unlock();
+		}
+	}
+
+	/**
+	 * Toma las franjas de una tarea y de su proyecto, que saca de ContadoresProyectos sin leer la tarea: con ellas
+	 * tomadas ninguna otra escritura de la tarea ni operación en bloque de su proyecto puede colarse, de modo que el
+	 * estado guardado es el que cambia la escritura siguiente
+	 * Si la tarea se mueve de proyecto antes de tomar su franja, se vuelve a intentar con el nuevo.
+	 * @return proyecto con las franjas tomadas, que hay que soltar; o null, sin ninguna tomada, si los contadores no
+	 * conocen la tarea (no existe, o se creó por fuera del servidor)
+	 */
+	private TareaBloqueada bloquearTarea(int id) {
+		Lock franjaTarea = cerrojosTarea.bloquearExclusivo(id);
+		while (true) {
+			int p = contadores.proyectoDe(id);
+			if (p < 0) {
+				franjaTarea.unlock();
+				return null;
+			}
+			Lock franjaProyecto = cerrojos.bloquearCompartido(p);
+			if (contadores.proyectoDe(id) == p) {
+				return new TareaBloqueada(p, franjaTarea, franjaProyecto);
+			}
+			franjaProyecto.unlock();
+		}
+	}
+
+	/**
+	 * Indica si puede haber suscriptores del proyecto de una tarea, para no buscarla cuando no hace falta
+	 */
+	private boolean interesa(int idTarea) {
+		if (!notificaciones.haySuscriptores()) {
+			return false;
+		}
+		Integer p = cache.proyectoDeTarea(idTarea);
+		return p == null || notificaciones.haySuscriptores(p);
+	}
+
+	private void publicarCreada(int id, Tarea t) {
+		int p = t.getIdProyecto();
+		if (notificaciones.haySuscriptores(p)) {
+			Tarea creada = new Tarea(id, t.getNombre(), t.getDescripcion(), Estado.desdeCodigo(t.getCodigoEstado()),
+					Urgencia.desdeCodigo(t.getCodigoUrgencia()), t.getDiaInicio(), t.getDiaEntrega(), p);
+			notificaciones.publicar(p, "EVENTO;TAREA_CREADA;" + p + ";" + creada);
+		}
+	}
+
+	// Búsqueda por palabras
+
+	/**
+	 * Carga en el índice de búsqueda todas las tareas, proyecto a proyecto y por bloques, y empieza a mantenerlo
+	 * Mientras no se llama, SEARCH_TAREAS no está disponible y los cambios no tocan el índice.
+	 * @return número de tareas indexadas
+	 */
+	public int iniciarBusqueda() throws SQLException, IOException {
+		int n = 0;
+		for (Proyecto p : proyectoDAO.obtenerProyectos()) {
+			n += tareaDAO.recorrerTareasPorProyecto(p.getId(), TAMANIO_BLOQUE, indice::cargar);
+		}
+		indice.activar();
+		return n;
+	}
+
+	/**
+	 * Busca las tareas cuyo nombre o descripción contienen todas las palabras de un texto (o palabras que empiezan
+	 * por ellas), sin distinguir tildes ni mayúsculas, ordenadas por relevancia
+	 * @param texto palabras buscadas
+	 * @param idProyecto proyecto de las tareas, o null para buscar en todos
+	 * @param limite número máximo de tareas, entre 1 y MAX_BUSQUEDA
+	 * @return tareas encontradas, la más relevante primero
+	 */
+	public List<Tarea> buscarTareas(String texto, Integer idProyecto, int limite) throws SQLException {
+		if (!indice.activo()) {
+			throw new IllegalStateException("La búsqueda de tareas no está activa");
+		}
+		if (limite < 1 || limite > MAX_BUSQUEDA) {
+			throw new IllegalArgumentException("El límite debe estar entre 1 y " + MAX_BUSQUEDA);
+		}
+		List<Integer> ids = indice.buscar(texto, idProyecto, limite);
+		// Todas en una sola lectura, que las devuelve en cualquier orden: se vuelven a poner en el de relevancia
+		Map<Integer, Tarea> porId = new HashMap<>();
+		for (Tarea t : tareaDAO.obtenerTareas(ids)) {
+			porId.put(t.getId(), t);
+		}
+		List<Tarea> encontradas = new ArrayList<>(ids.size());
+		for (int id : ids) {
+			Tarea t = porId.get(id);
+			if (t != null) {
+				encontradas.add(t);
+			}
+		}
+		return encontradas;
+	}
+
+	/**
+	 * @return tareas y palabras del índice de búsqueda
+	 */
+	public String estadisticasBusqueda() {
+		return indice.toString();
+	}
+
+	// Resúmenes de proyectos
+
+	/**
+	 * Carga los contadores de tareas por proyecto recorriendo una vez el proyecto, el estado y la urgencia de todas
+	 * las tareas, y empieza a mantenerlos
+	 * Mientras no se llama, STATS_PROYECTO y STATS_ALL no están disponibles y los cambios no toman las franjas de la
+	 * tarea.
+	 * @return número de proyectos con tareas
+	 */
+	public int iniciarResumenes() throws SQLException {
+		tareaDAO.recorrerEstados(TAMANIO_BLOQUE, contadores::cargar);
+		contadores.activar();
+		return contadores.numProyectos();
+	}
+
+	/**
+	 * Obtiene el número de tareas de un proyecto por estado y urgencia, y el de vencidas, sin leer sus tareas
+	 * @param idProyecto identificador del proyecto
+	 * @return resumen del proyecto
+	 * @throws SQLException si el proyecto no existe
+	 */
+	public ResumenProyecto resumenProyecto(int idProyecto) throws SQLException {
+		comprobarResumenes();
+		if (!contadores.conoce(idProyecto)
+				&& listarProyectos().stream().noneMatch(p -> p.getId() == idProyecto)) {
+			throw new SQLException("El proyecto " + idProyecto + " no existe");
+		}
+		return contadores.resumen(idProyecto, vencimientos.vencidas(idProyecto));
+	}
+
+	/**
+	 * Obtiene el resumen de todos los proyectos, en el orden de LIST_PROYECTOS
+	 * @return un resumen por proyecto, incluidos los que no tienen tareas
+	 */
+	public List<ResumenProyecto> resumenProyectos() throws SQLException {
+		comprobarResumenes();
+		return listarProyectos().stream()
+				.map(p -> contadores.resumen(p.getId(), vencimientos.vencidas(p.getId())))
+				.toList();
+	}
+
+	private void comprobarResumenes() {
+		if (!contadores.activo()) {
+			throw new IllegalStateException("Los resúmenes de proyectos no están activos");
+		}
+	}
+
+	// Vencimientos
+
+	/**
+	 * Carga las tareas abiertas con fecha de fin y empieza a avisar de las que vencen
+	 * Es la única consulta del motor de vencimientos a la base de datos, y solo lee el id, el proyecto y la fecha de
+	 * fin de cada tarea, que pasan al motor según llegan; después se mantiene al día con los cambios que pasan por
+	 * este servicio. Mientras no se llama, los cambios no se siguen.
+	 * @return tareas cargadas y cuántas de ellas ya habían vencido
+	 */
+	public String iniciarVencimientos() throws SQLException {
+		int[] yaVencidas = {0};
+		int cargadas = tareaDAO.recorrerVencimientos(MAX_VENCIMIENTOS, TAMANIO_BLOQUE, (id, proyecto, dia) -> {
+			if (vencimientos.cargar(id, proyecto, dia)) {
+				yaVencidas[0]++;
+			}
+		});
+		vencimientos.iniciar();
+		String resumen = cargadas + " tareas abiertas con fecha de fin, " + yaVencidas[0] + " ya vencidas";
+		if (cargadas == MAX_VENCIMIENTOS) {
+			resumen += " (límite alcanzado: las de fecha más lejana no se siguen hasta que cambien)";
+		}
+		return resumen;
+	}
+
+	private void seguirCreada(int id, Tarea t) {
+		vencimientos.seguir(id, t.getIdProyecto(), t.getDiaEntrega(),
+				t.getCodigoEstado() != Estado.FINALIZADO.getCodigo());
+	}
+
+	/**
+	 * Lleva al motor de vencimientos un cambio de fecha de fin o de estado ya aplicado
+	 * Solo lee la tarea cuando el motor no la seguía: al ponerle fecha de fin o al reabrirla.
+	 */
+	private void seguirCambio(CambioTarea cambio) throws SQLException {
+		int id = cambio.idTarea();
+		switch (cambio.campo()) {
+		case "fecha_fin":
+			if (!vencimientos.cambiarFecha(id, (int) LocalDate.parse(cambio.valor()).toEpochDay())) {
+				releerVencimiento(id);
+			}
+			break;
+		case "estado":
+			boolean finalizada = Estado.desdeTexto(cambio.valor()) == Estado.FINALIZADO;
+			indice.cambiarEstado(id, finalizada);
+			if (finalizada) {
+				vencimientos.dejar(id);
+			} else if (!vencimientos.sigue(id)) {
+				releerVencimiento(id);
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	private void releerVencimiento(int id) throws SQLException {
+		Tarea t = tareaDAO.obtenerTarea(id);
+		if (t != null) {
+			seguirCreada(id, t);
+		}
+	}
+
+	private void publicarVencida(int idTarea, int idProyecto, LocalDate fechaFin) {
+		if (notificaciones.haySuscriptores(idProyecto)) {
+			notificaciones.publicar(idProyecto, "EVENTO;TAREA_VENCIDA;" + idProyecto + ";" + idTarea + ";" + fechaFin);
+		}
+	}
+
+	/**
+	 * @return tareas que sigue el motor de vencimientos, pendientes de avisar y avisadas
+	 */
+	public String estadisticasVencimientos() {
+		return vencimientos.toString();
+	}
+
+	// Suscripciones
+
+	/**
+	 * Suscribe una conexión a los cambios de tareas de unos proyectos
+	 * @param salida conexión por la que se envían los eventos
+	 * @param idsProyecto proyectos a seguir
+	 * @return número de proyectos que sigue la conexión
+	 */
+	public int suscribir(SalidaCliente salida, Collection<Integer> idsProyecto) {
+		return notificaciones.suscribir(salida, idsProyecto);
+	}
+
+	/**
+	 * Deja de enviar a una conexión los cambios de un proyecto
+	 * @return true si la conexión seguía el proyecto
+	 */
+	public boolean cancelarSuscripcion(SalidaCliente salida, int idProyecto) {
+		return notificaciones.cancelar(salida, idProyecto);
+	}
+
+	/**
+	 * Da de baja las suscripciones de una conexión cerrada
+	 */
+	public void conexionCerrada(SalidaCliente salida) {
+		notificaciones.desconectada(salida);
+	}
+
+	/**
+	 * @return número de suscriptores y de eventos publicados
+	 */
+	public String estadisticasSuscripciones() {
+		return notificaciones.toString();
+	}
+
+	/**
+	 * @return número de franjas de cerrojos por proyecto y veces que se ha esperado a otro hilo
+	 */
+	public String estadisticasCerrojos() {
+		return cerrojos.toString();
+	}
+
+	/**
+	 * @return estadísticas de la caché de lectura
+	 */
+	public String estadisticasCache() {
+		return cache.toString();
+	}
+}
@@ -1,163 +1,600 @@
 package servidor;
 
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import config.Configuracion;
+import almacen.AlmacenMemoria;
+import almacen.PoliticaSincronizacion;
+import dao.CacheConsultas;
+import dao.ConexionBD;
+import dao.EscrituraDiferida;
+import dao.FiltroTareas;
 import dao.ProyectoDAO;
+import dao.RepositorioProyectos;
+import dao.RepositorioTareas;
+import dao.RepositoriosMedidos;
 import dao.TareaDAO;
-import modelos.Proyecto;
+import metricas.Metricas;
+import modelos.Estado;
 import modelos.Tarea;
+import modelos.Urgencia;
+import protocolo.BufferBinario;
+import protocolo.ComandoTexto;
+import protocolo.RespuestaTexto;
+import java.nio.file.Path;
 import java.time.LocalDate;
 
 /**
  * Clase que representa el servidor.
  * Se encarga de:
- * abrir las conexiones
+ * abrir las conexiones mediante el motor de red configurado (ver MotorRed)
  * interpretar la operación CRUD que le pasa el cliente
  * ordenar a las DAO las operaciones correspondientes
  */
 public class Servidor {
+
+	static final int MAX_TAREAS_LOTE = Configuracion.entero("lote.maxTareas", 10_000);
+	private static final int LIMITE_CONSULTA = Configuracion.entero("consulta.limite", 100);
+	private static final int LIMITE_BUSQUEDA = Configuracion.entero("busqueda.limite", 20);
+	private static final String COMANDO_DESCONOCIDO = "ERROR Comando desconocido";
+	private static final String DESCONOCIDO = "DESCONOCIDO";
+	// Textos esperados en los campos, para reconocerlos sin crear cadenas (ComandoTexto.texto(i, conocidos))
+	static final String[] COMANDOS = { "INSERT_PROYECTO", "LIST_PROYECTOS", "UPDATE_PROYECTO", "CAS_PROYECTO",
+			"DELETE_PROYECTO", "INSERT_TAREA", "INSERT_TAREAS_BATCH", "LIST_TAREAS", "STREAM_TAREAS", "QUERY_TAREAS",
+			"SEARCH_TAREAS", "UPDATE_TAREA", "CAS_TAREA", "DELETE_TAREA", "ARCHIVE_TAREAS", "MOVE_TAREAS",
+			"SUBSCRIBE_PROYECTO", "UNSUBSCRIBE_PROYECTO", "STATS_CACHE", "STATS_PROYECTO", "STATS_ALL", "STATS" };
+	private static final String[] CAMPOS = { "fecha_fin", "estado", "urgencia" };
+	private static final String[] ESTADOS = { "pendiente", "en progreso", "finalizado" };
+	private static final String[] URGENCIAS = { "alta", "media", "baja" };
+	private static final String[] VALORES = { "pendiente", "en progreso", "finalizado", "alta", "media", "baja" };
+	// Claves de los criterios de QUERY_TAREAS y SEARCH_TAREAS (ComandoTexto.clave)
+	private static final String[] CRITERIOS = { "proyecto", "estado", "urgencia", "inicio_desde", "inicio_hasta",
+			"fin_desde", "fin_hasta", "orden", "limite" };
+	// Valores de orden: las columnas y, con '-' delante, las mismas en sentido descendente
+	private static final FiltroTareas.Orden[] ORDENES = FiltroTareas.Orden.values();
+	private static final String[] TEXTOS_ORDEN = new String[ORDENES.length * 2];
+	static {
+		for (int i = 0; i < ORDENES.length; i++) {
+			TEXTOS_ORDEN[i] = ORDENES[i].getColumna();
+			TEXTOS_ORDEN[ORDENES.length + i] = "-" + ORDENES[i].getColumna();
+		}
+	}
+	// Comandos que modifican datos: solo en ellos se tiene en cuenta la clave de idempotencia
+	private static final String[] ESCRITURAS = { "INSERT_PROYECTO", "UPDATE_PROYECTO", "CAS_PROYECTO", "DELETE_PROYECTO",
+			"INSERT_TAREA", "INSERT_TAREAS_BATCH", "UPDATE_TAREA", "CAS_TAREA", "DELETE_TAREA", "ARCHIVE_TAREAS",
+			"MOVE_TAREAS" };
+	private static final int MAX_LONGITUD_CLAVE = 128;
+	private static final String REPETIDO = "REPETIDO";
+	// Respuesta a un reintento cuyo comando original sigue en curso tras la espera máxima; se puede reintentar
+	private static final String COMANDO_EN_CURSO = "ERROR Comando con la misma clave en curso";
+	// Buffers del protocolo de texto para los comandos que llegan como String (pipeline, motor NIO)
+	private static final int CAPACIDAD_BUFFER = 1024;
+	private static final int MAX_BUFFER_RETENIDO = 64 * 1024;
+	private static final ThreadLocal<ComandoTexto> COMANDO = ThreadLocal.withInitial(() -> new ComandoTexto(CAPACIDAD_BUFFER));
+	private static final ThreadLocal<RespuestaTexto> RESPUESTA = ThreadLocal.withInitial(() -> new RespuestaTexto(CAPACIDAD_BUFFER));
 	
 	/**
 	 * Método principal del servidor
-	 * Inicializa el ServerSocket en un puerto fijo
-	 * Queda a la espera de conexiones de clientes
-	 * Cada cliente se atiende de forma secuencial
+	 * Crea los objetos compartidos por todas las conexiones, arranca el motor de red elegido
+	 * y registra el apagado ordenado del servidor al terminar el proceso.
+	 * Parámetros configurables (propiedades del sistema):
+	 * - gestor.almacen: motor de almacenamiento, "mysql" o "memoria" (índices en memoria con diario en disco) (mysql)
+	 * - gestor.memoria.directorio: directorio de diarios e instantáneas del almacén en memoria (gestortareas-datos, vacío = sin disco)
+	 * - gestor.memoria.fsync: cuándo se sincroniza el diario con el disco, "siempre", "periodica" o "nunca" (periodica)
+	 * - gestor.memoria.fsync.intervaloMs: intervalo de sincronización con la política periodica (100)
+	 * - gestor.memoria.instantanea.bytes: tamaño del diario a partir del cual se guarda una instantánea (268435456)
+	 * - gestor.memoria.instantanea.intervaloS: tiempo máximo entre instantáneas si hay cambios (3600, 0 = sin límite)
+	 * - gestor.red: motor de red, "bloqueante" (un hilo virtual por cliente) o "nio" (Selector) (bloqueante)
+	 * - gestor.puerto: puerto de escucha (5000)
+	 * - gestor.maxConexiones: número máximo de clientes atendidos a la vez (1000)
+	 * - gestor.inactividadMs: tiempo máximo sin recibir comandos antes de cerrar la conexión (300000, 0 = sin límite)
+	 * - gestor.apagadoMs: tiempo máximo de espera a los comandos en curso al apagar el servidor (10000)
+	 * - gestor.escrituraDiferida: si UPDATE_TAREA responde al encolar el cambio y lo escribe en segundo plano (false)
+	 * - gestor.escrituraDiferida.maxPendientes: cambios sin escribir admitidos antes de hacer esperar a los clientes (10000)
+	 * - gestor.escrituraDiferida.maxLote: cambios escritos en cada transacción (500)
+	 * - gestor.escrituraDiferida.esperaLoteMs: espera del escritor para juntar un lote completo (5)
+	 * - gestor.escrituraDiferida.esperaMs: espera máxima por sitio en la cola antes de responder con error (1000)
+	 * - gestor.cache.maxEntradas: número máximo de listas de tareas guardadas en la caché de lectura (1000)
+	 * - gestor.cache.ttlMs: tiempo de vida de las listas guardadas en la caché de lectura (5000)
+	 * - gestor.lote.maxTareas: número máximo de tareas en un INSERT_TAREAS_BATCH (10000)
+	 * - gestor.listado.maxPagina: número máximo de tareas de una página de LIST_TAREAS (10000)
+	 * - gestor.consulta.limite: tareas devueltas por QUERY_TAREAS si no se indica el límite (100)
+	 * - gestor.listado.tamanioBloque: filas leídas de la base de datos en cada viaje en STREAM_TAREAS (500)
+	 * - gestor.suscripcion.maxEventos: eventos sin enviar por suscriptor antes de cerrar su conexión (1000)
+	 * - gestor.cerrojos.franjas: franjas de cerrojos que coordinan las escrituras de un mismo proyecto (64)
+	 * - gestor.busqueda.activa: si se indexan las palabras de las tareas para SEARCH_TAREAS (true)
+	 * - gestor.busqueda.limite: tareas devueltas por SEARCH_TAREAS si no se indica el límite (20)
+	 * - gestor.busqueda.maxLimite: número máximo de tareas de un SEARCH_TAREAS (200)
+	 * - gestor.busqueda.maxExpansion: palabras del índice que encajan como mucho con cada palabra buscada como prefijo (64)
+	 * - gestor.resumenes.activos: si se mantienen los contadores de tareas por proyecto de STATS_PROYECTO y STATS_ALL (true)
+	 * - gestor.vencimientos.activos: si se avisa de las tareas abiertas cuya fecha de fin ha pasado (true)
+	 * - gestor.vencimientos.maxTareas: tareas abiertas con fecha de fin cargadas al arrancar para seguir sus vencimientos (1000000)
+	 * - gestor.idempotencia.maxClaves: claves de idempotencia recordadas con la respuesta de su comando (100000)
+	 * - gestor.idempotencia.ttlMs: tiempo durante el que se recuerda la respuesta de una clave de idempotencia (600000)
+	 * - gestor.idempotencia.esperaMs: espera máxima de un reintento a que termine el comando en curso con su clave (10000)
+	 * - gestor.pipeline.maxEnCurso: comandos etiquetados sin responder por conexión antes de dejar de leer (256)
+	 * - gestor.nio.hilosES: hilos de E/S del motor NIO (2)
+	 * - gestor.nio.hilosTrabajo: hilos del pool que ejecuta los comandos en el motor NIO (16)
+	 * - gestor.metricas.activas: si se miden los comandos, las operaciones del almacenamiento y las conexiones (true)
+	 * - gestor.metricas.lentoMs: duración a partir de la cual un comando se anota como lento (100, 0 = ninguno)
+	 * - gestor.metricas.fichero: fichero donde se vuelcan las métricas (gestortareas-metricas.txt, vacío = ninguno)
+	 * - gestor.metricas.intervaloS: segundos entre volcados de las métricas; también se vuelcan al apagar (60, 0 = solo al apagar)
 	 */
 
     public static void main(String[] args) {
-        final int PUERTO = 5000; 
-
-        try (ServerSocket server = new ServerSocket(PUERTO)) {
-            System.out.println("Servidor iniciado en puerto " + PUERTO);
-            
-            while (true) {
-                Socket cliente = server.accept(); 
-                System.out.println("Cliente conectado: " + cliente.getInetAddress());
+        final int PUERTO = Configuracion.entero("puerto", 5000);
+        final int MAX_CONEXIONES = Configuracion.entero("maxConexiones", 1000);
+        final int INACTIVIDAD_MS = Configuracion.entero("inactividadMs", 300_000);
+        final long APAGADO_MS = Configuracion.largo("apagadoMs", 10_000);
+        final int MAX_EN_CURSO = Configuracion.entero("pipeline.maxEnCurso", 256);
+        final String RED = Configuracion.texto("red", "bloqueante");
+        final String ALMACEN = Configuracion.texto("almacen", "mysql");
 
-                manejarCliente(cliente); // secuencial
-                System.out.println("Cliente desconectado");
+        try {
+            RepositorioProyectos proyectoDAO;
+            RepositorioTareas tareaDAO;
+            Closeable cierreAlmacen;
+            if (ALMACEN.equalsIgnoreCase("memoria")) {
+                String directorio = Configuracion.texto("memoria.directorio", "gestortareas-datos");
+                AlmacenMemoria memoria = new AlmacenMemoria(directorio.isEmpty() ? null : Path.of(directorio),
+                        PoliticaSincronizacion.desdeTexto(Configuracion.texto("memoria.fsync", "periodica")));
+                proyectoDAO = memoria;
+                tareaDAO = memoria;
+                cierreAlmacen = memoria;
+            } else {
+                // Las DAO no guardan estado, por lo que una única instancia se comparte entre todos los hilos
+                proyectoDAO = new ProyectoDAO();
+                tareaDAO = new TareaDAO();
+                cierreAlmacen = () -> ConexionBD.getPool().cerrar();
+            }
+            EscrituraDiferida diferida = null;
+            if (Configuracion.booleano("escrituraDiferida", false)) {
+                diferida = new EscrituraDiferida(tareaDAO, Configuracion.entero("escrituraDiferida.maxPendientes", 10_000),
+                        Configuracion.entero("escrituraDiferida.maxLote", 500),
+                        Configuracion.largo("escrituraDiferida.esperaLoteMs", 5),
+                        Configuracion.largo("escrituraDiferida.esperaMs", 1_000));
+                tareaDAO = diferida;
+            }
+            RepositoriosMedidos medidos = new RepositoriosMedidos(proyectoDAO, tareaDAO);
+            proyectoDAO = medidos;
+            tareaDAO = medidos;
+            String ficheroMetricas = Configuracion.texto("metricas.fichero", "gestortareas-metricas.txt");
+            long intervaloMetricas = Configuracion.largo("metricas.intervaloS", 60);
+            if (!ficheroMetricas.isEmpty() && intervaloMetricas > 0) {
+                Metricas.global().programarVolcado(Path.of(ficheroMetricas), intervaloMetricas);
+            }
+            CacheConsultas cache = new CacheConsultas(proyectoDAO, tareaDAO,
+                    Configuracion.entero("cache.maxEntradas", 1000), Configuracion.largo("cache.ttlMs", 5_000));
+            ServicioGestor servicio = new ServicioGestor(proyectoDAO, tareaDAO, cache);
+            if (Configuracion.booleano("busqueda.activa", true)) {
+                try {
+                    long inicioIndice = System.nanoTime();
+                    int indexadas = servicio.iniciarBusqueda();
+                    System.out.println("Búsqueda: " + indexadas + " tareas indexadas en "
+                            + (System.nanoTime() - inicioIndice) / 1_000_000 + " ms");
+                } catch (SQLException e) {
+                    System.out.println("No se ha podido cargar el índice de búsqueda: " + e.getMessage());
+                }
+            }
+            if (Configuracion.booleano("resumenes.activos", true)) {
+                try {
+                    System.out.println("Resúmenes: " + servicio.iniciarResumenes() + " proyectos con tareas");
+                } catch (SQLException e) {
+                    System.out.println("No se han podido cargar los resúmenes de proyectos: " + e.getMessage());
+                }
+            }
+            if (Configuracion.booleano("vencimientos.activos", true)) {
+                // Sin la carga inicial el servidor funciona igual, solo que sin avisos de vencimiento
+                try {
+                    System.out.println("Vencimientos: " + servicio.iniciarVencimientos());
+                } catch (SQLException e) {
+                    System.out.println("No se han podido cargar los vencimientos: " + e.getMessage());
+                }
             }
+            CacheIdempotencia idempotencia = crearCacheIdempotencia();
+            ProcesadorComandos procesador = crearProcesador(servicio, idempotencia);
 
+            MotorRed motor;
+            if (RED.equalsIgnoreCase("nio")) {
+                motor = new ServidorNIO(PUERTO, MAX_CONEXIONES, INACTIVIDAD_MS, MAX_EN_CURSO,
+                        Configuracion.entero("nio.hilosES", 2), Configuracion.entero("nio.hilosTrabajo", 16), procesador);
+            } else {
+                motor = new ServidorBloqueante(PUERTO, MAX_CONEXIONES, INACTIVIDAD_MS, MAX_EN_CURSO, procesador);
+            }
+            EscrituraDiferida colaEscritura = diferida;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                System.out.println("Apagando servidor...");
+                motor.detener(APAGADO_MS);
+                System.out.println(servicio.estadisticasSuscripciones());
+                System.out.println(servicio.estadisticasCerrojos());
+                System.out.println(servicio.estadisticasVencimientos());
+                System.out.println(servicio.estadisticasBusqueda());
+                System.out.println(idempotencia);
+                // Los cambios encolados se escriben antes de cerrar el almacenamiento
+                if (colaEscritura != null) {
+                    colaEscritura.close();
+                    System.out.println(colaEscritura);
+                }
+                try {
+                    cierreAlmacen.close();
+                } catch (IOException e) {
+                    System.out.println("Error al cerrar el almacenamiento: " + e.getMessage());
+                }
+                if (!ficheroMetricas.isEmpty()) {
+                    try {
+                        Metricas.global().volcar(Path.of(ficheroMetricas));
+                    } catch (IOException e) {
+                        System.out.println("Error al guardar las métricas: " + e.getMessage());
+                    }
+                }
+                System.out.println("Servidor detenido");
+            }));
+            motor.ejecutar();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Clase que atiende al cliente
-     * Crea los canales de entrada y salida, recibe los comandos enviados por el cliente, los procesa y devuelve una respuesta
-     * 
-     * @param cliente socket que representa la conexión con el cliente
+     * Crea el procesador de comandos que usan los motores de red
+     * Es público para poder ejecutar los comandos sin pasar por la red (por ejemplo en los benchmarks).
+     * @param servicio operaciones sobre proyectos y tareas
+     * @return procesador de los protocolos de texto y binario
      */
-    private static void manejarCliente(Socket cliente) {
-    	try (BufferedReader in = new BufferedReader(new InputStreamReader(cliente.getInputStream()));
-             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(cliente.getOutputStream()))) {
+    public static ProcesadorComandos crearProcesador(ServicioGestor servicio) {
+        return crearProcesador(servicio, crearCacheIdempotencia());
+    }
+
+    private static CacheIdempotencia crearCacheIdempotencia() {
+        return new CacheIdempotencia(Configuracion.entero("idempotencia.maxClaves", 100_000),
+                Configuracion.largo("idempotencia.ttlMs", 600_000), Configuracion.largo("idempotencia.esperaMs", 10_000));
+    }
 
-            String mensaje;
-            ProyectoDAO proyectoDAO = new ProyectoDAO();
-            TareaDAO tareaDAO = new TareaDAO();
+    /**
+     * Crea el procesador de comandos con la caché de idempotencia indicada
+     * @param servicio operaciones sobre proyectos y tareas
+     * @param idempotencia respuestas recientes de las escrituras enviadas con clave
+     * @return procesador de los protocolos de texto y binario
+     */
+    static ProcesadorComandos crearProcesador(ServicioGestor servicio, CacheIdempotencia idempotencia) {
+        return new ProcesadorComandos() {
+            @Override
+            public String procesarTexto(String mensaje) {
+                ComandoTexto comando = cargar(mensaje);
+                RespuestaTexto respuesta = RESPUESTA.get();
+                respuesta.limpiar();
+                procesarComando(comando, respuesta, servicio, idempotencia, null);
+                String texto = respuesta.toString();
+                respuesta.recortar(MAX_BUFFER_RETENIDO, CAPACIDAD_BUFFER);
+                return texto;
+            }
 
-            /*
-             * Lee una línea enviada por el cliente, la procesa, 
-             * recibe un string de respuesta y lo envía al cliente
-             */
-            while ((mensaje = in.readLine()) != null) {
-                String respuesta = procesarComando(mensaje, proyectoDAO, tareaDAO);
-                out.write(respuesta + "\n");
-                out.flush();
+            @Override
+            public void procesarTexto(String mensaje, SalidaCliente salida) throws IOException {
+                RespuestaTexto respuesta = RESPUESTA.get();
+                respuesta.limpiar();
+                try {
+                    procesarTexto(cargar(mensaje), respuesta, salida);
+                } finally {
+                    respuesta.recortar(MAX_BUFFER_RETENIDO, CAPACIDAD_BUFFER);
+                }
             }
 
-        } catch (IOException e) {
-            System.out.println("Error en la conexión con el cliente");
+            @Override
+            public void procesarTexto(ComandoTexto comando, RespuestaTexto respuesta, SalidaCliente salida)
+                    throws IOException {
+                procesarComando(comando, respuesta, servicio, idempotencia, salida);
+                salida.enviar(respuesta);
+            }
+
+            @Override
+            public void procesarBinario(BufferBinario peticion, BufferBinario respuesta) {
+                ComandosBinarios.procesar(peticion, respuesta, servicio);
+            }
+
+            @Override
+            public void conexionCerrada(SalidaCliente salida) {
+                servicio.conexionCerrada(salida);
+            }
+        };
+    }
+
+    /**
+     * Carga un comando recibido como String en el ComandoTexto del hilo
+     * Con hilos virtuales (uno por comando del pipeline) cada hilo tiene el suyo, que se descarta al terminar.
+     */
+    private static ComandoTexto cargar(String mensaje) {
+        ComandoTexto comando = COMANDO.get();
+        comando.recortar(MAX_BUFFER_RETENIDO, CAPACIDAD_BUFFER);
+        comando.cargar(mensaje);
+        return comando;
+    }
+
+    /**
+     * Procesa el mensaje recibido por el cliente y registra en Metricas su duración por fases y si ha fallado
+     * @param comando comando recibido por el cliente, ya partido en campos
+     * @param respuesta buffer vacío donde se escribe la respuesta
+     * @param servicio operaciones sobre proyectos y tareas
+     * @param idempotencia respuestas recientes de las escrituras enviadas con clave
+     * @param salida salida de la conexión, o null en modo pipeline (ver ejecutarComando)
+     */
+    private static void procesarComando(ComandoTexto comando, RespuestaTexto respuesta, ServicioGestor servicio,
+            CacheIdempotencia idempotencia, SalidaCliente salida) {
+        Metricas metricas = Metricas.global();
+        metricas.iniciarComando();
+        String nombre = comando.tieneClave()
+                ? ejecutarConClave(comando, respuesta, servicio, idempotencia, salida)
+                : ejecutarComando(comando, respuesta, servicio, salida);
+        // El comando solo se convierte a texto si resulta lento
+        metricas.terminarComando(nombre, respuesta.empiezaPor("ERROR"), comando);
+    }
+
+    /**
+     * Ejecuta un comando enviado con clave de idempotencia, con el formato:
+     * !clave;COMANDO;...
+     * Si la clave ya se ha usado con el mismo comando hace poco, se responde lo mismo que la primera vez sin volver
+     * a ejecutarlo; si la primera ejecución sigue en curso, se espera a su respuesta (ver CacheIdempotencia).
+     * La clave solo se tiene en cuenta en las escrituras: las lecturas se ejecutan siempre.
+     * @return nombre del comando para las métricas ("REPETIDO" si se ha devuelto una respuesta guardada)
+     */
+    private static String ejecutarConClave(ComandoTexto comando, RespuestaTexto respuesta, ServicioGestor servicio,
+            CacheIdempotencia idempotencia, SalidaCliente salida) {
+        String clave = comando.extraerClave();
+        if (clave.isEmpty() || clave.length() > MAX_LONGITUD_CLAVE) {
+            respuesta.texto("ERROR Clave de idempotencia no válida");
+            return DESCONOCIDO;
+        }
+        if (!esEscritura(comando)) {
+            return ejecutarComando(comando, respuesta, servicio, salida);
+        }
+        long huella = comando.huella();
+        CacheIdempotencia.Peticion peticion = new CacheIdempotencia.Peticion(clave, huella);
+        CacheIdempotencia.Peticion previa = idempotencia.registrar(peticion);
+        if (previa == null) {
+            String nombre = DESCONOCIDO;
+            try {
+                nombre = ejecutarComando(comando, respuesta, servicio, salida);
+            } finally {
+                // Los errores no se guardan: no han cambiado nada y el reintento puede salir bien
+                idempotencia.terminar(peticion, respuesta.copiar(), !respuesta.empiezaPor("ERROR"));
+            }
+            return nombre;
+        }
+        if (!previa.mismoComando(huella)) {
+            respuesta.texto("ERROR Clave de idempotencia usada con otro comando");
+            return REPETIDO;
         }
+        try {
+            byte[] guardada = idempotencia.esperar(previa);
+            if (guardada == null) {
+                respuesta.texto(COMANDO_EN_CURSO);
+            } else {
+                respuesta.bytes(guardada);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respuesta.texto(COMANDO_EN_CURSO);
+        }
+        return REPETIDO;
+    }
+
+    private static boolean esEscritura(ComandoTexto comando) {
+        for (String escritura : ESCRITURAS) {
+            if (comando.es(0, escritura)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * Procesa el mensaje recibido por el cliente
+     * Ejecuta el mensaje recibido por el cliente
      * El comando se recibe como una cadena de texto con campos separados por punto y coma (;). Dependiendo del comando,
      * se ejecuta una operación CRUD sobre proyectos o tareas.
-     * @param mensaje comando recibido por el cliente
-     * @param proyectoDAO objeto DAO para gestionar proyectos
-     * @param tareaDAO objeto DAO para gestionar tareas
-     * @return respuesta en formato texto indicando el resultado de la operación
+     * Los campos se leen directamente del buffer del comando y la respuesta se codifica directamente en el buffer de
+     * respuesta (ver ComandoTexto y RespuestaTexto), con el mismo formato que el toString() de cada resultado.
+     * @param comando comando recibido por el cliente, ya partido en campos
+     * @param respuesta buffer vacío donde se escribe la respuesta en formato texto indicando el resultado de la operación
+     * @param servicio operaciones sobre proyectos y tareas; lee a través de la caché y la invalida en cada escritura
+     * @param salida salida de la conexión para los comandos que envían varias líneas antes de la respuesta final
+     * (STREAM_TAREAS); null cuando el comando llega etiquetado en modo pipeline
+     * @return nombre del comando para las métricas ("DESCONOCIDO" si no existe, para no crear una por cada texto recibido)
      */
-    private static String procesarComando(String mensaje, ProyectoDAO proyectoDAO, TareaDAO tareaDAO) {
+    private static String ejecutarComando(ComandoTexto comando, RespuestaTexto respuesta, ServicioGestor servicio,
+            SalidaCliente salida) {
+        String nombre = DESCONOCIDO;
         try {
-            // Se define el delimitador ';'
-            String[] partes = mensaje.split(";"); 
-
             //Selección del comando a ejecutar
-            switch (partes[0]) { 
+            nombre = comando.texto(0, COMANDOS);
+            switch (nombre) {
 
-                // CRUD PROYECTOS 
-            
-                /* 
+                // CRUD PROYECTOS
+
+                /*
                  * Inserta un nuevo proyecto
                  * Formato esperado:
                  * INSERT_PROYECTO;nombre
                  */
-                case "INSERT_PROYECTO": 
-                	proyectoDAO.crearProyecto(new Proyecto(partes[1]));
-                    return "OK Proyecto creado";
+                case "INSERT_PROYECTO":
+                    servicio.crearProyecto(comando.texto(1));
+                    respuesta.texto("OK Proyecto creado");
+                    break;
 
                 /*
                  * Obtiene la lista de proyectos
                  * Formato esperado:
                  * LIST_PROYECTOS
                  */
-                case "LIST_PROYECTOS": 
-                	return proyectoDAO.obtenerProyectos().toString();
+                case "LIST_PROYECTOS":
+                    respuesta.lista(servicio.listarProyectos());
+                    break;
 
-                /* 
+                /*
                  * Actualiza el nombre de un proyecto
                  * Formato esperado:
                  * UPDATE_PROYECTO;id;nombre
                  */
-                case "UPDATE_PROYECTO": 
-                    int idUpd = Integer.parseInt(partes[1]); //Selecciona la id del proyecto
-                    String nuevoNombre = partes[2]; //Variable nombre asignado
-                    proyectoDAO.actualizarProyecto(idUpd, nuevoNombre);
-                    return "OK Proyecto actualizado";
+                case "UPDATE_PROYECTO":
+                    int idUpd = comando.entero(1); //Selecciona la id del proyecto
+                    String nuevoNombre = comando.texto(2); //Variable nombre asignado
+                    servicio.actualizarProyecto(idUpd, nuevoNombre);
+                    respuesta.texto("OK Proyecto actualizado");
+                    break;
 
-                /* Elimina un proyecto
+                /*
+                 * Actualiza el nombre de un proyecto solo si sigue en la versión indicada (la que muestra
+                 * LIST_PROYECTOS); si otro cliente lo ha cambiado antes responde "ERROR CONFLICTO version=N"
                  * Formato esperado:
-                 * DELETE_PROYECTO;id
+                 * CAS_PROYECTO;id;version;nombre
                  */
-                case "DELETE_PROYECTO": 
-                    int idDel = Integer.parseInt(partes[1]);
-                    proyectoDAO.eliminarProyecto(idDel);
-                    return "OK Proyecto eliminado";
+                case "CAS_PROYECTO":
+                    int idCasProyecto = comando.entero(1);
+                    int versionProyecto = comando.entero(2);
+                    int nuevaVersionProyecto = servicio.actualizarProyectoSiVersion(idCasProyecto, comando.texto(3),
+                            versionProyecto);
+                    respuesta.texto("OK Proyecto actualizado version=").entero(nuevaVersionProyecto);
+                    break;
+
+                /* Elimina un proyecto junto con todas sus tareas, también las archivadas, en una sola transacción
+                 * Con la versión solo lo elimina si sigue en ella; si no, responde "ERROR CONFLICTO version=N".
+                 * Las versiones empiezan en 0, así que una negativa se rechaza en lugar de tomarse por "sin versión"
+                 * Formato esperado:
+                 * DELETE_PROYECTO;id[;version]
+                 */
+                case "DELETE_PROYECTO":
+                    int idDel = comando.entero(1);
+                    int tareasDel;
+                    if (comando.campos() > 2) {
+                        int versionDel = comando.entero(2);
+                        if (versionDel < 0) {
+                            throw new IllegalArgumentException("Versión no válida: " + versionDel);
+                        }
+                        tareasDel = servicio.eliminarProyectoSiVersion(idDel, versionDel);
+                    } else {
+                        tareasDel = servicio.eliminarProyecto(idDel);
+                    }
+                    respuesta.texto("OK Proyecto eliminado con ").entero(tareasDel).texto(" tareas");
+                    break;
 
                 //CRUD TAREAS
-                    
-                /* 
+
+                /*
                  * Inserta una nueva tarea
                  * Formato esperado:
                  * INSERT_TAREA;nombre;descripcion;estado;urgencia;fecha_inicio;fecha_fin;proyecto_id
                  */
-                case "INSERT_TAREA":  
-                    String nombre = partes[1];
-                    String descripcion = partes[2]; 
-                    String estado = partes[3];     
-                    String urgencia = partes[4];    
-                    LocalDate inicio = LocalDate.parse(partes[5]);
-                    LocalDate entrega = LocalDate.parse(partes[6]);
-                    int idProyecto = Integer.parseInt(partes[7]);
+                case "INSERT_TAREA":
+                    String nombreTarea = comando.texto(1);
+                    String descripcion = comando.texto(2);
+                    String estado = comando.texto(3, ESTADOS);
+                    String urgencia = comando.texto(4, URGENCIAS);
+                    int inicio = comando.dia(5);
+                    int entrega = comando.dia(6);
+                    int idProyecto = comando.entero(7);
+
+                    servicio.crearTarea(new Tarea(0, nombreTarea, descripcion, Estado.desdeTexto(estado),
+                            Urgencia.desdeTexto(urgencia), inicio, entrega, idProyecto));
+                    respuesta.texto("OK Tarea creada");
+                    break;
 
-                    tareaDAO.crearTarea(new Tarea(
-                    		nombre, descripcion, estado, urgencia, inicio, entrega, idProyecto
-                    		)); 
-                    return "OK Tarea creada";
+                /*
+                 * Inserta varias tareas en una sola petición y una sola transacción
+                 * Las tareas se separan con '|' y sus campos con ';', en el mismo orden que INSERT_TAREA
+                 * Formato esperado:
+                 * INSERT_TAREAS_BATCH;nombre;descripcion;estado;urgencia;fecha_inicio;fecha_fin;proyecto_id|nombre;...
+                 */
+                case "INSERT_TAREAS_BATCH":
+                    // Sin tareas el lote es una fila vacía, que se responde como fila mal formada
+                    respuesta.texto(insertarLote(comando, servicio));
+                    break;
 
                 /*
                  * Obtiene la lista de tareas de un proyecto
+                 * Con despues_id y limite devuelve solo una página, ordenada por id: la siguiente
+                 * se pide pasando como despues_id el id de la última tarea recibida (0 para la primera)
                  * Formato esperado:
                  * LIST_TAREAS;proyecto_id;
+                 * LIST_TAREAS;proyecto_id;despues_id;limite
+                 */
+                case "LIST_TAREAS":
+                    int idProyectoT = comando.entero(1);
+                    if (comando.campos() >= 4) {
+                        respuesta.lista(servicio.listarPaginaTareas(idProyectoT, comando.entero(2), comando.entero(3)));
+                    } else {
+                        respuesta.lista(servicio.listarTareas(idProyectoT));
+                    }
+                    break;
+
+                /*
+                 * Envía las tareas de un proyecto una por línea según se leen de la base de datos,
+                 * ordenadas por id, y termina con "FIN n" (n = tareas enviadas) o con una línea ERROR
+                 * No admite el modo pipeline
+                 * Formato esperado:
+                 * STREAM_TAREAS;proyecto_id
+                 */
+                case "STREAM_TAREAS":
+                    if (salida == null) {
+                        respuesta.texto("ERROR STREAM_TAREAS no admite el modo pipeline");
+                        break;
+                    }
+                    int idProyectoS = comando.entero(1);
+                    // Cada línea se codifica en el mismo buffer que la respuesta final
+                    int enviadas = servicio.recorrerTareas(idProyectoS, t -> {
+                        respuesta.limpiar();
+                        salida.enviar(respuesta.tarea(t));
+                    });
+                    respuesta.limpiar();
+                    respuesta.texto("FIN ").entero(enviadas);
+                    break;
+
+                /*
+                 * Busca tareas de uno o de todos los proyectos con filtros, orden y límite
+                 * Los criterios van como clave=valor y todos son opcionales:
+                 * - proyecto: id del proyecto (sin él se busca en todos)
+                 * - estado, urgencia: uno o varios valores separados por comas
+                 * - inicio_desde, inicio_hasta, fin_desde, fin_hasta: intervalos de fechas, extremos incluidos
+                 * - orden: id, fecha_inicio, fecha_fin, urgencia o estado; con '-' delante es descendente (id)
+                 * - limite: número máximo de tareas, hasta listado.maxPagina (consulta.limite)
+                 * Formato esperado:
+                 * QUERY_TAREAS;clave=valor;clave=valor...
+                 * Ejemplo: QUERY_TAREAS;estado=pendiente;urgencia=alta;fin_hasta=2025-06-30;orden=fecha_fin;limite=50
+                 */
+                case "QUERY_TAREAS":
+                    respuesta.lista(servicio.consultarTareas(leerFiltro(comando)));
+                    break;
+
+                /*
+                 * Busca tareas por palabras de su nombre o descripción, sin distinguir tildes ni mayúsculas
+                 * Encuentra las tareas con todas las palabras, o con palabras que empiezan por ellas, ordenadas
+                 * de más a menos relevante. Criterios opcionales como clave=valor:
+                 * - proyecto: id del proyecto (sin él se busca en todos)
+                 * - limite: número máximo de tareas, hasta busqueda.maxLimite (busqueda.limite)
+                 * Formato esperado:
+                 * SEARCH_TAREAS;texto;clave=valor...
+                 * Ejemplo: SEARCH_TAREAS;revision presupuesto;proyecto=3;limite=10
                  */
-                case "LIST_TAREAS": // 
-                    int idProyectoT = Integer.parseInt(partes[1]);
-                    return tareaDAO.obtenerTareasPorProyecto(idProyectoT).toString();
+                case "SEARCH_TAREAS":
+                    Integer proyectoBusqueda = null;
+                    int limiteBusqueda = LIMITE_BUSQUEDA;
+                    for (int i = 2; i < comando.campos(); i++) {
+                        String criterio = comando.clave(i, CRITERIOS);
+                        if ("proyecto".equals(criterio)) {
+                            proyectoBusqueda = comando.enteroValor(i);
+                        } else if ("limite".equals(criterio)) {
+                            limiteBusqueda = comando.enteroValor(i);
+                        } else if (!comando.enBlanco(i)) {
+                            throw new IllegalArgumentException("Criterio de búsqueda desconocido: " + comando.texto(i));
+                        }
+                    }
+                    respuesta.lista(servicio.buscarTareas(comando.texto(1), proyectoBusqueda, limiteBusqueda));
+                    break;
 
                 /*
                  * Actualiza un campo de una tarea
@@ -165,28 +602,287 @@ public class Servidor {
                  * UPDATE_TAREA;id;campo;valor
                  */
                 case "UPDATE_TAREA":
-                    int idTarea = Integer.parseInt(partes[1]);
-                    String campo = partes[2]; 
-                    String valor = partes[3];
-                    tareaDAO.actualizarTarea(idTarea, campo, valor);
-                    return "OK Tarea actualizada";
+                    int idTarea = comando.entero(1);
+                    String campo = comando.texto(2, CAMPOS);
+                    String valor = comando.texto(3, VALORES);
+                    servicio.actualizarTarea(idTarea, campo, valor);
+                    respuesta.texto("OK Tarea actualizada");
+                    break;
+
+                /*
+                 * Actualiza un campo de una tarea solo si sigue en la versión indicada (la que muestran los
+                 * listados); si otro cliente la ha cambiado antes responde "ERROR CONFLICTO version=N"
+                 * Formato esperado:
+                 * CAS_TAREA;id;version;campo;valor
+                 */
+                case "CAS_TAREA":
+                    int idCasTarea = comando.entero(1);
+                    int versionTarea = comando.entero(2);
+                    int nuevaVersionTarea = servicio.actualizarTareaSiVersion(idCasTarea, comando.texto(3, CAMPOS),
+                            comando.texto(4, VALORES), versionTarea);
+                    respuesta.texto("OK Tarea actualizada version=").entero(nuevaVersionTarea);
+                    break;
 
                 /*
                  * Elimina una tarea
                  * Formato esperado:
                  * DELETE_TAREA;id
                  */
-                case "DELETE_TAREA": 
-                    int idTareaDel = Integer.parseInt(partes[1]);
-                    tareaDAO.eliminarTarea(idTareaDel);
-                    return "OK Tarea eliminada";
+                case "DELETE_TAREA":
+                    int idTareaDel = comando.entero(1);
+                    servicio.eliminarTarea(idTareaDel);
+                    respuesta.texto("OK Tarea eliminada");
+                    break;
+
+                /*
+                 * Archiva todas las tareas finalizadas de un proyecto en una sola transacción: dejan de aparecer
+                 * en los listados y consultas, y se eliminan con el proyecto
+                 * Formato esperado:
+                 * ARCHIVE_TAREAS;proyecto_id
+                 */
+                case "ARCHIVE_TAREAS":
+                    respuesta.texto("OK ").entero(servicio.archivarFinalizadas(comando.entero(1)))
+                            .texto(" tareas archivadas");
+                    break;
+
+                /*
+                 * Pasa todas las tareas de un proyecto a otro en una sola transacción
+                 * Formato esperado:
+                 * MOVE_TAREAS;proyecto_origen;proyecto_destino
+                 */
+                case "MOVE_TAREAS":
+                    int idOrigen = comando.entero(1);
+                    int idDestino = comando.entero(2);
+                    respuesta.texto("OK ").entero(servicio.moverTareas(idOrigen, idDestino)).texto(" tareas movidas");
+                    break;
+
+                /*
+                 * Suscribe la conexión a los cambios de tareas de uno o varios proyectos
+                 * Desde ese momento el servidor envía, intercaladas con las respuestas, líneas:
+                 * EVENTO;TAREA_CREADA;proyecto_id;tarea
+                 * EVENTO;TAREA_ACTUALIZADA;proyecto_id;tarea
+                 * EVENTO;TAREA_ELIMINADA;proyecto_id;id
+                 * EVENTO;TAREAS_ARCHIVADAS;proyecto_id;n
+                 * EVENTO;TAREAS_MOVIDAS;proyecto_origen;proyecto_destino;n (a los suscriptores de los dos proyectos)
+                 * EVENTO;PROYECTO_ELIMINADO;proyecto_id
+                 * EVENTO;TAREA_VENCIDA;proyecto_id;id;fecha_fin (una vez, al pasar su fecha de fin sin estar finalizada)
+                 * Si el cliente no lee los eventos al ritmo que llegan, se cierra la conexión
+                 * No admite el modo pipeline
+                 * Formato esperado:
+                 * SUBSCRIBE_PROYECTO;proyecto_id[;proyecto_id...]
+                 */
+                case "SUBSCRIBE_PROYECTO":
+                    if (salida == null) {
+                        respuesta.texto("ERROR SUBSCRIBE_PROYECTO no admite el modo pipeline");
+                        break;
+                    }
+                    if (comando.campos() < 2) {
+                        respuesta.texto("ERROR Falta el proyecto");
+                        break;
+                    }
+                    List<Integer> idsSuscripcion = new ArrayList<>();
+                    for (int i = 1; i < comando.campos(); i++) {
+                        idsSuscripcion.add(comando.entero(i));
+                    }
+                    respuesta.texto("OK Suscrito a ").entero(servicio.suscribir(salida, idsSuscripcion))
+                            .texto(" proyectos");
+                    break;
+
+                /*
+                 * Deja de recibir los cambios de un proyecto
+                 * Formato esperado:
+                 * UNSUBSCRIBE_PROYECTO;proyecto_id
+                 */
+                case "UNSUBSCRIBE_PROYECTO":
+                    if (salida == null) {
+                        respuesta.texto("ERROR UNSUBSCRIBE_PROYECTO no admite el modo pipeline");
+                        break;
+                    }
+                    respuesta.texto(servicio.cancelarSuscripcion(salida, comando.entero(1))
+                            ? "OK Suscripción cancelada" : "ERROR No estaba suscrito al proyecto");
+                    break;
+
+                /*
+                 * Devuelve las estadísticas de la caché de lectura (aciertos, fallos, expulsiones)
+                 * Formato esperado:
+                 * STATS_CACHE
+                 */
+                case "STATS_CACHE":
+                    respuesta.texto(servicio.estadisticasCache());
+                    break;
+
+                /*
+                 * Devuelve el número de tareas de un proyecto por estado y por urgencia, y el de tareas vencidas
+                 * (no finalizadas con la fecha de fin pasada, -1 si no se siguen los vencimientos), sin leer sus
+                 * tareas: el servidor mantiene los contadores con cada cambio
+                 * Formato esperado:
+                 * STATS_PROYECTO;proyecto_id
+                 */
+                case "STATS_PROYECTO":
+                    respuesta.texto(servicio.resumenProyecto(comando.entero(1)).toString());
+                    break;
+
+                /*
+                 * Devuelve el resumen de STATS_PROYECTO de todos los proyectos, incluidos los que no tienen tareas
+                 * Formato esperado:
+                 * STATS_ALL
+                 */
+                case "STATS_ALL":
+                    respuesta.lista(servicio.resumenProyectos());
+                    break;
+
+                /*
+                 * Devuelve las métricas del servidor en una línea: conexiones, tiempo de envío de respuestas,
+                 * comandos lentos y, por cada comando y operación de la caché y del almacenamiento, errores y
+                 * percentiles de latencia (los comandos, además, por fases: análisis, datos y serialización)
+                 * Formato esperado:
+                 * STATS
+                 */
+                case "STATS":
+                    respuesta.texto(Metricas.global().resumen());
+                    break;
 
                 default:
-                    return "ERROR Comando desconocido";
+                    nombre = DESCONOCIDO;
+                    respuesta.texto(COMANDO_DESCONOCIDO);
+                    break;
             }
 
         } catch (Exception e) {
-            return "ERROR " + e.getMessage();
+            // Lo que se hubiera escrito antes del error se descarta
+            respuesta.limpiar();
+            respuesta.texto("ERROR ").texto(e.getMessage());
+        }
+        return nombre;
+    }
+
+    /**
+     * Construye el filtro de QUERY_TAREAS a partir de sus criterios clave=valor
+     * @param comando comando recibido (el primer campo es el nombre del comando)
+     * @return filtro con los criterios indicados
+     * @throws IllegalArgumentException si un criterio no existe o su valor no es válido
+     */
+    private static FiltroTareas leerFiltro(ComandoTexto comando) {
+        Integer idProyecto = null;
+        Set<Estado> estados = EnumSet.noneOf(Estado.class);
+        Set<Urgencia> urgencias = EnumSet.noneOf(Urgencia.class);
+        LocalDate inicioDesde = null, inicioHasta = null, finDesde = null, finHasta = null;
+        FiltroTareas.Orden orden = FiltroTareas.Orden.ID;
+        boolean descendente = false;
+        int limite = LIMITE_CONSULTA;
+
+        for (int i = 1; i < comando.campos(); i++) {
+            if (comando.enBlanco(i)) {
+                continue;
+            }
+            String clave = comando.clave(i, CRITERIOS);
+            if (clave == null) {
+                throw new IllegalArgumentException("Se esperaba clave=valor: " + comando.texto(i));
+            }
+            switch (clave) {
+                case "proyecto":
+                    idProyecto = comando.enteroValor(i);
+                    break;
+                case "estado":
+                    for (int j = 0; j < comando.elementos(i); j++) {
+                        estados.add(Estado.desdeTexto(comando.elemento(i, j, ESTADOS)));
+                    }
+                    break;
+                case "urgencia":
+                    for (int j = 0; j < comando.elementos(i); j++) {
+                        urgencias.add(Urgencia.desdeTexto(comando.elemento(i, j, URGENCIAS)));
+                    }
+                    break;
+                case "inicio_desde":
+                    inicioDesde = LocalDate.ofEpochDay(comando.diaValor(i));
+                    break;
+                case "inicio_hasta":
+                    inicioHasta = LocalDate.ofEpochDay(comando.diaValor(i));
+                    break;
+                case "fin_desde":
+                    finDesde = LocalDate.ofEpochDay(comando.diaValor(i));
+                    break;
+                case "fin_hasta":
+                    finHasta = LocalDate.ofEpochDay(comando.diaValor(i));
+                    break;
+                case "orden":
+                    String textoOrden = comando.valor(i, TEXTOS_ORDEN);
+                    int posicion = Arrays.asList(TEXTOS_ORDEN).indexOf(textoOrden);
+                    if (posicion >= 0) {
+                        descendente = posicion >= ORDENES.length;
+                        orden = ORDENES[posicion % ORDENES.length];
+                    } else {
+                        // Mayúsculas o columna desconocida: Orden.desdeTexto decide
+                        descendente = textoOrden.startsWith("-");
+                        orden = FiltroTareas.Orden.desdeTexto(descendente ? textoOrden.substring(1) : textoOrden);
+                    }
+                    break;
+                case "limite":
+                    limite = comando.enteroValor(i);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Criterio de búsqueda desconocido: " + clave);
+            }
+        }
+        return new FiltroTareas(idProyecto, estados, urgencias, inicioDesde, inicioHasta, finDesde, finHasta,
+                orden, descendente, limite);
+    }
+
+    /**
+     * Inserta un lote de tareas recibido con INSERT_TAREAS_BATCH
+     * Las filas con datos mal formados no se envían a la base de datos y se informan como errores por fila;
+     * el resto se inserta en una única transacción mediante un lote JDBC.
+     * Las filas se leen por posiciones en el mismo ComandoTexto (ver ComandoTexto.partirFilas), como INSERT_TAREA.
+     * @param comando comando recibido: tras el nombre, tareas separadas por '|' con sus campos separados por ';'
+     * @param servicio operaciones sobre tareas; invalida la caché de los proyectos afectados
+     * @return respuesta con los identificadores generados y los errores por fila
+     */
+    private static String insertarLote(ComandoTexto comando, ServicioGestor servicio) {
+        int filas = comando.partirFilas(1);
+        if (filas > MAX_TAREAS_LOTE) {
+            return "ERROR El lote supera el máximo de " + MAX_TAREAS_LOTE + " tareas";
+        }
+        List<Tarea> tareas = new ArrayList<>();
+        List<Integer> numeroFila = new ArrayList<>();
+        List<String> errores = new ArrayList<>();
+
+        for (int i = 0; i < filas; i++) {
+            int c = comando.inicioFila(i);
+            try {
+                if (comando.camposFila(i) != 7) {
+                    throw new IllegalArgumentException("se esperaban 7 campos y hay " + comando.camposFila(i));
+                }
+                tareas.add(new Tarea(0, comando.texto(c), comando.texto(c + 1),
+                        Estado.desdeTexto(comando.texto(c + 2, ESTADOS)),
+                        Urgencia.desdeTexto(comando.texto(c + 3, URGENCIAS)),
+                        comando.dia(c + 4), comando.dia(c + 5), comando.entero(c + 6)));
+                numeroFila.add(i + 1);
+            } catch (RuntimeException e) {
+                errores.add("fila " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+        if (tareas.isEmpty()) {
+            return "ERROR Ninguna tarea válida errores=" + errores;
+        }
+
+        try {
+            int[] ids = servicio.crearTareas(tareas);
+            StringBuilder respuesta = new StringBuilder("OK ").append(ids.length).append(" tareas creadas ids=[");
+            for (int i = 0; i < ids.length; i++) {
+                respuesta.append(i == 0 ? "" : ", ").append(ids[i]);
+            }
+            respuesta.append(']');
+            if (!errores.isEmpty()) {
+                respuesta.append(" errores=").append(errores);
+            }
+            return respuesta.toString();
+        } catch (BatchUpdateException e) {
+            // El lote se ha deshecho entero; los contadores indican en qué fila se detuvo la base de datos
+            int fallida = Math.min(e.getUpdateCounts().length, tareas.size() - 1);
+            errores.add("fila " + numeroFila.get(fallida) + ": " + e.getMessage());
+            return "ERROR Lote no insertado errores=" + errores;
+        } catch (Exception e) {
+            return "ERROR Lote no insertado: " + e.getMessage();
         }
     }
 }
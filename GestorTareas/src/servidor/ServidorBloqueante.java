@@ -0,0 +1,285 @@
+package servidor;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import metricas.Metricas;
+import protocolo.BufferBinario;
+import protocolo.ComandoTexto;
+import protocolo.ProtocoloBinario;
+import protocolo.RespuestaTexto;
+
+/**
+ * Motor de red con sockets bloqueantes
+ * Cada cliente se atiende de forma concurrente en su propio hilo virtual, hasta un máximo de conexiones simultáneas.
+ */
+public class ServidorBloqueante implements MotorRed {
+	private static final int TAMANIO_BUFFER = 8 * 1024;
+	private final int puerto;
+	private final int inactividadMs;
+	private final int maxEnCurso;
+	private final ProcesadorComandos procesador;
+	private final Semaphore plazas;
+	private final ExecutorService ejecutor = Executors.newVirtualThreadPerTaskExecutor();
+	// Conexiones abiertas, necesarias para poder cerrarlas de forma ordenada al apagar el servidor
+	private final Set<Socket> conexiones = ConcurrentHashMap.newKeySet();
+	private final Metricas metricas = Metricas.global();
+	private volatile ServerSocket server;
+	private volatile boolean apagando = false;
+
+	/**
+	 * @param puerto puerto de escucha
+	 * @param maxConexiones número máximo de clientes atendidos a la vez
+	 * @param inactividadMs tiempo sin recibir comandos tras el que se cierra la conexión (0 = sin límite)
+	 * @param maxEnCurso comandos etiquetados sin responder por conexión antes de dejar de leer
+	 * @param procesador ejecuta los comandos de texto y binarios y devuelve su respuesta
+	 */
+	public ServidorBloqueante(int puerto, int maxConexiones, int inactividadMs, int maxEnCurso,
+			ProcesadorComandos procesador) {
+		this.puerto = puerto;
+		this.inactividadMs = inactividadMs;
+		this.maxEnCurso = maxEnCurso;
+		this.procesador = procesador;
+		this.plazas = new Semaphore(maxConexiones);
+	}
+
+	/**
+	 * Inicializa el ServerSocket en el puerto configurado y queda a la espera de conexiones de clientes
+	 */
+	@Override
+	public void ejecutar() throws IOException {
+		try (ServerSocket server = new ServerSocket(puerto)) {
+			this.server = server;
+			System.out.println("Servidor iniciado en puerto " + puerto);
+
+			while (!apagando) {
+				Socket cliente;
+				try {
+					cliente = server.accept();
+				} catch (SocketException e) {
+					// El ServerSocket se ha cerrado durante el apagado
+					break;
+				}
+
+				if (!plazas.tryAcquire()) {
+					metricas.conexionRechazada();
+					rechazar(cliente);
+					continue;
+				}
+				conexiones.add(cliente);
+				metricas.conexionAbierta();
+				System.out.println("Cliente conectado: " + cliente.getInetAddress());
+
+				ejecutor.execute(() -> {
+					try {
+						cliente.setSoTimeout(inactividadMs);
+						// Las respuestas largas salen en varios segmentos: sin esto el último espera al ACK retardado
+						cliente.setTcpNoDelay(true);
+						manejarCliente(cliente);
+					} catch (SocketException e) {
+						System.out.println("Error en la conexión con el cliente");
+					} finally {
+						conexiones.remove(cliente);
+						metricas.conexionCerrada();
+						plazas.release();
+						System.out.println("Cliente desconectado");
+					}
+				});
+			}
+		} catch (IOException e) {
+			if (!apagando) {
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Rechaza una conexión cuando se ha alcanzado el máximo de clientes simultáneos
+	 * @param cliente socket del cliente rechazado
+	 */
+	private static void rechazar(Socket cliente) {
+		try (cliente;
+		     BufferedWriter out = new BufferedWriter(new OutputStreamWriter(cliente.getOutputStream()))) {
+			out.write("ERROR Servidor ocupado, inténtelo más tarde\n");
+			out.flush();
+		} catch (IOException e) {
+			// El cliente ya no está disponible, no hay nada más que hacer
+		}
+		System.out.println("Cliente rechazado: " + cliente.getInetAddress());
+	}
+
+	/**
+	 * Apaga el motor de forma ordenada
+	 * Deja de aceptar conexiones, cierra la entrada de los clientes conectados para que no lleguen nuevos comandos
+	 * y espera a que terminen los comandos en curso antes de cerrar las conexiones
+	 */
+	@Override
+	public void detener(long esperaMs) {
+		apagando = true;
+		try {
+			if (server != null) {
+				server.close();
+			}
+		} catch (IOException e) {
+			// Se continúa con el apagado
+		}
+		for (Socket s : conexiones) {
+			try {
+				// La lectura devuelve fin de flujo tras el comando en curso, que sí puede responder
+				s.shutdownInput();
+			} catch (IOException e) {
+				// La conexión ya estaba cerrada
+			}
+		}
+		ejecutor.shutdown();
+		try {
+			if (!ejecutor.awaitTermination(esperaMs, TimeUnit.MILLISECONDS)) {
+				ejecutor.shutdownNow();
+				for (Socket s : conexiones) {
+					try {
+						s.close();
+					} catch (IOException e) {
+						// La conexión ya estaba cerrada
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Atiende al cliente
+	 * Crea los canales de entrada y salida, recibe los comandos enviados por el cliente, los procesa y devuelve una respuesta.
+	 * Si el cliente no envía ningún comando durante el tiempo de inactividad configurado se cierra la conexión.
+	 * Si la conexión empieza con el saludo binario se atiende con el protocolo binario (ver ProtocoloBinario);
+	 * en otro caso con el protocolo de texto, que admite el modo pipeline: los comandos precedidos de "#id;"
+	 * se atienden de forma concurrente (ver Pipeline).
+	 *
+	 * @param cliente socket que representa la conexión con el cliente
+	 */
+	private void manejarCliente(Socket cliente) {
+		try (cliente;
+		     BufferedInputStream entrada = new BufferedInputStream(cliente.getInputStream());
+		     BufferedOutputStream salidaBytes = new BufferedOutputStream(cliente.getOutputStream())) {
+
+			// Se mira el primer byte sin consumirlo para decidir el protocolo
+			entrada.mark(1);
+			int primero = entrada.read();
+			if (primero < 0) {
+				return;
+			}
+			entrada.reset();
+			if (ProtocoloBinario.esSaludo(primero)) {
+				atenderBinario(entrada, salidaBytes);
+			} else {
+				atenderTexto(cliente, entrada, salidaBytes);
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (SocketTimeoutException e) {
+			System.out.println("Cliente inactivo, se cierra la conexión: " + cliente.getInetAddress());
+		} catch (IOException e) {
+			System.out.println("Error en la conexión con el cliente");
+		}
+	}
+
+	/**
+	 * Atiende una conexión con el protocolo de texto
+	 * Las líneas se leen en un ComandoTexto y las respuestas se codifican en una RespuestaTexto, los dos de la
+	 * conexión y reutilizados en cada comando, de modo que leer, partir, responder y enviar un comando no crea
+	 * objetos; solo los comandos etiquetados pasan a String para el pipeline.
+	 */
+	private void atenderTexto(Socket cliente, InputStream entrada, OutputStream salidaBytes)
+			throws IOException, InterruptedException {
+		SalidaCliente salida = new SalidaCliente() {
+			@Override
+			public void enviar(String linea) throws IOException {
+				synchronized (salidaBytes) {
+					long inicio = Metricas.ahora();
+					salidaBytes.write(linea.getBytes(StandardCharsets.UTF_8));
+					salidaBytes.write('\n');
+					salidaBytes.flush();
+					metricas.registrarEnvio(Metricas.ahora() - inicio);
+				}
+			}
+
+			@Override
+			public void enviar(RespuestaTexto respuesta) throws IOException {
+				synchronized (salidaBytes) {
+					long inicio = Metricas.ahora();
+					respuesta.escribirLinea(salidaBytes);
+					salidaBytes.flush();
+					metricas.registrarEnvio(Metricas.ahora() - inicio);
+				}
+			}
+
+			@Override
+			public void cerrar() {
+				try {
+					cliente.close();
+				} catch (IOException e) {
+					// La conexión ya estaba cerrada
+				}
+			}
+		};
+		Pipeline pipeline = new Pipeline(procesador::procesarTexto, salida, Thread::startVirtualThread, maxEnCurso);
+		ComandoTexto comando = new ComandoTexto(TAMANIO_BUFFER);
+		RespuestaTexto respuesta = new RespuestaTexto(TAMANIO_BUFFER);
+
+		/*
+		 * Lee una línea enviada por el cliente, la procesa,
+		 * codifica la respuesta y la envía al cliente.
+		 * Los comandos etiquetados (#id;COMANDO) se procesan en paralelo y se responden con su etiqueta.
+		 */
+		try {
+			while (comando.leer(entrada)) {
+				if (comando.esEtiquetado()) {
+					pipeline.recibir(comando.toString());
+					continue;
+				}
+				respuesta.limpiar();
+				procesador.procesarTexto(comando, respuesta, salida);
+			}
+		} finally {
+			pipeline.esperarPendientes();
+			procesador.conexionCerrada(salida);
+		}
+	}
+
+	/**
+	 * Atiende una conexión con el protocolo binario
+	 * Responde al saludo y después procesa las tramas de una en una, reutilizando los mismos buffers.
+	 */
+	private void atenderBinario(InputStream in, OutputStream out) throws IOException {
+		byte[] saludo = in.readNBytes(ProtocoloBinario.SALUDO.length);
+		if (!Arrays.equals(saludo, ProtocoloBinario.SALUDO)) {
+			throw new IOException("Saludo binario no reconocido");
+		}
+		out.write(ProtocoloBinario.SALUDO);
+		out.flush();
+
+		BufferBinario peticion = new BufferBinario(4096);
+		BufferBinario respuesta = new BufferBinario(4096);
+		while (peticion.leerTrama(in, ProtocoloBinario.MAX_TRAMA)) {
+			respuesta.limpiar();
+			procesador.procesarBinario(peticion, respuesta);
+			long inicio = Metricas.ahora();
+			respuesta.escribirTrama(out);
+			out.flush();
+			metricas.registrarEnvio(Metricas.ahora() - inicio);
+		}
+	}
+}
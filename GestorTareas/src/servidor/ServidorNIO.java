@@ -0,0 +1,698 @@
+package servidor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import metricas.Metricas;
+import protocolo.BufferBinario;
+import protocolo.ProtocoloBinario;
+import protocolo.RespuestaTexto;
+
+/**
+ * Motor de red no bloqueante basado en java.nio (Selector y SocketChannel)
+ * - Un número pequeño y fijo de hilos de E/S atiende todas las conexiones; cada uno tiene su propio Selector.
+ * - Cada hilo de E/S lee y escribe a través de sus propios ByteBuffer directos; las líneas se delimitan
+ *   byte a byte al leer y los hilos de E/S nunca bloquean.
+ * - Los comandos, que llaman a las DAO y sí bloquean, se ejecutan en un pool de trabajadores aparte.
+ * - El primer byte recibido decide el protocolo de la conexión: texto por líneas o tramas binarias (ver ProtocoloBinario).
+ * Una conexión inactiva no ocupa ningún hilo: el despacho de sus comandos solo existe mientras tiene
+ * líneas pendientes, por lo que se pueden mantener miles de clientes con muy pocos hilos.
+ */
+public class ServidorNIO implements MotorRed {
+	private static final int TAMANIO_BUFFER = 16 * 1024;
+	private static final int MAX_LINEA = 64 * 1024 * 1024;
+	// Líneas pendientes de procesar por conexión a partir de las cuales se deja de leer del socket
+	private static final int MAX_COLA_ENTRADA = 1024;
+	// Bytes pendientes de enviar por conexión a partir de los cuales quien responde espera a que se vacíen
+	private static final int MAX_SALIDA_PENDIENTE = 4 * 1024 * 1024;
+
+	private static final int MODO_DESCONOCIDO = 0;
+	private static final int MODO_TEXTO = 1;
+	private static final int MODO_BINARIO = 2;
+
+	private final int puerto;
+	private final int maxConexiones;
+	private final long inactividadNanos;
+	private final int maxEnCurso;
+	private final ProcesadorComandos procesador;
+	private final ExecutorService trabajadores;
+	private final BucleES[] bucles;
+	private final Set<ConexionNIO> conexiones = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger siguienteBucle = new AtomicInteger();
+	private final Metricas metricas = Metricas.global();
+	private volatile ServerSocketChannel servidor;
+	private volatile boolean apagando;
+
+	/**
+	 * @param puerto puerto de escucha
+	 * @param maxConexiones número máximo de clientes atendidos a la vez
+	 * @param inactividadMs tiempo sin recibir comandos tras el que se cierra la conexión (0 = sin límite)
+	 * @param maxEnCurso comandos etiquetados sin responder por conexión antes de dejar de procesar su entrada
+	 * @param hilosES número de hilos de E/S (selectores)
+	 * @param hilosTrabajo número de hilos del pool que ejecuta los comandos
+	 * @param procesador ejecuta los comandos de texto y binarios y devuelve su respuesta
+	 * @throws IOException si no se pueden abrir los selectores
+	 */
+	public ServidorNIO(int puerto, int maxConexiones, int inactividadMs, int maxEnCurso,
+			int hilosES, int hilosTrabajo, ProcesadorComandos procesador) throws IOException {
+		this.puerto = puerto;
+		this.maxConexiones = maxConexiones;
+		this.inactividadNanos = inactividadMs > 0 ? TimeUnit.MILLISECONDS.toNanos(inactividadMs) : Long.MAX_VALUE;
+		this.maxEnCurso = maxEnCurso;
+		this.procesador = procesador;
+		AtomicInteger numero = new AtomicInteger();
+		this.trabajadores = Executors.newFixedThreadPool(hilosTrabajo,
+				r -> new Thread(r, "nio-trabajador-" + numero.incrementAndGet()));
+		this.bucles = new BucleES[hilosES];
+		for (int i = 0; i < hilosES; i++) {
+			bucles[i] = new BucleES("nio-es-" + (i + 1));
+		}
+	}
+
+	/**
+	 * Abre el puerto y acepta conexiones en el hilo llamante, repartiéndolas entre los hilos de E/S
+	 */
+	@Override
+	public void ejecutar() throws IOException {
+		try (ServerSocketChannel servidor = ServerSocketChannel.open()) {
+			this.servidor = servidor;
+			servidor.bind(new InetSocketAddress(puerto), 1024);
+			for (BucleES bucle : bucles) {
+				bucle.hilo.start();
+			}
+			System.out.println("Servidor iniciado en puerto " + puerto + " (NIO)");
+
+			while (!apagando) {
+				SocketChannel canal;
+				try {
+					canal = servidor.accept();
+				} catch (AsynchronousCloseException e) {
+					// El canal se ha cerrado durante el apagado
+					break;
+				}
+				if (conexiones.size() >= maxConexiones) {
+					metricas.conexionRechazada();
+					rechazar(canal);
+					continue;
+				}
+				canal.configureBlocking(false);
+				canal.socket().setTcpNoDelay(true);
+				BucleES bucle = bucles[Math.floorMod(siguienteBucle.getAndIncrement(), bucles.length)];
+				ConexionNIO conexion = new ConexionNIO(canal, bucle);
+				conexiones.add(conexion);
+				metricas.conexionAbierta();
+				System.out.println("Cliente conectado: " + canal.socket().getInetAddress());
+				bucle.ejecutar(() -> bucle.registrar(conexion));
+			}
+		} catch (IOException e) {
+			if (!apagando) {
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Rechaza una conexión cuando se ha alcanzado el máximo de clientes simultáneos
+	 */
+	private static void rechazar(SocketChannel canal) {
+		try (canal) {
+			canal.write(ByteBuffer.wrap("ERROR Servidor ocupado, inténtelo más tarde\n".getBytes(StandardCharsets.UTF_8)));
+			System.out.println("Cliente rechazado: " + canal.socket().getInetAddress());
+		} catch (IOException e) {
+			// El cliente ya no está disponible, no hay nada más que hacer
+		}
+	}
+
+	/**
+	 * Deja de aceptar conexiones y de leer comandos, espera a que se respondan los que ya se habían recibido
+	 * y cierra las conexiones, los hilos de E/S y el pool de trabajadores
+	 */
+	@Override
+	public void detener(long esperaMs) {
+		apagando = true;
+		try {
+			if (servidor != null) {
+				servidor.close();
+			}
+		} catch (IOException e) {
+			// Se continúa con el apagado
+		}
+		for (ConexionNIO c : conexiones) {
+			c.bucle.ejecutar(c::finEntrada);
+		}
+		long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(esperaMs);
+		try {
+			while (!conexiones.isEmpty() && System.nanoTime() < limite) {
+				Thread.sleep(20);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (ConexionNIO c : conexiones) {
+			c.cerrar();
+		}
+		for (BucleES bucle : bucles) {
+			bucle.detener();
+		}
+		trabajadores.shutdownNow();
+	}
+
+	/**
+	 * Hilo de E/S: espera eventos de sus conexiones con un Selector y lee o escribe sin bloquear
+	 * Las demás clases solo le piden trabajo a través de ejecutar(), que despierta al selector.
+	 */
+	private final class BucleES implements Runnable {
+		private final Selector selector;
+		private final Thread hilo;
+		private final Queue<Runnable> tareas = new ConcurrentLinkedQueue<>();
+		// Buffers directos compartidos por todas las conexiones de este hilo
+		private final ByteBuffer entrada = ByteBuffer.allocateDirect(TAMANIO_BUFFER);
+		private final ByteBuffer salida = ByteBuffer.allocateDirect(TAMANIO_BUFFER);
+		private volatile boolean activo = true;
+
+		BucleES(String nombre) throws IOException {
+			this.selector = Selector.open();
+			this.hilo = new Thread(this, nombre);
+		}
+
+		void ejecutar(Runnable tarea) {
+			tareas.add(tarea);
+			selector.wakeup();
+		}
+
+		void registrar(ConexionNIO conexion) {
+			try {
+				conexion.clave = conexion.canal.register(selector, SelectionKey.OP_READ, conexion);
+			} catch (IOException e) {
+				conexion.cerrar();
+			}
+		}
+
+		void detener() {
+			activo = false;
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			long ultimaRevision = System.nanoTime();
+			try {
+				while (activo) {
+					selector.select(1000);
+					Runnable tarea;
+					while ((tarea = tareas.poll()) != null) {
+						tarea.run();
+					}
+					Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+					while (it.hasNext()) {
+						SelectionKey clave = it.next();
+						it.remove();
+						ConexionNIO conexion = (ConexionNIO) clave.attachment();
+						if (!clave.isValid()) {
+							continue;
+						}
+						if (clave.isReadable()) {
+							conexion.leer(entrada);
+						}
+						if (clave.isValid() && clave.isWritable()) {
+							conexion.escribir(salida);
+						}
+					}
+					long ahora = System.nanoTime();
+					if (ahora - ultimaRevision > TimeUnit.SECONDS.toNanos(1)) {
+						ultimaRevision = ahora;
+						cerrarInactivas(ahora);
+					}
+				}
+			} catch (IOException | ClosedSelectorException e) {
+				System.out.println("Error en el hilo de E/S: " + e.getMessage());
+			} finally {
+				for (SelectionKey clave : selector.keys()) {
+					((ConexionNIO) clave.attachment()).cerrar();
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					// El selector ya no se usa
+				}
+			}
+		}
+
+		private void cerrarInactivas(long ahora) {
+			for (SelectionKey clave : selector.keys()) {
+				ConexionNIO conexion = (ConexionNIO) clave.attachment();
+				if (ahora - conexion.ultimaActividad > inactividadNanos && conexion.inactiva()) {
+					System.out.println("Cliente inactivo, se cierra la conexión: " + conexion.canal.socket().getInetAddress());
+					conexion.cerrar();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Estado de una conexión de cliente en el motor NIO
+	 * La lectura, la escritura en el socket y los cambios de interés del selector solo los hace su hilo de E/S.
+	 * Las líneas o tramas recibidas se despachan en orden por un hilo virtual que solo existe mientras hay
+	 * entrada pendiente.
+	 */
+	private final class ConexionNIO implements SalidaCliente {
+		private final SocketChannel canal;
+		private final BucleES bucle;
+		private final Pipeline pipeline;
+		private SelectionKey clave;
+		private volatile long ultimaActividad = System.nanoTime();
+
+		// Protocolo de la conexión, decidido por el primer byte recibido (solo hilo de E/S)
+		private int modo = MODO_DESCONOCIDO;
+		private boolean saludoRecibido;
+
+		// Bytes de la línea o trama en curso que todavía no ha terminado de llegar (solo hilo de E/S)
+		private byte[] lineaParcial = new byte[256];
+		private int longitudParcial;
+
+		// Buffers del protocolo binario; solo los usa el comando en curso, que es siempre uno
+		private final BufferBinario peticion = new BufferBinario(1024);
+		private final BufferBinario respuesta = new BufferBinario(1024);
+
+		// Entrada pendiente de despachar (líneas String o tramas byte[]); protegida por el cerrojo de 'recibidas'
+		private final ArrayDeque<Object> recibidas = new ArrayDeque<>();
+		private boolean despachando;
+		private boolean finEntrada;
+		private boolean lecturaSuspendida;
+
+		// Salida pendiente de enviar; protegida por el cerrojo de 'pendientes'
+		private final ArrayDeque<ByteBuffer> pendientes = new ArrayDeque<>();
+		private int bytesPendientes;
+		private boolean cerrarTrasEnviar;
+		private volatile boolean cerrada;
+
+		ConexionNIO(SocketChannel canal, BucleES bucle) {
+			this.canal = canal;
+			this.bucle = bucle;
+			this.pipeline = new Pipeline(procesador::procesarTexto, this, trabajadores, maxEnCurso);
+		}
+
+		/**
+		 * Lee lo disponible en el socket y separa las líneas o tramas completas (hilo de E/S)
+		 */
+		void leer(ByteBuffer buffer) {
+			int leidos;
+			try {
+				buffer.clear();
+				leidos = canal.read(buffer);
+			} catch (IOException e) {
+				cerrar();
+				return;
+			}
+			if (leidos < 0) {
+				finEntrada();
+				return;
+			}
+			ultimaActividad = System.nanoTime();
+			buffer.flip();
+			if (!buffer.hasRemaining()) {
+				return;
+			}
+			if (modo == MODO_DESCONOCIDO) {
+				modo = ProtocoloBinario.esSaludo(buffer.get(buffer.position())) ? MODO_BINARIO : MODO_TEXTO;
+			}
+			if (modo == MODO_BINARIO) {
+				leerTramas(buffer);
+			} else {
+				leerLineas(buffer);
+			}
+		}
+
+		private void leerLineas(ByteBuffer buffer) {
+			while (buffer.hasRemaining()) {
+				byte b = buffer.get();
+				if (b == '\n') {
+					int longitud = longitudParcial;
+					if (longitud > 0 && lineaParcial[longitud - 1] == '\r') {
+						longitud--;
+					}
+					encolar(new String(lineaParcial, 0, longitud, StandardCharsets.UTF_8));
+					longitudParcial = 0;
+				} else {
+					if (longitudParcial == lineaParcial.length) {
+						if (longitudParcial >= MAX_LINEA) {
+							enviarSinEsperar(codificar("ERROR Línea demasiado larga"));
+							finEntrada();
+							return;
+						}
+						lineaParcial = Arrays.copyOf(lineaParcial, Math.min(MAX_LINEA, longitudParcial * 2));
+					}
+					lineaParcial[longitudParcial++] = b;
+				}
+			}
+		}
+
+		/**
+		 * Acumula los bytes recibidos y encola cada trama completa; la primera vez comprueba y responde el saludo
+		 * Una trama mal formada o demasiado larga termina la entrada de la conexión.
+		 */
+		private void leerTramas(ByteBuffer buffer) {
+			int n = buffer.remaining();
+			if (longitudParcial + n > lineaParcial.length) {
+				lineaParcial = Arrays.copyOf(lineaParcial, Math.max(lineaParcial.length * 2, longitudParcial + n));
+			}
+			buffer.get(lineaParcial, longitudParcial, n);
+			longitudParcial += n;
+
+			int pos = 0;
+			if (!saludoRecibido) {
+				int tamanio = ProtocoloBinario.SALUDO.length;
+				if (longitudParcial < tamanio) {
+					return;
+				}
+				if (!Arrays.equals(lineaParcial, 0, tamanio, ProtocoloBinario.SALUDO, 0, tamanio)) {
+					finEntrada();
+					return;
+				}
+				saludoRecibido = true;
+				enviarSinEsperar(ByteBuffer.wrap(ProtocoloBinario.SALUDO.clone()));
+				pos = tamanio;
+			}
+			while (true) {
+				// Longitud de la trama (varint); puede no haber llegado entera
+				int longitud = 0;
+				int p = pos;
+				boolean completa = false;
+				for (int desplazamiento = 0; p < longitudParcial; desplazamiento += 7) {
+					if (desplazamiento > 28) {
+						finEntrada();
+						return;
+					}
+					int b = lineaParcial[p++];
+					longitud |= (b & 0x7F) << desplazamiento;
+					if ((b & 0x80) == 0) {
+						completa = true;
+						break;
+					}
+				}
+				if (!completa) {
+					break;
+				}
+				if (longitud < 0 || longitud > ProtocoloBinario.MAX_TRAMA) {
+					finEntrada();
+					return;
+				}
+				if (longitudParcial - p < longitud) {
+					break;
+				}
+				encolar(Arrays.copyOfRange(lineaParcial, p, p + longitud));
+				pos = p + longitud;
+			}
+			System.arraycopy(lineaParcial, pos, lineaParcial, 0, longitudParcial - pos);
+			longitudParcial -= pos;
+		}
+
+		/**
+		 * Deja de leer del socket; las líneas ya recibidas se responden y después se cierra la conexión (hilo de E/S)
+		 */
+		void finEntrada() {
+			if (clave != null && clave.isValid()) {
+				clave.interestOps(clave.interestOps() & ~SelectionKey.OP_READ);
+			}
+			synchronized (recibidas) {
+				finEntrada = true;
+				lanzarDespacho();
+			}
+		}
+
+		private void encolar(Object entrada) {
+			synchronized (recibidas) {
+				recibidas.add(entrada);
+				if (recibidas.size() >= MAX_COLA_ENTRADA && !lecturaSuspendida) {
+					lecturaSuspendida = true;
+					clave.interestOps(clave.interestOps() & ~SelectionKey.OP_READ);
+				}
+				lanzarDespacho();
+			}
+		}
+
+		private void lanzarDespacho() {
+			if (!despachando) {
+				despachando = true;
+				Thread.startVirtualThread(this::despachar);
+			}
+		}
+
+		/**
+		 * Procesa en orden las líneas y tramas recibidas. Las líneas etiquetadas se entregan al pipeline;
+		 * el resto se ejecutan en el pool de trabajadores y se responden antes de pasar a la siguiente.
+		 */
+		private void despachar() {
+			try {
+				while (true) {
+					Object entrada;
+					boolean terminar = false;
+					synchronized (recibidas) {
+						entrada = recibidas.poll();
+						if (entrada == null) {
+							if (!finEntrada) {
+								despachando = false;
+								return;
+							}
+							terminar = true;
+						} else if (lecturaSuspendida && recibidas.size() < MAX_COLA_ENTRADA / 2) {
+							lecturaSuspendida = false;
+							bucle.ejecutar(this::reanudarLectura);
+						}
+					}
+					if (terminar) {
+						pipeline.esperarPendientes();
+						synchronized (pendientes) {
+							cerrarTrasEnviar = true;
+						}
+						bucle.ejecutar(this::actualizarEscritura);
+						return;
+					}
+					if (entrada instanceof byte[] trama) {
+						enviarBytes(trabajadores.submit(() -> procesarTrama(trama)).get());
+					} else if (Pipeline.esEtiquetado((String) entrada)) {
+						pipeline.recibir((String) entrada);
+					} else {
+						String comando = (String) entrada;
+						trabajadores.submit(() -> {
+							procesador.procesarTexto(comando, this);
+							return null;
+						}).get();
+					}
+				}
+			} catch (InterruptedException e) {
+				cerrar();
+			} catch (IOException | ExecutionException | RuntimeException e) {
+				cerrar();
+			}
+		}
+
+		/**
+		 * Ejecuta una trama binaria y devuelve la respuesta ya enmarcada (hilo trabajador)
+		 */
+		private byte[] procesarTrama(byte[] trama) {
+			peticion.cargar(trama, 0, trama.length);
+			respuesta.limpiar();
+			procesador.procesarBinario(peticion, respuesta);
+			return respuesta.aTrama();
+		}
+
+		private void reanudarLectura() {
+			synchronized (recibidas) {
+				if (clave.isValid() && !finEntrada && !lecturaSuspendida) {
+					clave.interestOps(clave.interestOps() | SelectionKey.OP_READ);
+				}
+			}
+		}
+
+		/**
+		 * Encola una línea de respuesta. Si hay demasiados bytes pendientes espera a que el hilo de E/S los envíe.
+		 */
+		@Override
+		public void enviar(String linea) throws IOException {
+			encolarSalida(codificar(linea));
+		}
+
+		/**
+		 * Encola una respuesta ya codificada; se copia una vez, porque el buffer es del hilo que la ha codificado
+		 */
+		@Override
+		public void enviar(RespuestaTexto respuesta) throws IOException {
+			encolarSalida(respuesta.copiarLinea());
+		}
+
+		/**
+		 * Encola una trama binaria de respuesta, con la misma espera que enviar()
+		 */
+		void enviarBytes(byte[] trama) throws IOException {
+			encolarSalida(ByteBuffer.wrap(trama));
+		}
+
+		private void encolarSalida(ByteBuffer datos) throws IOException {
+			synchronized (pendientes) {
+				while (bytesPendientes > MAX_SALIDA_PENDIENTE && !cerrada) {
+					try {
+						pendientes.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("Interrumpido esperando para enviar", e);
+					}
+				}
+				if (cerrada) {
+					throw new IOException("Conexión cerrada");
+				}
+				pendientes.add(datos);
+				bytesPendientes += datos.remaining();
+			}
+			bucle.ejecutar(this::actualizarEscritura);
+		}
+
+		/**
+		 * Encola datos sin esperar nunca; solo para el saludo y los mensajes de error desde el hilo de E/S
+		 */
+		private void enviarSinEsperar(ByteBuffer datos) {
+			synchronized (pendientes) {
+				pendientes.add(datos);
+				bytesPendientes += datos.remaining();
+			}
+			actualizarEscritura();
+		}
+
+		private ByteBuffer codificar(String linea) {
+			byte[] bytes = linea.getBytes(StandardCharsets.UTF_8);
+			return ByteBuffer.allocate(bytes.length + 1).put(bytes).put((byte) '\n').flip();
+		}
+
+		/**
+		 * Activa el interés de escritura si hay datos pendientes, o cierra si ya se ha enviado todo (hilo de E/S)
+		 */
+		private void actualizarEscritura() {
+			if (clave == null || !clave.isValid()) {
+				return;
+			}
+			boolean hayDatos;
+			boolean cerrarAhora;
+			synchronized (pendientes) {
+				hayDatos = !pendientes.isEmpty();
+				cerrarAhora = !hayDatos && cerrarTrasEnviar;
+			}
+			if (cerrarAhora) {
+				cerrar();
+			} else if (hayDatos) {
+				clave.interestOps(clave.interestOps() | SelectionKey.OP_WRITE);
+			}
+		}
+
+		/**
+		 * Envía por el socket todo lo que admita sin bloquear, copiándolo al buffer directo (hilo de E/S)
+		 */
+		void escribir(ByteBuffer buffer) {
+			try {
+				while (true) {
+					buffer.clear();
+					synchronized (pendientes) {
+						for (ByteBuffer datos : pendientes) {
+							if (!buffer.hasRemaining()) {
+								break;
+							}
+							ByteBuffer trozo = datos.duplicate();
+							trozo.limit(trozo.position() + Math.min(trozo.remaining(), buffer.remaining()));
+							buffer.put(trozo);
+						}
+					}
+					buffer.flip();
+					if (!buffer.hasRemaining()) {
+						break;
+					}
+					long inicio = Metricas.ahora();
+					int escritos = canal.write(buffer);
+					metricas.registrarEnvio(Metricas.ahora() - inicio);
+					descontar(escritos);
+					if (buffer.hasRemaining()) {
+						// El socket no admite más por ahora; se seguirá cuando vuelva a estar listo
+						return;
+					}
+				}
+			} catch (IOException e) {
+				cerrar();
+				return;
+			}
+			clave.interestOps(clave.interestOps() & ~SelectionKey.OP_WRITE);
+			actualizarEscritura();
+		}
+
+		/**
+		 * Quita de la cola de salida los bytes ya enviados y despierta a quien esperaba para enviar
+		 */
+		private void descontar(int escritos) {
+			synchronized (pendientes) {
+				bytesPendientes -= escritos;
+				while (escritos > 0) {
+					ByteBuffer primero = pendientes.peek();
+					int n = Math.min(escritos, primero.remaining());
+					primero.position(primero.position() + n);
+					escritos -= n;
+					if (!primero.hasRemaining()) {
+						pendientes.poll();
+					}
+				}
+				pendientes.notifyAll();
+			}
+		}
+
+		/**
+		 * Indica si la conexión no tiene trabajo en curso, para poder cerrarla por inactividad
+		 */
+		boolean inactiva() {
+			synchronized (recibidas) {
+				if (despachando || pipeline.hayPendientes()) {
+					return false;
+				}
+			}
+			synchronized (pendientes) {
+				return pendientes.isEmpty();
+			}
+		}
+
+		@Override
+		public void cerrar() {
+			synchronized (pendientes) {
+				if (cerrada) {
+					return;
+				}
+				cerrada = true;
+				pendientes.notifyAll();
+			}
+			try {
+				canal.close();
+			} catch (IOException e) {
+				// La conexión ya no es utilizable
+			}
+			if (conexiones.remove(this)) {
+				procesador.conexionCerrada(this);
+				metricas.conexionCerrada();
+				System.out.println("Cliente desconectado");
+			}
+		}
+	}
+}
@@ -0,0 +1,355 @@
+package servidor;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import modelos.Tarea;
+
+/**
+ * Motor de vencimientos: avisa de cada tarea abierta (no finalizada) cuya fecha de fin ha pasado, sin consultar la
+ * base de datos cada cierto tiempo
+ * Guarda en memoria la fecha de fin y el proyecto de las tareas abiertas que la tienen, y en una cola ordenada
+ * (TreeSet de claves día y id) las que todavía no se han avisado. Quien cambia tareas (ServicioGestor) lo mantiene al
+ * día en cada alta, modificación y borrado, con un coste O(log n) por cambio. Un único temporizador está programado
+ * para el principio del día siguiente a la fecha de fin más próxima; al dispararse saca de la cola las que han
+ * vencido, las escribe en la salida estándar, se las entrega al aviso y se programa para la siguiente. Solo se reprograma cuando cambia la primera de
+ * la cola, de modo que la mayoría de los cambios no tocan el temporizador.
+ * Una tarea se avisa una sola vez; vuelve a la cola si cambia su fecha de fin. Las fechas son días en la zona
+ * horaria del servidor: una tarea vence al terminar el día de su fecha de fin. También lleva la cuenta de las tareas
+ * vencidas (ya avisadas) de cada proyecto, para el resumen de STATS_PROYECTO.
+ * Es seguro para usarse desde varios hilos a la vez; el aviso se llama desde el hilo del temporizador, sin el
+ * cerrojo tomado.
+ */
+final class Vencimientos {
+	/** Máximo de tareas vencidas que se sacan de la cola en cada disparo; el resto sale en el siguiente, enseguida */
+	private static final int MAX_POR_DISPARO = 10_000;
+	/** Máximo de tareas vencidas que se escriben en el registro en cada disparo; del resto solo se da el número */
+	private static final int MAX_REGISTRO = 100;
+
+	/**
+	 * Recibe las tareas vencidas
+	 */
+	interface Aviso {
+		/**
+		 * @param idTarea tarea vencida
+		 * @param idProyecto proyecto de la tarea
+		 * @param fechaFin fecha de fin que ha pasado
+		 */
+		void vencida(int idTarea, int idProyecto, LocalDate fechaFin);
+	}
+
+	/**
+	 * Fecha de fin y proyecto de una tarea abierta
+	 */
+	private static final class Entrada {
+		int dia;
+		int proyecto;
+		boolean avisada;
+
+		Entrada(int dia, int proyecto) {
+			this.dia = dia;
+			this.proyecto = proyecto;
+		}
+	}
+
+	private final ZoneId zona = ZoneId.systemDefault();
+	private final Aviso aviso;
+	private final Map<Integer, Entrada> tareas = new HashMap<>();
+	private final Map<Integer, Set<Integer>> porProyecto = new HashMap<>();
+	private final TreeSet<Long> cola = new TreeSet<>();
+	private final Map<Integer, Integer> vencidasPorProyecto = new HashMap<>();
+	private ScheduledExecutorService temporizador;
+	private ScheduledFuture<?> disparo;
+	/** Día a cuyo principio está programado el disparo, o Long.MAX_VALUE si no hay ninguno */
+	private long diaDisparo = Long.MAX_VALUE;
+	private long avisadas;
+
+	/**
+	 * @param aviso recibe cada tarea vencida
+	 */
+	Vencimientos(Aviso aviso) {
+		this.aviso = aviso;
+	}
+
+	/**
+	 * Guarda una tarea abierta con fecha de fin durante la carga inicial, antes de iniciar
+	 * Las que ya habían vencido al arrancar no se avisan, porque se avisaron antes de detener el servidor o
+	 * cuando aún no había motor de vencimientos; solo se cuentan.
+	 * @param diaFin fecha de fin en días desde 1970-01-01
+	 * @return true si la tarea ya había vencido
+	 */
+	synchronized boolean cargar(int idTarea, int idProyecto, int diaFin) {
+		boolean vencida = diaFin < hoy();
+		poner(idTarea, idProyecto, diaFin, vencida);
+		return vencida;
+	}
+
+	/**
+	 * Empieza a avisar, una vez cargadas las tareas abiertas con fecha de fin
+	 */
+	synchronized void iniciar() {
+		temporizador = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread hilo = new Thread(r, "vencimientos");
+			hilo.setDaemon(true);
+			return hilo;
+		});
+		reprogramar();
+	}
+
+	/**
+	 * @return true si se ha iniciado; mientras no, los cambios no se siguen
+	 */
+	synchronized boolean activo() {
+		return temporizador != null;
+	}
+
+	/**
+	 * @return número de tareas abiertas del proyecto cuya fecha de fin ha pasado, o -1 si no se ha iniciado
+	 */
+	synchronized int vencidas(int idProyecto) {
+		return temporizador == null ? -1 : vencidasPorProyecto.getOrDefault(idProyecto, 0);
+	}
+
+	/**
+	 * Sigue una tarea con su estado y fecha de fin actuales (alta, o después de leerla de nuevo)
+	 * @param diaFin fecha de fin en días desde 1970-01-01, o Tarea.SIN_FECHA
+	 * @param abierta si no está finalizada
+	 */
+	synchronized void seguir(int idTarea, int idProyecto, int diaFin, boolean abierta) {
+		if (temporizador == null) {
+			return;
+		}
+		if (!abierta || diaFin == Tarea.SIN_FECHA) {
+			quitar(idTarea);
+			return;
+		}
+		Entrada e = tareas.get(idTarea);
+		if (e != null && e.dia == diaFin) {
+			moverDeProyecto(idTarea, e, idProyecto);
+			return;
+		}
+		quitar(idTarea);
+		poner(idTarea, idProyecto, diaFin, false);
+		reprogramar();
+	}
+
+	/**
+	 * Cambia la fecha de fin de una tarea seguida; si ya se había avisado, vuelve a la cola con la fecha nueva
+	 * @return false si la tarea no se sigue (está finalizada, no tenía fecha o no existe) y hay que leerla
+	 */
+	synchronized boolean cambiarFecha(int idTarea, int diaFin) {
+		if (temporizador == null) {
+			return true;
+		}
+		Entrada e = tareas.get(idTarea);
+		if (e == null) {
+			return false;
+		}
+		if (e.dia != diaFin) {
+			int proyecto = e.proyecto;
+			quitar(idTarea);
+			poner(idTarea, proyecto, diaFin, false);
+			reprogramar();
+		}
+		return true;
+	}
+
+	/**
+	 * @return true si la tarea se sigue o el motor no está activo (en ambos casos no hace falta leerla)
+	 */
+	synchronized boolean sigue(int idTarea) {
+		return temporizador == null || tareas.containsKey(idTarea);
+	}
+
+	/**
+	 * Deja de seguir una tarea (finalizada o eliminada)
+	 */
+	synchronized void dejar(int idTarea) {
+		if (temporizador != null && quitar(idTarea)) {
+			reprogramar();
+		}
+	}
+
+	/**
+	 * Deja de seguir todas las tareas de un proyecto eliminado
+	 */
+	synchronized void dejarProyecto(int idProyecto) {
+		Set<Integer> suyas = porProyecto.remove(idProyecto);
+		if (suyas == null) {
+			return;
+		}
+		for (int id : suyas) {
+			Entrada e = tareas.remove(id);
+			if (!e.avisada) {
+				cola.remove(clave(e.dia, id));
+			}
+		}
+		vencidasPorProyecto.remove(idProyecto);
+		reprogramar();
+	}
+
+	/**
+	 * Pasa las tareas seguidas de un proyecto a otro
+	 */
+	synchronized void moverProyecto(int idOrigen, int idDestino) {
+		Set<Integer> suyas = porProyecto.remove(idOrigen);
+		if (suyas == null) {
+			return;
+		}
+		for (int id : suyas) {
+			tareas.get(id).proyecto = idDestino;
+		}
+		Set<Integer> destino = porProyecto.get(idDestino);
+		if (destino == null) {
+			porProyecto.put(idDestino, suyas);
+		} else {
+			destino.addAll(suyas);
+		}
+		Integer vencidas = vencidasPorProyecto.remove(idOrigen);
+		if (vencidas != null) {
+			vencidasPorProyecto.merge(idDestino, vencidas, Integer::sum);
+		}
+	}
+
+	// Con el cerrojo tomado
+
+	/**
+	 * @param avisada si ya se ha avisado, en cuyo caso no entra en la cola
+	 */
+	private void poner(int idTarea, int idProyecto, int dia, boolean avisada) {
+		Entrada e = new Entrada(dia, idProyecto);
+		e.avisada = avisada;
+		tareas.put(idTarea, e);
+		porProyecto.computeIfAbsent(idProyecto, k -> new HashSet<>()).add(idTarea);
+		if (avisada) {
+			contarVencida(idProyecto, 1);
+		} else {
+			cola.add(clave(dia, idTarea));
+		}
+	}
+
+	/**
+	 * @return true si la tarea estaba en la cola
+	 */
+	private boolean quitar(int idTarea) {
+		Entrada e = tareas.remove(idTarea);
+		if (e == null) {
+			return false;
+		}
+		quitarDeProyecto(idTarea, e.proyecto);
+		if (e.avisada) {
+			contarVencida(e.proyecto, -1);
+			return false;
+		}
+		return cola.remove(clave(e.dia, idTarea));
+	}
+
+	private void moverDeProyecto(int idTarea, Entrada e, int idProyecto) {
+		if (e.proyecto != idProyecto) {
+			quitarDeProyecto(idTarea, e.proyecto);
+			porProyecto.computeIfAbsent(idProyecto, k -> new HashSet<>()).add(idTarea);
+			if (e.avisada) {
+				contarVencida(e.proyecto, -1);
+				contarVencida(idProyecto, 1);
+			}
+			e.proyecto = idProyecto;
+		}
+	}
+
+	private void contarVencida(int idProyecto, int delta) {
+		vencidasPorProyecto.merge(idProyecto, delta, (a, b) -> a + b == 0 ? null : a + b);
+	}
+
+	private void quitarDeProyecto(int idTarea, int idProyecto) {
+		Set<Integer> suyas = porProyecto.get(idProyecto);
+		if (suyas != null && suyas.remove(idTarea) && suyas.isEmpty()) {
+			porProyecto.remove(idProyecto);
+		}
+	}
+
+	/**
+	 * Programa el disparo para el principio del día siguiente a la primera fecha de la cola, si ha cambiado
+	 */
+	private void reprogramar() {
+		long dia = cola.isEmpty() ? Long.MAX_VALUE : (cola.first() >> 32) + 1;
+		if (dia == diaDisparo) {
+			return;
+		}
+		if (disparo != null) {
+			disparo.cancel(false);
+			disparo = null;
+		}
+		diaDisparo = dia;
+		if (dia != Long.MAX_VALUE) {
+			Instant momento = LocalDate.ofEpochDay(dia).atStartOfDay(zona).toInstant();
+			long retraso = Math.max(0, Duration.between(Instant.now(), momento).toMillis());
+			disparo = temporizador.schedule(this::disparar, retraso, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Saca de la cola las tareas vencidas, las avisa y programa el siguiente disparo
+	 */
+	private void disparar() {
+		List<long[]> vencidas = new ArrayList<>();
+		synchronized (this) {
+			long hoy = hoy();
+			while (!cola.isEmpty() && (cola.first() >> 32) < hoy && vencidas.size() < MAX_POR_DISPARO) {
+				long clave = cola.pollFirst();
+				int id = (int) clave;
+				Entrada e = tareas.get(id);
+				e.avisada = true;
+				contarVencida(e.proyecto, 1);
+				vencidas.add(new long[] { id, e.proyecto, e.dia });
+			}
+			avisadas += vencidas.size();
+			// Si el reloj se ha adelantado al día previsto no sale ninguna y se vuelve a programar
+			diaDisparo = Long.MAX_VALUE;
+			reprogramar();
+		}
+		for (int i = 0; i < vencidas.size(); i++) {
+			long[] v = vencidas.get(i);
+			if (i < MAX_REGISTRO) {
+				System.out.println("Tarea vencida: id=" + v[0] + ", proyecto=" + v[1] + ", fecha_fin="
+						+ LocalDate.ofEpochDay(v[2]));
+			} else if (i == MAX_REGISTRO) {
+				System.out.println("... y " + (vencidas.size() - MAX_REGISTRO) + " tareas vencidas más");
+			}
+			try {
+				aviso.vencida((int) v[0], (int) v[1], LocalDate.ofEpochDay(v[2]));
+			} catch (RuntimeException e) {
+				System.out.println("Error al avisar del vencimiento de la tarea " + v[0] + ": " + e.getMessage());
+			}
+		}
+	}
+
+	private long hoy() {
+		return LocalDate.now(zona).toEpochDay();
+	}
+
+	/**
+	 * @return clave de la cola: día en los 32 bits altos e id en los bajos, de modo que se ordena por día y luego id
+	 */
+	private static long clave(int dia, int idTarea) {
+		return (long) dia << 32 | (idTarea & 0xFFFFFFFFL);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "Vencimientos{seguidas=" + tareas.size() + ", enCola=" + cola.size() + ", avisadas=" + avisadas
+				+ ", proximoDisparo=" + (diaDisparo == Long.MAX_VALUE ? "ninguno" : LocalDate.ofEpochDay(diaDisparo)) + "}";
+	}
+}